@@ -0,0 +1,86 @@
+package de.htw.ds.sudoku;
+
+import java.util.Set;
+
+import de.htw.ds.TypeMetadata;
+import de.htw.ds.sudoku.Sudoku.ElementType;
+
+
+/**
+ * <p>Abstract base class of the SudokuPlugin implementations, which manages the parent
+ * and the logical deductions, and implements the analysis methods shared by all plugins,
+ * leaving the search itself to the subclasses.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public abstract class AbstractSudokuPlugin implements SudokuPlugin {
+	private SudokuDeductions deductions;
+	private Sudoku parent = null;
+
+
+	/**
+	 * Creates a new instance.
+	 * @param deductions the logical deductions to apply
+	 * @throws NullPointerException if the given deductions are null
+	 */
+	protected AbstractSudokuPlugin(final SudokuDeductions deductions) {
+		super();
+		if (deductions == null) throw new NullPointerException();
+
+		this.deductions = deductions;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public final void setParent(final Sudoku parent) {
+		this.parent = parent;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public final SudokuDeductions getDeductions() {
+		return this.deductions;
+	}
+
+
+	/**
+	 * Sets the logical deductions to apply, which allows the plugins of cloned riddles
+	 * to share them, even if their class lacks a public constructor taking them.
+	 * @param deductions the logical deductions to apply
+	 * @throws NullPointerException if the given deductions are null
+	 */
+	final void setDeductions(final SudokuDeductions deductions) {
+		if (deductions == null) throw new NullPointerException();
+		this.deductions = deductions;
+	}
+
+
+	/**
+	 * Returns the receiver's parent.
+	 * @return the parent, or null if none has been set yet
+	 */
+	protected final Sudoku getParent() {
+		return this.parent;
+	}
+
+
+	/**
+	 * {@inheritDoc} Note that the candidates of each peer cell are derived in constant
+	 * time from the parent's per-element bit masks, and merged using a bitwise OR, so the
+	 * analysis takes time linear in the radix.
+	 */
+	public final Set<Byte> getAntiSolutions(final ElementType elementType, final int digitIndex) {
+		final byte[] digits = this.parent.getDigits();
+		if (digitIndex < 0 || digitIndex >= digits.length) throw new IllegalArgumentException();
+
+		final int dimension = this.parent.getDimension();
+		long result = 0;
+		for (final int index : SudokuCandidates.getElement(dimension, SudokuCandidates.elementIndex(elementType, dimension, digitIndex))) {
+			if (index != digitIndex && digits[index] < 0) result |= this.parent.getCandidates(index);
+		}
+		return SudokuCandidates.toSet(result);
+	}
+}
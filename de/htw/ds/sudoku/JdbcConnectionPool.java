@@ -0,0 +1,646 @@
+package de.htw.ds.sudoku;
+
+import java.io.Closeable;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Bounded JDBC connection pool wrapping any data source. Connections handed out are
+ * proxies, whose {@link Connection#close()} returns the underlying connection to the pool
+ * instead of closing it. Each borrow yields a new proxy, which is closed for good once it
+ * has been closed, so closing it again has no effect on later borrowers of the same
+ * underlying connection. Idle connections are reused in LIFO order, validated on borrow if
+ * they have been idle for more than a second, and evicted once they have been idle longer
+ * than the idle timeout. Uncommitted work is rolled back when a connection is returned.</p>
+ * <p>Each pooled connection caches it's prepared statements by SQL text, so statements
+ * prepared again on the same connection skip the round trip to the database. Closing a
+ * cached statement merely clears it's parameters; while it is in use, preparing the same
+ * SQL text again yields a separate statement that is not cached. Like connections, each
+ * preparation of a cached statement yields a new proxy.</p>
+ * <p>Borrowers wait for a free connection if the pool is exhausted, and the number and
+ * duration of these waits are recorded.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class JdbcConnectionPool implements DataSource, Closeable {
+	private static final long VALIDATION_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+	private static final int VALIDATION_TIMEOUT = 5;
+	private static final int STATEMENT_CACHE_SIZE = 32;
+
+	private final DataSource dataSource;
+	private final int maxSize;
+	private final long idleTimeout;
+	private final long borrowTimeout;
+	private final Semaphore permits;
+	private final Deque<PooledConnection> idleConnections;
+	private boolean closed;
+
+	private final LongAdder borrowCount;
+	private final LongAdder creationCount;
+	private final LongAdder validationFailureCount;
+	private final LongAdder evictionCount;
+	private final LongAdder waitCount;
+	private final LongAdder waitTime;
+	private final AtomicLong maxWaitTime;
+
+
+	/**
+	 * Public constructor, with an idle timeout of one minute, and a borrow timeout
+	 * of 30 seconds.
+	 * @param dataSource the data source creating the connections
+	 * @param maxSize the maximum number of connections
+	 * @throws NullPointerException if the given data source is null
+	 * @throws IllegalArgumentException if the given size is not strictly positive
+	 */
+	public JdbcConnectionPool(final DataSource dataSource, final int maxSize) {
+		this(dataSource, maxSize, 60000, 30000);
+	}
+
+
+	/**
+	 * Public constructor.
+	 * @param dataSource the data source creating the connections
+	 * @param maxSize the maximum number of connections
+	 * @param idleTimeout the time in milliseconds after which idle connections are evicted
+	 * @param borrowTimeout the maximum time in milliseconds to wait for a free connection
+	 * @throws NullPointerException if the given data source is null
+	 * @throws IllegalArgumentException if the given size is not strictly positive,
+	 *    or if any of the given timeouts is negative
+	 */
+	public JdbcConnectionPool(final DataSource dataSource, final int maxSize, final long idleTimeout, final long borrowTimeout) {
+		super();
+		if (dataSource == null) throw new NullPointerException();
+		if (maxSize <= 0 || idleTimeout < 0 || borrowTimeout < 0) throw new IllegalArgumentException();
+
+		this.dataSource = dataSource;
+		this.maxSize = maxSize;
+		this.idleTimeout = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+		this.borrowTimeout = borrowTimeout;
+		this.permits = new Semaphore(maxSize, true);
+		this.idleConnections = new ArrayDeque<PooledConnection>();
+		this.borrowCount = new LongAdder();
+		this.creationCount = new LongAdder();
+		this.validationFailureCount = new LongAdder();
+		this.evictionCount = new LongAdder();
+		this.waitCount = new LongAdder();
+		this.waitTime = new LongAdder();
+		this.maxWaitTime = new AtomicLong();
+	}
+
+
+	/**
+	 * Returns the maximum number of connections.
+	 * @return the maximum pool size
+	 */
+	public int getMaxSize() {
+		return this.maxSize;
+	}
+
+
+	/**
+	 * Returns the number of idle connections.
+	 * @return the idle connection count
+	 */
+	public synchronized int getIdleCount() {
+		return this.idleConnections.size();
+	}
+
+
+	/**
+	 * Returns the number of connections currently borrowed.
+	 * @return the active connection count
+	 */
+	public int getActiveCount() {
+		return this.maxSize - this.permits.availablePermits();
+	}
+
+
+	/**
+	 * Returns the number of connections borrowed so far.
+	 * @return the borrow count
+	 */
+	public long getBorrowCount() {
+		return this.borrowCount.sum();
+	}
+
+
+	/**
+	 * Returns the number of connections created so far.
+	 * @return the creation count
+	 */
+	public long getCreationCount() {
+		return this.creationCount.sum();
+	}
+
+
+	/**
+	 * Returns the number of idle connections discarded because they failed validation.
+	 * @return the validation failure count
+	 */
+	public long getValidationFailureCount() {
+		return this.validationFailureCount.sum();
+	}
+
+
+	/**
+	 * Returns the number of idle connections evicted because of the idle timeout.
+	 * @return the eviction count
+	 */
+	public long getEvictionCount() {
+		return this.evictionCount.sum();
+	}
+
+
+	/**
+	 * Returns the number of borrows that had to wait for a free connection.
+	 * @return the wait count
+	 */
+	public long getWaitCount() {
+		return this.waitCount.sum();
+	}
+
+
+	/**
+	 * Returns the accumulated time borrowers waited for a free connection.
+	 * @return the wait time in milliseconds
+	 */
+	public long getWaitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(this.waitTime.sum());
+	}
+
+
+	/**
+	 * Returns the maximum time a borrower waited for a free connection.
+	 * @return the maximum wait time in milliseconds
+	 */
+	public long getMaxWaitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(this.maxWaitTime.get());
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 * @throws SQLTransientConnectionException if no connection becomes free within the
+	 *    borrow timeout
+	 * @throws SQLException if the pool is closed, if the current thread is interrupted while
+	 *    waiting, or if there is a problem creating a connection
+	 */
+	public Connection getConnection() throws SQLException {
+		if (!this.permits.tryAcquire()) {
+			final long start = System.nanoTime();
+			try {
+				final boolean acquired = this.permits.tryAcquire(this.borrowTimeout, TimeUnit.MILLISECONDS);
+				final long duration = System.nanoTime() - start;
+				this.waitCount.increment();
+				this.waitTime.add(duration);
+				this.maxWaitTime.accumulateAndGet(duration, Math::max);
+				if (!acquired) throw new SQLTransientConnectionException("connection pool exhausted");
+			} catch (final InterruptedException exception) {
+				Thread.currentThread().interrupt();
+				throw new SQLException(exception);
+			}
+		}
+
+		try {
+			this.evictIdleConnections();
+			while (true) {
+				PooledConnection connection;
+				synchronized (this) {
+					if (this.closed) throw new SQLException("connection pool closed");
+					connection = this.idleConnections.pollFirst();
+				}
+
+				if (connection == null) {
+					connection = new PooledConnection(this.dataSource.getConnection());
+					this.creationCount.increment();
+				} else if (System.nanoTime() - connection.lastUsed > VALIDATION_INTERVAL && !connection.isValid()) {
+					this.validationFailureCount.increment();
+					connection.closePhysically();
+					continue;
+				}
+
+				this.borrowCount.increment();
+				return new ConnectionHandle(connection).proxy;
+			}
+		} catch (final SQLException | RuntimeException | Error exception) {
+			this.permits.release();
+			throw exception;
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 * @throws SQLFeatureNotSupportedException because pooled connections share their credentials
+	 */
+	public Connection getConnection(final String username, final String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+
+	/**
+	 * Closes all idle connections, and causes connections borrowed to be closed once
+	 * they are returned.
+	 */
+	public void close() {
+		synchronized (this) {
+			this.closed = true;
+		}
+		this.evictIdleConnections();
+	}
+
+
+	/**
+	 * Closes the idle connections that exceeded the idle timeout, or all idle connections
+	 * if the pool is closed. This happens implicitly whenever connections are borrowed or
+	 * returned.
+	 */
+	public void evictIdleConnections() {
+		final long now = System.nanoTime();
+		final Deque<PooledConnection> evictedConnections = new ArrayDeque<PooledConnection>();
+		final boolean closed;
+		synchronized (this) {
+			closed = this.closed;
+			for (final Iterator<PooledConnection> iterator = this.idleConnections.descendingIterator(); iterator.hasNext(); ) {
+				final PooledConnection connection = iterator.next();
+				if (!closed && now - connection.lastUsed <= this.idleTimeout) break;
+
+				iterator.remove();
+				evictedConnections.add(connection);
+			}
+		}
+
+		if (!closed) this.evictionCount.add(evictedConnections.size());
+		for (final PooledConnection connection : evictedConnections) {
+			connection.closePhysically();
+		}
+	}
+
+
+	/**
+	 * Returns the given borrowed connection to the pool, or closes it if it cannot be reset.
+	 * @param connection the connection
+	 */
+	private void release(final PooledConnection connection) {
+		boolean reusable;
+		try {
+			connection.resetStatements();
+			if (!connection.physical.getAutoCommit()) {
+				connection.physical.rollback();
+				connection.physical.setAutoCommit(true);
+			}
+			connection.physical.clearWarnings();
+			reusable = true;
+		} catch (final SQLException exception) {
+			reusable = false;
+		}
+
+		synchronized (this) {
+			if (reusable && !this.closed) {
+				connection.lastUsed = System.nanoTime();
+				this.idleConnections.addFirst(connection);
+			} else {
+				reusable = false;
+			}
+		}
+
+		if (!reusable) connection.closePhysically();
+		this.permits.release();
+		this.evictIdleConnections();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public PrintWriter getLogWriter() throws SQLException {
+		return this.dataSource.getLogWriter();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setLogWriter(final PrintWriter writer) throws SQLException {
+		this.dataSource.setLogWriter(writer);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getLoginTimeout() throws SQLException {
+		return this.dataSource.getLoginTimeout();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setLoginTimeout(final int seconds) throws SQLException {
+		this.dataSource.setLoginTimeout(seconds);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		return this.dataSource.getParentLogger();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public <T> T unwrap(final Class<T> type) throws SQLException {
+		if (type.isInstance(this)) return type.cast(this);
+		return this.dataSource.unwrap(type);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean isWrapperFor(final Class<?> type) throws SQLException {
+		return type.isInstance(this) || this.dataSource.isWrapperFor(type);
+	}
+
+
+	/**
+	 * Invokes the given method on the given target, unwrapping exceptions thrown by it.
+	 * @param target the target
+	 * @param method the method
+	 * @param args the arguments, or null
+	 * @return the result
+	 * @throws Throwable if the method throws an exception
+	 */
+	private static Object invoke(final Object target, final Method method, final Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (final InvocationTargetException exception) {
+			throw exception.getCause();
+		}
+	}
+
+
+
+	/**
+	 * <p>Pooled connection, consisting of the underlying connection and it's statement cache.</p>
+	 */
+	private final class PooledConnection {
+		private final Connection physical;
+		private final Map<String,CachedStatement> statements;
+		private long lastUsed;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param physical the underlying connection
+		 */
+		@SuppressWarnings("serial")
+		public PooledConnection(final Connection physical) {
+			super();
+
+			this.physical = physical;
+			this.statements = new LinkedHashMap<String,CachedStatement>(16, 0.75f, true) {
+				protected boolean removeEldestEntry(final Map.Entry<String,CachedStatement> eldest) {
+					if (this.size() <= STATEMENT_CACHE_SIZE || eldest.getValue().handle != null) return false;
+					eldest.getValue().closePhysically();
+					return true;
+				}
+			};
+		}
+
+
+		/**
+		 * Returns whether or not the underlying connection is still valid.
+		 * @return true if it is valid, false otherwise
+		 */
+		public boolean isValid() {
+			try {
+				return this.physical.isValid(VALIDATION_TIMEOUT);
+			} catch (final SQLException exception) {
+				return false;
+			}
+		}
+
+
+		/**
+		 * Closes the cached statements left open by the borrower.
+		 * @throws SQLException if there is a problem clearing a statement's parameters
+		 */
+		public void resetStatements() throws SQLException {
+			for (final CachedStatement statement : this.statements.values()) {
+				if (statement.handle != null) statement.handle.close();
+			}
+		}
+
+
+		/**
+		 * Closes the cached statements and the underlying connection, ignoring any problems.
+		 */
+		public void closePhysically() {
+			for (final CachedStatement statement : this.statements.values()) {
+				statement.closePhysically();
+			}
+			this.statements.clear();
+			try { this.physical.close(); } catch (final Exception exception) {}
+		}
+	}
+
+
+
+	/**
+	 * <p>Connection handle, acting as invocation handler of the connection proxy handed out
+	 * for a single borrow. Once closed, it stays closed, even if it's pooled connection has
+	 * been borrowed again meanwhile.</p>
+	 */
+	private final class ConnectionHandle implements InvocationHandler {
+		private final PooledConnection connection;
+		private final Connection proxy;
+		private volatile boolean closed;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param connection the pooled connection
+		 */
+		public ConnectionHandle(final PooledConnection connection) {
+			super();
+
+			this.connection = connection;
+			this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, this);
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "close": {
+					synchronized (this) {
+						if (this.closed) return null;
+						this.closed = true;
+					}
+					JdbcConnectionPool.this.release(this.connection);
+					return null;
+				}
+				case "isClosed": {
+					return this.closed;
+				}
+				case "equals": {
+					return proxy == args[0];
+				}
+				case "hashCode": {
+					return System.identityHashCode(proxy);
+				}
+				case "toString": {
+					return "pooled " + this.connection.physical;
+				}
+			}
+
+			if (this.closed) throw new SQLException("connection closed");
+			if (method.getName().equals("prepareStatement") && args.length == 1) {
+				final String sql = (String) args[0];
+				CachedStatement statement = this.connection.statements.get(sql);
+				if (statement == null) {
+					statement = new CachedStatement(this.connection.physical.prepareStatement(sql));
+					this.connection.statements.put(sql, statement);
+				} else if (statement.handle != null) {
+					return this.connection.physical.prepareStatement(sql);
+				}
+				statement.handle = new StatementHandle(statement, this.proxy);
+				return statement.handle.proxy;
+			}
+			return JdbcConnectionPool.invoke(this.connection.physical, method, args);
+		}
+	}
+
+
+
+	/**
+	 * <p>Cached prepared statement, consisting of the underlying statement, and the handle
+	 * of it's current preparation, if any.</p>
+	 */
+	private static final class CachedStatement {
+		private final PreparedStatement physical;
+		private StatementHandle handle;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param physical the underlying statement
+		 */
+		public CachedStatement(final PreparedStatement physical) {
+			super();
+
+			this.physical = physical;
+		}
+
+
+		/**
+		 * Closes the underlying statement, ignoring any problems.
+		 */
+		public void closePhysically() {
+			try { this.physical.close(); } catch (final Exception exception) {}
+		}
+	}
+
+
+
+	/**
+	 * <p>Statement handle, acting as invocation handler of the statement proxy handed out
+	 * for a single preparation of a cached statement. Once closed, it stays closed, even if
+	 * it's cached statement has been prepared again meanwhile.</p>
+	 */
+	private static final class StatementHandle implements InvocationHandler {
+		private final CachedStatement statement;
+		private final PreparedStatement proxy;
+		private final Connection connection;
+		private volatile boolean closed;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param statement the cached statement
+		 * @param connection the connection proxy
+		 */
+		public StatementHandle(final CachedStatement statement, final Connection connection) {
+			super();
+
+			this.statement = statement;
+			this.connection = connection;
+			this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, this);
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "close": {
+					this.close();
+					return null;
+				}
+				case "isClosed": {
+					return this.closed;
+				}
+				case "getConnection": {
+					return this.connection;
+				}
+				case "equals": {
+					return proxy == args[0];
+				}
+				case "hashCode": {
+					return System.identityHashCode(proxy);
+				}
+				case "toString": {
+					return "cached " + this.statement.physical;
+				}
+			}
+
+			if (this.closed) throw new SQLException("statement closed");
+			return JdbcConnectionPool.invoke(this.statement.physical, method, args);
+		}
+
+
+		/**
+		 * Closes the receiver, and makes it's cached statement available for the next
+		 * preparation, unless the receiver is already closed.
+		 * @throws SQLException if there is a problem clearing the statement's parameters
+		 */
+		public void close() throws SQLException {
+			synchronized (this) {
+				if (this.closed) return;
+				this.closed = true;
+			}
+			if (this.statement.handle == this) this.statement.handle = null;
+			this.statement.physical.clearParameters();
+		}
+	}
+}
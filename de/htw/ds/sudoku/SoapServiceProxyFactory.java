@@ -0,0 +1,108 @@
+package de.htw.ds.sudoku;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.xml.namespace.QName;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.Service;
+
+import de.htw.ds.Namespaces;
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>This static class provides cached SOAP service proxies. Creating a proxy using
+ * {@link Namespaces#createDynamicSoapServiceProxy(Class, URI)} requires downloading and
+ * parsing the service's WSDL, and building a new {@link Service}, every time. Instead,
+ * this class creates one proxy per service interface and service URI, and returns it for
+ * all subsequent requests, so that long-running clients pay the proxy setup once.</p>
+ * <p>If a WSDL copy named after the service interface's simple name is bundled next to it
+ * (for example <tt>SoapSudokuService.wsdl</tt>), the proxy is created from this copy, and
+ * bound to the given service URI, without contacting the server at all. Otherwise, the WSDL
+ * is queried from the service URI.</p>
+ * <p>The proxies returned may be shared across threads, as long as their request contexts
+ * are not modified after creation. They use {@link java.net.HttpURLConnection}, which
+ * keeps connections alive and reuses them across calls and threads; the number of idle
+ * connections kept per server can be raised using the <tt>http.maxConnections</tt>
+ * system property.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SoapServiceProxyFactory {
+	private static final ConcurrentMap<List<Object>,Object> PROXIES = new ConcurrentHashMap<List<Object>,Object>();
+
+
+	/**
+	 * Prevents external instantiation.
+	 */
+	private SoapServiceProxyFactory() {
+		super();
+	}
+
+
+	/**
+	 * Returns the proxy for the given service interface and service URI, creating it upon
+	 * first request. The proxy is created from the bundled WSDL copy if present, otherwise
+	 * from the WSDL queried from the given service URI.
+	 * @param <T> the service interface type
+	 * @param serviceInterface the service interface
+	 * @param serviceURI the service URI
+	 * @return the shared service proxy instance
+	 * @throws NullPointerException if any of the given arguments is null
+	 * @throws IllegalArgumentException if the given service URI cannot be used to construct a valid URL
+	 * @throws javax.xml.ws.WebServiceException if the proxy cannot be created, for example because
+	 *    no WSDL copy is bundled and the given service URI doesn't point to a running service
+	 */
+	public static <T> T getProxy(final Class<T> serviceInterface, final URI serviceURI) {
+		final URL wsdlURL = serviceInterface.getResource(serviceInterface.getSimpleName() + ".wsdl");
+		return SoapServiceProxyFactory.getProxy(serviceInterface, serviceURI, wsdlURL);
+	}
+
+
+	/**
+	 * Returns the proxy for the given service interface and service URI, creating it upon
+	 * first request from the given WSDL location. Note that the WSDL location is ignored
+	 * if a proxy for the given service interface and service URI already exists.
+	 * @param <T> the service interface type
+	 * @param serviceInterface the service interface
+	 * @param serviceURI the service URI
+	 * @param wsdlURL the WSDL location, or <tt>null</tt> to query the WSDL from the given service URI
+	 * @return the shared service proxy instance
+	 * @throws NullPointerException if the given service interface or service URI is null
+	 * @throws IllegalArgumentException if the given service URI cannot be used to construct a valid URL
+	 * @throws javax.xml.ws.WebServiceException if the proxy cannot be created from the WSDL
+	 */
+	public static <T> T getProxy(final Class<T> serviceInterface, final URI serviceURI, final URL wsdlURL) {
+		if (serviceInterface == null || serviceURI == null) throw new NullPointerException();
+		final List<Object> key = Arrays.<Object>asList(serviceInterface, serviceURI);
+
+		final Object proxy = PROXIES.computeIfAbsent(key, k -> createProxy(serviceInterface, serviceURI, wsdlURL));
+		return serviceInterface.cast(proxy);
+	}
+
+
+	/**
+	 * Creates a new proxy for the given service interface and service URI. If a WSDL location
+	 * is given, the service is created from it, and the proxy is bound to the given service
+	 * URI. Otherwise, the proxy is created from the WSDL queried from the given service URI.
+	 * @param <T> the service interface type
+	 * @param serviceInterface the service interface
+	 * @param serviceURI the service URI
+	 * @param wsdlURL the WSDL location, or <tt>null</tt>
+	 * @return the service proxy instance
+	 * @throws IllegalArgumentException if the given service URI cannot be used to construct a valid URL
+	 * @throws javax.xml.ws.WebServiceException if the proxy cannot be created from the WSDL
+	 */
+	private static <T> T createProxy(final Class<T> serviceInterface, final URI serviceURI, final URL wsdlURL) {
+		if (wsdlURL == null) return Namespaces.createDynamicSoapServiceProxy(serviceInterface, serviceURI);
+
+		final URI soapPackageNamespace = Namespaces.toURI("http", serviceInterface.getPackage());
+		final QName soapServiceName = new QName(soapPackageNamespace.toASCIIString(), serviceInterface.getSimpleName());
+		final T proxy = Service.create(wsdlURL, soapServiceName).getPort(serviceInterface);
+		((BindingProvider) proxy).getRequestContext().put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, serviceURI.toASCIIString());
+		return proxy;
+	}
+}
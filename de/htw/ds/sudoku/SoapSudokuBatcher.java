@@ -0,0 +1,321 @@
+package de.htw.ds.sudoku;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.xml.ws.soap.SOAPFaultException;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Client-side decorator of a Sudoku service, which coalesces individual calls of
+ * {@link #getSolution(byte[])}, {@link #solutionExists(byte[])} and
+ * {@link #storeSolution(byte[], byte[])} issued by concurrent threads into calls of the
+ * batch operations {@link #getSolutions(byte[][])} and {@link #storeSolutions(byte[][], byte[][])}.
+ * A batch is sent once the time window following it's first call has passed, or once it
+ * reaches the maximum batch size. The individual calls block until their batch has been
+ * processed, and then return it's result or rethrow it's exception. Store calls are
+ * validated before they are enqueued, so one malformed board cannot fail the unrelated
+ * calls sharing it's batch; boards the client accepts but the server rejects cause the
+ * batch to be retried call by call. Any other failure fails all calls of the batch,
+ * as retrying them one by one would only add load to a server that is already
+ * struggling. All other calls are delegated directly.</p>
+ * <p>It is meant to wrap a service proxy in clients issuing many small concurrent calls,
+ * like the solve workers of {@link SudokuBatch}.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SoapSudokuBatcher implements SoapSudokuService, Closeable {
+
+	private final SoapSudokuService delegate;
+	private final long window;
+	private final int maxBatchSize;
+	private final BlockingQueue<Call> queue;
+	private final Thread flusherThread;
+
+
+	/**
+	 * Public constructor, with a time window of 5ms and a maximum batch size of 256.
+	 * @param delegate the service to be decorated, usually a SOAP proxy
+	 * @throws NullPointerException if the given delegate is null
+	 */
+	public SoapSudokuBatcher(final SoapSudokuService delegate) {
+		this(delegate, 5, 256);
+	}
+
+
+	/**
+	 * Public constructor.
+	 * @param delegate the service to be decorated, usually a SOAP proxy
+	 * @param window the time window in milliseconds during which calls are coalesced
+	 * @param maxBatchSize the maximum number of calls per batch
+	 * @throws NullPointerException if the given delegate is null
+	 * @throws IllegalArgumentException if the given window is negative, or the given
+	 *    batch size is not strictly positive
+	 */
+	public SoapSudokuBatcher(final SoapSudokuService delegate, final long window, final int maxBatchSize) {
+		super();
+		if (delegate == null) throw new NullPointerException();
+		if (window < 0 || maxBatchSize <= 0) throw new IllegalArgumentException();
+
+		this.delegate = delegate;
+		this.window = TimeUnit.MILLISECONDS.toNanos(window);
+		this.maxBatchSize = maxBatchSize;
+		this.queue = new LinkedBlockingQueue<Call>();
+		this.flusherThread = new Thread(new Flusher(), "sudoku-batcher");
+		this.flusherThread.setDaemon(true);
+		this.flusherThread.start();
+	}
+
+
+	/**
+	 * Stops coalescing calls. Calls that haven't been sent yet fail with an
+	 * {@link IllegalStateException}.
+	 */
+	public void close() {
+		this.flusherThread.interrupt();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 * @throws IllegalArgumentException if one of the given values is not a valid packed board
+	 */
+	public void storeSolution(final byte[] digitsToSolve, final byte[] digitsSolved) throws NullPointerException, IllegalArgumentException, IllegalStateException, JdbcException {
+		SudokuCodec.decode(digitsToSolve);
+		SudokuCodec.decode(digitsSolved);
+		this.submit(new Call(digitsToSolve, digitsSolved));
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public byte[] getSolution(final byte[] digitsToSolve) throws NullPointerException, IllegalStateException, JdbcException {
+		if (digitsToSolve == null) throw new NullPointerException();
+		return this.submit(new Call(digitsToSolve, null));
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean solutionExists(final byte[] digitsToSolve) throws NullPointerException, IllegalStateException, JdbcException {
+		return this.getSolution(digitsToSolve).length > 0;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void storeSolutions(final byte[][] digitsToSolve, final byte[][] digitsSolved) throws NullPointerException, IllegalArgumentException, IllegalStateException, JdbcException {
+		this.delegate.storeSolutions(digitsToSolve, digitsSolved);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public byte[][] getSolutions(final byte[][] digitsToSolve) throws NullPointerException, IllegalStateException, JdbcException {
+		return this.delegate.getSolutions(digitsToSolve);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long requestSolution(final byte[] digitsToSolve) throws NullPointerException, IllegalArgumentException, IllegalStateException, JdbcException {
+		return this.delegate.requestSolution(digitsToSolve);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public byte[] pollSolution(final long ticket) throws IllegalArgumentException, IllegalStateException, JdbcException {
+		return this.delegate.pollSolution(ticket);
+	}
+
+
+	/**
+	 * Enqueues the given call, and waits for it's batch to be processed.
+	 * @param call the call
+	 * @return the call's result
+	 * @throws JdbcException if the batch failed because of a problem with the JDBC connection
+	 * @throws IllegalStateException if the receiver is closed, or if the current thread is
+	 *    interrupted while waiting
+	 */
+	private byte[] submit(final Call call) throws JdbcException {
+		if (!this.flusherThread.isAlive()) throw new IllegalStateException("batcher closed");
+		this.queue.add(call);
+
+		try {
+			while (true) {
+				try {
+					return call.result.get(1, TimeUnit.SECONDS);
+				} catch (final TimeoutException exception) {
+					if (!this.flusherThread.isAlive() && this.queue.remove(call)) throw new IllegalStateException("batcher closed");
+				}
+			}
+		} catch (final InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(exception);
+		} catch (final ExecutionException exception) {
+			final Throwable cause = exception.getCause();
+			if (cause instanceof JdbcException) throw (JdbcException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+
+
+	/**
+	 * <p>Individual call, which is a store call if it carries a solution, and a query
+	 * call otherwise.</p>
+	 */
+	private static final class Call {
+		private final byte[] digitsToSolve;
+		private final byte[] digitsSolved;
+		private final CompletableFuture<byte[]> result;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param digitsToSolve the packed riddle
+		 * @param digitsSolved the packed solution, or null for query calls
+		 */
+		public Call(final byte[] digitsToSolve, final byte[] digitsSolved) {
+			super();
+
+			this.digitsToSolve = digitsToSolve;
+			this.digitsSolved = digitsSolved;
+			this.result = new CompletableFuture<byte[]>();
+		}
+	}
+
+
+
+	/**
+	 * <p>Flusher collecting calls into batches and sending them, until it is interrupted.</p>
+	 */
+	private final class Flusher implements Runnable {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void run() {
+			final BlockingQueue<Call> queue = SoapSudokuBatcher.this.queue;
+			final List<Call> batch = new ArrayList<Call>();
+			try {
+				while (true) {
+					batch.add(queue.take());
+					final long deadline = System.nanoTime() + SoapSudokuBatcher.this.window;
+					while (batch.size() < SoapSudokuBatcher.this.maxBatchSize) {
+						final Call call = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+						if (call == null) break;
+						batch.add(call);
+					}
+
+					this.flush(batch);
+					batch.clear();
+				}
+			} catch (final InterruptedException exception) {
+				final IllegalStateException closedException = new IllegalStateException("batcher closed");
+				queue.drainTo(batch);
+				for (final Call call : batch) {
+					call.result.completeExceptionally(closedException);
+				}
+			}
+		}
+
+
+		/**
+		 * Sends the store calls and the query calls of the given batch as one batch
+		 * operation each, and completes the calls with their results. If the service
+		 * rejects the arguments of a batch of store calls, they are retried one by one,
+		 * so only the offending calls fail.
+		 * @param batch the batch
+		 */
+		private void flush(final List<Call> batch) {
+			final List<Call> storeCalls = new ArrayList<Call>();
+			final List<Call> queryCalls = new ArrayList<Call>();
+			for (final Call call : batch) {
+				(call.digitsSolved == null ? queryCalls : storeCalls).add(call);
+			}
+
+			if (!storeCalls.isEmpty()) {
+				final byte[][] digitsToSolve = new byte[storeCalls.size()][];
+				final byte[][] digitsSolved = new byte[storeCalls.size()][];
+				for (int index = 0; index < digitsToSolve.length; ++index) {
+					digitsToSolve[index] = storeCalls.get(index).digitsToSolve;
+					digitsSolved[index] = storeCalls.get(index).digitsSolved;
+				}
+
+				try {
+					SoapSudokuBatcher.this.delegate.storeSolutions(digitsToSolve, digitsSolved);
+					for (final Call call : storeCalls) {
+						call.result.complete(null);
+					}
+				} catch (final Throwable exception) {
+					final boolean retry = this.rejectsArguments(exception);
+					for (final Call call : storeCalls) {
+						if (!retry) {
+							call.result.completeExceptionally(exception);
+							continue;
+						}
+
+						try {
+							SoapSudokuBatcher.this.delegate.storeSolution(call.digitsToSolve, call.digitsSolved);
+							call.result.complete(null);
+						} catch (final Throwable nestedException) {
+							call.result.completeExceptionally(nestedException);
+						}
+					}
+				}
+			}
+
+			if (!queryCalls.isEmpty()) {
+				final byte[][] digitsToSolve = new byte[queryCalls.size()][];
+				for (int index = 0; index < digitsToSolve.length; ++index) {
+					digitsToSolve[index] = queryCalls.get(index).digitsToSolve;
+				}
+
+				try {
+					final byte[][] digitsSolved = SoapSudokuBatcher.this.delegate.getSolutions(digitsToSolve);
+					for (int index = 0; index < digitsToSolve.length; ++index) {
+						queryCalls.get(index).result.complete(digitsSolved[index]);
+					}
+				} catch (final Throwable exception) {
+					for (final Call call : queryCalls) {
+						call.result.completeExceptionally(exception);
+					}
+				}
+			}
+		}
+
+
+		/**
+		 * Returns whether or not the given exception rejects the arguments of a batch
+		 * store operation. Behind a JAX-WS proxy, the server's undeclared exceptions
+		 * arrive as {@link SOAPFaultException}s, which are told apart by their fault
+		 * string starting with {@link SoapSudokuService#ILLEGAL_ARGUMENT_PREFIX}.
+		 * @param exception the exception
+		 * @return true if the arguments were rejected, false otherwise
+		 */
+		private boolean rejectsArguments(final Throwable exception) {
+			if (exception instanceof IllegalArgumentException) return true;
+			if (!(exception instanceof SOAPFaultException)) return false;
+
+			final String faultString = ((SOAPFaultException) exception).getFault().getFaultString();
+			return faultString != null && faultString.startsWith(ILLEGAL_ARGUMENT_PREFIX);
+		}
+	}
+}
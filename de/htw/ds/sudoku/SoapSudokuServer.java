@@ -10,9 +10,23 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.rmi.RemoteException;
-import java.sql.Connection;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 import javax.jws.WebService;
@@ -42,54 +56,133 @@ import de.htw.ds.SocketAddress;
 
 
 public class SoapSudokuServer implements SoapSudokuService{
+	private static final long CACHE_BUDGET = Long.getLong("de.htw.ds.sudoku.SoapSudokuServer.cacheBudget", 64L << 20);
+	private static final int POOL_SIZE = Integer.getInteger("de.htw.ds.sudoku.SoapSudokuServer.poolSize", 16);
+	private static final String PLUGIN_CLASS_NAME = System.getProperty("de.htw.ds.sudoku.SoapSudokuServer.plugin", SudokuPlugin0.class.getName());
+	private static final int PROCESSOR_COUNT = Runtime.getRuntime().availableProcessors();
+	private static final int REQUEST_POOL_SIZE = Integer.getInteger("de.htw.ds.sudoku.SoapSudokuServer.requestPoolSize", 64);
+	private static final int REQUEST_QUEUE_CAPACITY = Integer.getInteger("de.htw.ds.sudoku.SoapSudokuServer.requestQueueCapacity", 1024);
+	private static final int WRITE_QUEUE_CAPACITY = Integer.getInteger("de.htw.ds.sudoku.SoapSudokuServer.writeQueueCapacity", 4096);
+	private static final int WRITE_BATCH_SIZE = Integer.getInteger("de.htw.ds.sudoku.SoapSudokuServer.writeBatchSize", 256);
+	private static final long WRITE_INTERVAL = Long.getLong("de.htw.ds.sudoku.SoapSudokuServer.writeInterval", 50);
+	private static final long WRITE_TIMEOUT = Long.getLong("de.htw.ds.sudoku.SoapSudokuServer.writeTimeout", 1000);
+	private static final String PROTOCOL_ADDRESS = System.getProperty("de.htw.ds.sudoku.SoapSudokuServer.protocolAddress");
+	private static final int MAX_TICKETS = Integer.getInteger("de.htw.ds.sudoku.SoapSudokuServer.maxTickets", 4096);
+	private static final long TICKET_TIMEOUT = Long.getLong("de.htw.ds.sudoku.SoapSudokuServer.ticketTimeout", 60000);
 
 	private final Endpoint endpoint;
-	private final DataSource dataSource;
+	private final SudokuStore store;
+	private final SudokuSolutionCache solutionCache;
+	private final SudokuSolutionWriter solutionWriter;
+	private final Class<? extends SudokuPlugin> pluginClass;
+	private final ExecutorService requestExecutor;
+	private final ExecutorService solverExecutor;
+	private final ConcurrentMap<ByteBuffer,CompletableFuture<byte[]>> pendingSolutions;
+	private final ConcurrentMap<Long,Ticket> tickets;
+	private final AtomicLong ticketSequence;
 	
-	public SoapSudokuServer(final String binding, final URI serviceURI, final DataSource dataSource) {
-		if (dataSource == null) throw new NullPointerException();
-		this.dataSource = dataSource;
+	/**
+	 * Public constructor, using an off-heap solution cache whose byte budget is given by the
+	 * system property <tt>de.htw.ds.sudoku.SoapSudokuServer.cacheBudget</tt>, defaulting to 64MB,
+	 * and solving riddles with the plugin class given by the system property
+	 * <tt>de.htw.ds.sudoku.SoapSudokuServer.plugin</tt>, defaulting to {@link SudokuPlugin0}.
+	 * @param binding the SOAP binding
+	 * @param serviceURI the service URI
+	 * @param store the storage backend
+	 * @throws NullPointerException if any of the given arguments is null
+	 * @throws IllegalArgumentException if the plugin class cannot be loaded
+	 */
+	public SoapSudokuServer(final String binding, final URI serviceURI, final SudokuStore store) {
+		this(binding, serviceURI, store, new SudokuSolutionCache(CACHE_BUDGET), loadPluginClass(PLUGIN_CLASS_NAME));
+	}
+	
+	/**
+	 * Public constructor. Solutions are looked up in the given cache before the database is
+	 * queried, and solutions read from or stored into the database are cached. Requests are
+	 * dispatched on a bounded executor, and riddles are solved on a worker pool with one
+	 * thread per processor; requests never wait for solves, which are collected using
+	 * tickets instead. The request executor's thread count and queue capacity are given by
+	 * the system properties <tt>de.htw.ds.sudoku.SoapSudokuServer.requestPoolSize</tt>
+	 * (default 64) and <tt>.requestQueueCapacity</tt> (default 1024); requests exceeding both
+	 * are rejected instead of spawning ever more threads. Solutions are
+	 * stored asynchronously by a write-behind queue, whose capacity, batch size, flush interval
+	 * and offer timeout are given by the system properties
+	 * <tt>de.htw.ds.sudoku.SoapSudokuServer.writeQueueCapacity</tt> (default 4096),
+	 * <tt>.writeBatchSize</tt> (default 256), <tt>.writeInterval</tt> (default 50ms) and
+	 * <tt>.writeTimeout</tt> (default 1000ms).
+	 * @param binding the SOAP binding
+	 * @param serviceURI the service URI
+	 * @param store the storage backend
+	 * @param solutionCache the solution cache
+	 * @param pluginClass the plugin class used to solve riddles
+	 * @throws NullPointerException if any of the given arguments is null
+	 * @throws IllegalArgumentException if the given plugin class lacks a public default constructor
+	 */
+	public SoapSudokuServer(final String binding, final URI serviceURI, final SudokuStore store, final SudokuSolutionCache solutionCache, final Class<? extends SudokuPlugin> pluginClass) {
+		if (store == null || solutionCache == null || pluginClass == null) throw new NullPointerException();
+		this.store = store;
+		this.solutionCache = solutionCache;
+		this.pluginClass = pluginClass;
+		this.newPlugin();
+		this.solutionWriter = new SudokuSolutionWriter(store, WRITE_QUEUE_CAPACITY, WRITE_BATCH_SIZE, WRITE_INTERVAL, WRITE_TIMEOUT);
+		this.requestExecutor = new ThreadPoolExecutor(REQUEST_POOL_SIZE, REQUEST_POOL_SIZE, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(REQUEST_QUEUE_CAPACITY), new ThreadPoolExecutor.AbortPolicy());
+		((ThreadPoolExecutor) this.requestExecutor).allowCoreThreadTimeOut(true);
+		this.solverExecutor = Executors.newFixedThreadPool(PROCESSOR_COUNT);
+		this.pendingSolutions = new ConcurrentHashMap<ByteBuffer,CompletableFuture<byte[]>>();
+		this.tickets = new ConcurrentHashMap<Long,Ticket>();
+		this.ticketSequence = new AtomicLong(ThreadLocalRandom.current().nextLong() >>> 1);
 		this.endpoint = Endpoint.create(binding, this);
+		this.endpoint.setExecutor(this.requestExecutor);
 		this.endpoint.publish(serviceURI.toASCIIString());
  	}
 	
+	/**
+	 * Returns the solution cache, which exposes hit, miss and eviction counters.
+	 * @return the solution cache
+	 */
+	public SudokuSolutionCache getSolutionCache() {
+		return this.solutionCache;
+	}
+	
+	/**
+	 * Returns the write-behind queue, which exposes it's depth and flush latency.
+	 * @return the solution writer
+	 */
+	public SudokuSolutionWriter getSolutionWriter() {
+		return this.solutionWriter;
+	}
+	
+	/**
+	 * {@inheritDoc} The solution is cached unless one is cached for the riddle already, and
+	 * enqueued to be stored asynchronously, so the call returns before the database has
+	 * committed it.
+	 */
 	public void storeSolution(byte[] digitsToSolve, byte[] digitsSolved)
 			throws NullPointerException, IllegalStateException, JdbcException {
-		try {
-			final Connection connection = this.dataSource.getConnection();
-			try {
-				connection.setAutoCommit(false);
-				final SudokuConnector connector = new SudokuConnector(connection);
-				connector.storeSolution(digitsToSolve, digitsSolved);
-				connection.commit();
-			} catch (final SQLException exception){
-				try { connection.rollback(); } catch (final Exception e) {}
-				throw exception;
-			} finally {
-				try { connection.close(); } catch (final Exception exception) {}
-			}
-		} catch (final SQLException exception) {
-			throw new JdbcException(exception);
-		}
+		this.solutionWriter.store(digitsToSolve, digitsSolved);
+		this.solutionCache.put(digitsToSolve, digitsSolved);
 	}
 
 	
 	public byte[] getSolution(byte[] digitsToSolve)
 			throws NullPointerException, IllegalStateException, JdbcException {
+		final byte[] cachedSolution = this.solutionCache.get(digitsToSolve);
+		if (cachedSolution != null) return cachedSolution;
+		return this.querySolution(digitsToSolve);
+	}
+
+	/**
+	 * Returns the solution of the given riddle stored in the storage backend, and caches it.
+	 * @param digitsToSolve the packed riddle
+	 * @return the packed solution, or an empty array if there is none
+	 * @throws NullPointerException if the given value is null
+	 * @throws JdbcException if there is a problem with the underlying storage
+	 */
+	private byte[] querySolution(byte[] digitsToSolve) throws JdbcException {
 		try {
-			final Connection connection = this.dataSource.getConnection();
-			try {
-				connection.setAutoCommit(false);
-				final SudokuConnector connector = new SudokuConnector(connection);
-				final byte [] digitsSolved = connector.querySolution(digitsToSolve);
-				connection.commit();
-				return digitsSolved;
-			} catch (final SQLException exception){
-				try { connection.rollback(); } catch (final Exception e) {}
-				throw exception;
-			} finally {
-				try { connection.close(); } catch (final Exception exception) {}
-			}
+			final byte [] digitsSolved = this.store.querySolution(digitsToSolve);
+			if (digitsSolved.length > 0) this.solutionCache.put(digitsToSolve, digitsSolved);
+			return digitsSolved;
 		} catch (final SQLException exception) {
 			throw new JdbcException(exception);
 		}
@@ -98,59 +191,270 @@ public class SoapSudokuServer implements SoapSudokuService{
 	@Override
 	public boolean solutionExists(byte[] digitsToSolve)
 			throws NullPointerException, IllegalStateException, JdbcException {
-		try {
-			final Connection connection = this.dataSource.getConnection();
+		if (this.solutionCache.get(digitsToSolve) != null) return true;
+		return this.querySolution(digitsToSolve).length > 0;
+	}
+
+	/**
+	 * {@inheritDoc} The solutions are cached and enqueued one by one to be stored
+	 * asynchronously by the write-behind queue, which stores them in batches of it's own.
+	 * All boards are validated before the first one is enqueued, so a rejected call leaves
+	 * no solutions behind.
+	 */
+	public void storeSolutions(final byte[][] digitsToSolve, final byte[][] digitsSolved)
+			throws NullPointerException, IllegalArgumentException, IllegalStateException, JdbcException {
+		if (digitsToSolve.length != digitsSolved.length) throw new IllegalArgumentException(ILLEGAL_ARGUMENT_PREFIX + "array length mismatch");
+		for (int index = 0; index < digitsToSolve.length; ++index) {
 			try {
-				connection.setAutoCommit(false);
-				final SudokuConnector connector = new SudokuConnector(connection);
-				boolean solutionExists = connector.solutionExists(digitsToSolve);
-				connection.commit();
-				return solutionExists;
-			} catch (final SQLException exception){
-				try { connection.rollback(); } catch (final Exception e) {}
-				throw exception;
-			} finally {
-				try { connection.close(); } catch (final Exception exception) {}
+				SudokuCodec.decode(digitsToSolve[index]);
+				SudokuCodec.decode(digitsSolved[index]);
+			} catch (final IllegalArgumentException exception) {
+				throw new IllegalArgumentException(ILLEGAL_ARGUMENT_PREFIX + "board " + index + ": " + exception.getMessage(), exception);
 			}
+		}
+
+		for (int index = 0; index < digitsToSolve.length; ++index) {
+			this.storeSolution(digitsToSolve[index], digitsSolved[index]);
+		}
+	}
+
+	/**
+	 * {@inheritDoc} Riddles with cached solutions are not queried from the database.
+	 */
+	public byte[][] getSolutions(final byte[][] digitsToSolve)
+			throws NullPointerException, IllegalStateException, JdbcException {
+		final byte[][] result = new byte[digitsToSolve.length][];
+		int missCount = 0;
+		for (int index = 0; index < digitsToSolve.length; ++index) {
+			result[index] = this.solutionCache.get(digitsToSolve[index]);
+			if (result[index] == null) missCount += 1;
+		}
+		if (missCount == 0) return result;
+
+		final byte[][] missedDigitsToSolve = new byte[missCount][];
+		for (int index = 0, missIndex = 0; index < digitsToSolve.length; ++index) {
+			if (result[index] == null) missedDigitsToSolve[missIndex++] = digitsToSolve[index];
+		}
+
+		final byte[][] missedDigitsSolved;
+		try {
+			missedDigitsSolved = this.store.querySolutions(missedDigitsToSolve);
 		} catch (final SQLException exception) {
 			throw new JdbcException(exception);
 		}
+
+		for (int index = 0, missIndex = 0; index < digitsToSolve.length; ++index) {
+			if (result[index] != null) continue;
+
+			result[index] = missedDigitsSolved[missIndex++];
+			if (result[index].length > 0) this.solutionCache.put(digitsToSolve[index], result[index]);
+		}
+		return result;
 	}
 
 	/**
-	 * Closes the receiver, thereby stopping it's SOAP endpoint.
+	 * {@inheritDoc} Concurrent requests for the same riddle share a single solve, which
+	 * runs on the receiver's worker pool. The number of tickets is limited by the system
+	 * property <tt>de.htw.ds.sudoku.SoapSudokuServer.maxTickets</tt> (default 4096); tickets
+	 * not polled within the time given by <tt>.ticketTimeout</tt> (default 60000ms) are
+	 * discarded once this limit is reached.
+	 */
+	public long requestSolution(final byte[] digitsToSolve)
+			throws NullPointerException, IllegalArgumentException, IllegalStateException, JdbcException {
+		final CompletableFuture<byte[]> future = this.resolveSolution(digitsToSolve);
+		if (this.tickets.size() >= MAX_TICKETS) {
+			final long expiry = System.currentTimeMillis() - TICKET_TIMEOUT;
+			this.tickets.values().removeIf(ticket -> ticket.accessTime < expiry);
+			if (this.tickets.size() >= MAX_TICKETS) throw new IllegalStateException("too many pending tickets");
+		}
+
+		final long ticket = this.ticketSequence.incrementAndGet();
+		this.tickets.put(ticket, new Ticket(future));
+		return ticket;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public byte[] pollSolution(final long ticket)
+			throws IllegalArgumentException, IllegalStateException, JdbcException {
+		final Ticket entry = this.tickets.get(ticket);
+		if (entry == null) throw new IllegalArgumentException("unknown ticket " + ticket);
+		entry.accessTime = System.currentTimeMillis();
+		if (!entry.future.isDone()) return null;
+
+		this.tickets.remove(ticket);
+		try {
+			return entry.future.join();
+		} catch (final CancellationException exception) {
+			throw new IllegalStateException("server closed", exception);
+		} catch (final CompletionException exception) {
+			final Throwable cause = exception.getCause();
+			if (cause instanceof JdbcException) throw (JdbcException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Returns the future solution of the given riddle, which is already completed if it's
+	 * solution is cached or stored. Otherwise, the riddle is solved on the receiver's worker
+	 * pool, sharing the solve with concurrent requests for the same riddle, and it's solution
+	 * is stored if it is unique. This method never waits for a solve, and is not a service
+	 * operation; it allows the binary protocol server to answer solve requests asynchronously.
+	 * @param digitsToSolve the packed riddle
+	 * @return the future packed solution, or empty array if the riddle has no unique solution
+	 * @throws NullPointerException if the given value is null
+	 * @throws IllegalArgumentException if the given value is not a valid packed riddle
+	 * @throws IllegalStateException if the receiver is closed
+	 * @throws JdbcException if there is a problem with the underlying JDBC connection
+	 */
+	public CompletableFuture<byte[]> resolveSolution(final byte[] digitsToSolve) throws JdbcException {
+		final byte[] cachedSolution = this.solutionCache.get(digitsToSolve);
+		if (cachedSolution != null) return CompletableFuture.completedFuture(cachedSolution);
+		final byte[] storedSolution = this.querySolution(digitsToSolve);
+		if (storedSolution.length > 0) return CompletableFuture.completedFuture(storedSolution);
+
+		final byte[] digits = SudokuCodec.decode(digitsToSolve);
+		final ByteBuffer key = ByteBuffer.wrap(digitsToSolve.clone());
+		final CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+		final CompletableFuture<byte[]> pendingFuture = this.pendingSolutions.putIfAbsent(key, future);
+		if (pendingFuture != null) return pendingFuture;
+
+		try {
+			this.solverExecutor.execute(new Runnable() {
+				public void run() {
+					try {
+						future.complete(SoapSudokuServer.this.solveSolution(digitsToSolve, digits));
+					} catch (final Throwable exception) {
+						future.completeExceptionally(exception);
+					} finally {
+						SoapSudokuServer.this.pendingSolutions.remove(key, future);
+					}
+				}
+			});
+		} catch (final RejectedExecutionException exception) {
+			this.pendingSolutions.remove(key, future);
+			future.cancel(false);
+			throw new IllegalStateException("server closed", exception);
+		}
+		return future;
+	}
+
+	/**
+	 * Solves the given riddle, and stores it's solution if it is unique.
+	 * @param digitsToSolve the packed riddle
+	 * @param digits the unpacked riddle
+	 * @return the packed solution, or an empty array if the riddle has no unique solution
+	 * @throws JdbcException if there is a problem with the underlying JDBC connection
+	 */
+	private byte[] solveSolution(final byte[] digitsToSolve, final byte[] digits) throws JdbcException {
+		final byte dimension = digitsToSolve[0];
+		final Sudoku sudoku = new Sudoku(this.newPlugin(), dimension);
+		sudoku.setDigits(digits);
+
+		final Set<Sudoku> solutions = sudoku.resolve(2);
+		if (solutions.size() != 1) return new byte[0];
+
+		final byte[] digitsSolved = SudokuCodec.encode(solutions.iterator().next().getDigits());
+		this.storeSolution(digitsToSolve, digitsSolved);
+		return digitsSolved;
+	}
+
+	/**
+	 * Returns a new plugin instance.
+	 * @return the plugin
+	 * @throws IllegalArgumentException if the plugin class lacks a public default constructor
+	 */
+	private SudokuPlugin newPlugin() {
+		try {
+			return this.pluginClass.getConstructor().newInstance();
+		} catch (final Exception exception) {
+			throw new IllegalArgumentException("class " + this.pluginClass + " probably lacks public default constructor");
+		}
+	}
+
+	/**
+	 * Loads the plugin class with the given name.
+	 * @param className the class name
+	 * @return the plugin class
+	 * @throws IllegalArgumentException if the class cannot be loaded, or is not a plugin class
+	 */
+	private static Class<? extends SudokuPlugin> loadPluginClass(final String className) {
+		try {
+			return Class.forName(className, true, Thread.currentThread().getContextClassLoader()).asSubclass(SudokuPlugin.class);
+		} catch (final ClassNotFoundException | ClassCastException exception) {
+			throw new IllegalArgumentException("class " + className + " is not a sudoku plugin class");
+		}
+	}
+
+	/**
+	 * Closes the receiver, thereby stopping it's SOAP endpoint and it's executors, and
+	 * storing all solutions still queued. Pending solves are cancelled, so tickets and
+	 * futures waiting for them fail instead of staying pending forever.
 	 */
 	public void close() {
 		this.endpoint.stop();
+		this.requestExecutor.shutdown();
+		this.solverExecutor.shutdownNow();
+		for (final CompletableFuture<byte[]> future : this.pendingSolutions.values()) {
+			future.cancel(false);
+		}
+		this.pendingSolutions.clear();
+		this.solutionWriter.close();
 	}
 	
 	/**
 	 * Application entry point. The given runtime parameters must be a SOAP service port,a
 	 * SOAP service name, a JDBC connection URL, a database user-ID, a database password, the control socket port, the control password
+	 * If the connection URL is a file URL instead, solutions are stored within an embedded store
+	 * in the given directory (see {@link SudokuLogStore}), and user-ID and password are ignored.
+	 * If the system property <tt>de.htw.ds.sudoku.SoapSudokuServer.protocolAddress</tt> is set
+	 * to a socket address ("host:port" or ":port"), the binary protocol is served on this address
+	 * next to the SOAP endpoint (see {@link SudokuProtocolServer}).
 	 * 
 	 * @param args the given runtime arguments
 	 * @throws URISyntaxException if one of the given service URIs is malformed
 	 * @throws JdbcException if none of the supported JDBC drivers is installed
+	 * @throws IOException if the embedded store cannot be opened or closed
 	 * @throws WebServiceException if the given port is already in use
 	 */
-	public static void main(final String[] args) throws URISyntaxException, JdbcException, RemoteException {
+	public static void main(final String[] args) throws URISyntaxException, JdbcException, IOException {
 		final long timeStamp = System.currentTimeMillis();
 		final int servicePort = Integer.parseInt(args[0]);
 		final String serviceName = args[1];
 		final URI soapServiceURI = new URI("http", null, SocketAddress.getLocalAddress().getCanonicalHostName(), servicePort, "/" + serviceName, null, null);
 		final URI jdbcConnectionURI = new URI(args[2]);
 
-		final DataSource dataSource = createDataSource(jdbcConnectionURI, args[3], args[4]);
-		final SoapSudokuServer server = new SoapSudokuServer(SOAPBinding.SOAP11HTTP_BINDING, soapServiceURI, dataSource);
+		final boolean embedded = "file".equals(jdbcConnectionURI.getScheme());
+		final SudokuLogStore logStore = embedded ? new SudokuLogStore(Paths.get(jdbcConnectionURI)) : null;
+		final JdbcConnectionPool dataSource = embedded ? null : new JdbcConnectionPool(createDataSource(jdbcConnectionURI, args[3], args[4]), POOL_SIZE);
+		final SudokuStore store = embedded ? logStore : new SudokuJdbcStore(dataSource);
+		final SoapSudokuServer server = new SoapSudokuServer(SOAPBinding.SOAP11HTTP_BINDING, soapServiceURI, store);
+		final SudokuProtocolServer protocolServer = PROTOCOL_ADDRESS == null ? null : new SudokuProtocolServer(new SocketAddress(PROTOCOL_ADDRESS), server);
 		try {
 			System.out.println("JAX-WS based sudoku server running.");
 			System.out.println("Service URI is " + soapServiceURI + ", data source URL is " + args[2] + ", type \"quit\" to stop.");
+			if (protocolServer != null) System.out.println("Binary protocol address is " + protocolServer.getServiceAddress() + ".");
 			System.out.println("Startup time is " + (System.currentTimeMillis() - timeStamp) + "ms.");
 			
 			final int servicePortForClosing = Integer.parseInt(args[5]);
 			waitForShutdown(servicePortForClosing, args[6], server);
 		} finally {
+			if (protocolServer != null) protocolServer.close();
 			server.close();
+			if (embedded) {
+				System.out.println("Embedded store entries: " + logStore.getEntryCount() + ", log length: " + logStore.getLogLength() + " bytes.");
+				logStore.close();
+			} else {
+				dataSource.close();
+			}
+			final SudokuSolutionCache cache = server.getSolutionCache();
+			System.out.println("Solution cache hits: " + cache.getHitCount() + ", misses: " + cache.getMissCount() + ", evictions: " + cache.getEvictionCount() + ".");
+			final SudokuSolutionWriter writer = server.getSolutionWriter();
+			System.out.println("Write-behind flushes: " + writer.getFlushCount() + ", solutions stored: " + writer.getStoreCount() + ", retries: " + writer.getRetryCount() + ", failures: " + writer.getFailureCount() + ", flush time: " + writer.getFlushTime() + "ms total, " + writer.getMaxFlushTime() + "ms max.");
+			if (!embedded) System.out.println("Connection pool borrows: " + dataSource.getBorrowCount() + ", creations: " + dataSource.getCreationCount() + ", waits: " + dataSource.getWaitCount() + " (" + dataSource.getWaitTime() + "ms total, " + dataSource.getMaxWaitTime() + "ms max).");
 		}
 	}
 	
@@ -238,4 +542,27 @@ public class SoapSudokuServer implements SoapSudokuService{
 			e.printStackTrace();
 		}
 	}
+
+
+
+	/**
+	 * <p>Ticket state, consisting of the future solution, and the time the ticket was last
+	 * accessed, which is used to expire tickets that are no longer polled.</p>
+	 */
+	private static final class Ticket {
+		private final CompletableFuture<byte[]> future;
+		private volatile long accessTime;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param future the future solution
+		 */
+		public Ticket(final CompletableFuture<byte[]> future) {
+			super();
+
+			this.future = future;
+			this.accessTime = System.currentTimeMillis();
+		}
+	}
 }
@@ -5,11 +5,22 @@ import javax.jws.WebService;
 
 
 /**
- * <p>Sudoku Soap service interface.</p>
+ * <p>Sudoku Soap service interface. Riddles and solutions are transmitted as packed
+ * boards, see {@link SudokuCodec}.</p>
  */
 @WebService
 public interface SoapSudokuService {
 
+	/**
+	 * Prefix of the messages of {@link IllegalArgumentException}s thrown by
+	 * {@link #storeSolutions(byte[][], byte[][])} to reject it's arguments. Behind a
+	 * JAX-WS proxy, such exceptions arrive as SOAP faults carrying nothing but their
+	 * message as fault string, so clients use this prefix to tell them apart from
+	 * failures of the server itself.
+	 */
+	static final String ILLEGAL_ARGUMENT_PREFIX = "illegal argument: ";
+
+
 	/**
 	 * Stores a byte array of Sudoku Solution on the server
 	 
@@ -47,4 +58,79 @@ public interface SoapSudokuService {
 			@WebParam (name="digitsToSolve") byte[] digitsToSolve
 			) throws NullPointerException, IllegalStateException, JdbcException;
 	
+	
+	/**
+	 * Stores the given Sudoku solutions on the server, skipping riddles that are already
+	 * stored. Note that the solutions are neither stored atomically, nor necessarily before
+	 * the call returns: the server may enqueue them one by one to be stored asynchronously,
+	 * so solutions enqueued before a failure may still be stored, and a successful return
+	 * doesn't guarantee that all solutions are stored eventually.
+	 * @param digitsToSolve the packed riddles
+	 * @param digitsSolved the packed solutions, with the same index as their riddles
+	 * @throws NullPointerException if one of the given values is null
+	 * @throws IllegalArgumentException if the given arrays differ in length, or if one of
+	 *    their elements is not a valid packed board, with a message starting with
+	 *    {@link #ILLEGAL_ARGUMENT_PREFIX}
+	 * @throws JdbcException if there is a problem with the underlying JDBC connection
+	 * @throws IllegalStateException if there is a problem with the java state at method invocation time
+	 */
+	
+	void storeSolutions(
+			@WebParam (name="digitsToSolve") byte[][] digitsToSolve,
+			@WebParam (name="digitsSolved") byte[][] digitsSolved
+			) throws NullPointerException, IllegalArgumentException, IllegalStateException, JdbcException;
+	
+	
+	/**
+	 * Returns the stored Sudoku solutions of the given riddles within a single transaction.
+	 * @param digitsToSolve the packed riddles
+	 * @return the packed solutions, with the same index as their riddles, and empty arrays
+	 *    for riddles without stored solution
+	 * @throws NullPointerException if one of the given values is null
+	 * @throws JdbcException if there is a problem with the underlying JDBC connection
+	 * @throws IllegalStateException if there is a problem with the java state at method invocation time
+	 */
+	
+	byte[][] getSolutions(
+			@WebParam (name="digitsToSolve") byte[][] digitsToSolve
+			) throws NullPointerException, IllegalStateException, JdbcException;
+	
+	
+	/**
+	 * Requests the solution of the given riddle, and returns a ticket to collect it using
+	 * {@link #pollSolution(long)}. If the riddle's solution is neither cached nor stored,
+	 * the riddle is solved on the server, and it's solution is stored if it is unique. This
+	 * operation returns immediately, so no request is held open while the riddle is solved.
+	 * Clients looking up known riddles should call {@link #getSolution(byte[])} first, which
+	 * answers these in a single round trip.
+	 * @param digitsToSolve the packed riddle
+	 * @return the ticket
+	 * @throws NullPointerException if the given value is null
+	 * @throws IllegalArgumentException if the given value is not a valid packed riddle
+	 * @throws JdbcException if there is a problem with the underlying JDBC connection
+	 * @throws IllegalStateException if there is a problem with the java state at method invocation time,
+	 *    for example if too many tickets are pending
+	 */
+	
+	long requestSolution (
+			@WebParam (name="digitsToSolve") byte[] digitsToSolve
+			) throws NullPointerException, IllegalArgumentException, IllegalStateException, JdbcException;
+	
+	
+	/**
+	 * Returns the solution requested with the given ticket, or null if it is still being
+	 * solved. Once a result has been returned, the ticket becomes invalid. Tickets that
+	 * aren't polled for a while expire.
+	 * @param ticket the ticket returned by {@link #requestSolution(byte[])}
+	 * @return the packed solution, an empty array if the riddle has no unique solution,
+	 *    or null if the riddle is still being solved
+	 * @throws IllegalArgumentException if the given ticket is unknown or expired
+	 * @throws JdbcException if there is a problem with the underlying JDBC connection
+	 * @throws IllegalStateException if there is a problem with the java state at method invocation time
+	 */
+	
+	byte[] pollSolution (
+			@WebParam (name="ticket") long ticket
+			) throws IllegalArgumentException, IllegalStateException, JdbcException;
+	
 }
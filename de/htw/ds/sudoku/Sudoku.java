@@ -3,13 +3,28 @@ package de.htw.ds.sudoku;
 import java.io.IOException;
 import java.io.Serializable;
 import java.io.StringWriter;
+import java.lang.reflect.Constructor;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Random;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
-
-import de.htw.ds.Namespaces;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.random.RandomGenerator;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import de.htw.ds.SocketAddress;
 import de.htw.ds.TypeMetadata;
 
 
@@ -34,14 +49,27 @@ public final class Sudoku implements Cloneable, Serializable {
 	}
 	
 	private static URI SERVICE_URI;
+	private static final String PROTOCOL_ADDRESS = System.getProperty("de.htw.ds.sudoku.Sudoku.protocolAddress");
 
 	private static final Random RANDOMIZER = new Random();
+	private static final int PROCESSOR_COUNT = Runtime.getRuntime().availableProcessors();
 	private static final Set<Sudoku> EMPTY_SUDOKU_SET = Collections.unmodifiableSet(new HashSet<Sudoku>());
+	private static final ClassValue<Constructor<?>> DEDUCTIONS_CONSTRUCTORS = new ClassValue<Constructor<?>>() {
+		protected Constructor<?> computeValue(final Class<?> type) {
+			try {
+				return type.getConstructor(SudokuDeductions.class);
+			} catch (final NoSuchMethodException exception) {
+				return null;
+			}
+		}
+	};
 
 	private final SudokuPlugin plugin;
 	private final byte dimension;
 	private final short radix;
 	private final byte[] digits;
+	private final long[] elementMasks;
+	private final byte[] elementCounts;
 
 
 	/**
@@ -61,19 +89,35 @@ public final class Sudoku implements Cloneable, Serializable {
 		this.dimension = dimension;
 		this.radix = (short) (dimension * dimension);
 		this.digits = new byte[this.radix * this.radix];
+		this.elementMasks = new long[3 * this.radix];
+		this.elementCounts = new byte[3 * this.radix * this.radix];
+		this.resetMasks();
 	}
 
 
 	/**
 	 * Returns a clone of the receiver, which is required for backtracking algorithms.
+	 * The clone's plugin shares the logical deductions of the receiver's plugin, provided
+	 * the plugin class features a public constructor taking them, or extends
+	 * {@link AbstractSudokuPlugin}. Otherwise, the clone's plugin is created using the
+	 * default constructor, and applies it's own deductions.
 	 * @return the clone
 	 */
 	@Override
 	public final Sudoku clone() {
 		try {
-			final SudokuPlugin plugin = (SudokuPlugin) this.plugin.getClass().newInstance();
+			final Constructor<?> constructor = DEDUCTIONS_CONSTRUCTORS.get(this.plugin.getClass());
+			final SudokuPlugin plugin;
+			if (constructor == null) {
+				plugin = this.plugin.getClass().getConstructor().newInstance();
+				if (plugin instanceof AbstractSudokuPlugin) ((AbstractSudokuPlugin) plugin).setDeductions(this.plugin.getDeductions());
+			} else {
+				plugin = (SudokuPlugin) constructor.newInstance(this.plugin.getDeductions());
+			}
 			final Sudoku clone = new Sudoku(plugin, this.dimension);
 			System.arraycopy(this.digits, 0, clone.digits, 0, this.digits.length);
+			System.arraycopy(this.elementMasks, 0, clone.elementMasks, 0, this.elementMasks.length);
+			System.arraycopy(this.elementCounts, 0, clone.elementCounts, 0, this.elementCounts.length);
 			return clone;
 		} catch (final Exception exception) {
 			throw new InternalError("class " + this.plugin.getClass() + " probably lacks public default constructor");
@@ -129,7 +173,9 @@ public final class Sudoku implements Cloneable, Serializable {
 
 
 	/**
-	 * Returns the digits, including -1 for unresolved digits.
+	 * Returns the digits, including -1 for unresolved digits. Note that the digits must
+	 * only be modified using the setters, otherwise the receiver's element masks get
+	 * out of sync with them.
 	 * @return a digit array with radix square entries
 	 */
 	public final byte[] getDigits() {
@@ -137,6 +183,93 @@ public final class Sudoku implements Cloneable, Serializable {
 	}
 
 
+	/**
+	 * Sets the digit at the given index, and updates the masks of the digits used within
+	 * the cell's row, column and sector accordingly. Negative values represent unresolved
+	 * digits.
+	 * @param digitIndex the digit index
+	 * @param digit the digit
+	 * @throws ArrayIndexOutOfBoundsException if the given index is out of range
+	 * @throws IllegalArgumentException if the given digit exceeds the receiver's radix
+	 */
+	public final void setDigit(final int digitIndex, final byte digit) {
+		if (digit >= this.radix) throw new IllegalArgumentException();
+
+		final byte previous = this.digits[digitIndex];
+		if (previous == digit) return;
+		if (previous >= 0) this.updateMasks(digitIndex, previous, -1);
+		this.digits[digitIndex] = digit;
+		if (digit >= 0) this.updateMasks(digitIndex, digit, 1);
+	}
+
+
+	/**
+	 * Sets all digits to the given values. Negative values represent unresolved digits.
+	 * @param digits a digit array with radix square entries
+	 * @throws NullPointerException if the given digits array is null
+	 * @throws IllegalArgumentException if the given digits length doesn't match the
+	 *    receiver's digit count, or if a digit exceeds the receiver's radix
+	 */
+	public final void setDigits(final byte[] digits) {
+		if (digits.length != this.digits.length) throw new IllegalArgumentException();
+		for (final byte digit : digits) {
+			if (digit >= this.radix) throw new IllegalArgumentException();
+		}
+
+		System.arraycopy(digits, 0, this.digits, 0, digits.length);
+		this.resetMasks();
+	}
+
+
+	/**
+	 * Adds the given delta to the number of occurrences of the given digit within the row,
+	 * column and sector of the given digit index, and updates their masks accordingly.
+	 * Counts are required to support riddles whose elements contain a digit repeatedly.
+	 * @param digitIndex the digit index
+	 * @param digit the digit
+	 * @param delta the delta, either 1 or -1
+	 */
+	private void updateMasks(final int digitIndex, final byte digit, final int delta) {
+		final int rowIndex = digitIndex / this.radix;
+		final int columnIndex = digitIndex % this.radix;
+		final int sectorIndex = SudokuCandidates.sectorIndex(this.dimension, rowIndex, columnIndex);
+		this.updateMask(rowIndex, digit, delta);
+		this.updateMask(this.radix + columnIndex, digit, delta);
+		this.updateMask(2 * this.radix + sectorIndex, digit, delta);
+	}
+
+
+	/**
+	 * Adds the given delta to the number of occurrences of the given digit within the given
+	 * element, and sets or clears the digit's bit in the element's mask accordingly.
+	 * @param elementIndex the element index
+	 * @param digit the digit
+	 * @param delta the delta, either 1 or -1
+	 */
+	private void updateMask(final int elementIndex, final byte digit, final int delta) {
+		final int slot = elementIndex * this.radix + digit;
+		final int count = this.elementCounts[slot] += delta;
+		if (count == 0) {
+			this.elementMasks[elementIndex] &= ~(1L << digit);
+		} else {
+			this.elementMasks[elementIndex] |= 1L << digit;
+		}
+	}
+
+
+	/**
+	 * Recomputes the masks of the digits used within each row, column and sector from
+	 * the receiver's digits.
+	 */
+	private void resetMasks() {
+		Arrays.fill(this.elementMasks, 0);
+		Arrays.fill(this.elementCounts, (byte) 0);
+		for (int index = 0; index < this.digits.length; ++index) {
+			if (this.digits[index] >= 0) this.updateMasks(index, this.digits[index], 1);
+		}
+	}
+
+
 	/**
 	 * Returns the digits of the element with the given type and index. Negative
 	 * values represent unresolved digits.
@@ -182,26 +315,29 @@ public final class Sudoku implements Cloneable, Serializable {
 	 * @param digits a digit array with radix entries
 	 * @throws NullPointerException if the given type or digits array is null
 	 * @throws IllegalArgumentException if the given index is strictly negative or exceeds the
-	 *		receiver's radix, or if the given digits length doesn't match the radix
+	 *		receiver's radix, if the given digits length doesn't match the radix, or if a
+	 *		digit exceeds the radix
 	 */
 	public final void setDigits(final ElementType elementType, final int elementIndex, final byte[] digits) {
 		if (digits.length != this.radix || elementIndex < 0 || elementIndex >= this.radix) throw new IllegalArgumentException();
 
 		switch (elementType) {
 			case ROW: {
-				System.arraycopy(digits, 0, this.digits, elementIndex * this.radix, this.radix);
+				for (int columnIndex = 0; columnIndex < this.radix; ++columnIndex) {
+					this.setDigit(elementIndex * this.radix + columnIndex, digits[columnIndex]);
+				}
 				break;
 			}
 			case COLUMN: {
 				for (int rowIndex = 0; rowIndex < this.radix; ++rowIndex) {
-					this.digits[rowIndex * this.radix + elementIndex] = digits[rowIndex];
+					this.setDigit(rowIndex * this.radix + elementIndex, digits[rowIndex]);
 				}
 				break;
 			}
 			case SECTOR: {
 				final int baseIndex = (elementIndex / this.dimension * this.radix + elementIndex % this.dimension) * this.dimension;
-				for (int index = 0; index < this.dimension; ++index) {
-					System.arraycopy(digits, index * this.dimension, this.digits, baseIndex + index * this.radix, this.dimension);
+				for (int index = 0; index < this.radix; ++index) {
+					this.setDigit(baseIndex + index / this.dimension * this.radix + index % this.dimension, digits[index]);
 				}
 				break;
 			}
@@ -228,7 +364,7 @@ public final class Sudoku implements Cloneable, Serializable {
 			final char character = digitText.toLowerCase().charAt(0);
 			final byte digit = (byte) Character.digit(character, this.getRadix());
 			if (digit == -1 && character != '.') throw new IllegalArgumentException("Digit error, character '" + digitText + "' isn't a valid digit!");
-			this.getDigits()[index] = digit;
+			this.setDigit(index, digit);
 		}
 	}
 
@@ -241,6 +377,17 @@ public final class Sudoku implements Cloneable, Serializable {
 	 * therefore digit swapping, area row swapping, and area column swapping are used.
 	 */
 	public final void populate() {
+		this.populate(RANDOMIZER);
+	}
+
+
+	/**
+	 * Populates the receiver with a new riddle, see {@link #populate()}, using the given
+	 * random generator for the transformations.
+	 * @param randomizer the random generator
+	 * @throws NullPointerException if the given random generator is null
+	 */
+	public final void populate(final RandomGenerator randomizer) {
 		byte digit = (byte) (this.radix - this.dimension - 1);
 		for (int index = 0; index < this.digits.length; ++index) {
 			if (index % this.radix == 0) digit += this.dimension;
@@ -248,27 +395,28 @@ public final class Sudoku implements Cloneable, Serializable {
 			if (digit >= this.radix) digit -= this.radix;
 			this.digits[index] = digit++;
 		}
+		this.resetMasks();
 
 		for (int counter = 0; counter < this.digits.length; ++counter) {
-			if (RANDOMIZER.nextBoolean()) { // swap two single digits
-				final byte digit1 = (byte) RANDOMIZER.nextInt(this.radix);
+			if (randomizer.nextBoolean()) { // swap two single digits
+				final byte digit1 = (byte) randomizer.nextInt(this.radix);
 				byte digit2 = digit1;
 				while (digit2 == digit1)
-					digit2 = (byte) RANDOMIZER.nextInt(this.radix);
+					digit2 = (byte) randomizer.nextInt(this.radix);
 				for (int index = 0; index < this.digits.length; ++index) {
 					if (this.digits[index] == digit1) {
-						this.digits[index] = digit2;
+						this.setDigit(index, digit2);
 					} else if (this.digits[index] == digit2) {
-						this.digits[index] = digit1;
+						this.setDigit(index, digit1);
 					}
 				}
 			} else { // swap two area rows or area columns
-				final ElementType elementType = RANDOMIZER.nextBoolean() ? ElementType.ROW : ElementType.COLUMN;
-				final int index1 = RANDOMIZER.nextInt(this.radix);
+				final ElementType elementType = randomizer.nextBoolean() ? ElementType.ROW : ElementType.COLUMN;
+				final int index1 = randomizer.nextInt(this.radix);
 				final int baseIndex = index1 / this.dimension * this.dimension;
 				int index2 = index1;
 				while (index2 == index1)
-					index2 = baseIndex + RANDOMIZER.nextInt(this.dimension);
+					index2 = baseIndex + randomizer.nextInt(this.dimension);
 				final byte[] digits = this.getDigits(elementType, index1);
 				this.setDigits(elementType, index1, this.getDigits(elementType, index2));
 				this.setDigits(elementType, index2, digits);
@@ -281,124 +429,352 @@ public final class Sudoku implements Cloneable, Serializable {
 	 * Reduces the receiver into a riddle with relative maximum difficulty and exactly one possible
 	 * solution. This is achieved by successively setting all digits that don't force
 	 * multiple solutions to minus one.
+	 * <p>The digits are visited in random order, and the removals of several of them are tested
+	 * speculatively in parallel, each on a separate copy of the receiver. The results are then
+	 * committed in visiting order: Failed removals are final, because removing further digits
+	 * can only add solutions. The first successful removal is committed, while later successful
+	 * ones of the same batch are tested again against the modified receiver. If the current
+	 * thread is interrupted, the reduction stops early, leaving a valid riddle.</p>
+	 * <p>Note that this method is library-only, as riddles are generated using
+	 * {@link SudokuGenerator}. The thread pool testing the removals is therefore
+	 * only created once this method is called for the first time.</p>
 	 * @throws IllegalStateException if the receiver already has more than one possible solution
 	 */
 	public final void reduce() {
-		if (this.resolve().size() != 1) throw new IllegalStateException();
+		if (this.countSolutions(2) != 1) throw new IllegalStateException();
 
-		final Set<Integer> indices = new HashSet<Integer>();
-		for (int index = 0; index < this.digits.length; ++index)
-			indices.add(index);
-		while (!indices.isEmpty()) {
-			final int index = (Integer) indices.toArray()[RANDOMIZER.nextInt(indices.size())];
-			final byte digit = this.digits[index];
-			this.digits[index] = -1;
+		final int[] indices = new int[this.digits.length];
+		for (int index = 0; index < indices.length; ++index) {
+			indices[index] = index;
+		}
+		for (int index = indices.length - 1; index > 0; --index) {
+			final int swapIndex = RANDOMIZER.nextInt(index + 1);
+			final int swap = indices[index];
+			indices[index] = indices[swapIndex];
+			indices[swapIndex] = swap;
+		}
+
+		final List<Callable<Boolean>> tests = new ArrayList<Callable<Boolean>>();
+		final int[] retests = new int[PROCESSOR_COUNT];
+		int pendingIndex = 0;
+		while (pendingIndex < indices.length) {
+			tests.clear();
+			for (int index = pendingIndex, stop = Math.min(indices.length, pendingIndex + PROCESSOR_COUNT); index < stop; ++index) {
+				tests.add(this.newRemovalTest(indices[index]));
+			}
+
+			final List<Future<Boolean>> results;
+			try {
+				results = ReduceExecutor.INSTANCE.invokeAll(tests);
+			} catch (final InterruptedException exception) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+
+			// tests up to the first successful one are final, later ones only if they failed
+			boolean committed = false;
+			int finalCount = 0, retestCount = 0;
+			for (int index = 0; index < results.size(); ++index) {
+				final int digitIndex = indices[pendingIndex + index];
+				if (getRemovalResult(results.get(index))) {
+					if (committed) {
+						retests[retestCount++] = digitIndex;
+						continue;
+					}
+					committed = true;
+					this.setDigit(digitIndex, (byte) -1);
+				}
+				indices[pendingIndex + finalCount++] = digitIndex;
+			}
+			System.arraycopy(retests, 0, indices, pendingIndex + finalCount, retestCount);
+			pendingIndex += finalCount;
+		}
+	}
+
+
+	/**
+	 * Returns a task testing whether or not the receiver still has a single solution
+	 * if the digit at the given index is set to minus one. The test runs on a copy of
+	 * the receiver, which is created immediately.
+	 * @param digitIndex the digit index
+	 * @return the removal test
+	 */
+	private Callable<Boolean> newRemovalTest(final int digitIndex) {
+		final Sudoku copy = this.clone();
+		copy.setDigit(digitIndex, (byte) -1);
+
+		return new Callable<Boolean>() {
+			public Boolean call() {
+				final int solutionCount = copy.countSolutions(2);
+				if (solutionCount < 1) throw new AssertionError();
+				return solutionCount == 1;
+			}
+		};
+	}
 
-			final Set<Sudoku> solutions = this.resolve();
-			if (solutions.size() < 1) throw new AssertionError();
-			if (solutions.size() > 1) this.digits[index] = digit;
-			indices.remove(index);
+
+	/**
+	 * Returns the result of the given completed removal test.
+	 * @param future the completed removal test
+	 * @return whether or not the removal keeps the solution unique
+	 * @throws Error or RuntimeException if the removal test failed with it
+	 */
+	private static boolean getRemovalResult(final Future<Boolean> future) {
+		try {
+			return future.get();
+		} catch (final InterruptedException exception) {
+			throw new AssertionError();
+		} catch (final ExecutionException exception) {
+			final Throwable cause = exception.getCause();
+			if (cause instanceof Error) throw (Error) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new AssertionError();
 		}
 	}
 
 
+	/**
+	 * <p>Holder of the thread pool testing removals in {@link Sudoku#reduce()}, which
+	 * defers creating the pool until the holder class is initialized on first use.</p>
+	 */
+	private static final class ReduceExecutor {
+		static final ExecutorService INSTANCE = new ForkJoinPool(PROCESSOR_COUNT);
+	}
+
+
 	/**
 	 * Resolves the riddle, i.e. replaces it's negative values with valid digits.
 	 * Note that the receiver is not modified during this operation.
 	 * @return a set of Sudoku representing the possible solutions.
 	 */
 	public final Set<Sudoku> resolve() {
-		return this.clone().resolve(0);
+		return this.resolve(Integer.MAX_VALUE);
 	}
 
 
 	/**
-	 * Resolves the riddle, i.e. replaces it's negative values with valid digits.
-	 * Note that the receiver may be modified during this operation.
+	 * Resolves the riddle, i.e. replaces it's negative values with valid digits, but
+	 * stops searching as soon as the given number of solutions has been found. Note
+	 * that the receiver is not modified during this operation.
+	 * @param maxSolutions the maximum number of solutions to be found
+	 * @return a set of Sudoku representing at most the given number of possible solutions.
+	 * @throws IllegalArgumentException if the given maximum is negative
+	 */
+	public final Set<Sudoku> resolve(final int maxSolutions) {
+		if (maxSolutions < 0) throw new IllegalArgumentException();
+		return this.clone().resolve(0, maxSolutions);
+	}
+
+
+	/**
+	 * Returns the number of possible solutions of the riddle, counting no further
+	 * than the given limit. A limit of two suffices to tell riddles without
+	 * solution, with a unique solution, and with multiple solutions apart.
+	 * Note that the receiver is not modified during this operation.
+	 * @param limit the maximum number of solutions to be counted
+	 * @return the number of solutions, at most the given limit
+	 * @throws IllegalArgumentException if the given limit is negative
+	 */
+	public final int countSolutions(final int limit) {
+		return this.resolve(limit).size();
+	}
+
+
+	/**
+	 * Returns a stream lazily resolving the riddle, i.e. solutions are searched for
+	 * only as they are consumed, and memory consumption is bounded by the search depth
+	 * instead of the number of solutions. The stream may be turned parallel, in which
+	 * case the search tree is split among multiple threads. Note that the receiver is
+	 * not modified during this operation.
+	 * @return a stream of Sudoku representing the possible solutions.
+	 */
+	public final Stream<Sudoku> stream() {
+		return StreamSupport.stream(new SudokuSpliterator(this.clone(), this.plugin.getDeductions()), false);
+	}
+
+
+	/**
+	 * Returns a publisher lazily resolving the riddle for each subscriber, using
+	 * the given executor. Solutions are only searched for while a subscriber has
+	 * outstanding demand. Note that the receiver is not modified during this
+	 * operation, and that later modifications don't affect the publisher.
+	 * @param executor the executor running the search
+	 * @return a publisher of Sudoku representing the possible solutions.
+	 * @throws NullPointerException if the given executor is null
+	 */
+	public final Flow.Publisher<Sudoku> publisher(final Executor executor) {
+		return new SudokuPublisher(this, this.plugin.getDeductions(), executor);
+	}
+
+
+	/**
+	 * Resolves the riddle, i.e. replaces it's negative values with valid digits, but
+	 * stops searching as soon as the given number of solutions has been found. Note
+	 * that the receiver may be modified during this operation. The search is also
+	 * cancelled cooperatively once the current thread is interrupted, which allows
+	 * multi-threaded plugins to stop sibling branches early.
 	 * @param recursionDepth the recursion depth for analytic purposes
+	 * @param maxSolutions the maximum number of solutions to be found
 	 * @return a set of Sudoku representing the possible solutions.
 	 */
-	protected final Set<Sudoku> resolve(final int recursionDepth) {
-		int pivotIndex = -1;
-		Set<Byte> pivotAlternatives = null;
-		for (int index = 0; index < this.getDigits().length; ++index) {
-			if (this.getDigits()[index] < 0) {
-				final Set<Byte> alternatives = this.getSolutions(index);
-				if (alternatives.size() == 0) return EMPTY_SUDOKU_SET;
-				if (alternatives.size() == 1) {
-					this.getDigits()[index] = alternatives.iterator().next();
-					index = -1;
-				} else {
-					final Set<Byte> solution = new HashSet<Byte>(alternatives);
-					solution.removeAll(this.plugin.getAntiSolutions(ElementType.ROW, index));
-					if (solution.isEmpty()) {
-						solution.addAll(alternatives);
-						solution.removeAll(this.plugin.getAntiSolutions(ElementType.COLUMN, index));
-					}
-					if (solution.isEmpty()) {
-						solution.addAll(alternatives);
-						solution.removeAll(this.plugin.getAntiSolutions(ElementType.SECTOR, index));
-					}
-					if (solution.isEmpty()) {
-						if (pivotAlternatives == null || pivotAlternatives.size() > alternatives.size()) {
-							pivotAlternatives = alternatives;
-							pivotIndex = index;
-						}
-					} else {
-						this.getDigits()[index] = solution.iterator().next();
-						index = -1;
-					}
-				}
-			}
-		}
+	protected final Set<Sudoku> resolve(final int recursionDepth, final int maxSolutions) {
+		if (maxSolutions <= 0 || Thread.currentThread().isInterrupted()) return EMPTY_SUDOKU_SET;
+
+		final SudokuCandidates candidates = new SudokuCandidates(this);
+		if (!candidates.deduce(this.plugin.getDeductions())) return EMPTY_SUDOKU_SET;
 
-		if (pivotAlternatives == null) {
+		final int pivotIndex = candidates.getPivotIndex();
+		if (pivotIndex == -1) {
 			final Set<Sudoku> result = new HashSet<Sudoku>();
 			result.add(this);
 			return result;
 		}
-		return this.plugin.resolve(recursionDepth, pivotIndex, pivotAlternatives);
+		return this.plugin.resolve(recursionDepth, pivotIndex, SudokuCandidates.toSet(candidates.getCandidates(pivotIndex)), maxSolutions);
 	}
 
 
 	/**
 	 * Returns the cell solutions that are possible for the given digit index, given the value
 	 * at that index is currently undefined (i.e. negative). This is performed by removing all
-	 * digits of the given digit's row, column and sector from the set of possible solutions.
+	 * digits of the given digit's row, column and sector from the set of possible solutions,
+	 * using the receiver's element masks.
 	 * @param digitIndex the digit index to be analyzed
 	 * @return a set of possible values, or null if the value is already set
 	 * @throws IllegalArgumentException if the given index is out of range
+	 * @see #getCandidates(int)
 	 */
 	protected final Set<Byte> getSolutions(final int digitIndex) {
 		if (digitIndex < 0 || digitIndex >= this.getDigits().length) throw new IllegalArgumentException();
 		if (this.getDigits()[digitIndex] >= 0) return null;
 
-		final int rowIndex = digitIndex / this.getRadix();
-		final int columnIndex = digitIndex % this.getRadix();
-		final Set<Byte> result = new HashSet<Byte>();
+		return SudokuCandidates.toSet(this.getCandidates(digitIndex));
+	}
 
-		for (byte solution = 0; solution < this.getRadix(); ++solution) {
-			result.add(solution);
-		}
 
-		for (int index = rowIndex * this.getRadix(), stop = (rowIndex + 1) * this.getRadix(); index < stop; ++index) {
-			result.remove(this.getDigits()[index]);
+	/**
+	 * Returns the cell solutions that are possible for the given digit index as a bit mask,
+	 * with bit <tt>n</tt> representing digit <tt>n</tt>. This is performed by masking out
+	 * the masks of the digits used within the given digit's row, column and sector, which
+	 * are kept up to date by the digit setters, so this takes constant time. Note that the
+	 * result is meaningless if the value at that index is already set.
+	 * @param digitIndex the digit index to be analyzed
+	 * @return the candidate mask
+	 * @throws IllegalArgumentException if the given index is out of range
+	 */
+	protected final long getCandidates(final int digitIndex) {
+		if (digitIndex < 0 || digitIndex >= this.digits.length) throw new IllegalArgumentException();
+
+		final int rowIndex = digitIndex / this.radix;
+		final int columnIndex = digitIndex % this.radix;
+		final int sectorIndex = SudokuCandidates.sectorIndex(this.dimension, rowIndex, columnIndex);
+		final long usedDigits = this.elementMasks[rowIndex] | this.elementMasks[this.radix + columnIndex] | this.elementMasks[2 * this.radix + sectorIndex];
+		return (-1L >>> (Long.SIZE - this.radix)) & ~usedDigits;
+	}
+
+	/**
+	 * Returns the solution of the given riddle, decoded from the given packed canonical
+	 * solution, provided the latter is a valid board agreeing with the riddle's given
+	 * digits. Note that this check is required because cache files are not authenticated.
+	 * @param riddle the riddle's digits
+	 * @param transformation the riddle's canonical transformation
+	 * @param packedSolution the packed canonical solution, or null
+	 * @return the solution's digits, or null if the given solution is null or invalid
+	 * @throws NullPointerException if the given riddle or transformation is null
+	 */
+	private static byte[] verifySolution(final byte[] riddle, final SudokuTransformation transformation, final byte[] packedSolution) {
+		if (packedSolution == null) return null;
+
+		final byte[] solution;
+		try {
+			solution = transformation.revert(SudokuCodec.decode(packedSolution));
+		} catch (final IllegalArgumentException exception) {
+			return null;
 		}
+		if (solution.length != riddle.length) return null;
 
-		for (int index = columnIndex; index < this.getDigits().length; index += this.getRadix()) {
-			result.remove(this.getDigits()[index]);
+		for (int index = 0; index < riddle.length; ++index) {
+			if (solution[index] < 0 || (riddle[index] >= 0 && riddle[index] != solution[index])) return null;
 		}
 
-		final int baseStart = rowIndex / this.getDimension() * this.getDimension() * this.getRadix() + columnIndex / this.getDimension() * this.getDimension();
-		for (int baseIndex = baseStart, baseStop = baseStart + this.getDimension() * this.getRadix(); baseIndex < baseStop; baseIndex += this.getRadix()) {
-			for (int index = baseIndex, stop = baseIndex + this.getDimension(); index < stop; ++index) {
-				result.remove(this.getDigits()[index]);
+		final int dimension = transformation.getDimension();
+		for (int elementIndex = 0; elementIndex < 3 * dimension * dimension; ++elementIndex) {
+			long usedDigits = 0;
+			for (final int index : SudokuCandidates.getElement(dimension, elementIndex)) {
+				final long mask = 1L << solution[index];
+				if ((usedDigits & mask) != 0) return null;
+				usedDigits |= mask;
 			}
 		}
+		return solution;
+	}
 
-		return result;
+
+	/**
+	 * Polls the given service for the solution requested with the given ticket, waiting
+	 * between polls for a delay that starts at 10ms and doubles up to one second.
+	 * @param service the service
+	 * @param ticket the ticket
+	 * @return the packed solution, or an empty array if the riddle has no unique solution
+	 * @throws JdbcException if there is a problem with the server's JDBC connection
+	 * @throws InterruptedException if the current thread is interrupted while waiting
+	 */
+	private static byte[] awaitSolution(final SoapSudokuService service, final long ticket) throws JdbcException, InterruptedException {
+		for (long delay = 10; true; delay = Math.min(2 * delay, 1000)) {
+			final byte[] solution = service.pollSolution(ticket);
+			if (solution != null) return solution;
+			Thread.sleep(delay);
+		}
+	}
+
+
+	/**
+	 * Opens the shared client-side solution cache of the given dimension.
+	 * @param dimension the dimension
+	 * @return the cache, or null if it cannot be opened
+	 */
+	private static SudokuCache openCache(final byte dimension) {
+		try {
+			return SudokuCache.open(dimension);
+		} catch (final Exception exception) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * Returns the packed solution cached for the given packed riddle within the given cache.
+	 * Failures are ignored, as a corrupt or truncated cache file must not prevent solving.
+	 * @param cache the cache, or null
+	 * @param packedRiddle the packed riddle
+	 * @return the packed solution, or null if there is none or it cannot be read
+	 */
+	private static byte[] readCache(final SudokuCache cache, final byte[] packedRiddle) {
+		if (cache == null) return null;
+		try {
+			return cache.get(packedRiddle);
+		} catch (final Exception | InternalError exception) {
+			return null;
+		}
 	}
 
+
+	/**
+	 * Caches the given packed solution for the given packed riddle within the given cache.
+	 * Failures are ignored, as a corrupt or truncated cache file must not prevent solving.
+	 * @param cache the cache, or null
+	 * @param packedRiddle the packed riddle
+	 * @param packedSolution the packed solution
+	 */
+	private static void writeCache(final SudokuCache cache, final byte[] packedRiddle, final byte[] packedSolution) {
+		if (cache == null) return;
+		try {
+			cache.put(packedRiddle, packedSolution);
+		} catch (final Exception | InternalError exception) {
+			// solution stays uncached
+		}
+	}
+
+
 	/**
 	 * Application entry point. The arguments given must be either a riddle dimension or
 	 * a riddle's digits. In case a dimension is passed, the application populates a riddle
@@ -406,7 +782,9 @@ public final class Sudoku implements Cloneable, Serializable {
 	 * and it's sole solution. In case a riddle's digits are passed, the application tries
 	 * to solve the riddle, and finally displays both the riddle and all (if any) possible
 	 * solutions. Note that cell values that are no digits (like dots) are interpreted as
-	 * negative values, i.e. values to be solved.
+	 * negative values, i.e. values to be solved. Riddles are resolved by the SOAP service,
+	 * or by the binary protocol if the system property
+	 * <tt>de.htw.ds.sudoku.Sudoku.protocolAddress</tt> is set to the server's socket address.
 	 * @param args the arguments
 	 */
 	public static void main(final String[] args) throws IOException {
@@ -417,7 +795,6 @@ public final class Sudoku implements Cloneable, Serializable {
 			final SudokuPlugin plugin = (SudokuPlugin) Class.forName(args[0], true, Thread.currentThread().getContextClassLoader()).newInstance();
 			final byte dimension = Byte.parseByte(args[2]);
 
-			// Local sudoku server only expected on port 9000 in case of SudokuPlugin3!
 			sudoku = new Sudoku(plugin, dimension);
 			command = Command.valueOf(args[1].toUpperCase());
 		} catch (final Exception exception) {
@@ -426,6 +803,7 @@ public final class Sudoku implements Cloneable, Serializable {
 			System.out.println("de.htw.ds.sudoku.SudokuPlugin0 create 3");
 			System.out.println("de.htw.ds.sudoku.SudokuPlugin2 check 5");
 			System.out.println("de.htw.ds.sudoku.SudokuPlugin1 solve 2  . 0 . .   . . 3 .   . . . 2   0 . . .");
+			System.out.println("de.htw.ds.sudoku.SudokuPlugin3 check 4");
 			return;
 		}
 
@@ -439,8 +817,7 @@ public final class Sudoku implements Cloneable, Serializable {
 				return;
 			}
 		} else {
-			sudoku.populate();
-			sudoku.reduce();
+			new SudokuGenerator(sudoku.plugin.getClass()).generate(sudoku);
 		}
 
 		System.out.print(sudoku);
@@ -448,33 +825,61 @@ public final class Sudoku implements Cloneable, Serializable {
 		if (command == Command.CHECK || command == Command.SOLVE) {
 			
 			final byte[] digitsToSolve = sudoku.getDigits();
-			try {
-				SERVICE_URI = new URI("http://141.45.201.230:8808/de.htw.ds.sudoku.SoapSudokuService");
-				final SoapSudokuService proxy = Namespaces.createDynamicSoapServiceProxy(SoapSudokuService.class, SERVICE_URI);
-				if (proxy.solutionExists(digitsToSolve)) {
-					byte[] solution = proxy.getSolution(digitsToSolve);
-					for (int i = 0; i < solution.length; i++) {
-						 sudoku.getDigits()[i] = solution[i];
+			final int maxSolutions = (command == Command.CHECK) ? 2 : Integer.MAX_VALUE;
+			final SudokuTransformation transformation = SudokuTransformation.canonicalize(digitsToSolve);
+			final byte[] packedToSolve = SudokuCodec.encode(transformation.apply(digitsToSolve));
+			final SudokuCache cache = openCache(sudoku.getDimension());
+			final byte[] cachedSolution = verifySolution(digitsToSolve, transformation, readCache(cache, packedToSolve));
+			if (cachedSolution != null) {
+				sudoku.setDigits(cachedSolution);
+				System.out.print(sudoku);
+				System.out.println("read solution from cache");
+			} else try {
+				final byte[] packedSolved;
+				if (PROTOCOL_ADDRESS == null) {
+					SERVICE_URI = new URI("http://141.45.201.230:8808/de.htw.ds.sudoku.SoapSudokuService");
+					final SoapSudokuService proxy = SoapServiceProxyFactory.getProxy(SoapSudokuService.class, SERVICE_URI);
+					final byte[] storedSolution = proxy.getSolution(packedToSolve);
+					packedSolved = storedSolution.length > 0 ? storedSolution : awaitSolution(proxy, proxy.requestSolution(packedToSolve));
+				} else {
+					try (SudokuProtocolClient client = new SudokuProtocolClient(new SocketAddress(PROTOCOL_ADDRESS))) {
+						packedSolved = client.resolveSolution(packedToSolve);
 					}
+				}
+				if (packedSolved.length > 0) {
+					final byte[] solution = transformation.revert(SudokuCodec.decode(packedSolved));
+					writeCache(cache, packedToSolve, packedSolved);
+					sudoku.setDigits(solution);
 					System.out.print(sudoku);
-					System.out.println("read solution from database");	
-				} else {				
-					for (final Sudoku solution : sudoku.resolve()) {
-						final byte[] digitsSolved = solution.getDigits();
-						proxy.storeSolution(digitsToSolve, digitsSolved);
+					System.out.println("resolved solution on server");	
+				} else {
+					for (final Iterator<Sudoku> iterator = sudoku.stream().limit(maxSolutions).iterator(); iterator.hasNext(); ) {
+						final Sudoku solution = iterator.next();
 						System.out.print(solution);
 					}
-					System.out.println("stored new solution");
+					System.out.println("riddle has no unique solution");
 				}
 			}
 			catch (final Exception e) {
-				for (final Sudoku solution : sudoku.resolve()) {
+				// cache a locally found solution if it is unique, as the server would have done
+				byte[] packedSolved = null;
+				int solutionCount = 0;
+				for (final Iterator<Sudoku> iterator = sudoku.stream().limit(maxSolutions).iterator(); iterator.hasNext(); ++solutionCount) {
+					final Sudoku solution = iterator.next();
+					if (solutionCount == 0) packedSolved = SudokuCodec.encode(transformation.apply(solution.getDigits()));
 					System.out.print(solution);
 				}
+				if (solutionCount == 1) writeCache(cache, packedToSolve, packedSolved);
 				System.out.println("coud not connect to server");
 			}
+			if (cache != null) cache.close();
 		}
 		final long stop = System.currentTimeMillis();
 		System.out.println(stop - start);
+
+		final SudokuDeductions deductions = sudoku.plugin.getDeductions();
+		for (final SudokuDeduction deduction : deductions.getStages()) {
+			System.out.println(deduction + ": " + deductions.getEliminationCount(deduction) + " eliminations");
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,175 @@
+package de.htw.ds.sudoku;
+
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Iterative depth-first search resolving a single mutable riddle. Instead of cloning
+ * the riddle for each branch, placements and candidate eliminations are recorded on the
+ * undo trail of a {@link SudokuCandidates} instance, and backtracking reverts them. The
+ * search stack is kept in arrays sized by the number of cells, so the search doesn't
+ * depend on the thread stack size. Logical deductions work on scratch arrays owned by the
+ * candidates, therefore the only allocations after construction are the solutions found,
+ * the scratch arrays on first use, and the undo trail growing until it is large enough.</p>
+ * <p>Note that instances are not thread-safe, and that the riddle is modified during
+ * the search, but restored once it ends. The search is cancelled cooperatively if the
+ * current thread is interrupted, or once the cancellation check holds; the latter allows
+ * parallel searches that share a solution count to stop once enough solutions have been
+ * found by all of them.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+final class SudokuBacktracker {
+
+	private final Sudoku riddle;
+	private final SudokuDeductions deductions;
+	private final BooleanSupplier cancellation;
+	private final SudokuCandidates candidates;
+	private final int[] checkpoints;
+	private final int[] pivotIndices;
+	private final long[] alternatives;
+	private int solutionCount;
+
+
+	/**
+	 * Creates a new instance.
+	 * @param riddle the riddle to be resolved
+	 * @param deductions the logical deductions to apply after each placement
+	 * @throws NullPointerException if any of the given arguments is null
+	 */
+	public SudokuBacktracker(final Sudoku riddle, final SudokuDeductions deductions) {
+		this(riddle, deductions, () -> false);
+	}
+
+
+	/**
+	 * Creates a new instance.
+	 * @param riddle the riddle to be resolved
+	 * @param deductions the logical deductions to apply after each placement
+	 * @param cancellation the check whether or not the search shall be cancelled
+	 * @throws NullPointerException if any of the given arguments is null
+	 */
+	public SudokuBacktracker(final Sudoku riddle, final SudokuDeductions deductions, final BooleanSupplier cancellation) {
+		super();
+		if (deductions == null || cancellation == null) throw new NullPointerException();
+
+		final int cellCount = riddle.getDigits().length;
+		this.riddle = riddle;
+		this.deductions = deductions;
+		this.cancellation = cancellation;
+		this.candidates = new SudokuCandidates(riddle);
+		this.checkpoints = new int[cellCount + 1];
+		this.pivotIndices = new int[cellCount + 1];
+		this.alternatives = new long[cellCount + 1];
+	}
+
+
+	/**
+	 * Reinitializes the search state from the riddle's current digits, which must be
+	 * called after the riddle's digits have been modified directly.
+	 */
+	public void reset() {
+		this.candidates.reset();
+	}
+
+
+	/**
+	 * Counts the solutions of the riddle, with the cell at the given digit index
+	 * restricted to the given alternatives, up to the given maximum. In contrast to
+	 * {@link #resolve(int, long, int, Set)}, the solutions found are not cloned.
+	 * @param digitIndex the digit index of the cell to restrict
+	 * @param cellAlternatives the candidate mask restricting the given cell
+	 * @param maxSolutions the maximum number of solutions to be counted
+	 * @return the number of solutions found
+	 * @throws ArrayIndexOutOfBoundsException if the given index is out of range
+	 */
+	public int countSolutions(final int digitIndex, final long cellAlternatives, final int maxSolutions) {
+		return this.search(digitIndex, cellAlternatives, maxSolutions, null);
+	}
+
+
+	/**
+	 * Searches for solutions of the riddle, with the cell at the given digit index
+	 * restricted to the given alternatives, and adds a clone of each one found to
+	 * the given result until it contains the given number of solutions. The search
+	 * is cancelled cooperatively if the current thread is interrupted, or once the
+	 * receiver's cancellation check holds.
+	 * @param digitIndex the digit index of the cell to restrict
+	 * @param cellAlternatives the candidate mask restricting the given cell
+	 * @param maxSolutions the maximum number of solutions to be found
+	 * @param result the set of Sudoku representing the possible solutions
+	 * @return the number of solutions added
+	 * @throws NullPointerException if the given result is null
+	 * @throws ArrayIndexOutOfBoundsException if the given index is out of range
+	 */
+	public int resolve(final int digitIndex, final long cellAlternatives, final int maxSolutions, final Set<Sudoku> result) {
+		if (result == null) throw new NullPointerException();
+		return this.search(digitIndex, cellAlternatives, maxSolutions, result);
+	}
+
+
+	/**
+	 * Searches for solutions of the riddle, with the cell at the given digit index
+	 * restricted to the given alternatives, until the given number of solutions has
+	 * been found, and adds a clone of each one to the given result if it isn't null.
+	 * @param digitIndex the digit index of the cell to restrict
+	 * @param cellAlternatives the candidate mask restricting the given cell
+	 * @param maxSolutions the maximum number of solutions to be found
+	 * @param result the set of Sudoku representing the possible solutions, or null
+	 * @return the number of solutions found
+	 */
+	private int search(final int digitIndex, final long cellAlternatives, final int maxSolutions, final Set<Sudoku> result) {
+		final int checkpoint = this.candidates.getTrailSize();
+		this.solutionCount = 0;
+
+		int depth = -1;
+		this.candidates.eliminate(digitIndex, ~cellAlternatives);
+		if (maxSolutions > 0 && this.candidates.deduce(this.deductions)) {
+			depth = this.descend(0, result);
+		}
+
+		final Thread thread = Thread.currentThread();
+		while (depth >= 0 && this.solutionCount < maxSolutions && !thread.isInterrupted() && !this.cancellation.getAsBoolean()) {
+			final long alternatives = this.alternatives[depth];
+			if (alternatives == 0) {
+				depth -= 1;
+				continue;
+			}
+
+			this.alternatives[depth] = alternatives & (alternatives - 1);
+			this.candidates.undo(this.checkpoints[depth]);
+			this.candidates.setDigit(this.pivotIndices[depth], (byte) Long.numberOfTrailingZeros(alternatives));
+			if (this.candidates.deduce(this.deductions)) {
+				depth = this.descend(depth + 1, result);
+			}
+		}
+
+		this.candidates.undo(checkpoint);
+		return this.solutionCount;
+	}
+
+
+	/**
+	 * Pushes a stack frame branching on the unresolved cell with the least candidates
+	 * onto the given depth, or counts the riddle as a solution if it is resolved, adding
+	 * a clone of it to the given result unless the latter is null.
+	 * @param depth the stack depth of the new frame
+	 * @param result the set of Sudoku representing the possible solutions, or null
+	 * @return the stack depth to continue with
+	 */
+	private int descend(final int depth, final Set<Sudoku> result) {
+		final int pivotIndex = this.candidates.getPivotIndex();
+		if (pivotIndex == -1) {
+			this.solutionCount += 1;
+			if (result != null) result.add(this.riddle.clone());
+			return depth - 1;
+		}
+
+		this.checkpoints[depth] = this.candidates.getTrailSize();
+		this.pivotIndices[depth] = pivotIndex;
+		this.alternatives[depth] = this.candidates.getCandidates(pivotIndex);
+		return depth;
+	}
+}
@@ -0,0 +1,462 @@
+package de.htw.ds.sudoku;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Batch solver reading riddles in a one-line-per-riddle format, i.e. one character per
+ * digit with '.' representing unresolved digits, and writing one result line per riddle
+ * in input order. Each result line contains the riddle, a tab character, and either the
+ * first solution found in the same format, "-" if there is none, or an error message.</p>
+ * <p>Riddles pass through a pipeline of three stages: The main thread parses lines, a
+ * pool of worker threads solves them, and a writer thread restores the input order and
+ * writes the results. The stages are connected by bounded queues, and the number of
+ * riddles in flight is bounded by a semaphore, which keeps memory consumption constant
+ * regardless of the input size. Once all riddles are written, the throughput of each
+ * stage is printed to the standard error stream.</p>
+ * <p>Optionally, the workers look up each riddle on a Sudoku service first, and only solve
+ * it locally if the service has no solution stored for it. Their lookups are coalesced
+ * into batch operations by a {@link SoapSudokuBatcher}. Note that solutions found locally
+ * are not stored on the service, because only the first solution of each riddle is
+ * searched for, which doesn't tell whether or not it is unique.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SudokuBatch {
+	private static final int PROCESSOR_COUNT = Runtime.getRuntime().availableProcessors();
+	private static final int QUEUE_CAPACITY = 4 * PROCESSOR_COUNT;
+	private static final int WINDOW_SIZE = 64 * PROCESSOR_COUNT;
+	private static final String SERVICE_URI = System.getProperty("de.htw.ds.sudoku.SudokuBatch.serviceURI");
+
+	private final Class<? extends SudokuPlugin> pluginClass;
+	private final byte dimension;
+	private final int workerCount;
+	private final SoapSudokuService service;
+	private final BlockingQueue<Entry> solveQueue;
+	private final BlockingQueue<Entry> writeQueue;
+	private final Semaphore window;
+	private final Stage parseStage;
+	private final Stage solveStage;
+	private final Stage lookupStage;
+	private final Stage writeStage;
+
+
+	/**
+	 * Public constructor, for riddles solved locally.
+	 * @param pluginClass the plugin class used to solve the riddles
+	 * @param dimension the dimension of the riddles
+	 * @param workerCount the number of solve worker threads
+	 * @throws NullPointerException if the given plugin class is null
+	 * @throws IllegalArgumentException if the given dimension is outside its range [2, 6],
+	 *    or the given worker count is not positive
+	 */
+	public SudokuBatch(final Class<? extends SudokuPlugin> pluginClass, final byte dimension, final int workerCount) {
+		this(pluginClass, dimension, workerCount, null);
+	}
+
+
+	/**
+	 * Public constructor.
+	 * @param pluginClass the plugin class used to solve the riddles
+	 * @param dimension the dimension of the riddles
+	 * @param workerCount the number of solve worker threads
+	 * @param service the service to look up the riddles first, usually a
+	 *    {@link SoapSudokuBatcher}, or null to solve all riddles locally
+	 * @throws NullPointerException if the given plugin class is null
+	 * @throws IllegalArgumentException if the given dimension is outside its range [2, 6],
+	 *    or the given worker count is not positive
+	 */
+	public SudokuBatch(final Class<? extends SudokuPlugin> pluginClass, final byte dimension, final int workerCount, final SoapSudokuService service) {
+		super();
+		if (pluginClass == null) throw new NullPointerException();
+		if (dimension < 2 || dimension > 6 || workerCount <= 0) throw new IllegalArgumentException();
+
+		this.pluginClass = pluginClass;
+		this.dimension = dimension;
+		this.workerCount = workerCount;
+		this.service = service;
+		this.solveQueue = new ArrayBlockingQueue<Entry>(QUEUE_CAPACITY);
+		this.writeQueue = new ArrayBlockingQueue<Entry>(QUEUE_CAPACITY);
+		this.window = new Semaphore(WINDOW_SIZE);
+		this.parseStage = new Stage("parse");
+		this.solveStage = new Stage("solve");
+		this.lookupStage = new Stage("lookup");
+		this.writeStage = new Stage("write");
+	}
+
+
+	/**
+	 * Solves all riddles read from the given input, and writes the results to the given
+	 * output in input order. Empty lines are skipped.
+	 * @param input the input, which is not closed
+	 * @param output the output, which is flushed but not closed
+	 * @throws IOException if there is an I/O related problem
+	 * @throws InterruptedException if the current thread is interrupted while waiting
+	 */
+	public void process(final InputStream input, final OutputStream output) throws IOException, InterruptedException {
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.US_ASCII));
+		final ResultWriter resultWriter = new ResultWriter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.US_ASCII)));
+		final Thread writerThread = new Thread(resultWriter, "sudoku-batch-writer");
+		final Thread[] workerThreads = new Thread[this.workerCount];
+		for (int index = 0; index < workerThreads.length; ++index) {
+			workerThreads[index] = new Thread(new Solver(), "sudoku-batch-solver-" + index);
+			workerThreads[index].start();
+		}
+		writerThread.start();
+
+		try {
+			long sequence = 0;
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				final long start = System.nanoTime();
+				final String text = line.trim();
+				if (text.isEmpty()) continue;
+
+				final Entry entry = new Entry(sequence++, text);
+				try {
+					entry.riddle = this.parse(text);
+				} catch (final IllegalArgumentException exception) {
+					entry.result = "error: " + exception.getMessage();
+				}
+				this.parseStage.record(System.nanoTime() - start);
+
+				this.window.acquire();
+				this.solveQueue.put(entry);
+			}
+		} finally {
+			for (int index = 0; index < workerThreads.length; ++index) {
+				this.solveQueue.put(Entry.END);
+			}
+			for (final Thread workerThread : workerThreads) {
+				workerThread.join();
+			}
+			this.writeQueue.put(Entry.END);
+			writerThread.join();
+		}
+
+		if (resultWriter.failure != null) throw resultWriter.failure;
+	}
+
+
+	/**
+	 * Prints the throughput of each stage to the standard error stream.
+	 */
+	public void printStatistics() {
+		this.parseStage.print(1);
+		this.solveStage.print(this.workerCount);
+		if (this.service != null) this.lookupStage.print(this.workerCount);
+		this.writeStage.print(1);
+	}
+
+
+	/**
+	 * Parses the given line into a riddle.
+	 * @param line the line
+	 * @return the riddle
+	 * @throws IllegalArgumentException if the line doesn't have one valid character per digit
+	 */
+	private Sudoku parse(final String line) {
+		final Sudoku riddle = new Sudoku(this.newPlugin(), this.dimension);
+		final int digitCount = riddle.getDigits().length;
+		if (line.length() != digitCount) throw new IllegalArgumentException("expecting " + digitCount + " digits but received " + line.length());
+
+		for (int index = 0; index < digitCount; ++index) {
+			final char character = line.charAt(index);
+			final byte digit = (byte) Character.digit(character, riddle.getRadix());
+			if (digit == -1 && character != '.') throw new IllegalArgumentException("character '" + character + "' isn't a valid digit");
+			riddle.setDigit(index, digit);
+		}
+		return riddle;
+	}
+
+
+	/**
+	 * Returns the given riddle with the solution stored on the receiver's service, if
+	 * any. The riddle is looked up in it's canonical form. Problems with the service are
+	 * ignored, so that the riddle is solved locally instead.
+	 * @param riddle the riddle
+	 * @return the solved riddle, or null if there is no service or no stored solution
+	 */
+	private Sudoku lookup(final Sudoku riddle) {
+		if (this.service == null) return null;
+
+		final long start = System.nanoTime();
+		try {
+			final byte[] digits = riddle.getDigits();
+			final SudokuTransformation transformation = SudokuTransformation.canonicalize(digits);
+			final byte[] packedSolved = this.service.getSolution(SudokuCodec.encode(transformation.apply(digits)));
+			if (packedSolved.length == 0) return null;
+
+			riddle.setDigits(transformation.revert(SudokuCodec.decode(packedSolved)));
+			this.lookupStage.record(System.nanoTime() - start);
+			return riddle;
+		} catch (final JdbcException | RuntimeException exception) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * Formats the given riddle in the one-line format.
+	 * @param riddle the riddle
+	 * @return the line
+	 */
+	private static String format(final Sudoku riddle) {
+		final byte[] digits = riddle.getDigits();
+		final char[] characters = new char[digits.length];
+		for (int index = 0; index < digits.length; ++index) {
+			characters[index] = (digits[index] == -1) ? '.' : Character.forDigit(digits[index], riddle.getRadix());
+		}
+		return new String(characters);
+	}
+
+
+	/**
+	 * Returns a new plugin instance.
+	 * @return the plugin
+	 * @throws IllegalArgumentException if the plugin class lacks a public default constructor
+	 */
+	private SudokuPlugin newPlugin() {
+		try {
+			return this.pluginClass.getConstructor().newInstance();
+		} catch (final Exception exception) {
+			throw new IllegalArgumentException("class " + this.pluginClass + " probably lacks public default constructor");
+		}
+	}
+
+
+	/**
+	 * Application entry point. The given runtime parameters must be a plugin class name,
+	 * a dimension, and optionally the input and output file paths, with "-" representing
+	 * the standard input and output streams. If the system property
+	 * <tt>de.htw.ds.sudoku.SudokuBatch.serviceURI</tt> is set, the riddles are looked up
+	 * on the Sudoku service at said URI first.
+	 * @param args the given runtime arguments
+	 * @throws IOException if there is an I/O related problem
+	 * @throws InterruptedException if the current thread is interrupted while waiting
+	 */
+	public static void main(final String[] args) throws IOException, InterruptedException {
+		final SoapSudokuBatcher service;
+		final SudokuBatch batch;
+		try {
+			final Class<? extends SudokuPlugin> pluginClass = Class.forName(args[0], true, Thread.currentThread().getContextClassLoader()).asSubclass(SudokuPlugin.class);
+			final byte dimension = Byte.parseByte(args[1]);
+			service = (SERVICE_URI == null) ? null : new SoapSudokuBatcher(SoapServiceProxyFactory.getProxy(SoapSudokuService.class, new URI(SERVICE_URI)));
+			batch = new SudokuBatch(pluginClass, dimension, PROCESSOR_COUNT, service);
+		} catch (final Exception exception) {
+			System.out.println("Parameter syntax: <pluginClass:String> <dimension:2-6> [<input:path|-> [<output:path|->]]");
+			System.out.println("Example:");
+			System.out.println("de.htw.ds.sudoku.SudokuPlugin3 3 riddles.txt solutions.txt");
+			return;
+		}
+
+		final boolean standardInput = args.length < 3 || args[2].equals("-");
+		final boolean standardOutput = args.length < 4 || args[3].equals("-");
+		final InputStream input = standardInput ? System.in : new FileInputStream(args[2]);
+		try {
+			final OutputStream output = standardOutput ? System.out : new FileOutputStream(args[3]);
+			try {
+				batch.process(input, output);
+			} finally {
+				if (!standardOutput) output.close();
+			}
+		} finally {
+			if (!standardInput) input.close();
+			if (service != null) service.close();
+		}
+		batch.printStatistics();
+	}
+
+
+
+	/**
+	 * <p>Riddle passing through the pipeline.</p>
+	 */
+	private static final class Entry {
+		private static final Entry END = new Entry(-1, null);
+
+		private final long sequence;
+		private final String line;
+		private Sudoku riddle;
+		private String result;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param sequence the input position
+		 * @param line the input line
+		 */
+		public Entry(final long sequence, final String line) {
+			this.sequence = sequence;
+			this.line = line;
+		}
+	}
+
+
+
+	/**
+	 * <p>Throughput statistics of a pipeline stage, accumulated by one or more threads.</p>
+	 */
+	private static final class Stage {
+		private final String name;
+		private final AtomicLong count;
+		private final AtomicLong busyNanos;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param name the stage name
+		 */
+		public Stage(final String name) {
+			this.name = name;
+			this.count = new AtomicLong();
+			this.busyNanos = new AtomicLong();
+		}
+
+
+		/**
+		 * Records the processing of a riddle.
+		 * @param nanos the processing time in nanoseconds
+		 */
+		public void record(final long nanos) {
+			this.count.incrementAndGet();
+			this.busyNanos.addAndGet(nanos);
+		}
+
+
+		/**
+		 * Prints the number of riddles processed, and the throughput achieved
+		 * by the given number of threads.
+		 * @param threadCount the number of threads running the stage
+		 */
+		public void print(final int threadCount) {
+			final long count = this.count.get();
+			final double busySeconds = this.busyNanos.get() / 1E9 / threadCount;
+			final double throughput = (busySeconds == 0) ? 0 : count / busySeconds;
+			System.err.format("%s: %d riddles, %.0f riddles/s (%d threads)%n", this.name, count, throughput, threadCount);
+		}
+	}
+
+
+
+	/**
+	 * <p>Solve stage worker, which runs until it receives the end marker. Any failure to
+	 * solve a riddle, including errors, is recorded as it's result, so every riddle is
+	 * forwarded to the write stage, which would otherwise wait for it forever.</p>
+	 */
+	private final class Solver implements Runnable {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void run() {
+			try {
+				for (Entry entry = SudokuBatch.this.solveQueue.take(); entry != Entry.END; entry = SudokuBatch.this.solveQueue.take()) {
+					if (entry.riddle != null) {
+						final long start = System.nanoTime();
+						try {
+							final Sudoku solution = SudokuBatch.this.lookup(entry.riddle);
+							if (solution == null) {
+								final Set<Sudoku> solutions = entry.riddle.resolve(1);
+								entry.result = solutions.isEmpty() ? "-" : format(solutions.iterator().next());
+							} else {
+								entry.result = format(solution);
+							}
+						} catch (final Throwable exception) {
+							entry.result = "error: " + exception;
+						}
+						entry.riddle = null;
+						SudokuBatch.this.solveStage.record(System.nanoTime() - start);
+					}
+					SudokuBatch.this.writeQueue.put(entry);
+				}
+			} catch (final InterruptedException exception) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+
+
+	/**
+	 * <p>Write stage worker, which restores the input order and writes the results until
+	 * it receives the end marker. An I/O failure stops writing, but riddles are still
+	 * taken from the queue to avoid stalling the pipeline.</p>
+	 */
+	private final class ResultWriter implements Runnable {
+		private final Writer writer;
+		private final Map<Long,Entry> pending;
+		private long nextSequence;
+		private volatile IOException failure;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param writer the writer
+		 */
+		public ResultWriter(final Writer writer) {
+			this.writer = writer;
+			this.pending = new HashMap<Long,Entry>();
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void run() {
+			try {
+				for (Entry entry = SudokuBatch.this.writeQueue.take(); entry != Entry.END; entry = SudokuBatch.this.writeQueue.take()) {
+					this.pending.put(entry.sequence, entry);
+					for (Entry next = this.pending.remove(this.nextSequence); next != null; next = this.pending.remove(this.nextSequence)) {
+						this.write(next);
+						this.nextSequence += 1;
+						SudokuBatch.this.window.release();
+					}
+				}
+				if (this.failure == null) this.writer.flush();
+			} catch (final InterruptedException exception) {
+				Thread.currentThread().interrupt();
+			} catch (final IOException exception) {
+				this.failure = exception;
+			}
+		}
+
+
+		/**
+		 * Writes the result line of the given riddle, unless writing already failed.
+		 * @param entry the riddle
+		 */
+		private void write(final Entry entry) {
+			if (this.failure != null) return;
+
+			final long start = System.nanoTime();
+			try {
+				this.writer.write(entry.line);
+				this.writer.write('\t');
+				this.writer.write(entry.result);
+				this.writer.write('\n');
+			} catch (final IOException exception) {
+				this.failure = exception;
+			}
+			SudokuBatch.this.writeStage.record(System.nanoTime() - start);
+		}
+	}
+}
@@ -0,0 +1,294 @@
+package de.htw.ds.sudoku;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Persistent solution cache backed by a memory mapped file, which is shared by all JVMs
+ * on the same host that open the same file. Keys are packed riddles, preferably in canonical
+ * form (see {@link SudokuTransformation}), and values are packed solutions (see
+ * {@link SudokuCodec}). A cache file holds entries of a single dimension, and consists of a
+ * 16 byte header followed by an open addressing hash table of fixed size slots, which are
+ * probed linearly.</p>
+ * <p>Each slot starts with a state word. Inserts claim an empty slot by a compare-and-set of
+ * it's state, write hash, key and value, and finally publish the slot by a release store of
+ * it's state. Published slots are never modified again, therefore reads are lock-free and
+ * merely acquire the state before reading a slot. Note that there is no eviction; once the
+ * probe sequence of a key is occupied, the key is not cached. Also note that a slot claimed
+ * by a process that dies before publishing it stays unusable.</p>
+ * <p>Note that cache entries are not authenticated; anybody able to write a cache file can
+ * plant arbitrary solutions, which is why the default cache directory is private to the
+ * current user, and why clients must verify cached solutions before using them.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SudokuCache implements Closeable {
+	public static final int MAGIC = 0x53444B48;
+	public static final byte VERSION = 1;
+	public static final int HEADER_SIZE = 16;
+	private static final String DIRECTORY = System.getProperty("de.htw.ds.sudoku.SudokuCache.directory", Paths.get(System.getProperty("user.home"), ".sudoku").toString());
+	private static final int DEFAULT_CAPACITY = Integer.getInteger("de.htw.ds.sudoku.SudokuCache.capacity", 16384);
+	private static final int MAX_PROBE_COUNT = 32;
+	private static final int STATE_EMPTY = 0;
+	private static final int STATE_WRITING = 1;
+	private static final int STATE_PUBLISHED = 2;
+	private static final VarHandle STATE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final byte dimension;
+	private final int capacity;
+	private final int maxEntryLength;
+	private final int slotSize;
+
+
+	/**
+	 * Public constructor, which maps the given cache file, and creates it with the given
+	 * capacity if it doesn't exist yet.
+	 * @param path the cache file path
+	 * @param dimension the dimension of the riddles cached
+	 * @param capacity the number of slots, which is rounded up to the next power of two,
+	 *    and ignored if the file already exists
+	 * @throws NullPointerException if the given path is null
+	 * @throws IllegalArgumentException if the given dimension is outside its range [2, 6],
+	 *    or if the given capacity is not strictly positive or exceeds the mappable size
+	 * @throws IOException if there is an I/O related problem, or if the file is not a valid
+	 *    cache of the given dimension
+	 */
+	public SudokuCache(final Path path, final byte dimension, final int capacity) throws IOException {
+		super();
+		if (capacity <= 0 || capacity > 1 << 30) throw new IllegalArgumentException();
+
+		this.dimension = dimension;
+		this.maxEntryLength = SudokuCodec.getMaxEncodedLength(dimension);
+		this.slotSize = (12 + 2 * this.maxEntryLength + 7) & -8;
+
+		this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		try {
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			final FileLock lock = this.channel.lock();
+			try {
+				if (this.channel.size() == 0) {
+					final int slotCount = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+					if ((long) slotCount * this.slotSize > Integer.MAX_VALUE - HEADER_SIZE) throw new IllegalArgumentException();
+
+					header.putInt(MAGIC).put(VERSION).put(dimension).putShort((short) 0).putInt(slotCount).putInt(0).flip();
+					this.channel.write(ByteBuffer.allocate(1), HEADER_SIZE + (long) slotCount * this.slotSize - 1);
+					while (header.hasRemaining()) {
+						this.channel.write(header, header.position());
+					}
+					header.rewind();
+				} else {
+					while (header.hasRemaining()) {
+						if (this.channel.read(header, header.position()) == -1) break;
+					}
+					header.flip();
+				}
+			} finally {
+				lock.release();
+			}
+
+			if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) throw new IOException("not a sudoku cache: " + path);
+			if (header.get() != VERSION) throw new IOException("unsupported cache version: " + path);
+			if (header.get() != dimension) throw new IOException("cache dimension mismatch: " + path);
+			header.getShort();
+			this.capacity = header.getInt();
+			if (Integer.bitCount(this.capacity) != 1 || this.channel.size() != HEADER_SIZE + (long) this.capacity * this.slotSize) throw new IOException("corrupt cache: " + path);
+
+			this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, this.channel.size());
+		} catch (final IOException exception) {
+			this.channel.close();
+			throw exception;
+		}
+	}
+
+
+	/**
+	 * Opens the default cache file of the given dimension, which resides within the
+	 * directory given by the system property
+	 * <tt>de.htw.ds.sudoku.SudokuCache.directory</tt>, defaulting to the directory
+	 * <tt>.sudoku</tt> within the user's home directory. The latter is created if it
+	 * doesn't exist yet, accessible only by it's owner if the file system supports POSIX
+	 * permissions. Note that a shared directory like the temporary one would allow other
+	 * users to plant solutions. New cache files are created with the capacity given by the
+	 * system property <tt>de.htw.ds.sudoku.SudokuCache.capacity</tt>, defaulting to 16384.
+	 * @param dimension the dimension of the riddles cached
+	 * @return the cache
+	 * @throws IllegalArgumentException if the given dimension is outside its range [2, 6]
+	 * @throws IOException if there is an I/O related problem
+	 */
+	public static SudokuCache open(final byte dimension) throws IOException {
+		final Path directory = Paths.get(DIRECTORY);
+		if (!Files.isDirectory(directory)) {
+			if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+				Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+			} else {
+				Files.createDirectories(directory);
+			}
+		}
+
+		final Path path = directory.resolve("sudoku-solutions-" + dimension + ".cache");
+		return new SudokuCache(path, dimension, DEFAULT_CAPACITY);
+	}
+
+
+	/**
+	 * Closes the underlying file channel. Note that the mapping stays valid until
+	 * it is garbage collected.
+	 * @throws IOException if there is an I/O related problem
+	 */
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+
+	/**
+	 * Returns the dimension of the riddles cached.
+	 * @return the dimension
+	 */
+	public byte getDimension() {
+		return this.dimension;
+	}
+
+
+	/**
+	 * Returns the number of slots.
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+
+	/**
+	 * Returns the packed solution cached for the given packed riddle. Slots whose stored
+	 * lengths exceed the slot size are skipped, as they can only stem from a corrupt cache file.
+	 * @param riddle the packed riddle
+	 * @return the packed solution, or null if there is none
+	 * @throws NullPointerException if the given riddle is null
+	 * @throws IllegalArgumentException if the given riddle doesn't match the receiver's dimension
+	 */
+	public byte[] get(final byte[] riddle) {
+		this.checkEntry(riddle);
+
+		final int hash = hash(riddle);
+		for (int probe = 0; probe < MAX_PROBE_COUNT; ++probe) {
+			final int position = this.getSlotPosition(hash, probe);
+			final int state = (int) STATE.getAcquire(this.buffer, position);
+			if (state == STATE_EMPTY) return null;
+			if (state == STATE_PUBLISHED && this.matches(position, hash, riddle)) {
+				final int solutionLength = this.buffer.getShort(position + 10);
+				if (solutionLength <= 0 || solutionLength > this.maxEntryLength) return null;
+
+				final byte[] solution = new byte[solutionLength];
+				this.buffer.get(position + 12 + this.maxEntryLength, solution);
+				return solution;
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * Caches the given packed solution for the given packed riddle, unless the riddle is
+	 * already cached, or all slots of it's probe sequence are occupied.
+	 * @param riddle the packed riddle
+	 * @param solution the packed solution
+	 * @return true if the riddle is cached afterwards, false otherwise
+	 * @throws NullPointerException if any of the given arguments is null
+	 * @throws IllegalArgumentException if any of the given arguments doesn't match the
+	 *    receiver's dimension
+	 */
+	public boolean put(final byte[] riddle, final byte[] solution) {
+		this.checkEntry(riddle);
+		this.checkEntry(solution);
+
+		final int hash = hash(riddle);
+		for (int probe = 0; probe < MAX_PROBE_COUNT; ++probe) {
+			final int position = this.getSlotPosition(hash, probe);
+			int state = (int) STATE.getAcquire(this.buffer, position);
+			if (state == STATE_EMPTY && STATE.compareAndSet(this.buffer, position, STATE_EMPTY, STATE_WRITING)) {
+				this.buffer.putInt(position + 4, hash);
+				this.buffer.putShort(position + 8, (short) riddle.length);
+				this.buffer.putShort(position + 10, (short) solution.length);
+				this.buffer.put(position + 12, riddle);
+				this.buffer.put(position + 12 + this.maxEntryLength, solution);
+				STATE.setRelease(this.buffer, position, STATE_PUBLISHED);
+				return true;
+			}
+
+			state = (int) STATE.getAcquire(this.buffer, position);
+			if (state == STATE_PUBLISHED && this.matches(position, hash, riddle)) return true;
+		}
+		return false;
+	}
+
+
+	/**
+	 * Returns the buffer position of the slot with the given probe index within the
+	 * probe sequence of the given hash.
+	 * @param hash the hash
+	 * @param probe the probe index
+	 * @return the slot position
+	 */
+	private int getSlotPosition(final int hash, final int probe) {
+		return HEADER_SIZE + ((hash + probe) & (this.capacity - 1)) * this.slotSize;
+	}
+
+
+	/**
+	 * Returns whether or not the published slot at the given position contains the
+	 * given key.
+	 * @param position the slot position
+	 * @param hash the key's hash
+	 * @param key the key
+	 * @return true if the slot contains the key, false otherwise
+	 */
+	private boolean matches(final int position, final int hash, final byte[] key) {
+		final int keyLength = this.buffer.getShort(position + 8);
+		if (keyLength <= 0 || keyLength > this.maxEntryLength) return false;
+		if (this.buffer.getInt(position + 4) != hash || keyLength != key.length) return false;
+		for (int index = 0; index < key.length; ++index) {
+			if (this.buffer.get(position + 12 + index) != key[index]) return false;
+		}
+		return true;
+	}
+
+
+	/**
+	 * Checks that the given packed board matches the receiver's dimension and fits a slot.
+	 * @param entry the packed board
+	 * @throws NullPointerException if the given board is null
+	 * @throws IllegalArgumentException if the given board doesn't match the receiver's dimension
+	 */
+	private void checkEntry(final byte[] entry) {
+		if (entry.length == 0 || entry.length > this.maxEntryLength || entry[0] != this.dimension) throw new IllegalArgumentException();
+	}
+
+
+	/**
+	 * Returns the spread hash code of the given key.
+	 * @param key the key
+	 * @return the hash code
+	 */
+	private static int hash(final byte[] key) {
+		final int hash = Arrays.hashCode(key);
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,567 @@
+package de.htw.ds.sudoku;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import de.htw.ds.TypeMetadata;
+import de.htw.ds.sudoku.Sudoku.ElementType;
+
+
+/**
+ * <p>Instances of this class maintain the digits used within each row, column and sector
+ * of a Sudoku riddle as bit masks, with bit <tt>n</tt> being set if digit <tt>n</tt> is
+ * already in use, plus the remaining candidates of each unresolved cell. Note that long
+ * masks are required because dimension 6 riddles use 36 digits.</p>
+ * <p>Placing a digit only removes it from the candidates of the cell's peers, and queues
+ * the peers whose candidate count drops to zero or one, plus the cell's elements for
+ * hidden single analysis. {@link #propagate()} then works off these queues until no
+ * further digit can be deduced, which keeps propagation roughly linear in the number
+ * of placements instead of rescanning the whole riddle after each one.</p>
+ * <p>Digits must be set using {@link #setDigit(int, byte)} while an instance is in use,
+ * otherwise the masks get out of sync with the parent's digits.</p>
+ * <p>All modifications after construction, including the parent's digits, are recorded
+ * on an undo trail, which allows backtracking searches to revert a branch using
+ * {@link #undo(int)} instead of cloning the riddle for each branch.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SudokuCandidates {
+
+	/**
+	 * Contains the digit indices of each element, indexed by dimension and element index.
+	 * Element indices <tt>[0, radix[</tt> denote rows, <tt>[radix, 2*radix[</tt> columns,
+	 * and <tt>[2*radix, 3*radix[</tt> sectors.
+	 */
+	private static final int[][][] ELEMENTS = new int[7][][];
+	static {
+		for (int dimension = 2; dimension < ELEMENTS.length; ++dimension) {
+			final int radix = dimension * dimension;
+			final int[][] elements = new int[3 * radix][radix];
+			for (int index = 0; index < radix * radix; ++index) {
+				final int rowIndex = index / radix;
+				final int columnIndex = index % radix;
+				final int sectorIndex = sectorIndex(dimension, rowIndex, columnIndex);
+				elements[rowIndex][columnIndex] = index;
+				elements[radix + columnIndex][rowIndex] = index;
+				elements[2 * radix + sectorIndex][rowIndex % dimension * dimension + columnIndex % dimension] = index;
+			}
+			ELEMENTS[dimension] = elements;
+		}
+	}
+
+	private final Sudoku parent;
+	private final int[][] elements;
+	private final long digitMask;
+	private final long[] elementMasks;
+	private final long[] cellCandidates;
+	private final int[] cellQueue;
+	private final boolean[] cellQueued;
+	private final int[] elementQueue;
+	private final boolean[] elementQueued;
+	private int cellQueueSize;
+	private int elementQueueSize;
+	private boolean consistent;
+	private int[] trailSlots;
+	private long[] trailValues;
+	private int trailSize;
+	private SudokuDeduction.Scratch scratch;
+
+
+	/**
+	 * Public constructor. Initially, all cells with less than two candidates and all
+	 * elements are queued for propagation.
+	 * @param parent the sudoku whose digits are analyzed
+	 * @throws NullPointerException if the given parent is null
+	 */
+	public SudokuCandidates(final Sudoku parent) {
+		super();
+
+		final int cellCount = parent.getDigits().length;
+		final int radix = parent.getRadix();
+		this.parent = parent;
+		this.elements = ELEMENTS[parent.getDimension()];
+		this.digitMask = -1L >>> (Long.SIZE - radix);
+		this.elementMasks = new long[3 * radix];
+		this.cellCandidates = new long[cellCount];
+		this.cellQueue = new int[cellCount];
+		this.cellQueued = new boolean[cellCount];
+		this.elementQueue = new int[3 * radix];
+		this.elementQueued = new boolean[3 * radix];
+		this.trailSlots = new int[4 * cellCount];
+		this.trailValues = new long[4 * cellCount];
+		this.reset();
+	}
+
+
+	/**
+	 * Reinitializes the receiver from the parent's current digits, reusing it's arrays.
+	 * This allows the parent's digits to be modified using it's setters between searches,
+	 * for example to clear a digit, which cannot be recorded on the undo trail. Afterwards,
+	 * the undo trail is empty, and all cells with less than two candidates and all
+	 * elements are queued for propagation.
+	 */
+	public void reset() {
+		final byte[] digits = this.parent.getDigits();
+		Arrays.fill(this.elementMasks, 0);
+		Arrays.fill(this.cellQueued, false);
+		Arrays.fill(this.elementQueued, false);
+		this.cellQueueSize = 0;
+		this.elementQueueSize = 0;
+		this.consistent = true;
+
+		for (int index = 0; index < digits.length; ++index) {
+			if (digits[index] >= 0) this.mark(index, digits[index]);
+		}
+		for (int index = 0; index < digits.length; ++index) {
+			this.cellCandidates[index] = 0;
+			if (digits[index] < 0) {
+				this.cellCandidates[index] = this.getElementCandidates(index);
+				if (Long.bitCount(this.cellCandidates[index]) <= 1) this.queueCell(index);
+			}
+		}
+		for (int elementIndex = 0; elementIndex < this.elementMasks.length; ++elementIndex) {
+			this.queueElement(elementIndex);
+		}
+		this.trailSize = 0;
+	}
+
+
+	/**
+	 * Returns the parent sudoku.
+	 * @return the parent
+	 */
+	public Sudoku getParent() {
+		return this.parent;
+	}
+
+
+	/**
+	 * Returns the scratch arrays used by logical deductions, which are allocated
+	 * on first use and reused afterwards.
+	 * @return the scratch arrays
+	 */
+	SudokuDeduction.Scratch getScratch() {
+		if (this.scratch == null) this.scratch = new SudokuDeduction.Scratch(this.parent.getRadix());
+		return this.scratch;
+	}
+
+
+	/**
+	 * Returns false if a contradiction has been detected, i.e. the parent's digits
+	 * cannot lead to a solution, true otherwise.
+	 * @return whether or not the parent may still be solvable
+	 */
+	public boolean isConsistent() {
+		return this.consistent;
+	}
+
+
+	/**
+	 * Returns the candidates that are possible for the given digit index, i.e. all
+	 * digits that are neither used within the cell's row, nor it's column, nor it's
+	 * sector, nor have otherwise been eliminated. Note that the result is meaningless
+	 * if the cell's digit is already set.
+	 * @param digitIndex the digit index to be analyzed
+	 * @return the candidate mask
+	 * @throws ArrayIndexOutOfBoundsException if the given index is out of range
+	 */
+	public long getCandidates(final int digitIndex) {
+		return this.cellCandidates[digitIndex];
+	}
+
+
+	/**
+	 * Returns the candidates that are possible for the unresolved cells of the
+	 * row/column/sector element defined by the given digit index, except for the
+	 * ones at the given digit index.
+	 * @param elementType the element type
+	 * @param digitIndex the digit index to be analyzed
+	 * @return the candidate mask
+	 * @throws NullPointerException if the given type is null
+	 * @throws IllegalArgumentException if the given digit index is out of range
+	 */
+	public long getAntiCandidates(final ElementType elementType, final int digitIndex) {
+		final byte[] digits = this.parent.getDigits();
+		if (digitIndex < 0 || digitIndex >= digits.length) throw new IllegalArgumentException();
+
+		final int[] element = this.elements[elementIndex(elementType, this.parent.getDimension(), digitIndex)];
+		long result = 0;
+		for (final int index : element) {
+			if (index != digitIndex && digits[index] < 0) result |= this.cellCandidates[index];
+		}
+		return result;
+	}
+
+
+	/**
+	 * Returns the index of the unresolved cell with the least candidates, which is
+	 * the best pivot for branching.
+	 * @return the digit index, or -1 if all cells are resolved
+	 */
+	public int getPivotIndex() {
+		final byte[] digits = this.parent.getDigits();
+		int pivotIndex = -1, pivotCount = Integer.MAX_VALUE;
+		for (int index = 0; index < digits.length; ++index) {
+			if (digits[index] < 0) {
+				final int count = Long.bitCount(this.cellCandidates[index]);
+				if (count < pivotCount) {
+					pivotIndex = index;
+					pivotCount = count;
+					if (count <= 2) break;
+				}
+			}
+		}
+		return pivotIndex;
+	}
+
+
+	/**
+	 * Sets the parent's digit at the given index, marks it as used within the cell's
+	 * row, column and sector, and removes it from the candidates of the cell's peers.
+	 * Peers whose candidate count drops to zero or one are queued for propagation.
+	 * @param digitIndex the digit index
+	 * @param digit the digit
+	 * @throws ArrayIndexOutOfBoundsException if the given index is out of range
+	 */
+	public void setDigit(final int digitIndex, final byte digit) {
+		final byte[] digits = this.parent.getDigits();
+		this.record(-digitIndex - 1, digits[digitIndex]);
+		this.parent.setDigit(digitIndex, digit);
+		this.setCandidates(digitIndex, 0);
+		this.mark(digitIndex, digit);
+
+		final long digitBit = 1L << digit;
+		final int dimension = this.parent.getDimension();
+		for (int type = 0; type < 3; ++type) {
+			final int elementIndex = elementIndex(type, dimension, digitIndex);
+			for (final int index : this.elements[elementIndex]) {
+				if (digits[index] < 0 && (this.cellCandidates[index] & digitBit) != 0) {
+					this.setCandidates(index, this.cellCandidates[index] & ~digitBit);
+					if (Long.bitCount(this.cellCandidates[index]) <= 1) this.queueCell(index);
+				}
+			}
+			this.queueElement(elementIndex);
+		}
+	}
+
+
+	/**
+	 * Works off the propagation queues. Queued cells with a single candidate are set
+	 * to it (naked singles), and queued elements are analyzed for digits that fit
+	 * only a single cell (hidden singles), until no further digit can be deduced.
+	 * @return false if a contradiction has been detected, true otherwise
+	 */
+	public boolean propagate() {
+		final byte[] digits = this.parent.getDigits();
+		while (this.consistent) {
+			if (this.cellQueueSize > 0) {
+				final int index = this.cellQueue[--this.cellQueueSize];
+				this.cellQueued[index] = false;
+				if (digits[index] >= 0) continue;
+
+				final long candidates = this.cellCandidates[index];
+				if (candidates == 0) {
+					this.consistent = false;
+				} else if (Long.bitCount(candidates) == 1) {
+					this.setDigit(index, (byte) Long.numberOfTrailingZeros(candidates));
+				}
+			} else if (this.elementQueueSize > 0) {
+				final int elementIndex = this.elementQueue[--this.elementQueueSize];
+				this.elementQueued[elementIndex] = false;
+				this.analyzeElement(elementIndex);
+			} else {
+				break;
+			}
+		}
+		return this.consistent;
+	}
+
+
+	/**
+	 * Propagates, and then applies the given logical deductions in their natural order,
+	 * starting over with the first one whenever one of them eliminated candidates, until
+	 * none of them is able to eliminate any further candidates.
+	 * @param deductions the logical deductions to apply
+	 * @return false if a contradiction has been detected, true otherwise
+	 * @throws NullPointerException if the given deductions are null
+	 */
+	public boolean deduce(final SudokuDeductions deductions) {
+		while (this.propagate()) {
+			if (deductions.apply(this) == 0) return true;
+		}
+		return false;
+	}
+
+
+	/**
+	 * Removes the given candidates from the given cell. If any are removed, the cell's
+	 * elements are queued for hidden single analysis, and the cell itself is queued for
+	 * propagation if it's candidate count drops to zero or one.
+	 * @param digitIndex the digit index
+	 * @param mask the candidate mask to remove
+	 * @return the number of candidates removed
+	 * @throws ArrayIndexOutOfBoundsException if the given index is out of range
+	 */
+	public int eliminate(final int digitIndex, final long mask) {
+		final long candidates = this.cellCandidates[digitIndex];
+		if (this.parent.getDigits()[digitIndex] >= 0 || (candidates & mask) == 0) return 0;
+
+		this.setCandidates(digitIndex, candidates & ~mask);
+		if (Long.bitCount(this.cellCandidates[digitIndex]) <= 1) this.queueCell(digitIndex);
+		final int dimension = this.parent.getDimension();
+		for (int type = 0; type < 3; ++type) {
+			this.queueElement(elementIndex(type, dimension, digitIndex));
+		}
+		return Long.bitCount(candidates & mask);
+	}
+
+
+	/**
+	 * Returns the current size of the undo trail, which serves as a checkpoint
+	 * for {@link #undo(int)}.
+	 * @return the trail size
+	 */
+	public int getTrailSize() {
+		return this.trailSize;
+	}
+
+
+	/**
+	 * Reverts all modifications recorded since the given checkpoint, including the
+	 * parent's digits, and clears the propagation queues. Note that the checkpoint
+	 * must have been taken while the propagation queues were worked off without
+	 * detecting a contradiction, as this state is restored as well.
+	 * @param checkpoint the trail size to return to
+	 * @throws IllegalArgumentException if the given checkpoint is negative or
+	 *    greater than the current trail size
+	 */
+	public void undo(final int checkpoint) {
+		if (checkpoint < 0 || checkpoint > this.trailSize) throw new IllegalArgumentException();
+
+		while (this.trailSize > checkpoint) {
+			final int slot = this.trailSlots[--this.trailSize];
+			final long value = this.trailValues[this.trailSize];
+			if (slot < 0) {
+				this.parent.setDigit(-slot - 1, (byte) value);
+			} else if (slot < this.cellCandidates.length) {
+				this.cellCandidates[slot] = value;
+			} else {
+				this.elementMasks[slot - this.cellCandidates.length] = value;
+			}
+		}
+
+		while (this.cellQueueSize > 0) {
+			this.cellQueued[this.cellQueue[--this.cellQueueSize]] = false;
+		}
+		while (this.elementQueueSize > 0) {
+			this.elementQueued[this.elementQueue[--this.elementQueueSize]] = false;
+		}
+		this.consistent = true;
+	}
+
+
+	/**
+	 * Sets the candidates of the given cell, recording the previous ones.
+	 * @param digitIndex the digit index
+	 * @param candidates the candidate mask
+	 */
+	private void setCandidates(final int digitIndex, final long candidates) {
+		this.record(digitIndex, this.cellCandidates[digitIndex]);
+		this.cellCandidates[digitIndex] = candidates;
+	}
+
+
+	/**
+	 * Records the given previous value on the undo trail. Slots <tt>[0, cellCount[</tt>
+	 * denote cell candidates, slots starting with <tt>cellCount</tt> element masks,
+	 * and negative slots <tt>-digitIndex - 1</tt> the parent's digits. The trail
+	 * grows as needed, but is never shrunk, so searches reusing an instance don't
+	 * allocate once it is large enough.
+	 * @param slot the slot
+	 * @param value the previous value
+	 */
+	private void record(final int slot, final long value) {
+		if (this.trailSize == this.trailSlots.length) {
+			this.trailSlots = Arrays.copyOf(this.trailSlots, 2 * this.trailSize);
+			this.trailValues = Arrays.copyOf(this.trailValues, 2 * this.trailSize);
+		}
+		this.trailSlots[this.trailSize] = slot;
+		this.trailValues[this.trailSize++] = value;
+	}
+
+
+	/**
+	 * Analyzes the given element for digits that are missing, but don't fit any of it's
+	 * unresolved cells, or fit exactly one of them. The former is a contradiction, the
+	 * latter a hidden single that is set immediately.
+	 * @param elementIndex the element index
+	 */
+	private void analyzeElement(final int elementIndex) {
+		final byte[] digits = this.parent.getDigits();
+		final int[] element = this.elements[elementIndex];
+
+		long once = 0, twice = 0;
+		for (final int index : element) {
+			if (digits[index] < 0) {
+				twice |= once & this.cellCandidates[index];
+				once |= this.cellCandidates[index];
+			}
+		}
+
+		final long missingDigits = this.digitMask & ~this.elementMasks[elementIndex];
+		if ((missingDigits & ~once) != 0) {
+			this.consistent = false;
+			return;
+		}
+
+		for (long bits = once & ~twice; bits != 0; bits &= bits - 1) {
+			final long digitBit = Long.lowestOneBit(bits);
+			for (final int index : element) {
+				if (digits[index] < 0 && (this.cellCandidates[index] & digitBit) != 0) {
+					this.setDigit(index, (byte) Long.numberOfTrailingZeros(digitBit));
+					break;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Queues the given cell for propagation, unless it is already queued.
+	 * @param digitIndex the digit index
+	 */
+	private void queueCell(final int digitIndex) {
+		if (!this.cellQueued[digitIndex]) {
+			this.cellQueued[digitIndex] = true;
+			this.cellQueue[this.cellQueueSize++] = digitIndex;
+		}
+	}
+
+
+	/**
+	 * Queues the given element for hidden single analysis, unless it is already queued.
+	 * @param elementIndex the element index
+	 */
+	private void queueElement(final int elementIndex) {
+		if (!this.elementQueued[elementIndex]) {
+			this.elementQueued[elementIndex] = true;
+			this.elementQueue[this.elementQueueSize++] = elementIndex;
+		}
+	}
+
+
+	/**
+	 * Returns the candidates allowed by the row, column and sector masks of the given
+	 * digit index, i.e. their bitwise AND-NOT.
+	 * @param digitIndex the digit index
+	 * @return the candidate mask
+	 */
+	private long getElementCandidates(final int digitIndex) {
+		final int dimension = this.parent.getDimension();
+		final long usedDigits = this.elementMasks[elementIndex(0, dimension, digitIndex)] | this.elementMasks[elementIndex(1, dimension, digitIndex)] | this.elementMasks[elementIndex(2, dimension, digitIndex)];
+		return this.digitMask & ~usedDigits;
+	}
+
+
+	/**
+	 * Marks the given digit as used within the row, column and sector of the given
+	 * digit index. Marking a digit that is already in use is a contradiction.
+	 * @param digitIndex the digit index
+	 * @param digit the digit
+	 */
+	private void mark(final int digitIndex, final byte digit) {
+		final int dimension = this.parent.getDimension();
+		final long digitBit = 1L << digit;
+		for (int type = 0; type < 3; ++type) {
+			final int elementIndex = elementIndex(type, dimension, digitIndex);
+			if ((this.elementMasks[elementIndex] & digitBit) != 0) this.consistent = false;
+			this.record(this.cellCandidates.length + elementIndex, this.elementMasks[elementIndex]);
+			this.elementMasks[elementIndex] |= digitBit;
+		}
+	}
+
+
+	/**
+	 * Returns the index of the sector containing the given row and column.
+	 * @param dimension the sudoku dimension
+	 * @param rowIndex the row index
+	 * @param columnIndex the column index
+	 * @return the sector index
+	 */
+	static int sectorIndex(final int dimension, final int rowIndex, final int columnIndex) {
+		return rowIndex / dimension * dimension + columnIndex / dimension;
+	}
+
+
+	/**
+	 * Returns the index of the element of the given type containing the given digit index,
+	 * with types zero, one and two representing rows, columns and sectors.
+	 * @param type the element type ordinal
+	 * @param dimension the sudoku dimension
+	 * @param digitIndex the digit index
+	 * @return the element index
+	 */
+	static int elementIndex(final int type, final int dimension, final int digitIndex) {
+		final int radix = dimension * dimension;
+		final int rowIndex = digitIndex / radix;
+		final int columnIndex = digitIndex % radix;
+		switch (type) {
+			case 0: return rowIndex;
+			case 1: return radix + columnIndex;
+			default: return 2 * radix + sectorIndex(dimension, rowIndex, columnIndex);
+		}
+	}
+
+
+	/**
+	 * Returns the index of the element of the given type containing the given digit index.
+	 * @param elementType the element type
+	 * @param dimension the sudoku dimension
+	 * @param digitIndex the digit index
+	 * @return the element index
+	 * @throws NullPointerException if the given type is null
+	 */
+	static int elementIndex(final ElementType elementType, final int dimension, final int digitIndex) {
+		return elementIndex(elementType.ordinal(), dimension, digitIndex);
+	}
+
+
+	/**
+	 * Returns the digit indices of the element with the given index.
+	 * @param dimension the sudoku dimension
+	 * @param elementIndex the element index
+	 * @return the digit indices, which must not be modified
+	 */
+	static int[] getElement(final int dimension, final int elementIndex) {
+		return ELEMENTS[dimension][elementIndex];
+	}
+
+
+	/**
+	 * Returns the given candidate mask as a set of digits.
+	 * @param mask the candidate mask
+	 * @return the set of digits whose bits are set
+	 */
+	public static Set<Byte> toSet(final long mask) {
+		final Set<Byte> result = new HashSet<Byte>();
+		for (long bits = mask; bits != 0; bits &= bits - 1) {
+			result.add((byte) Long.numberOfTrailingZeros(bits));
+		}
+		return result;
+	}
+
+
+	/**
+	 * Returns the given set of digits as a candidate mask.
+	 * @param digits the set of digits
+	 * @return the candidate mask
+	 * @throws NullPointerException if the given set is null
+	 */
+	public static long toMask(final Set<Byte> digits) {
+		long result = 0;
+		for (final byte digit : digits) {
+			result |= 1L << digit;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,236 @@
+package de.htw.ds.sudoku;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Codec for the packed representation of Sudoku digits, used to transmit and store boards
+ * instead of one byte per digit. A packed board consists of the dimension byte, followed by
+ * a blank bitmap with one bit per digit that is set for unresolved digits, followed by the
+ * resolved digits packed with 4 bits each for dimensions 2-3, 5 bits for dimension 4, and 6
+ * bits for dimensions 5-6. Bitmap and digits are stored least significant bit first.
+ * Therefore, riddles shrink to roughly a third, and solutions to roughly two thirds of
+ * their unpacked size. Unused bits of the last bitmap and digit bytes must be zero, so
+ * each board has exactly one packed representation, which allows packed boards to be
+ * compared byte by byte, for example as cache keys.</p>
+ * <p>The buffer based methods neither allocate nor retain the given buffers, which allows
+ * callers to reuse them.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SudokuCodec {
+	public static final int MAX_ENCODED_LENGTH = getMaxEncodedLength((byte) 6);
+
+
+	/**
+	 * Prevents external instantiation.
+	 */
+	private SudokuCodec() {
+		super();
+	}
+
+
+	/**
+	 * Returns the number of bits used to pack a digit of the given dimension.
+	 * @param dimension the dimension
+	 * @return the number of bits per digit
+	 * @throws IllegalArgumentException if the given dimension is outside its range [2, 6]
+	 */
+	public static int getBitsPerDigit(final byte dimension) {
+		switch (dimension) {
+			case 2: case 3: return 4;
+			case 4: return 5;
+			case 5: case 6: return 6;
+			default: throw new IllegalArgumentException();
+		}
+	}
+
+
+	/**
+	 * Returns the maximum length of a packed board of the given dimension,
+	 * i.e. the length of a board without unresolved digits.
+	 * @param dimension the dimension
+	 * @return the maximum packed length
+	 * @throws IllegalArgumentException if the given dimension is outside its range [2, 6]
+	 */
+	public static int getMaxEncodedLength(final byte dimension) {
+		return getEncodedLength(dimension, 0);
+	}
+
+
+	/**
+	 * Returns the length of the given digits once packed.
+	 * @param digits the digits
+	 * @return the packed length
+	 * @throws NullPointerException if the given digits are null
+	 * @throws IllegalArgumentException if the given digit count doesn't match any dimension
+	 */
+	public static int getEncodedLength(final byte[] digits) {
+		int blankCount = 0;
+		for (final byte digit : digits) {
+			if (digit < 0) blankCount += 1;
+		}
+		return getEncodedLength(getDimension(digits.length), blankCount);
+	}
+
+
+	/**
+	 * Packs the given digits.
+	 * @param digits the digits, with negative values representing unresolved digits
+	 * @return the packed board
+	 * @throws NullPointerException if the given digits are null
+	 * @throws IllegalArgumentException if the given digit count doesn't match any dimension,
+	 *    or if a digit is out of range
+	 */
+	public static byte[] encode(final byte[] digits) {
+		final ByteBuffer target = ByteBuffer.allocate(getEncodedLength(digits));
+		encode(digits, target);
+		return target.array();
+	}
+
+
+	/**
+	 * Packs the given digits into the given buffer, starting at it's position.
+	 * @param digits the digits, with negative values representing unresolved digits
+	 * @param target the target buffer
+	 * @return the number of bytes written
+	 * @throws NullPointerException if any of the given arguments is null
+	 * @throws IllegalArgumentException if the given digit count doesn't match any dimension,
+	 *    or if a digit is out of range
+	 * @throws java.nio.BufferOverflowException if the given buffer is too small
+	 */
+	public static int encode(final byte[] digits, final ByteBuffer target) {
+		final byte dimension = getDimension(digits.length);
+		final int radix = dimension * dimension;
+		final int bitsPerDigit = getBitsPerDigit(dimension);
+		final int start = target.position();
+		target.put(dimension);
+
+		for (int index = 0; index < digits.length; index += Byte.SIZE) {
+			int blanks = 0;
+			for (int offset = 0, stop = Math.min(Byte.SIZE, digits.length - index); offset < stop; ++offset) {
+				if (digits[index + offset] < 0) blanks |= 1 << offset;
+			}
+			target.put((byte) blanks);
+		}
+
+		long accumulator = 0;
+		int accumulatorSize = 0;
+		for (final byte digit : digits) {
+			if (digit < 0) continue;
+			if (digit >= radix) throw new IllegalArgumentException("digit out of range: " + digit);
+
+			accumulator |= (long) digit << accumulatorSize;
+			accumulatorSize += bitsPerDigit;
+			for (; accumulatorSize >= Byte.SIZE; accumulatorSize -= Byte.SIZE, accumulator >>>= Byte.SIZE) {
+				target.put((byte) accumulator);
+			}
+		}
+		if (accumulatorSize > 0) target.put((byte) accumulator);
+
+		return target.position() - start;
+	}
+
+
+	/**
+	 * Unpacks the given packed board.
+	 * @param data the packed board
+	 * @return the digits, with -1 representing unresolved digits
+	 * @throws NullPointerException if the given data is null
+	 * @throws IllegalArgumentException if the given data is not a valid packed board
+	 */
+	public static byte[] decode(final byte[] data) {
+		if (data.length == 0 || data[0] < 2 || data[0] > 6) throw new IllegalArgumentException("invalid packed board");
+
+		final int radix = data[0] * data[0];
+		final byte[] digits = new byte[radix * radix];
+		final ByteBuffer source = ByteBuffer.wrap(data);
+		decode(source, digits);
+		if (source.hasRemaining()) throw new IllegalArgumentException("trailing bytes after packed board");
+		return digits;
+	}
+
+
+	/**
+	 * Unpacks a packed board from the given buffer, starting at it's position,
+	 * into the given digits.
+	 * @param source the source buffer
+	 * @param digits the target digits, whose length must match the packed board's dimension
+	 * @return the number of bytes read
+	 * @throws NullPointerException if any of the given arguments is null
+	 * @throws IllegalArgumentException if the source doesn't contain a valid packed board,
+	 *    including one with non-zero padding bits, or if it's dimension doesn't match
+	 *    the given digits
+	 */
+	public static int decode(final ByteBuffer source, final byte[] digits) {
+		final int start = source.position();
+		try {
+			final byte dimension = source.get();
+			if (dimension < 2 || dimension > 6) throw new IllegalArgumentException("invalid dimension: " + dimension);
+			if (getDimension(digits.length) != dimension) throw new IllegalArgumentException("dimension mismatch: " + dimension);
+
+			final int radix = dimension * dimension;
+			for (int index = 0; index < digits.length; index += Byte.SIZE) {
+				final int blanks = source.get() & 0xFF;
+				final int stop = Math.min(Byte.SIZE, digits.length - index);
+				if ((blanks >>> stop) != 0) throw new IllegalArgumentException("non-zero padding bits");
+				for (int offset = 0; offset < stop; ++offset) {
+					digits[index + offset] = (byte) (((blanks >>> offset) & 1) == 0 ? 0 : -1);
+				}
+			}
+
+			final int bitsPerDigit = getBitsPerDigit(dimension);
+			final int digitMask = (1 << bitsPerDigit) - 1;
+			long accumulator = 0;
+			int accumulatorSize = 0;
+			for (int index = 0; index < digits.length; ++index) {
+				if (digits[index] < 0) continue;
+
+				if (accumulatorSize < bitsPerDigit) {
+					accumulator |= (source.get() & 0xFFL) << accumulatorSize;
+					accumulatorSize += Byte.SIZE;
+				}
+				final int digit = (int) accumulator & digitMask;
+				if (digit >= radix) throw new IllegalArgumentException("digit out of range: " + digit);
+				digits[index] = (byte) digit;
+				accumulator >>>= bitsPerDigit;
+				accumulatorSize -= bitsPerDigit;
+			}
+			if (accumulator != 0) throw new IllegalArgumentException("non-zero padding bits");
+		} catch (final BufferUnderflowException exception) {
+			throw new IllegalArgumentException("truncated packed board");
+		}
+		return source.position() - start;
+	}
+
+
+	/**
+	 * Returns the length of a packed board of the given dimension with the given
+	 * number of unresolved digits.
+	 * @param dimension the dimension
+	 * @param blankCount the number of unresolved digits
+	 * @return the packed length
+	 * @throws IllegalArgumentException if the given dimension is outside its range [2, 6]
+	 */
+	private static int getEncodedLength(final byte dimension, final int blankCount) {
+		final int digitCount = dimension * dimension * dimension * dimension;
+		final int packedBits = (digitCount - blankCount) * getBitsPerDigit(dimension);
+		return 1 + (digitCount + Byte.SIZE - 1) / Byte.SIZE + (packedBits + Byte.SIZE - 1) / Byte.SIZE;
+	}
+
+
+	/**
+	 * Returns the dimension matching the given digit count.
+	 * @param digitCount the digit count
+	 * @return the dimension
+	 * @throws IllegalArgumentException if the given digit count doesn't match any dimension
+	 */
+	private static byte getDimension(final int digitCount) {
+		for (byte dimension = 2; dimension <= 6; ++dimension) {
+			if (dimension * dimension * dimension * dimension == digitCount) return dimension;
+		}
+		throw new IllegalArgumentException("invalid digit count: " + digitCount);
+	}
+}
@@ -1,22 +1,36 @@
 package de.htw.ds.sudoku;
 
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-
-import com.mysql.jdbc.exceptions.MySQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 
 /**
  * <p>Shop connector class abstracting the use of JDBC for a set of given operations.
  * Note that a connector always works on the same JDBC connection, therefore allowing
  * multiple method calls to operate within a single local transaction, if desired.</p>
+ * <p>Riddles and solutions are passed and stored as packed boards, see {@link SudokuCodec}.
+ * Clients should pass riddles in canonical form, see {@link SudokuTransformation}, so that
+ * riddles differing only by symmetry transformations share a single stored solution.
+ * Rows are keyed by the 128-bit fingerprint of their riddle, see {@link SudokuFingerprint},
+ * and stored riddles are compared with the requested ones on read, so that fingerprint
+ * collisions can never return the solution of a different riddle.</p>
  */
-public final class SudokuConnector {
+public final class SudokuConnector implements SudokuStore {
 
-	private static final String SQL_INSERT_SUDOKU = "INSERT INTO Sudoku (`hash`, `digitsToSolve`, `digitsSolved`) VALUES (?, ?, ?)";
-	private static final String SQL_SELECT_SUDOKU = "SELECT `digitsSolved` FROM Sudoku Sudoku WHERE `hash` = ?";
+	private static final String SQL_SELECT_SUDOKU = "SELECT `digitsToSolve`, `digitsSolved` FROM Sudoku Sudoku WHERE `fingerprint` = ?";
+	private static final int INSERT_BATCH_SIZE = 64;
+	private static final String SQL_UPSERT_SUDOKU = upsertStatement(1);
+	private static final String SQL_UPSERT_SUDOKUS = upsertStatement(INSERT_BATCH_SIZE);
+	private static final int SELECT_BATCH_SIZE = 64;
+	private static final String SQL_SELECT_SUDOKUS = "SELECT `fingerprint`, `digitsToSolve`, `digitsSolved` FROM Sudoku Sudoku WHERE `fingerprint` IN (?" + ", ?".repeat(SELECT_BATCH_SIZE - 1) + ")";
 	
 	private final Connection connection;
 
@@ -38,58 +52,163 @@ public final class SudokuConnector {
 
 
 	/**
-	 * Stores solution in database.
-	
+	 * Stores solution in database. Storing a riddle that is already stored has no effect.
+	 * @param digitsToSolve the packed riddle
+	 * @param digitsSolved the packed solution
 	 * @throws NullPointerException if one of the given values is null
-	 * @throws IllegalStateException if the insert is unsuccessful
+	 * @throws IllegalArgumentException if one of the given values is not a valid packed board
 	 * @throws SQLException if there is a problem with the underlying JDBC connection
 	 */
 	
 	public void storeSolution(byte[] digitsToSolve, byte[] digitsSolved) throws SQLException {
-		final PreparedStatement statement = this.connection.prepareStatement(SQL_INSERT_SUDOKU);
-
-		final String digitsToSolveAsString = new String(digitsToSolve);
-		final String digitsSolvedAsString = new String(digitsSolved);
-		final int hash = digitsToSolveAsString.hashCode();
-		statement.setInt(1, hash);
-		statement.setString(2, digitsToSolveAsString);
-		statement.setString(3, digitsSolvedAsString);
-		
-		try {
-			if(statement.executeUpdate() != 1) throw new IllegalStateException();
-		} catch (MySQLIntegrityConstraintViolationException e) {
-			e.printStackTrace();
+		SudokuCodec.decode(digitsToSolve);
+		SudokuCodec.decode(digitsSolved);
+		try (PreparedStatement statement = this.connection.prepareStatement(SQL_UPSERT_SUDOKU)) {
+			setUpsertParameters(statement, 0, digitsToSolve, digitsSolved);
+			statement.executeUpdate();
 		}
 	}
 	
 	
+	/**
+	 * Stores the given solutions in database, using multi-row inserts of up to 64 rows.
+	 * Riddles that are already stored are skipped.
+	 * @param digitsToSolve the packed riddles
+	 * @param digitsSolved the packed solutions, with the same index as their riddles
+	 * @throws NullPointerException if one of the given values is null
+	 * @throws IllegalArgumentException if the given arrays differ in length, or if one of
+	 *    their elements is not a valid packed board
+	 * @throws SQLException if there is a problem with the underlying JDBC connection
+	 */
+	public void storeSolutions(final byte[][] digitsToSolve, final byte[][] digitsSolved) throws SQLException {
+		if (digitsToSolve.length != digitsSolved.length) throw new IllegalArgumentException();
+		for (int index = 0; index < digitsToSolve.length; ++index) {
+			SudokuCodec.decode(digitsToSolve[index]);
+			SudokuCodec.decode(digitsSolved[index]);
+		}
+		if (digitsToSolve.length == 0) return;
+
+		final int fullLength = digitsToSolve.length - digitsToSolve.length % INSERT_BATCH_SIZE;
+		if (fullLength > 0) {
+			try (PreparedStatement statement = this.connection.prepareStatement(SQL_UPSERT_SUDOKUS)) {
+				for (int offset = 0; offset < fullLength; offset += INSERT_BATCH_SIZE) {
+					for (int row = 0; row < INSERT_BATCH_SIZE; ++row) {
+						setUpsertParameters(statement, row, digitsToSolve[offset + row], digitsSolved[offset + row]);
+					}
+					statement.executeUpdate();
+				}
+			}
+		}
+
+		if (fullLength < digitsToSolve.length) {
+			try (PreparedStatement statement = this.connection.prepareStatement(upsertStatement(digitsToSolve.length - fullLength))) {
+				for (int row = 0; row < digitsToSolve.length - fullLength; ++row) {
+					setUpsertParameters(statement, row, digitsToSolve[fullLength + row], digitsSolved[fullLength + row]);
+				}
+				statement.executeUpdate();
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the stored solutions of the given riddles, using one query per 64 riddles.
+	 * @param digitsToSolve the packed riddles
+	 * @return the packed solutions, with the same index as their riddles, and empty
+	 *    arrays for riddles without stored solution
+	 * @throws NullPointerException if one of the given values is null
+	 * @throws SQLException if there is a problem with the underlying JDBC connection
+	 */
+	public byte[][] querySolutions(final byte[][] digitsToSolve) throws SQLException {
+		final byte[][] result = new byte[digitsToSolve.length][];
+		final Map<ByteBuffer,List<Integer>> indicesByFingerprint = new HashMap<ByteBuffer,List<Integer>>();
+		for (int index = 0; index < digitsToSolve.length; ++index) {
+			result[index] = new byte[0];
+			final ByteBuffer fingerprint = ByteBuffer.wrap(SudokuFingerprint.fingerprint(digitsToSolve[index]));
+			if (!indicesByFingerprint.containsKey(fingerprint)) indicesByFingerprint.put(fingerprint, new ArrayList<Integer>());
+			indicesByFingerprint.get(fingerprint).add(index);
+		}
+		if (indicesByFingerprint.isEmpty()) return result;
+
+		final ByteBuffer[] fingerprints = indicesByFingerprint.keySet().toArray(new ByteBuffer[indicesByFingerprint.size()]);
+		try (PreparedStatement statement = this.connection.prepareStatement(SQL_SELECT_SUDOKUS)) {
+			for (int offset = 0; offset < fingerprints.length; offset += SELECT_BATCH_SIZE) {
+				for (int parameterIndex = 0; parameterIndex < SELECT_BATCH_SIZE; ++parameterIndex) {
+					statement.setBytes(parameterIndex + 1, fingerprints[Math.min(offset + parameterIndex, fingerprints.length - 1)].array());
+				}
+
+				try (ResultSet resultSet = statement.executeQuery()) {
+					while (resultSet.next()) {
+						final List<Integer> indices = indicesByFingerprint.get(ByteBuffer.wrap(resultSet.getBytes("fingerprint")));
+						if (indices == null) continue;
+
+						final byte[] storedDigitsToSolve = resultSet.getBytes("digitsToSolve");
+						final byte[] storedDigitsSolved = resultSet.getBytes("digitsSolved");
+						for (final int index : indices) {
+							if (Arrays.equals(digitsToSolve[index], storedDigitsToSolve)) result[index] = storedDigitsSolved;
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Returns the stored solution of the given riddle, using a single indexed point query.
+	 * @param digitsToSolve the packed riddle
+	 * @return the packed solution, or an empty array if there is none
+	 * @throws NullPointerException if the given value is null
+	 * @throws SQLException if there is a problem with the underlying JDBC connection
+	 */
 	public byte[] querySolution(byte[] digitsToSolve) throws SQLException {
-		final PreparedStatement statement = this.connection.prepareStatement(SQL_SELECT_SUDOKU);
-		
-		final String stringToHash = new String(digitsToSolve);
-		final int hash = stringToHash.hashCode();
-		statement.setInt(1, hash);
-		
-		final ResultSet resultSet = statement.executeQuery();
-	
-		if (resultSet.next()) {
-			return resultSet.getString("digitsSolved").getBytes();
+		try (PreparedStatement statement = this.connection.prepareStatement(SQL_SELECT_SUDOKU)) {
+			statement.setBytes(1, SudokuFingerprint.fingerprint(digitsToSolve));
+			
+			try (ResultSet resultSet = statement.executeQuery()) {
+				if (resultSet.next() && Arrays.equals(digitsToSolve, resultSet.getBytes("digitsToSolve"))) {
+					return resultSet.getBytes("digitsSolved");
+				}
+				return new byte[0];
+			}
 		}
-		return new byte[0];
 	}
 
-	
+	/**
+	 * Returns whether or not a solution of the given riddle is stored.
+	 * @param digitsToSolve the packed riddle
+	 * @return true if a solution is stored, false otherwise
+	 * @throws NullPointerException if the given value is null
+	 * @throws SQLException if there is a problem with the underlying JDBC connection
+	 */
 	public boolean solutionExists(byte[] digitsToSolve) throws SQLException {
-		
-		final PreparedStatement statement = this.connection.prepareStatement(SQL_SELECT_SUDOKU);
-
-		final String digitsToSolveAsString = new String(digitsToSolve);
-		final int hash = digitsToSolveAsString.hashCode();
-		statement.setInt(1, hash);
-		
-		final ResultSet resultSet = statement.executeQuery();
-		return (resultSet.next());
+		return this.querySolution(digitsToSolve).length > 0;
 	}
 
-	
+
+	/**
+	 * Sets the parameters of the given row of an upsert statement.
+	 * @param statement the upsert statement
+	 * @param row the row index
+	 * @param digitsToSolve the packed riddle
+	 * @param digitsSolved the packed solution
+	 * @throws SQLException if there is a problem with the underlying JDBC connection
+	 */
+	private static void setUpsertParameters(final PreparedStatement statement, final int row, final byte[] digitsToSolve, final byte[] digitsSolved) throws SQLException {
+		statement.setBytes(3 * row + 1, SudokuFingerprint.fingerprint(digitsToSolve));
+		statement.setBytes(3 * row + 2, digitsToSolve);
+		statement.setBytes(3 * row + 3, digitsSolved);
+	}
+
+
+	/**
+	 * Returns a multi-row insert statement with the given number of rows, which leaves
+	 * rows with duplicate keys untouched instead of failing.
+	 * @param rowCount the number of rows
+	 * @return the SQL statement
+	 */
+	private static String upsertStatement(final int rowCount) {
+		return "INSERT INTO Sudoku (`fingerprint`, `digitsToSolve`, `digitsSolved`) VALUES (?, ?, ?)" + ", (?, ?, ?)".repeat(rowCount - 1) + " ON DUPLICATE KEY UPDATE `fingerprint` = `fingerprint`";
+	}
 }
@@ -0,0 +1,536 @@
+package de.htw.ds.sudoku;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Read-only view of a binary riddle corpus file. A corpus starts with a 16 byte header
+ * (big endian) consisting of the magic number {@link #MAGIC}, a version byte, the dimension
+ * byte, a flags byte, a reserved byte, and the riddle count as long. The header is followed
+ * by the riddle section, and optionally by a solution section of the same size containing
+ * the solution of the riddle with the same index. Each record of both sections is a slot of
+ * {@link SudokuCodec#getMaxEncodedLength(byte)} bytes holding a board packed by
+ * {@link SudokuCodec}, followed by zero padding, so records keep fixed positions while
+ * taking roughly two thirds of one byte per digit. A solution record consisting of
+ * unresolved digits only marks a riddle without solution.</p>
+ * <p>The file is memory mapped, and records are handed out as zero-copy views. Because a
+ * single mapping is limited to 2GB, the file is mapped in segments of whole records.
+ * Instances are thread-safe, which allows parallel workers to process the ranges returned
+ * by {@link #split(int)} concurrently.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SudokuCorpus implements Closeable {
+	public static final int MAGIC = 0x53444B43;
+	public static final byte VERSION = 2;
+	public static final int HEADER_SIZE = 16;
+	private static final byte FLAG_SOLUTIONS = 0x01;
+
+	private final FileChannel channel;
+	private final byte dimension;
+	private final long count;
+	private final boolean solutions;
+	private final int recordSize;
+	private final long segmentRecordCount;
+	private final MappedByteBuffer[] segments;
+
+
+	/**
+	 * Public constructor, which maps the given corpus file.
+	 * @param path the corpus file path
+	 * @throws NullPointerException if the given path is null
+	 * @throws IOException if there is an I/O related problem, or if the file is not
+	 *    a valid corpus
+	 */
+	public SudokuCorpus(final Path path) throws IOException {
+		super();
+
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining()) {
+				if (this.channel.read(header, header.position()) == -1) break;
+			}
+			header.flip();
+			if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) throw new IOException("not a sudoku corpus: " + path);
+			if (header.get() != VERSION) throw new IOException("unsupported corpus version: " + path);
+
+			this.dimension = header.get();
+			this.solutions = (header.get() & FLAG_SOLUTIONS) != 0;
+			header.get();
+			this.count = header.getLong();
+			if (this.dimension < 2 || this.dimension > 6 || this.count < 0) throw new IOException("corrupt corpus header: " + path);
+
+			this.recordSize = SudokuCodec.getMaxEncodedLength(this.dimension);
+			final long recordCount = this.solutions ? 2 * this.count : this.count;
+			if (this.channel.size() != HEADER_SIZE + recordCount * this.recordSize) throw new IOException("corrupt corpus size: " + path);
+
+			this.segmentRecordCount = Integer.MAX_VALUE / this.recordSize;
+			this.segments = new MappedByteBuffer[(int) ((recordCount + this.segmentRecordCount - 1) / this.segmentRecordCount)];
+			for (int index = 0; index < this.segments.length; ++index) {
+				final long position = HEADER_SIZE + index * this.segmentRecordCount * this.recordSize;
+				final long size = Math.min(this.segmentRecordCount, recordCount - index * this.segmentRecordCount) * this.recordSize;
+				this.segments[index] = this.channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+			}
+		} catch (final IOException exception) {
+			this.channel.close();
+			throw exception;
+		}
+	}
+
+
+	/**
+	 * Closes the underlying file channel. Note that the mappings stay valid until
+	 * they are garbage collected.
+	 * @throws IOException if there is an I/O related problem
+	 */
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+
+	/**
+	 * Returns the dimension of the riddles.
+	 * @return the dimension
+	 */
+	public byte getDimension() {
+		return this.dimension;
+	}
+
+
+	/**
+	 * Returns the number of riddles.
+	 * @return the riddle count
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+
+	/**
+	 * Returns whether or not the corpus contains a solution section.
+	 * @return true if there are solutions, false otherwise
+	 */
+	public boolean hasSolutions() {
+		return this.solutions;
+	}
+
+
+	/**
+	 * Returns a read-only zero-copy view of the riddle with the given index.
+	 * @param index the riddle index
+	 * @return the riddle record, i.e. a packed board followed by zero padding
+	 * @throws IndexOutOfBoundsException if the given index is out of range
+	 */
+	public ByteBuffer getRiddle(final long index) {
+		if (index < 0 || index >= this.count) throw new IndexOutOfBoundsException();
+		return this.getRecord(index);
+	}
+
+
+	/**
+	 * Returns a read-only zero-copy view of the solution of the riddle with the given index.
+	 * @param index the riddle index
+	 * @return the solution record, i.e. a packed board followed by zero padding
+	 * @throws IndexOutOfBoundsException if the given index is out of range
+	 * @throws IllegalStateException if the corpus doesn't contain solutions
+	 */
+	public ByteBuffer getSolution(final long index) {
+		if (!this.solutions) throw new IllegalStateException();
+		if (index < 0 || index >= this.count) throw new IndexOutOfBoundsException();
+		return this.getRecord(this.count + index);
+	}
+
+
+	/**
+	 * Unpacks the riddle with the given index into the digits of the given target.
+	 * @param index the riddle index
+	 * @param target the target sudoku
+	 * @throws NullPointerException if the given target is null
+	 * @throws IllegalArgumentException if the given target's dimension doesn't match,
+	 *    or if the riddle record is not a valid packed board
+	 * @throws IndexOutOfBoundsException if the given index is out of range
+	 */
+	public void readRiddle(final long index, final Sudoku target) {
+		if (target.getDimension() != this.dimension) throw new IllegalArgumentException();
+		SudokuCodec.decode(this.getRiddle(index), target.getDigits());
+	}
+
+
+	/**
+	 * Splits the riddles into the given number of contiguous ranges of roughly equal
+	 * size, which may be processed by parallel workers. Fewer ranges are returned if
+	 * there are less riddles than ranges requested.
+	 * @param rangeCount the number of ranges
+	 * @return the ranges
+	 * @throws IllegalArgumentException if the given range count is not positive
+	 */
+	public List<Range> split(final int rangeCount) {
+		if (rangeCount <= 0) throw new IllegalArgumentException();
+
+		final List<Range> result = new ArrayList<Range>();
+		final long effectiveCount = Math.max(1, Math.min(rangeCount, this.count));
+		for (long index = 0; index < effectiveCount; ++index) {
+			final long start = this.count * index / effectiveCount;
+			final long stop = this.count * (index + 1) / effectiveCount;
+			if (stop > start) result.add(new Range(start, stop));
+		}
+		return result;
+	}
+
+
+	/**
+	 * Returns a read-only zero-copy view of the record with the given global index,
+	 * with the solution records following the riddle records.
+	 * @param recordIndex the global record index
+	 * @return the record
+	 */
+	private ByteBuffer getRecord(final long recordIndex) {
+		final MappedByteBuffer segment = this.segments[(int) (recordIndex / this.segmentRecordCount)];
+		final int offset = (int) (recordIndex % this.segmentRecordCount) * this.recordSize;
+		return segment.asReadOnlyBuffer().position(offset).limit(offset + this.recordSize).slice();
+	}
+
+
+	/**
+	 * Application entry point. Supports converting a text file with one riddle per line
+	 * into a corpus, and solving the riddles of a corpus in parallel ranges, writing a
+	 * corpus including solutions.
+	 * @param args the given runtime arguments
+	 * @throws IOException if there is an I/O related problem
+	 * @throws InterruptedException if the current thread is interrupted while waiting
+	 */
+	public static void main(final String[] args) throws IOException, InterruptedException {
+		if (args.length == 4 && args[0].equals("convert")) {
+			convert(Byte.parseByte(args[1]), Paths.get(args[2]), Paths.get(args[3]));
+		} else if (args.length == 4 && args[0].equals("solve")) {
+			final long start = System.currentTimeMillis();
+			final Class<? extends SudokuPlugin> pluginClass;
+			try {
+				pluginClass = Class.forName(args[1], true, Thread.currentThread().getContextClassLoader()).asSubclass(SudokuPlugin.class);
+			} catch (final ClassNotFoundException exception) {
+				System.out.println(exception.getMessage());
+				return;
+			}
+			final long count = solve(pluginClass, Paths.get(args[2]), Paths.get(args[3]));
+			System.out.println(count + " riddles solved in " + (System.currentTimeMillis() - start) + "ms");
+		} else {
+			System.out.println("Parameter syntax: convert <dimension:2-6> <textPath> <corpusPath>");
+			System.out.println("                  solve <pluginClass:String> <corpusPath> <resultCorpusPath>");
+		}
+	}
+
+
+	/**
+	 * Converts the given text file with one riddle per line, with '.' representing
+	 * unresolved digits, into a corpus without solution section. Empty lines are skipped.
+	 * @param dimension the dimension of the riddles
+	 * @param textPath the text file path
+	 * @param corpusPath the corpus file path
+	 * @throws IOException if there is an I/O related problem, or if a line is not a valid riddle
+	 */
+	private static void convert(final byte dimension, final Path textPath, final Path corpusPath) throws IOException {
+		final int radix = dimension * dimension;
+		long count = 0;
+		try (BufferedReader reader = Files.newBufferedReader(textPath, StandardCharsets.US_ASCII)) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (!line.trim().isEmpty()) count += 1;
+			}
+		}
+
+		try (BufferedReader reader = Files.newBufferedReader(textPath, StandardCharsets.US_ASCII); Writer writer = new Writer(corpusPath, dimension, count, false)) {
+			final byte[] digits = new byte[radix * radix];
+			long index = 0;
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				final String text = line.trim();
+				if (text.isEmpty()) continue;
+				if (text.length() != digits.length) throw new IOException("riddle " + index + " doesn't have " + digits.length + " digits");
+
+				for (int digitIndex = 0; digitIndex < digits.length; ++digitIndex) {
+					final char character = text.charAt(digitIndex);
+					digits[digitIndex] = (byte) Character.digit(character, radix);
+					if (digits[digitIndex] == -1 && character != '.') throw new IOException("riddle " + index + " contains invalid digit '" + character + "'");
+				}
+				writer.writeRiddle(index++, digits);
+			}
+		}
+	}
+
+
+	/**
+	 * Solves the riddles of the given corpus in parallel, using one worker thread per
+	 * processor and corpus range, and writes them including their solutions.
+	 * @param pluginClass the plugin class used to solve the riddles
+	 * @param corpusPath the corpus file path
+	 * @param resultPath the result corpus file path
+	 * @return the number of riddles solved
+	 * @throws IOException if there is an I/O related problem
+	 * @throws InterruptedException if the current thread is interrupted while waiting
+	 */
+	private static long solve(final Class<? extends SudokuPlugin> pluginClass, final Path corpusPath, final Path resultPath) throws IOException, InterruptedException {
+		try (SudokuCorpus corpus = new SudokuCorpus(corpusPath); Writer writer = new Writer(resultPath, corpus.getDimension(), corpus.getCount(), true)) {
+			final List<RangeSolver> solvers = new ArrayList<RangeSolver>();
+			final List<Thread> threads = new ArrayList<Thread>();
+			for (final Range range : corpus.split(Runtime.getRuntime().availableProcessors())) {
+				final RangeSolver solver = new RangeSolver(pluginClass, corpus, range, writer);
+				solvers.add(solver);
+				threads.add(new Thread(solver));
+			}
+			for (final Thread thread : threads) {
+				thread.start();
+			}
+			for (final Thread thread : threads) {
+				thread.join();
+			}
+			for (final RangeSolver solver : solvers) {
+				final Throwable failure = solver.failure;
+				if (failure instanceof IOException) throw (IOException) failure;
+				if (failure instanceof Error) throw (Error) failure;
+				if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+			}
+			return corpus.getCount();
+		}
+	}
+
+
+
+	/**
+	 * <p>Contiguous range of riddle indices.</p>
+	 */
+	public static final class Range {
+		private final long start;
+		private final long stop;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param start the first riddle index (inclusive)
+		 * @param stop the last riddle index (exclusive)
+		 */
+		private Range(final long start, final long stop) {
+			this.start = start;
+			this.stop = stop;
+		}
+
+
+		/**
+		 * Returns the first riddle index.
+		 * @return the inclusive start index
+		 */
+		public long getStart() {
+			return this.start;
+		}
+
+
+		/**
+		 * Returns the riddle index following the last one.
+		 * @return the exclusive stop index
+		 */
+		public long getStop() {
+			return this.stop;
+		}
+	}
+
+
+
+	/**
+	 * <p>Writer creating a corpus file with a fixed riddle count. Records are written at
+	 * their final file positions, therefore they may be written in any order, and by
+	 * multiple threads concurrently. Records that are never written consist of zero bytes,
+	 * which makes them invalid packed boards, so all of them should be written before closing.</p>
+	 */
+	public static final class Writer implements Closeable {
+		private final FileChannel channel;
+		private final long count;
+		private final int digitCount;
+		private final int recordSize;
+		private final boolean solutions;
+
+
+		/**
+		 * Public constructor, which creates or truncates the given corpus file and
+		 * writes it's header.
+		 * @param path the corpus file path
+		 * @param dimension the dimension of the riddles
+		 * @param count the number of riddles
+		 * @param solutions whether or not the corpus contains a solution section
+		 * @throws NullPointerException if the given path is null
+		 * @throws IllegalArgumentException if the given dimension is outside its range [2, 6],
+		 *    or the given count is negative
+		 * @throws IOException if there is an I/O related problem
+		 */
+		public Writer(final Path path, final byte dimension, final long count, final boolean solutions) throws IOException {
+			super();
+			if (dimension < 2 || dimension > 6 || count < 0) throw new IllegalArgumentException();
+
+			this.count = count;
+			this.digitCount = dimension * dimension * dimension * dimension;
+			this.recordSize = SudokuCodec.getMaxEncodedLength(dimension);
+			this.solutions = solutions;
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+				header.putInt(MAGIC).put(VERSION).put(dimension).put(solutions ? FLAG_SOLUTIONS : 0).put((byte) 0).putLong(count).flip();
+				this.write(header, 0);
+
+				final long size = HEADER_SIZE + (solutions ? 2 * count : count) * this.recordSize;
+				if (size > HEADER_SIZE) this.write(ByteBuffer.allocate(1), size - 1);
+			} catch (final IOException exception) {
+				this.channel.close();
+				throw exception;
+			}
+		}
+
+
+		/**
+		 * Forces the records written to the storage device, and closes the file.
+		 * @throws IOException if there is an I/O related problem
+		 */
+		public void close() throws IOException {
+			try {
+				this.channel.force(true);
+			} finally {
+				this.channel.close();
+			}
+		}
+
+
+		/**
+		 * Packs the given riddle digits, and writes them at the given index.
+		 * @param index the riddle index
+		 * @param digits the riddle digits
+		 * @throws NullPointerException if the given digits are null
+		 * @throws IllegalArgumentException if the given digits have the wrong length,
+		 *    or if a digit is out of range
+		 * @throws IndexOutOfBoundsException if the given index is out of range
+		 * @throws IOException if there is an I/O related problem
+		 */
+		public void writeRiddle(final long index, final byte[] digits) throws IOException {
+			if (digits.length != this.digitCount) throw new IllegalArgumentException();
+			if (index < 0 || index >= this.count) throw new IndexOutOfBoundsException();
+			this.write(this.pack(digits), HEADER_SIZE + index * this.recordSize);
+		}
+
+
+		/**
+		 * Packs the given solution digits, and writes them at the given index.
+		 * Unresolved digits only mark a riddle without solution.
+		 * @param index the riddle index
+		 * @param digits the solution digits
+		 * @throws NullPointerException if the given digits are null
+		 * @throws IllegalArgumentException if the given digits have the wrong length,
+		 *    or if a digit is out of range
+		 * @throws IndexOutOfBoundsException if the given index is out of range
+		 * @throws IllegalStateException if the corpus doesn't contain solutions
+		 * @throws IOException if there is an I/O related problem
+		 */
+		public void writeSolution(final long index, final byte[] digits) throws IOException {
+			if (!this.solutions) throw new IllegalStateException();
+			if (digits.length != this.digitCount) throw new IllegalArgumentException();
+			if (index < 0 || index >= this.count) throw new IndexOutOfBoundsException();
+			this.write(this.pack(digits), HEADER_SIZE + (this.count + index) * this.recordSize);
+		}
+
+
+		/**
+		 * Returns a record containing the given digits packed, followed by zero padding.
+		 * @param digits the digits
+		 * @return the record buffer
+		 * @throws IllegalArgumentException if a digit is out of range
+		 */
+		private ByteBuffer pack(final byte[] digits) {
+			final ByteBuffer record = ByteBuffer.allocate(this.recordSize);
+			SudokuCodec.encode(digits, record);
+			record.clear();
+			return record;
+		}
+
+
+		/**
+		 * Writes the given buffer's remaining bytes at the given file position.
+		 * @param buffer the buffer
+		 * @param position the file position
+		 * @throws IOException if there is an I/O related problem
+		 */
+		private void write(final ByteBuffer buffer, final long position) throws IOException {
+			for (long offset = position; buffer.hasRemaining(); ) {
+				offset += this.channel.write(buffer, offset);
+			}
+		}
+	}
+
+
+
+	/**
+	 * <p>Worker solving a corpus range, reusing a single riddle instance. Any failure
+	 * is recorded instead of terminating the worker silently, and reported once all
+	 * workers have terminated.</p>
+	 */
+	private static final class RangeSolver implements Runnable {
+		private final Class<? extends SudokuPlugin> pluginClass;
+		private final SudokuCorpus corpus;
+		private final Range range;
+		private final Writer writer;
+		private volatile Throwable failure;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param pluginClass the plugin class used to solve the riddles
+		 * @param corpus the corpus
+		 * @param range the range to be solved
+		 * @param writer the result writer
+		 */
+		public RangeSolver(final Class<? extends SudokuPlugin> pluginClass, final SudokuCorpus corpus, final Range range, final Writer writer) {
+			this.pluginClass = pluginClass;
+			this.corpus = corpus;
+			this.range = range;
+			this.writer = writer;
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void run() {
+			try {
+				final Sudoku riddle = new Sudoku(this.pluginClass.getConstructor().newInstance(), this.corpus.getDimension());
+				final byte[] unsolved = new byte[riddle.getDigits().length];
+				for (int index = 0; index < unsolved.length; ++index) {
+					unsolved[index] = -1;
+				}
+
+				for (long index = this.range.getStart(); index < this.range.getStop(); ++index) {
+					this.corpus.readRiddle(index, riddle);
+					this.writer.writeRiddle(index, riddle.getDigits());
+
+					final Set<Sudoku> solutions = riddle.resolve(1);
+					this.writer.writeSolution(index, solutions.isEmpty() ? unsolved : solutions.iterator().next().getDigits());
+				}
+			} catch (final IOException exception) {
+				this.failure = exception;
+			} catch (final ReflectiveOperationException exception) {
+				this.failure = new IOException("class " + this.pluginClass + " probably lacks public default constructor");
+			} catch (final RuntimeException exception) {
+				this.failure = exception;
+			} catch (final Error error) {
+				this.failure = error;
+			}
+		}
+	}
+}
@@ -0,0 +1,369 @@
+package de.htw.ds.sudoku;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Logical deductions that eliminate cell candidates without branching, in the order
+ * they are applied by {@link SudokuCandidates#deduce(SudokuDeductions)}. Naked and hidden
+ * singles are not part of this enumeration, as they are always performed during
+ * propagation. Which deductions are applied, and how many candidates each of them
+ * eliminated, is kept by {@link SudokuDeductions}.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public enum SudokuDeduction {
+
+	/**
+	 * Two cells of an element sharing the same two candidates, which
+	 * can therefore be eliminated from the element's other cells.
+	 */
+	NAKED_PAIRS {
+		protected int eliminate(final SudokuCandidates candidates, final Scratch scratch) {
+			return eliminateNakedSubsets(candidates, scratch, 2);
+		}
+	},
+
+	/**
+	 * Three cells of an element sharing three candidates, which can
+	 * therefore be eliminated from the element's other cells.
+	 */
+	NAKED_TRIPLES {
+		protected int eliminate(final SudokuCandidates candidates, final Scratch scratch) {
+			return eliminateNakedSubsets(candidates, scratch, 3);
+		}
+	},
+
+	/**
+	 * Two digits that fit only the same two cells of an element, whose
+	 * other candidates can therefore be eliminated.
+	 */
+	HIDDEN_PAIRS {
+		protected int eliminate(final SudokuCandidates candidates, final Scratch scratch) {
+			return eliminateHiddenSubsets(candidates, scratch, 2);
+		}
+	},
+
+	/**
+	 * Three digits that fit only the same three cells of an element,
+	 * whose other candidates can therefore be eliminated.
+	 */
+	HIDDEN_TRIPLES {
+		protected int eliminate(final SudokuCandidates candidates, final Scratch scratch) {
+			return eliminateHiddenSubsets(candidates, scratch, 3);
+		}
+	},
+
+	/**
+	 * A digit that fits only cells of a sector sharing the same row or column,
+	 * which can therefore be eliminated from said row or column outside the sector.
+	 */
+	POINTING_PAIRS {
+		protected int eliminate(final SudokuCandidates candidates, final Scratch scratch) {
+			return eliminateIntersections(candidates, scratch, 2, 0) + eliminateIntersections(candidates, scratch, 2, 1);
+		}
+	},
+
+	/**
+	 * A digit that fits only cells of a row or column sharing the same sector,
+	 * which can therefore be eliminated from said sector outside the row or column.
+	 */
+	BOX_LINE_REDUCTION {
+		protected int eliminate(final SudokuCandidates candidates, final Scratch scratch) {
+			return eliminateIntersections(candidates, scratch, 0, 2) + eliminateIntersections(candidates, scratch, 1, 2);
+		}
+	},
+
+	/**
+	 * A digit that fits exactly two cells in each of two rows (columns), with both
+	 * pairs sharing the same two columns (rows), which can therefore be eliminated
+	 * from said columns (rows) outside the two rows (columns).
+	 */
+	X_WING {
+		protected int eliminate(final SudokuCandidates candidates, final Scratch scratch) {
+			return eliminateXWings(candidates, scratch, 0) + eliminateXWings(candidates, scratch, 1);
+		}
+	};
+
+
+	/**
+	 * Eliminates the candidates refuted by the receiver's deduction.
+	 * @param candidates the candidates
+	 * @param scratch the scratch arrays of the given candidates
+	 * @return the number of candidates eliminated
+	 */
+	protected abstract int eliminate(SudokuCandidates candidates, Scratch scratch);
+
+
+	/**
+	 * Eliminates candidates using naked subsets of the given size within all elements.
+	 * @param candidates the candidates
+	 * @param scratch the scratch arrays
+	 * @param size the subset size
+	 * @return the number of candidates eliminated
+	 */
+	private static int eliminateNakedSubsets(final SudokuCandidates candidates, final Scratch scratch, final int size) {
+		final Sudoku parent = candidates.getParent();
+		final byte[] digits = parent.getDigits();
+		final int[] members = scratch.members;
+		final int[] subset = scratch.subsets[size];
+
+		int result = 0;
+		for (int elementIndex = 0; elementIndex < 3 * parent.getRadix(); ++elementIndex) {
+			final int[] element = SudokuCandidates.getElement(parent.getDimension(), elementIndex);
+			int memberCount = 0, unresolvedCount = 0;
+			for (final int index : element) {
+				if (digits[index] < 0) {
+					final int count = Long.bitCount(candidates.getCandidates(index));
+					if (count >= 2 && count <= size) members[memberCount++] = index;
+					unresolvedCount += 1;
+				}
+			}
+			if (unresolvedCount > size) {
+				result += eliminateNakedSubsets(candidates, element, members, memberCount, subset, 0, 0, 0);
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Recursively combines the given member cells into subsets, and eliminates the
+	 * candidates of each subset whose candidate union has the subset's size from
+	 * the element's other cells.
+	 * @param candidates the candidates
+	 * @param element the digit indices of the element
+	 * @param members the digit indices of the subset member candidates
+	 * @param memberCount the number of subset member candidates
+	 * @param subset the digit indices of the subset
+	 * @param depth the number of subset cells chosen so far
+	 * @param start the first member to be considered
+	 * @param union the candidate union of the subset cells chosen so far
+	 * @return the number of candidates eliminated
+	 */
+	private static int eliminateNakedSubsets(final SudokuCandidates candidates, final int[] element, final int[] members, final int memberCount, final int[] subset, final int depth, final int start, final long union) {
+		if (Long.bitCount(union) > subset.length) return 0;
+		if (depth == subset.length) {
+			if (Long.bitCount(union) != subset.length) return 0;
+
+			int result = 0;
+			for (final int index : element) {
+				boolean subsetMember = false;
+				for (final int subsetIndex : subset) {
+					subsetMember |= index == subsetIndex;
+				}
+				if (!subsetMember) result += candidates.eliminate(index, union);
+			}
+			return result;
+		}
+
+		int result = 0;
+		for (int member = start; member < memberCount; ++member) {
+			subset[depth] = members[member];
+			result += eliminateNakedSubsets(candidates, element, members, memberCount, subset, depth + 1, member + 1, union | candidates.getCandidates(members[member]));
+		}
+		return result;
+	}
+
+
+	/**
+	 * Eliminates candidates using hidden subsets of the given size within all elements.
+	 * @param candidates the candidates
+	 * @param scratch the scratch arrays
+	 * @param size the subset size
+	 * @return the number of candidates eliminated
+	 */
+	private static int eliminateHiddenSubsets(final SudokuCandidates candidates, final Scratch scratch, final int size) {
+		final Sudoku parent = candidates.getParent();
+		final byte[] digits = parent.getDigits();
+		final long[] positions = scratch.positions[0];
+		final int[] members = scratch.members;
+
+		int result = 0;
+		for (int elementIndex = 0; elementIndex < 3 * parent.getRadix(); ++elementIndex) {
+			final int[] element = SudokuCandidates.getElement(parent.getDimension(), elementIndex);
+			int unresolvedCount = 0;
+			for (final int index : element) {
+				if (digits[index] < 0) unresolvedCount += 1;
+			}
+			if (unresolvedCount <= size) continue;
+
+			collectPositions(candidates, element, positions);
+			int memberCount = 0;
+			for (int digit = 0; digit < positions.length; ++digit) {
+				final int count = Long.bitCount(positions[digit]);
+				if (count >= 2 && count <= size) members[memberCount++] = digit;
+			}
+			result += eliminateHiddenSubsets(candidates, element, positions, members, memberCount, size, 0, 0, 0, 0);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Recursively combines the given member digits into subsets, and eliminates all other
+	 * candidates from the cells of each subset whose position union has the subset's size.
+	 * @param candidates the candidates
+	 * @param element the digit indices of the element
+	 * @param positions the candidate positions within the element, indexed by digit
+	 * @param members the subset member candidate digits
+	 * @param memberCount the number of subset member candidate digits
+	 * @param size the subset size
+	 * @param depth the number of subset digits chosen so far
+	 * @param start the first member to be considered
+	 * @param subset the candidate mask of the subset digits chosen so far
+	 * @param union the position union of the subset digits chosen so far
+	 * @return the number of candidates eliminated
+	 */
+	private static int eliminateHiddenSubsets(final SudokuCandidates candidates, final int[] element, final long[] positions, final int[] members, final int memberCount, final int size, final int depth, final int start, final long subset, final long union) {
+		if (Long.bitCount(union) > size) return 0;
+		if (depth == size) {
+			if (Long.bitCount(union) != size) return 0;
+
+			int result = 0;
+			for (long bits = union; bits != 0; bits &= bits - 1) {
+				result += candidates.eliminate(element[Long.numberOfTrailingZeros(bits)], ~subset);
+			}
+			return result;
+		}
+
+		int result = 0;
+		for (int member = start; member < memberCount; ++member) {
+			final int digit = members[member];
+			result += eliminateHiddenSubsets(candidates, element, positions, members, memberCount, size, depth + 1, member + 1, subset | (1L << digit), union | positions[digit]);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Eliminates candidates using the intersections of elements with the given source
+	 * type and elements with the given target type. Whenever a digit fits only cells of
+	 * a source element that share the same target element, it is eliminated from said
+	 * target element's cells outside the source element.
+	 * @param candidates the candidates
+	 * @param scratch the scratch arrays
+	 * @param sourceType the source element type ordinal
+	 * @param targetType the target element type ordinal
+	 * @return the number of candidates eliminated
+	 */
+	private static int eliminateIntersections(final SudokuCandidates candidates, final Scratch scratch, final int sourceType, final int targetType) {
+		final Sudoku parent = candidates.getParent();
+		final byte[] digits = parent.getDigits();
+		final int dimension = parent.getDimension();
+		final int radix = parent.getRadix();
+		final long[] targets = scratch.positions[0];
+
+		int result = 0;
+		for (int sourceIndex = sourceType * radix, sourceStop = sourceIndex + radix; sourceIndex < sourceStop; ++sourceIndex) {
+			final int[] source = SudokuCandidates.getElement(dimension, sourceIndex);
+			for (int digit = 0; digit < radix; ++digit) targets[digit] = 0;
+			for (final int index : source) {
+				if (digits[index] < 0) {
+					final long targetBit = 1L << (SudokuCandidates.elementIndex(targetType, dimension, index) - targetType * radix);
+					for (long bits = candidates.getCandidates(index); bits != 0; bits &= bits - 1) {
+						targets[Long.numberOfTrailingZeros(bits)] |= targetBit;
+					}
+				}
+			}
+
+			for (int digit = 0; digit < radix; ++digit) {
+				if (Long.bitCount(targets[digit]) != 1) continue;
+
+				final int targetIndex = targetType * radix + Long.numberOfTrailingZeros(targets[digit]);
+				for (final int index : SudokuCandidates.getElement(dimension, targetIndex)) {
+					if (SudokuCandidates.elementIndex(sourceType, dimension, index) != sourceIndex) {
+						result += candidates.eliminate(index, 1L << digit);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Eliminates candidates using X-wings based on elements of the given base type,
+	 * which must either be rows or columns.
+	 * @param candidates the candidates
+	 * @param scratch the scratch arrays
+	 * @param baseType the base element type ordinal, zero for rows or one for columns
+	 * @return the number of candidates eliminated
+	 */
+	private static int eliminateXWings(final SudokuCandidates candidates, final Scratch scratch, final int baseType) {
+		final Sudoku parent = candidates.getParent();
+		final int dimension = parent.getDimension();
+		final int radix = parent.getRadix();
+		final int coverType = 1 - baseType;
+		final long[][] positions = scratch.positions;
+
+		for (int baseIndex = 0; baseIndex < radix; ++baseIndex) {
+			collectPositions(candidates, SudokuCandidates.getElement(dimension, baseType * radix + baseIndex), positions[baseIndex]);
+		}
+
+		int result = 0;
+		for (int digit = 0; digit < radix; ++digit) {
+			for (int baseIndex1 = 0; baseIndex1 < radix; ++baseIndex1) {
+				final long pair = positions[baseIndex1][digit];
+				if (Long.bitCount(pair) != 2) continue;
+
+				for (int baseIndex2 = baseIndex1 + 1; baseIndex2 < radix; ++baseIndex2) {
+					if (positions[baseIndex2][digit] != pair) continue;
+
+					for (long bits = pair; bits != 0; bits &= bits - 1) {
+						final int[] cover = SudokuCandidates.getElement(dimension, coverType * radix + Long.numberOfTrailingZeros(bits));
+						for (int position = 0; position < radix; ++position) {
+							if (position != baseIndex1 && position != baseIndex2) {
+								result += candidates.eliminate(cover[position], 1L << digit);
+							}
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Collects the positions of each digit's candidates within the given element,
+	 * with bit <tt>n</tt> representing the element's n-th cell.
+	 * @param candidates the candidates
+	 * @param element the digit indices of the element
+	 * @param positions the candidate positions, indexed by digit
+	 */
+	private static void collectPositions(final SudokuCandidates candidates, final int[] element, final long[] positions) {
+		final byte[] digits = candidates.getParent().getDigits();
+		for (int digit = 0; digit < positions.length; ++digit) positions[digit] = 0;
+		for (int position = 0; position < element.length; ++position) {
+			if (digits[element[position]] < 0) {
+				for (long bits = candidates.getCandidates(element[position]); bits != 0; bits &= bits - 1) {
+					positions[Long.numberOfTrailingZeros(bits)] |= 1L << position;
+				}
+			}
+		}
+	}
+
+
+
+	/**
+	 * <p>Scratch arrays used by the deductions, which are allocated once per
+	 * {@link SudokuCandidates} instance so that applying deductions during a
+	 * search doesn't allocate. Note that instances are not thread-safe.</p>
+	 */
+	static final class Scratch {
+		private final int[] members;
+		private final int[][] subsets;
+		private final long[][] positions;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param radix the sudoku radix
+		 */
+		public Scratch(final int radix) {
+			this.members = new int[radix];
+			this.subsets = new int[][] { null, null, new int[2], new int[3] };
+			this.positions = new long[radix][radix];
+		}
+	}
+}
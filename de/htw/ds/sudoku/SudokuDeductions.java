@@ -0,0 +1,114 @@
+package de.htw.ds.sudoku;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Instances of this class define the logical deductions applied by a plugin in addition
+ * to naked and hidden singles, and count the candidates each of them eliminated, which
+ * allows to assess whether or not a deduction pays for itself on a given mix of riddles.
+ * Each plugin instance owns it's deductions, which are shared with the plugins of it's
+ * riddle's clones, so the counts cover a plugin's solves, but not those of other plugins.</p>
+ * <p>The default deductions of a class can be overridden using the system property
+ * <tt>&lt;class name&gt;.deductions</tt>, for example
+ * <tt>de.htw.ds.sudoku.SudokuPlugin0.deductions=NAKED_PAIRS,POINTING_PAIRS</tt>. An empty
+ * property value disables all deductions.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SudokuDeductions {
+
+	private final Set<SudokuDeduction> stages;
+	private final SudokuDeduction[] stageArray;
+	private final AtomicLongArray eliminationCounts;
+
+
+	/**
+	 * Public constructor.
+	 * @param stages the logical deductions to apply
+	 * @throws NullPointerException if the given set is null
+	 */
+	public SudokuDeductions(final Set<SudokuDeduction> stages) {
+		super();
+
+		final EnumSet<SudokuDeduction> copy = EnumSet.noneOf(SudokuDeduction.class);
+		copy.addAll(stages);
+		this.stages = Collections.unmodifiableSet(copy);
+		this.stageArray = copy.toArray(new SudokuDeduction[copy.size()]);
+		this.eliminationCounts = new AtomicLongArray(SudokuDeduction.values().length);
+	}
+
+
+	/**
+	 * Returns new deductions for instances of the given class, which are read from the
+	 * system property <tt>&lt;class name&gt;.deductions</tt> if it is set, as a comma
+	 * separated list of deduction names. Otherwise, the given default stages are used.
+	 * @param type the class whose deductions are configured
+	 * @param defaultStages the deductions to apply if the system property is not set
+	 * @return the deductions
+	 * @throws NullPointerException if any of the given arguments is null
+	 * @throws IllegalArgumentException if the system property contains an unknown deduction name
+	 */
+	public static SudokuDeductions configure(final Class<?> type, final Set<SudokuDeduction> defaultStages) {
+		final String key = type.getName() + ".deductions";
+		final String value = System.getProperty(key);
+		if (value == null) return new SudokuDeductions(defaultStages);
+
+		final Set<SudokuDeduction> stages = EnumSet.noneOf(SudokuDeduction.class);
+		for (final String name : value.split(",")) {
+			if (name.trim().isEmpty()) continue;
+			try {
+				stages.add(SudokuDeduction.valueOf(name.trim().toUpperCase()));
+			} catch (final IllegalArgumentException exception) {
+				throw new IllegalArgumentException("system property " + key + " contains unknown deduction \"" + name.trim() + "\"");
+			}
+		}
+		return new SudokuDeductions(stages);
+	}
+
+
+	/**
+	 * Returns the logical deductions applied.
+	 * @return the unmodifiable set of deductions
+	 */
+	public Set<SudokuDeduction> getStages() {
+		return this.stages;
+	}
+
+
+	/**
+	 * Returns the number of candidates eliminated by the given deduction, accumulated
+	 * over all solves using the receiver.
+	 * @param deduction the deduction
+	 * @return the elimination count
+	 * @throws NullPointerException if the given deduction is null
+	 */
+	public long getEliminationCount(final SudokuDeduction deduction) {
+		return this.eliminationCounts.get(deduction.ordinal());
+	}
+
+
+	/**
+	 * Applies the receiver's deductions to the given candidates in their natural order,
+	 * until one of them eliminates candidates, and adds the number of eliminated
+	 * candidates to the latter's elimination count. The deductions are iterated as an
+	 * array, and use the scratch arrays of the given candidates, so this doesn't allocate.
+	 * @param candidates the candidates
+	 * @return the number of candidates eliminated
+	 * @throws NullPointerException if the given candidates are null
+	 */
+	int apply(final SudokuCandidates candidates) {
+		for (final SudokuDeduction stage : this.stageArray) {
+			final int count = stage.eliminate(candidates, candidates.getScratch());
+			if (count > 0) {
+				this.eliminationCounts.addAndGet(stage.ordinal(), count);
+				return count;
+			}
+		}
+		return 0;
+	}
+}
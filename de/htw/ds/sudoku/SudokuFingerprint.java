@@ -0,0 +1,128 @@
+package de.htw.ds.sudoku;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>128-bit content fingerprint of packed boards, used as database key instead of a 32-bit
+ * hash code. The fingerprint is the MurmurHash3 x64 128-bit hash of the packed board with
+ * seed 0, serialized as it's two 64-bit halves in little endian byte order. At a table size
+ * of a billion riddles, the probability of any collision is about 10^-21; still, callers
+ * compare the stored riddle with the requested one, so a collision can at worst cause a
+ * lookup to miss, but never return the solution of a different riddle.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SudokuFingerprint {
+	public static final int LENGTH = 16;
+	private static final long C1 = 0x87c37b91114253d5L;
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+
+	/**
+	 * Prevents external instantiation.
+	 */
+	private SudokuFingerprint() {
+		super();
+	}
+
+
+	/**
+	 * Returns the fingerprint of the given packed board.
+	 * @param data the packed board
+	 * @return the 16 byte fingerprint
+	 * @throws NullPointerException if the given data is null
+	 */
+	public static byte[] fingerprint(final byte[] data) {
+		return fingerprint(data, 0);
+	}
+
+
+	/**
+	 * Returns the MurmurHash3 x64 128-bit hash of the given data.
+	 * @param data the data
+	 * @param seed the seed
+	 * @return the 16 byte hash
+	 * @throws NullPointerException if the given data is null
+	 */
+	static byte[] fingerprint(final byte[] data, final int seed) {
+		final ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+		final int blockCount = data.length >>> 4;
+		long h1 = seed & 0xffffffffL;
+		long h2 = seed & 0xffffffffL;
+
+		for (int block = 0; block < blockCount; ++block) {
+			final long k1 = buffer.getLong(block << 4);
+			final long k2 = buffer.getLong((block << 4) + 8);
+
+			h1 ^= mixK1(k1);
+			h1 = Long.rotateLeft(h1, 27) + h2;
+			h1 = h1 * 5 + 0x52dce729;
+
+			h2 ^= mixK2(k2);
+			h2 = Long.rotateLeft(h2, 31) + h1;
+			h2 = h2 * 5 + 0x38495ab5;
+		}
+
+		final int tail = blockCount << 4;
+		long k1 = 0;
+		long k2 = 0;
+		for (int index = data.length - 1; index >= tail; --index) {
+			final long value = data[index] & 0xffL;
+			if (index - tail >= 8) {
+				k2 |= value << ((index - tail - 8) << 3);
+			} else {
+				k1 |= value << ((index - tail) << 3);
+			}
+		}
+		if (data.length - tail > 8) h2 ^= mixK2(k2);
+		if (data.length - tail > 0) h1 ^= mixK1(k1);
+
+		h1 ^= data.length;
+		h2 ^= data.length;
+		h1 += h2;
+		h2 += h1;
+		h1 = mix(h1);
+		h2 = mix(h2);
+		h1 += h2;
+		h2 += h1;
+
+		return ByteBuffer.allocate(LENGTH).order(ByteOrder.LITTLE_ENDIAN).putLong(h1).putLong(h2).array();
+	}
+
+
+	/**
+	 * Returns the first key half mixed.
+	 * @param k1 the first key half
+	 * @return the mixed value
+	 */
+	private static long mixK1(final long k1) {
+		return Long.rotateLeft(k1 * C1, 31) * C2;
+	}
+
+
+	/**
+	 * Returns the second key half mixed.
+	 * @param k2 the second key half
+	 * @return the mixed value
+	 */
+	private static long mixK2(final long k2) {
+		return Long.rotateLeft(k2 * C2, 33) * C1;
+	}
+
+
+	/**
+	 * Returns the given value with it's bits avalanched.
+	 * @param value the value
+	 * @return the mixed value
+	 */
+	private static long mix(final long value) {
+		long result = value ^ (value >>> 33);
+		result *= 0xff51afd7ed558ccdL;
+		result ^= result >>> 33;
+		result *= 0xc4ceb9fe1a85ec53L;
+		return result ^ (result >>> 33);
+	}
+}
@@ -0,0 +1,142 @@
+package de.htw.ds.sudoku;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Generator for Sudoku riddles with relative maximum difficulty and exactly one possible
+ * solution. A riddle is populated with a known solution, which is kept as a witness while
+ * digits are removed in random order. A removal keeps the solution unique exactly if there
+ * is no solution with a different digit at the removed cell, because any other solution
+ * would also solve the riddle before the removal. Therefore, each removal test only searches
+ * for a single solution with the removed cell restricted to the other digits, instead of
+ * counting the solutions of the whole riddle. The search state is reinitialized in place
+ * between removals, so no boards are cloned while reducing. Note that removal tests apply
+ * the logical deductions configured for this class, which default to all of them,
+ * independent of the plugin class of the riddles generated.</p>
+ * <p>Each thread uses it's own {@link SplittableRandom}, split off a common root generator,
+ * which allows riddles to be generated in parallel without contention.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SudokuGenerator {
+	private static final SplittableRandom ROOT_RANDOMIZER = new SplittableRandom();
+	private static final ThreadLocal<SplittableRandom> RANDOMIZER = new ThreadLocal<SplittableRandom>() {
+		protected SplittableRandom initialValue() {
+			synchronized (ROOT_RANDOMIZER) {
+				return ROOT_RANDOMIZER.split();
+			}
+		}
+	};
+
+	private final Class<? extends SudokuPlugin> pluginClass;
+	private final SudokuDeductions deductions;
+
+
+	/**
+	 * Public constructor.
+	 * @param pluginClass the plugin class of the riddles generated
+	 * @throws NullPointerException if the given plugin class is null
+	 * @throws IllegalArgumentException if the given plugin class lacks a public default constructor,
+	 *    or if the configured deductions are invalid
+	 * @see SudokuDeductions#configure(Class, Set)
+	 */
+	public SudokuGenerator(final Class<? extends SudokuPlugin> pluginClass) {
+		super();
+		if (pluginClass == null) throw new NullPointerException();
+
+		this.pluginClass = pluginClass;
+		this.deductions = SudokuDeductions.configure(SudokuGenerator.class, EnumSet.allOf(SudokuDeduction.class));
+		this.newPlugin();
+	}
+
+
+	/**
+	 * Returns the logical deductions applied by the removal tests.
+	 * @return the deductions, including their elimination counts
+	 */
+	public SudokuDeductions getDeductions() {
+		return this.deductions;
+	}
+
+
+	/**
+	 * Generates the given number of riddles in parallel.
+	 * @param dimension the square root of a valid row/column/segment length
+	 * @param count the number of riddles
+	 * @return the riddles
+	 * @throws IllegalArgumentException if the given dimension is outside its range [2, 6],
+	 *    or the given count is negative
+	 */
+	public List<Sudoku> generate(final byte dimension, final int count) {
+		if (count < 0) throw new IllegalArgumentException();
+
+		final Sudoku[] riddles = new Sudoku[count];
+		IntStream.range(0, count).parallel().forEach(index -> {
+			riddles[index] = new Sudoku(this.newPlugin(), dimension);
+			this.generate(riddles[index]);
+		});
+
+		final List<Sudoku> result = new ArrayList<Sudoku>(count);
+		Collections.addAll(result, riddles);
+		return result;
+	}
+
+
+	/**
+	 * Populates the given riddle with a new solution, and reduces it into a riddle with
+	 * relative maximum difficulty and exactly one possible solution. If the current thread
+	 * is interrupted, the reduction stops early, leaving a valid riddle.
+	 * @param riddle the riddle to be overwritten
+	 * @throws NullPointerException if the given riddle is null
+	 */
+	public void generate(final Sudoku riddle) {
+		final SplittableRandom randomizer = RANDOMIZER.get();
+		riddle.populate(randomizer);
+
+		final byte[] digits = riddle.getDigits();
+		final byte[] solution = digits.clone();
+		final int[] indices = new int[digits.length];
+		for (int index = 0; index < indices.length; ++index) {
+			indices[index] = index;
+		}
+		for (int index = indices.length - 1; index > 0; --index) {
+			final int swapIndex = randomizer.nextInt(index + 1);
+			final int swap = indices[index];
+			indices[index] = indices[swapIndex];
+			indices[swapIndex] = swap;
+		}
+
+		final SudokuBacktracker backtracker = new SudokuBacktracker(riddle, this.deductions);
+		for (final int digitIndex : indices) {
+			riddle.setDigit(digitIndex, (byte) -1);
+			backtracker.reset();
+			final boolean ambiguous = backtracker.countSolutions(digitIndex, ~(1L << solution[digitIndex]), 1) > 0;
+			if (ambiguous || Thread.currentThread().isInterrupted()) {
+				riddle.setDigit(digitIndex, solution[digitIndex]);
+				if (!ambiguous) return;
+			}
+		}
+	}
+
+
+	/**
+	 * Returns a new plugin instance.
+	 * @return the plugin
+	 * @throws IllegalArgumentException if the plugin class lacks a public default constructor
+	 */
+	private SudokuPlugin newPlugin() {
+		try {
+			return this.pluginClass.getConstructor().newInstance();
+		} catch (final Exception exception) {
+			throw new IllegalArgumentException("class " + this.pluginClass + " probably lacks public default constructor");
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package de.htw.ds.sudoku;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Storage backend based on a JDBC data source, which runs every operation within it's
+ * own local transaction on a connection of the data source, see {@link SudokuConnector}.
+ * Instances are thread safe if the data source is.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SudokuJdbcStore implements SudokuStore {
+
+	private final DataSource dataSource;
+
+
+	/**
+	 * Public constructor.
+	 * @param dataSource the JDBC data source, preferably a pooled one
+	 * @throws NullPointerException if the given data source is null
+	 */
+	public SudokuJdbcStore(final DataSource dataSource) {
+		super();
+		if (dataSource == null) throw new NullPointerException();
+
+		this.dataSource = dataSource;
+	}
+
+
+	/**
+	 * Returns the JDBC data source.
+	 * @return the data source
+	 */
+	public DataSource getDataSource() {
+		return this.dataSource;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void storeSolution(final byte[] digitsToSolve, final byte[] digitsSolved) throws SQLException {
+		try (Connection connection = this.beginTransaction()) {
+			try {
+				new SudokuConnector(connection).storeSolution(digitsToSolve, digitsSolved);
+				connection.commit();
+			} catch (final SQLException exception) {
+				rollback(connection);
+				throw exception;
+			}
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void storeSolutions(final byte[][] digitsToSolve, final byte[][] digitsSolved) throws SQLException {
+		try (Connection connection = this.beginTransaction()) {
+			try {
+				new SudokuConnector(connection).storeSolutions(digitsToSolve, digitsSolved);
+				connection.commit();
+			} catch (final SQLException exception) {
+				rollback(connection);
+				throw exception;
+			}
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public byte[] querySolution(final byte[] digitsToSolve) throws SQLException {
+		try (Connection connection = this.beginTransaction()) {
+			try {
+				final byte[] digitsSolved = new SudokuConnector(connection).querySolution(digitsToSolve);
+				connection.commit();
+				return digitsSolved;
+			} catch (final SQLException exception) {
+				rollback(connection);
+				throw exception;
+			}
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public byte[][] querySolutions(final byte[][] digitsToSolve) throws SQLException {
+		try (Connection connection = this.beginTransaction()) {
+			try {
+				final byte[][] digitsSolved = new SudokuConnector(connection).querySolutions(digitsToSolve);
+				connection.commit();
+				return digitsSolved;
+			} catch (final SQLException exception) {
+				rollback(connection);
+				throw exception;
+			}
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean solutionExists(final byte[] digitsToSolve) throws SQLException {
+		return this.querySolution(digitsToSolve).length > 0;
+	}
+
+
+	/**
+	 * Returns a connection of the receiver's data source, with auto-commit disabled.
+	 * @return the connection
+	 * @throws SQLException if there is a problem with the underlying JDBC connection
+	 */
+	private Connection beginTransaction() throws SQLException {
+		final Connection connection = this.dataSource.getConnection();
+		try {
+			connection.setAutoCommit(false);
+			return connection;
+		} catch (final SQLException exception) {
+			try { connection.close(); } catch (final Exception nestedException) {}
+			throw exception;
+		}
+	}
+
+
+	/**
+	 * Rolls back the current transaction of the given connection, ignoring any failure.
+	 * @param connection the connection
+	 */
+	private static void rollback(final Connection connection) {
+		try { connection.rollback(); } catch (final Exception exception) {}
+	}
+}
@@ -0,0 +1,768 @@
+package de.htw.ds.sudoku;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Embedded storage backend, which stores solutions within a directory instead of a
+ * database, and therefore requires neither JDBC driver nor network connection. It consists
+ * of an append-only log file of records, and a hash index file that is memory mapped.</p>
+ * <p>Each log record consists of a CRC32 checksum, the lengths of riddle and solution as
+ * two shorts, the packed riddle and the packed solution. The index is an open addressing
+ * hash table of 16 byte slots, which are probed linearly and hold the first half of the
+ * riddle's fingerprint (see {@link SudokuFingerprint}) together with log position and length
+ * of the record. Therefore, a lookup costs one probe sequence within the mapped index and one
+ * positional read of the record, whose riddle is compared with the requested one.</p>
+ * <p>Writers append their records and update the index under an exclusive lock, which
+ * excludes readers only briefly. They then wait for their records to become durable: the
+ * first waiting writer forces the log to disk, covering all records appended so far, while
+ * writers arriving meanwhile wait for the next force. This group commit turns a burst of
+ * concurrent writes into few fsync calls. The index itself is never forced while the store is
+ * open; instead, it is marked clean when the store is closed, and rebuilt by scanning the log
+ * if it isn't clean or doesn't match the log on opening. Corrupt bytes within the log are
+ * skipped up to the next valid record, and counted as dead bytes together with duplicate
+ * records, while corrupt bytes not followed by any valid record are a torn tail, and
+ * truncated. A compaction, which is checked for periodically, rewrites the log without dead
+ * bytes once they exceed a quarter of it.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SudokuLogStore implements SudokuStore, Closeable {
+	public static final int LOG_MAGIC = 0x53444B4C;
+	public static final int INDEX_MAGIC = 0x53444B49;
+	public static final byte VERSION = 1;
+	private static final long COMPACTION_INTERVAL = Long.getLong("de.htw.ds.sudoku.SudokuLogStore.compactionInterval", 60000);
+	private static final String LOG_FILE_NAME = "solutions.log";
+	private static final String INDEX_FILE_NAME = "solutions.index";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final int LOG_HEADER_SIZE = 8;
+	private static final int RECORD_HEADER_SIZE = 8;
+	private static final int INDEX_HEADER_SIZE = 40;
+	private static final int SLOT_SIZE = 16;
+	private static final int MIN_SLOT_COUNT = 4096;
+	private static final int MAX_RECORD_SIZE = RECORD_HEADER_SIZE + 2 * SudokuCodec.MAX_ENCODED_LENGTH;
+
+	private final Path directory;
+	private final ReadWriteLock lock;
+	private final ReentrantLock syncLock;
+	private final Condition syncCondition;
+	private final ScheduledExecutorService compactionExecutor;
+	private FileChannel logChannel;
+	private FileChannel indexChannel;
+	private MappedByteBuffer index;
+	private int slotCount;
+	private int entryCount;
+	private long deadBytes;
+	private volatile long logLength;
+	private volatile long appendedBytes;
+	private long syncedBytes;
+	private boolean syncing;
+	private boolean closed;
+
+
+	/**
+	 * Public constructor, which opens the store within the given directory, creating it's
+	 * files if they don't exist yet. The index is mapped if it is clean, and rebuilt
+	 * otherwise. The store is checked for compaction in intervals given by the system property
+	 * <tt>de.htw.ds.sudoku.SudokuLogStore.compactionInterval</tt>, defaulting to 60000ms.
+	 * @param directory the store directory
+	 * @throws NullPointerException if the given directory is null
+	 * @throws IOException if there is an I/O related problem, or if the log file is not a
+	 *    valid solution log
+	 */
+	public SudokuLogStore(final Path directory) throws IOException {
+		super();
+
+		this.directory = directory;
+		this.lock = new ReentrantReadWriteLock();
+		this.syncLock = new ReentrantLock();
+		this.syncCondition = this.syncLock.newCondition();
+
+		Files.createDirectories(directory);
+		this.logChannel = FileChannel.open(directory.resolve(LOG_FILE_NAME), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		try {
+			if (this.logChannel.size() == 0) {
+				writeFully(this.logChannel, ByteBuffer.allocate(LOG_HEADER_SIZE).putInt(LOG_MAGIC).put(VERSION).rewind(), 0);
+				this.logChannel.force(true);
+			}
+			final ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+			readFully(this.logChannel, header, 0);
+			if (header.getInt(0) != LOG_MAGIC || header.get(4) != VERSION) throw new IOException("not a solution log: " + directory);
+			this.logLength = this.logChannel.size();
+
+			if (!this.mapIndex()) this.rebuildIndex();
+			this.index.put(5, (byte) 0);
+			this.index.force();
+		} catch (final IOException exception) {
+			this.closeChannels();
+			throw exception;
+		}
+		this.appendedBytes = this.logLength;
+		this.syncedBytes = this.logLength;
+
+		this.compactionExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "sudoku-compactor");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.compactionExecutor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					SudokuLogStore.this.compact(false);
+				} catch (final Throwable exception) {
+					try { exception.printStackTrace(); } catch (final Throwable nestedException) {}
+				}
+			}
+		}, COMPACTION_INTERVAL, COMPACTION_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * Returns the number of solutions stored.
+	 * @return the entry count
+	 */
+	public int getEntryCount() {
+		this.lock.readLock().lock();
+		try {
+			return this.entryCount;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Returns the length of the log file.
+	 * @return the log length in bytes
+	 */
+	public long getLogLength() {
+		return this.logLength;
+	}
+
+
+	/**
+	 * Returns the number of log bytes occupied by corrupt or duplicate records, which
+	 * are reclaimed by the next compaction.
+	 * @return the dead bytes
+	 */
+	public long getDeadBytes() {
+		this.lock.readLock().lock();
+		try {
+			return this.deadBytes;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Closes the receiver, forcing the log and marking the index clean, so it can be
+	 * mapped again on the next opening.
+	 * @throws IOException if there is an I/O related problem
+	 */
+	public void close() throws IOException {
+		this.compactionExecutor.shutdownNow();
+
+		this.lock.writeLock().lock();
+		try {
+			if (this.closed) return;
+			this.closed = true;
+
+			this.awaitIdleSync();
+			this.syncing = true;
+			this.syncLock.unlock();
+			boolean synced = false;
+			try {
+				this.logChannel.force(true);
+				synced = true;
+				this.writeIndexHeader(true);
+				this.index.force();
+			} finally {
+				this.closeChannels();
+				this.releaseSync(synced);
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void storeSolution(final byte[] digitsToSolve, final byte[] digitsSolved) throws SQLException {
+		this.storeSolutions(new byte[][] { digitsToSolve }, new byte[][] { digitsSolved });
+	}
+
+
+	/**
+	 * {@inheritDoc} The solutions are appended to the log with a single write, and are
+	 * durable once this method returns.
+	 */
+	public void storeSolutions(final byte[][] digitsToSolve, final byte[][] digitsSolved) throws SQLException {
+		if (digitsToSolve.length != digitsSolved.length) throw new IllegalArgumentException();
+		for (int index = 0; index < digitsToSolve.length; ++index) {
+			SudokuCodec.decode(digitsToSolve[index]);
+			SudokuCodec.decode(digitsSolved[index]);
+		}
+		if (digitsToSolve.length == 0) return;
+
+		final long appendedBytes;
+		this.lock.writeLock().lock();
+		try {
+			this.checkOpen();
+
+			final Set<ByteBuffer> keys = new HashSet<ByteBuffer>();
+			final byte[][] fingerprints = new byte[digitsToSolve.length][];
+			int length = 0;
+			for (int index = 0; index < digitsToSolve.length; ++index) {
+				fingerprints[index] = SudokuFingerprint.fingerprint(digitsToSolve[index]);
+				if (this.find(fingerprints[index], digitsToSolve[index]) == 0 && keys.add(ByteBuffer.wrap(digitsToSolve[index]))) {
+					length += RECORD_HEADER_SIZE + digitsToSolve[index].length + digitsSolved[index].length;
+				} else {
+					fingerprints[index] = null;
+				}
+			}
+			if (length == 0) return;
+
+			final ByteBuffer buffer = ByteBuffer.allocate(length);
+			final long[] positions = new long[digitsToSolve.length];
+			for (int index = 0; index < digitsToSolve.length; ++index) {
+				if (fingerprints[index] == null) continue;
+
+				positions[index] = this.logLength + buffer.position();
+				putRecord(buffer, digitsToSolve[index], digitsSolved[index]);
+			}
+			writeFully(this.logChannel, buffer.flip(), this.logLength);
+			this.logLength += length;
+			this.appendedBytes += length;
+			appendedBytes = this.appendedBytes;
+
+			for (int index = 0; index < digitsToSolve.length; ++index) {
+				if (fingerprints[index] == null) continue;
+
+				final int recordLength = RECORD_HEADER_SIZE + digitsToSolve[index].length + digitsSolved[index].length;
+				this.insert(fingerprints[index], positions[index], recordLength);
+			}
+		} catch (final IOException exception) {
+			throw new SQLException("solution log write failed", exception);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+
+		this.awaitDurable(appendedBytes);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public byte[] querySolution(final byte[] digitsToSolve) throws SQLException {
+		final byte[] fingerprint = SudokuFingerprint.fingerprint(digitsToSolve);
+		this.lock.readLock().lock();
+		try {
+			this.checkOpen();
+
+			final long slot = this.find(fingerprint, digitsToSolve);
+			if (slot == 0) return new byte[0];
+
+			final ByteBuffer record = this.readRecord(slot);
+			final byte[] digitsSolved = new byte[record.getShort(6)];
+			record.get(RECORD_HEADER_SIZE + digitsToSolve.length, digitsSolved);
+			return digitsSolved;
+		} catch (final IOException exception) {
+			throw new SQLException("solution log read failed", exception);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public byte[][] querySolutions(final byte[][] digitsToSolve) throws SQLException {
+		final byte[][] result = new byte[digitsToSolve.length][];
+		for (int index = 0; index < digitsToSolve.length; ++index) {
+			result[index] = this.querySolution(digitsToSolve[index]);
+		}
+		return result;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean solutionExists(final byte[] digitsToSolve) throws SQLException {
+		final byte[] fingerprint = SudokuFingerprint.fingerprint(digitsToSolve);
+		this.lock.readLock().lock();
+		try {
+			this.checkOpen();
+			return this.find(fingerprint, digitsToSolve) != 0;
+		} catch (final IOException exception) {
+			throw new SQLException("solution log read failed", exception);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Rewrites the log without dead bytes, and rebuilds the index accordingly. Readers and
+	 * writers are blocked meanwhile.
+	 * @param force whether or not to compact even if less than a quarter of the log is dead
+	 * @return true if the log has been compacted, false otherwise
+	 * @throws IOException if there is an I/O related problem
+	 */
+	public boolean compact(final boolean force) throws IOException {
+		this.lock.writeLock().lock();
+		try {
+			if (this.closed || this.deadBytes == 0 || (!force && this.deadBytes * 4 < this.logLength)) return false;
+
+			this.awaitIdleSync();
+			this.syncing = true;
+			this.syncLock.unlock();
+			boolean synced = false;
+			try {
+				this.logChannel.force(false);
+				synced = true;
+
+				final Path logPath = this.directory.resolve(LOG_FILE_NAME);
+				final Path tempPath = this.directory.resolve(LOG_FILE_NAME + TEMP_SUFFIX);
+				final long[] slots = new long[this.slotCount];
+				try (FileChannel tempChannel = FileChannel.open(tempPath, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+					final ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+					readFully(this.logChannel, header, 0);
+					writeFully(tempChannel, header.flip(), 0);
+
+					long position = LOG_HEADER_SIZE;
+					for (int slotIndex = 0; slotIndex < this.slotCount; ++slotIndex) {
+						final int slotPosition = INDEX_HEADER_SIZE + slotIndex * SLOT_SIZE;
+						final long slot = this.index.getLong(slotPosition + 8);
+						if (slot == 0) continue;
+
+						final ByteBuffer record = this.readRecord(slot);
+						final int recordLength = record.limit();
+						writeFully(tempChannel, record, position);
+						slots[slotIndex] = toSlot(position, recordLength);
+						position += recordLength;
+					}
+					tempChannel.force(true);
+				}
+
+				Files.move(tempPath, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				for (int slotIndex = 0; slotIndex < this.slotCount; ++slotIndex) {
+					if (slots[slotIndex] != 0) this.index.putLong(INDEX_HEADER_SIZE + slotIndex * SLOT_SIZE + 8, slots[slotIndex]);
+				}
+				this.logChannel.close();
+				this.logChannel = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				this.logLength = this.logChannel.size();
+				this.deadBytes = 0;
+				return true;
+			} finally {
+				this.releaseSync(synced);
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Waits until at least the given number of bytes appended are durable, forcing the
+	 * log if no other thread is doing so.
+	 * @param appendedBytes the number of bytes appended
+	 * @throws SQLException if forcing the log fails
+	 */
+	private void awaitDurable(final long appendedBytes) throws SQLException {
+		this.syncLock.lock();
+		try {
+			while (this.syncedBytes < appendedBytes) {
+				if (this.syncing) {
+					this.syncCondition.awaitUninterruptibly();
+					continue;
+				}
+
+				this.syncing = true;
+				final long targetBytes = this.appendedBytes;
+				this.syncLock.unlock();
+				boolean synced = false;
+				try {
+					this.logChannel.force(false);
+					synced = true;
+				} finally {
+					this.syncLock.lock();
+					this.syncing = false;
+					if (synced) this.syncedBytes = Math.max(this.syncedBytes, targetBytes);
+					this.syncCondition.signalAll();
+				}
+			}
+		} catch (final IOException exception) {
+			throw new SQLException("solution log force failed", exception);
+		} finally {
+			this.syncLock.unlock();
+		}
+	}
+
+
+	/**
+	 * Waits until no thread is forcing the log, and returns holding the sync lock.
+	 */
+	private void awaitIdleSync() {
+		this.syncLock.lock();
+		while (this.syncing) {
+			this.syncCondition.awaitUninterruptibly();
+		}
+	}
+
+
+	/**
+	 * Ends forcing the log on behalf of an exclusive operation, which must hold the write
+	 * lock, and wakes up the threads waiting for durability.
+	 * @param synced whether or not all bytes appended so far are durable
+	 */
+	private void releaseSync(final boolean synced) {
+		this.syncLock.lock();
+		try {
+			this.syncing = false;
+			if (synced) this.syncedBytes = this.appendedBytes;
+			this.syncCondition.signalAll();
+		} finally {
+			this.syncLock.unlock();
+		}
+	}
+
+
+	/**
+	 * Returns the index slot of the given riddle, whose record is compared with the
+	 * riddle.
+	 * @param fingerprint the riddle's fingerprint
+	 * @param digitsToSolve the packed riddle
+	 * @return the slot, consisting of record position and length, or 0 if the riddle
+	 *    is not stored
+	 * @throws IOException if there is an I/O related problem
+	 */
+	private long find(final byte[] fingerprint, final byte[] digitsToSolve) throws IOException {
+		final long tag = ByteBuffer.wrap(fingerprint).getLong();
+		for (int slotIndex = (int) tag & (this.slotCount - 1); true; slotIndex = (slotIndex + 1) & (this.slotCount - 1)) {
+			final int slotPosition = INDEX_HEADER_SIZE + slotIndex * SLOT_SIZE;
+			final long slot = this.index.getLong(slotPosition + 8);
+			if (slot == 0) return 0;
+			if (this.index.getLong(slotPosition) != tag) continue;
+
+			final ByteBuffer record = this.readRecord(slot);
+			if (record.getShort(4) != digitsToSolve.length) continue;
+			if (Arrays.equals(digitsToSolve, 0, digitsToSolve.length, record.array(), RECORD_HEADER_SIZE, RECORD_HEADER_SIZE + digitsToSolve.length)) return slot;
+		}
+	}
+
+
+	/**
+	 * Inserts a slot for the given fingerprint into the index, growing the index if it
+	 * would be more than half full afterwards.
+	 * @param fingerprint the riddle's fingerprint
+	 * @param position the record position
+	 * @param recordLength the record length
+	 * @throws IOException if there is an I/O related problem
+	 */
+	private void insert(final byte[] fingerprint, final long position, final int recordLength) throws IOException {
+		if (2 * (this.entryCount + 1) > this.slotCount) this.growIndex();
+
+		putSlot(this.index, this.slotCount, ByteBuffer.wrap(fingerprint).getLong(), toSlot(position, recordLength));
+		this.entryCount += 1;
+	}
+
+
+	/**
+	 * Reads the record of the given index slot.
+	 * @param slot the slot, consisting of record position and length
+	 * @return the record, flipped
+	 * @throws IOException if there is an I/O related problem
+	 */
+	private ByteBuffer readRecord(final long slot) throws IOException {
+		final ByteBuffer record = ByteBuffer.allocate((int) (slot >>> 48));
+		readFully(this.logChannel, record, slot & 0xFFFFFFFFFFFFL);
+		return record.flip();
+	}
+
+
+	/**
+	 * Maps the index file if it is clean and matches the log.
+	 * @return true if the index has been mapped, false otherwise
+	 * @throws IOException if there is an I/O related problem
+	 */
+	private boolean mapIndex() throws IOException {
+		final Path indexPath = this.directory.resolve(INDEX_FILE_NAME);
+		if (!Files.exists(indexPath)) return false;
+
+		this.indexChannel = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		final long size = this.indexChannel.size();
+		if (size < INDEX_HEADER_SIZE) return false;
+
+		final MappedByteBuffer index = this.indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		final int slotCount = index.getInt(8);
+		if (index.getInt(0) != INDEX_MAGIC || index.get(4) != VERSION || index.get(5) != 1) return false;
+		if (Integer.bitCount(slotCount) != 1 || size != INDEX_HEADER_SIZE + (long) slotCount * SLOT_SIZE || index.getLong(16) != this.logLength) return false;
+
+		this.index = index;
+		this.slotCount = slotCount;
+		this.entryCount = index.getInt(12);
+		this.deadBytes = index.getLong(24);
+		return true;
+	}
+
+
+	/**
+	 * Rebuilds the index by scanning the log. A position that doesn't start a complete
+	 * record with matching checksum is considered corrupt, and the scan resynchronizes by
+	 * searching the next position starting a valid record, counting the bytes in between as
+	 * dead. If no valid record follows, the corrupt bytes are a torn tail left by an
+	 * interrupted append, and are truncated. Therefore, corruption within the log never
+	 * causes the valid records behind it to be discarded.
+	 * @throws IOException if there is an I/O related problem
+	 */
+	private void rebuildIndex() throws IOException {
+		this.createIndex(MIN_SLOT_COUNT);
+		this.entryCount = 0;
+		this.deadBytes = 0;
+
+		final long logSize = this.logChannel.size();
+		final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		final CRC32 checksum = new CRC32();
+		long bufferPosition = LOG_HEADER_SIZE;
+		long position = LOG_HEADER_SIZE;
+		long validPosition = LOG_HEADER_SIZE;
+		buffer.limit(0);
+		while (position < logSize) {
+			if (position + MAX_RECORD_SIZE > bufferPosition + buffer.limit() && bufferPosition + buffer.limit() < logSize) {
+				bufferPosition = position;
+				buffer.clear().limit((int) Math.min(buffer.capacity(), logSize - position));
+				readFully(this.logChannel, buffer, position);
+				buffer.flip();
+			}
+
+			final int offset = (int) (position - bufferPosition);
+			final int recordLength = getRecordLength(buffer, offset, checksum);
+			if (recordLength == 0) {
+				position += 1;
+				continue;
+			}
+
+			this.deadBytes += position - validPosition;
+			final byte[] key = new byte[buffer.getShort(offset + 4)];
+			buffer.get(offset + RECORD_HEADER_SIZE, key);
+			final byte[] fingerprint = SudokuFingerprint.fingerprint(key);
+			if (this.find(fingerprint, key) != 0) {
+				this.deadBytes += recordLength;
+			} else {
+				this.insert(fingerprint, position, recordLength);
+			}
+			position += recordLength;
+			validPosition = position;
+		}
+
+		if (validPosition < logSize) {
+			this.logChannel.truncate(validPosition);
+			this.logChannel.force(true);
+		}
+		this.logLength = validPosition;
+	}
+
+
+	/**
+	 * Returns the length of the record starting at the given offset of the given buffer,
+	 * provided it is complete and it's checksum matches.
+	 * @param buffer the buffer
+	 * @param offset the record offset
+	 * @param checksum the checksum used for verification
+	 * @return the record length, or zero if no valid record starts at the given offset
+	 */
+	private static int getRecordLength(final ByteBuffer buffer, final int offset, final CRC32 checksum) {
+		if (buffer.limit() - offset < RECORD_HEADER_SIZE) return 0;
+		final int keyLength = buffer.getShort(offset + 4);
+		final int valueLength = buffer.getShort(offset + 6);
+		if (keyLength <= 0 || valueLength <= 0 || keyLength > SudokuCodec.MAX_ENCODED_LENGTH || valueLength > SudokuCodec.MAX_ENCODED_LENGTH) return 0;
+
+		final int recordLength = RECORD_HEADER_SIZE + keyLength + valueLength;
+		if (buffer.limit() - offset < recordLength) return 0;
+
+		checksum.reset();
+		checksum.update(buffer.slice(offset + 4, recordLength - 4));
+		return (int) checksum.getValue() == buffer.getInt(offset) ? recordLength : 0;
+	}
+
+
+	/**
+	 * Doubles the number of index slots, by creating a new index file and reinserting all
+	 * slots.
+	 * @throws IOException if there is an I/O related problem
+	 */
+	private void growIndex() throws IOException {
+		final MappedByteBuffer oldIndex = this.index;
+		final int oldSlotCount = this.slotCount;
+		this.createIndex(2 * oldSlotCount);
+
+		for (int slotIndex = 0; slotIndex < oldSlotCount; ++slotIndex) {
+			final int slotPosition = INDEX_HEADER_SIZE + slotIndex * SLOT_SIZE;
+			final long slot = oldIndex.getLong(slotPosition + 8);
+			if (slot != 0) putSlot(this.index, this.slotCount, oldIndex.getLong(slotPosition), slot);
+		}
+	}
+
+
+	/**
+	 * Creates and maps a new, unclean index file with the given number of slots, which
+	 * atomically replaces the current one.
+	 * @param slotCount the number of slots, a power of two
+	 * @throws IOException if there is an I/O related problem
+	 */
+	private void createIndex(final int slotCount) throws IOException {
+		final Path indexPath = this.directory.resolve(INDEX_FILE_NAME);
+		final Path tempPath = this.directory.resolve(INDEX_FILE_NAME + TEMP_SUFFIX);
+		final FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			final MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_SIZE + (long) slotCount * SLOT_SIZE);
+			index.putInt(0, INDEX_MAGIC).put(4, VERSION).put(5, (byte) 0).putInt(8, slotCount);
+			Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			if (this.indexChannel != null) this.indexChannel.close();
+			this.indexChannel = channel;
+			this.index = index;
+			this.slotCount = slotCount;
+		} catch (final IOException exception) {
+			channel.close();
+			throw exception;
+		}
+	}
+
+
+	/**
+	 * Writes the index header.
+	 * @param clean whether or not the index is clean
+	 */
+	private void writeIndexHeader(final boolean clean) {
+		this.index.put(5, (byte) (clean ? 1 : 0));
+		this.index.putInt(12, this.entryCount);
+		this.index.putLong(16, this.logLength);
+		this.index.putLong(24, this.deadBytes);
+	}
+
+
+	/**
+	 * Closes the log and index channels, ignoring any failure.
+	 */
+	private void closeChannels() {
+		try { this.logChannel.close(); } catch (final Exception exception) {}
+		try { if (this.indexChannel != null) this.indexChannel.close(); } catch (final Exception exception) {}
+	}
+
+
+	/**
+	 * Throws an exception if the receiver is closed.
+	 * @throws IllegalStateException if the receiver is closed
+	 */
+	private void checkOpen() {
+		if (this.closed) throw new IllegalStateException("store closed");
+	}
+
+
+	/**
+	 * Puts the given slot into the first free slot of the given tag's probe sequence.
+	 * @param index the index
+	 * @param slotCount the number of index slots
+	 * @param tag the tag, which is the first half of the riddle's fingerprint
+	 * @param slot the slot, consisting of record position and length
+	 */
+	private static void putSlot(final ByteBuffer index, final int slotCount, final long tag, final long slot) {
+		int slotIndex = (int) tag & (slotCount - 1);
+		while (index.getLong(INDEX_HEADER_SIZE + slotIndex * SLOT_SIZE + 8) != 0) {
+			slotIndex = (slotIndex + 1) & (slotCount - 1);
+		}
+		index.putLong(INDEX_HEADER_SIZE + slotIndex * SLOT_SIZE, tag);
+		index.putLong(INDEX_HEADER_SIZE + slotIndex * SLOT_SIZE + 8, slot);
+	}
+
+
+	/**
+	 * Returns a slot consisting of the given record position and length.
+	 * @param position the record position, below 2^48
+	 * @param recordLength the record length, below 2^16
+	 * @return the slot
+	 */
+	private static long toSlot(final long position, final int recordLength) {
+		return ((long) recordLength << 48) | position;
+	}
+
+
+	/**
+	 * Puts a log record consisting of checksum, lengths, riddle and solution into the
+	 * given buffer.
+	 * @param buffer the buffer
+	 * @param digitsToSolve the packed riddle
+	 * @param digitsSolved the packed solution
+	 */
+	private static void putRecord(final ByteBuffer buffer, final byte[] digitsToSolve, final byte[] digitsSolved) {
+		final int start = buffer.position();
+		buffer.putInt(0).putShort((short) digitsToSolve.length).putShort((short) digitsSolved.length).put(digitsToSolve).put(digitsSolved);
+
+		final CRC32 checksum = new CRC32();
+		checksum.update(buffer.array(), start + 4, buffer.position() - start - 4);
+		buffer.putInt(start, (int) checksum.getValue());
+	}
+
+
+	/**
+	 * Reads the given channel at the given position until the given buffer is full.
+	 * @param channel the file channel
+	 * @param buffer the buffer
+	 * @param position the file position
+	 * @throws IOException if there is an I/O related problem, or if the channel ends
+	 *    before the buffer is full
+	 */
+	private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+		final int start = buffer.position();
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position() - start) == -1) throw new EOFException();
+		}
+	}
+
+
+	/**
+	 * Writes the given buffer completely to the given channel at the given position.
+	 * @param channel the file channel
+	 * @param buffer the buffer
+	 * @param position the file position
+	 * @throws IOException if there is an I/O related problem
+	 */
+	private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+		final int start = buffer.position();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position() - start);
+		}
+	}
+}
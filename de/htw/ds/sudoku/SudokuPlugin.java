@@ -46,14 +46,28 @@ public interface SudokuPlugin {
 	Set<Byte> getAntiSolutions(ElementType elementType, int digitIndex);
 
 
+	/**
+	 * Returns the logical deductions to be applied in addition to naked and hidden
+	 * singles before a pivot cell is chosen for branching. Deductions reduce the
+	 * branching factor, but only pay for themselves if they eliminate enough
+	 * candidates on the riddles being solved.
+	 * @return the deductions, including their elimination counts
+	 * @see SudokuDeductions#getEliminationCount(SudokuDeduction)
+	 */
+	SudokuDeductions getDeductions();
+
+
 	/**
 	 * Resolves the riddle, i.e. replaces it's negative values with valid digits.
 	 * This method is called whenever there are two or more possible solutions to
 	 * a single cell. Note that the receiver is not modified during this operation.
+	 * Implementations must stop searching as soon as the given number of solutions
+	 * has been found.
 	 * @param recursionDepth the recursion depth for analytic purposes
 	 * @param digitIndex the digit index of the cell to modify
 	 * @param cellAlternatives the cell value alternatives for the given cell index
-	 * @return the set of Sudoku representing the possible solutions
+	 * @param maxSolutions the maximum number of solutions to be found
+	 * @return the set of Sudoku representing at most the given number of possible solutions
 	 */
-	Set<Sudoku> resolve(int recursionDepth, int digitIndex, Set<Byte> cellAlternatives);
+	Set<Sudoku> resolve(int recursionDepth, int digitIndex, Set<Byte> cellAlternatives, int maxSolutions);
 }
\ No newline at end of file
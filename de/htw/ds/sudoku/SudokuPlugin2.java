@@ -1,6 +1,9 @@
 package de.htw.ds.sudoku;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Semaphore;
 
@@ -24,125 +27,116 @@ import de.htw.ds.TypeMetadata;
  * Sudoku Plugin2 check 4: 1448ms, 1685ms, 1445ms, 1587ms, 1403ms
  */
 @TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
-public final class SudokuPlugin2 implements SudokuPlugin {
-	private Sudoku parent = null;
+public final class SudokuPlugin2 extends AbstractSudokuPlugin {
 	private static final int PROCESSOR_COUNT = Runtime.getRuntime().availableProcessors();
 
 
 	/**
-	 * {@inheritDoc}
+	 * Creates a new instance applying the logical deductions configured for this class,
+	 * which default to all of them.
+	 * @throws IllegalArgumentException if the configured deductions are invalid
+	 * @see SudokuDeductions#configure(Class, Set)
 	 */
-	public void setParent(final Sudoku parent) {
-		this.parent = parent;
+	public SudokuPlugin2() {
+		this(SudokuDeductions.configure(SudokuPlugin2.class, EnumSet.allOf(SudokuDeduction.class)));
 	}
 
 
 	/**
-	 * {@inheritDoc}
+	 * Creates a new instance.
+	 * @param deductions the logical deductions to apply
+	 * @throws NullPointerException if the given deductions are null
 	 */
-	public Set<Byte> getAntiSolutions(final Sudoku.ElementType elementType, final int digitIndex) {
-		if (digitIndex < 0 || digitIndex >= this.parent.getDigits().length) throw new IllegalArgumentException();
-
-		final int rowIndex = digitIndex / this.parent.getRadix();
-		final int columnIndex = digitIndex % this.parent.getRadix();
-		final Set<Byte> result = new HashSet<Byte>();
-
-		switch (elementType) {
-			case ROW: {
-				for (int index = rowIndex * this.parent.getRadix(), stop = (rowIndex + 1) * this.parent.getRadix(); index < stop; ++index) {
-					if (index != digitIndex) this.collectSolutions(index, result);
-				}
-				break;
-			}
-			case COLUMN: {
-				for (int index = columnIndex; index < this.parent.getDigits().length; index += this.parent.getRadix()) {
-					if (index != digitIndex) this.collectSolutions(index, result);
-				}
-				break;
-			}
-			case SECTOR: {
-				final int baseStart = rowIndex / this.parent.getDimension() * this.parent.getDimension() * this.parent.getRadix() + columnIndex / this.parent.getDimension() * this.parent.getDimension();
-				for (int baseIndex = baseStart, baseStop = baseStart + this.parent.getDimension() * this.parent.getRadix(); baseIndex < baseStop; baseIndex += this.parent.getRadix()) {
-					for (int index = baseIndex, stop = baseIndex + this.parent.getDimension(); index < stop; ++index) {
-						if (index != digitIndex) this.collectSolutions(index, result);
-					}
-				}
-				break;
-			}
-		}
-		return result;
-	}
-
-
-	/**
-	 * Adds the cell value solutions that are possible for the given digit index
-	 * to the given result set.
-	 * @param digitIndex the digit index to be analyzed
-	 * @param result the result set of possible cell values
-	 * @throws ArrayIndexOutOfBoundsException if the given index is out of range
-	 */
-	private void collectSolutions(final int digitIndex, final Set<Byte> result) {
-		if (this.parent.getDigits()[digitIndex] < 0) {
-			result.addAll(this.parent.getSolutions(digitIndex));
-		}
+	public SudokuPlugin2(final SudokuDeductions deductions) {
+		super(deductions);
 	}
 
 
 	/**
 	 * {@inheritDoc}
 	 */
-	public Set<Sudoku> resolve(final int recursionDepth, final int digitIndex, final Set<Byte> cellAlternatives) {
-		if (this.parent == null) throw new IllegalStateException();
+	public Set<Sudoku> resolve(final int recursionDepth, final int digitIndex, final Set<Byte> cellAlternatives, final int maxSolutions) {
+		if (this.getParent() == null) throw new IllegalStateException();
 		final Set<Sudoku> result = new HashSet<Sudoku>();
 		final int averageRecursionDepth = 2;
 		if (PROCESSOR_COUNT >= Math.pow(averageRecursionDepth, recursionDepth + 1)) {
-			resolveMultiThreated(recursionDepth, digitIndex, cellAlternatives, result);
+			resolveMultiThreated(recursionDepth, digitIndex, cellAlternatives, maxSolutions, result);
 		} else {
-			resolveSingleThreated(recursionDepth, digitIndex, cellAlternatives, result);
+			resolveSingleThreated(recursionDepth, digitIndex, cellAlternatives, maxSolutions, result);
 		}
 		return result;
 	}
 	
-	public Set<Sudoku> resolveSingleThreated(final int recursionDepth, final int digitIndex, final Set<Byte> cellAlternatives, final Set<Sudoku> result) {
-		for (final byte alternative : cellAlternatives) {
-			final Sudoku clone = this.parent.clone();
-			clone.getDigits()[digitIndex] = alternative;
-			result.addAll(clone.resolve(recursionDepth + 1)); // distributable!
-		}
+	/**
+	 * Resolves the alternatives iteratively on the parent, backtracking using an
+	 * undo trail instead of cloning it for each branch.
+	 */
+	public Set<Sudoku> resolveSingleThreated(final int recursionDepth, final int digitIndex, final Set<Byte> cellAlternatives, final int maxSolutions, final Set<Sudoku> result) {
+		new SudokuBacktracker(this.getParent(), this.getDeductions()).resolve(digitIndex, SudokuCandidates.toMask(cellAlternatives), maxSolutions - result.size(), result);
 		return result;
 	}
 
-	public Set<Sudoku> resolveMultiThreated(final int recursionDepth, final int digitIndex, final Set<Byte> cellAlternatives, final Set<Sudoku> result) {
+	/**
+	 * Resolves each alternative in a separate thread. Once the given number of solutions
+	 * has been found, the remaining sibling threads are interrupted, which cancels their
+	 * searches cooperatively. If the current thread is interrupted while waiting, the
+	 * interruption is passed on to all child threads.
+	 */
+	public Set<Sudoku> resolveMultiThreated(final int recursionDepth, final int digitIndex, final Set<Byte> cellAlternatives, final int maxSolutions, final Set<Sudoku> result) {
 		final Semaphore indebtedSemaphore  = new Semaphore (1- cellAlternatives.size());
+		final List<Thread> siblings = new ArrayList<Thread>();
 		for (final byte alternative : cellAlternatives) {
-			final Sudoku clone = this.parent.clone();
-			clone.getDigits()[digitIndex] = alternative;
-			final SudokuReSolver reSolver = new SudokuReSolver(clone, result, recursionDepth,indebtedSemaphore );
-			new Thread(reSolver).start();
+			final Sudoku clone = this.getParent().clone();
+			clone.setDigit(digitIndex, alternative);
+			final SudokuReSolver reSolver = new SudokuReSolver(clone, result, recursionDepth, maxSolutions, indebtedSemaphore, siblings);
+			siblings.add(new Thread(reSolver));
+		}
+		for (final Thread sibling : siblings) {
+			sibling.start();
+		}
+
+		try {
+			indebtedSemaphore.acquire();
+		} catch (final InterruptedException exception) {
+			for (final Thread sibling : siblings) {
+				sibling.interrupt();
+			}
+			indebtedSemaphore.acquireUninterruptibly();
+			Thread.currentThread().interrupt();
 		}
-		indebtedSemaphore.acquireUninterruptibly();
 		return result;
 	}
 
 	private static class SudokuReSolver implements Runnable {
 		private final Sudoku clone;
 		private final int recursionDepth;
+		private final int maxSolutions;
 		private final Set<Sudoku> result;
 		private final Semaphore indebtedSemaphore;
+		private final List<Thread> siblings;
 
-		public SudokuReSolver(final Sudoku clone, final Set<Sudoku> result, final int recursionDepth, final Semaphore indebtedSemaphore) {
+		public SudokuReSolver(final Sudoku clone, final Set<Sudoku> result, final int recursionDepth, final int maxSolutions, final Semaphore indebtedSemaphore, final List<Thread> siblings) {
 			this.clone = clone;
 			this.recursionDepth = recursionDepth;
+			this.maxSolutions = maxSolutions;
 			this.result = result;
 			this.indebtedSemaphore = indebtedSemaphore;
-			
+			this.siblings = siblings;
 		}
 
 		public void run() {
 			try {
-				final Set<Sudoku> stuff = clone.resolve(recursionDepth + 1);
+				final Set<Sudoku> stuff = clone.resolve(recursionDepth + 1, maxSolutions);
 				synchronized (result){
-					result.addAll(stuff);
+					for (final Sudoku solution : stuff) {
+						if (result.size() >= maxSolutions) break;
+						result.add(solution);
+					}
+					if (result.size() >= maxSolutions) {
+						for (final Thread sibling : siblings) {
+							if (sibling != Thread.currentThread()) sibling.interrupt();
+						}
+					}
 				}
 			} finally {
 				indebtedSemaphore.release();
@@ -0,0 +1,293 @@
+package de.htw.ds.sudoku;
+
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Exact-cover based implementation of the SudokuPlugin interface. The unresolved
+ * part of a riddle is modeled as an exact-cover problem with four constraint types
+ * (each cell holds a digit, each row/column/sector holds each digit once), and solved
+ * in a single pass using Knuth's Algorithm X on a Dancing Links matrix. Therefore,
+ * branching does not clone the riddle, and constraint checks are reduced to unlinking
+ * and relinking nodes.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SudokuPlugin3 extends AbstractSudokuPlugin {
+
+
+	/**
+	 * Creates a new instance applying the logical deductions configured for this class,
+	 * which default to none of them.
+	 * @throws IllegalArgumentException if the configured deductions are invalid
+	 * @see SudokuDeductions#configure(Class, Set)
+	 */
+	public SudokuPlugin3() {
+		this(SudokuDeductions.configure(SudokuPlugin3.class, EnumSet.noneOf(SudokuDeduction.class)));
+	}
+
+
+	/**
+	 * Creates a new instance.
+	 * @param deductions the logical deductions to apply
+	 * @throws NullPointerException if the given deductions are null
+	 */
+	public SudokuPlugin3(final SudokuDeductions deductions) {
+		super(deductions);
+	}
+
+
+	/**
+	 * {@inheritDoc} Note that this implementation resolves all remaining cells at once,
+	 * restricting the given cell to the given alternatives.
+	 */
+	public Set<Sudoku> resolve(final int recursionDepth, final int digitIndex, final Set<Byte> cellAlternatives, final int maxSolutions) {
+		if (this.getParent() == null) throw new IllegalStateException();
+
+		final DancingLinks matrix = new DancingLinks(this.getParent(), digitIndex, SudokuCandidates.toMask(cellAlternatives));
+		final Set<Sudoku> result = new HashSet<Sudoku>();
+		matrix.search(0, maxSolutions, result);
+		return result;
+	}
+
+
+
+	/**
+	 * <p>Dancing Links matrix of an exact-cover problem, with it's nodes stored in
+	 * parallel int arrays instead of node objects. Node zero is the root, nodes
+	 * <tt>[1, columnCount]</tt> are the column headers, and the remaining nodes
+	 * represent the candidate digits, four nodes per candidate.</p>
+	 */
+	private static final class DancingLinks {
+		private final Sudoku parent;
+		private final int[] left;
+		private final int[] right;
+		private final int[] up;
+		private final int[] down;
+		private final int[] header;
+		private final int[] size;
+		private final int[] candidate;
+		private final int[] selection;
+
+
+		/**
+		 * Creates a matrix containing one column for each constraint that is not yet
+		 * satisfied by the given parent, and one row for each candidate of it's
+		 * unresolved cells.
+		 * @param parent the sudoku to be resolved
+		 * @param digitIndex the digit index of the cell to restrict
+		 * @param cellAlternatives the candidate mask restricting the given cell
+		 */
+		public DancingLinks(final Sudoku parent, final int digitIndex, final long cellAlternatives) {
+			super();
+
+			final byte[] digits = parent.getDigits();
+			final int dimension = parent.getDimension();
+			final int radix = parent.getRadix();
+			final int cellCount = digits.length;
+			final long digitMask = -1L >>> (Long.SIZE - radix);
+			final SudokuCandidates sudokuCandidates = new SudokuCandidates(parent);
+
+			final long[] missingDigits = new long[3 * radix];
+			for (int elementIndex = 0; elementIndex < missingDigits.length; ++elementIndex) {
+				missingDigits[elementIndex] = digitMask;
+			}
+			for (int index = 0; index < cellCount; ++index) {
+				if (digits[index] < 0) continue;
+				final int rowIndex = index / radix;
+				final int columnIndex = index % radix;
+				final long digitBit = 1L << digits[index];
+				missingDigits[rowIndex] &= ~digitBit;
+				missingDigits[radix + columnIndex] &= ~digitBit;
+				missingDigits[2 * radix + SudokuCandidates.sectorIndex(dimension, rowIndex, columnIndex)] &= ~digitBit;
+			}
+
+			final long[] candidates = new long[cellCount];
+			int columnCount = 0, rowCount = 0;
+			for (int index = 0; index < cellCount; ++index) {
+				if (digits[index] < 0) {
+					candidates[index] = sudokuCandidates.getCandidates(index);
+					if (index == digitIndex) candidates[index] &= cellAlternatives;
+					rowCount += Long.bitCount(candidates[index]);
+					columnCount += 1;
+				}
+			}
+			for (final long mask : missingDigits) {
+				columnCount += Long.bitCount(mask);
+			}
+
+			final int nodeCount = 1 + columnCount + 4 * rowCount;
+			this.parent = parent;
+			this.left = new int[nodeCount];
+			this.right = new int[nodeCount];
+			this.up = new int[nodeCount];
+			this.down = new int[nodeCount];
+			this.header = new int[nodeCount];
+			this.size = new int[columnCount + 1];
+			this.candidate = new int[nodeCount];
+			this.selection = new int[cellCount];
+
+			// column headers are indexed by constraint: cell constraints first, followed by
+			// the digit constraints of all rows, columns and sectors
+			final int[] columns = new int[4 * cellCount];
+			int node = 0;
+			this.link(node++);
+			for (int index = 0; index < cellCount; ++index) {
+				if (digits[index] < 0) columns[index] = this.link(node++);
+			}
+			for (int elementIndex = 0; elementIndex < missingDigits.length; ++elementIndex) {
+				for (long bits = missingDigits[elementIndex]; bits != 0; bits &= bits - 1) {
+					columns[cellCount + elementIndex * radix + Long.numberOfTrailingZeros(bits)] = this.link(node++);
+				}
+			}
+
+			for (int index = 0; index < cellCount; ++index) {
+				final int rowIndex = index / radix;
+				final int columnIndex = index % radix;
+				final int sectorIndex = SudokuCandidates.sectorIndex(dimension, rowIndex, columnIndex);
+				for (long bits = candidates[index]; bits != 0; bits &= bits - 1) {
+					final int digit = Long.numberOfTrailingZeros(bits);
+					final int first = node;
+					node = this.append(node, first, columns[index], index * radix + digit);
+					node = this.append(node, first, columns[cellCount + rowIndex * radix + digit], index * radix + digit);
+					node = this.append(node, first, columns[2 * cellCount + columnIndex * radix + digit], index * radix + digit);
+					node = this.append(node, first, columns[3 * cellCount + sectorIndex * radix + digit], index * radix + digit);
+				}
+			}
+		}
+
+
+		/**
+		 * Initializes the given node as a column header, and links it into
+		 * the root's header list.
+		 * @param node the header node
+		 * @return the header node
+		 */
+		private int link(final int node) {
+			this.left[node] = this.left[0];
+			this.right[node] = 0;
+			this.right[this.left[0]] = node;
+			this.left[0] = node;
+			this.up[node] = node;
+			this.down[node] = node;
+			this.header[node] = node;
+			return node;
+		}
+
+
+		/**
+		 * Initializes the given node as a candidate node of the given column, and
+		 * links it into the row starting with the given first node.
+		 * @param node the candidate node
+		 * @param first the first node of the node's row
+		 * @param column the node's column header
+		 * @param candidate the candidate, encoded as <tt>digitIndex * radix + digit</tt>
+		 * @return the next free node
+		 */
+		private int append(final int node, final int first, final int column, final int candidate) {
+			this.header[node] = column;
+			this.candidate[node] = candidate;
+			this.up[node] = this.up[column];
+			this.down[node] = column;
+			this.down[this.up[column]] = node;
+			this.up[column] = node;
+			this.size[column] += 1;
+
+			this.left[node] = (node == first) ? node : this.left[first];
+			this.right[node] = first;
+			this.right[this.left[node]] = node;
+			this.left[first] = node;
+			return node + 1;
+		}
+
+
+		/**
+		 * Removes the given column from the header list, and all rows
+		 * intersecting it from the other columns.
+		 * @param column the column header
+		 */
+		private void cover(final int column) {
+			this.right[this.left[column]] = this.right[column];
+			this.left[this.right[column]] = this.left[column];
+			for (int row = this.down[column]; row != column; row = this.down[row]) {
+				for (int node = this.right[row]; node != row; node = this.right[node]) {
+					this.down[this.up[node]] = this.down[node];
+					this.up[this.down[node]] = this.up[node];
+					this.size[this.header[node]] -= 1;
+				}
+			}
+		}
+
+
+		/**
+		 * Reverts the effects of {@link #cover(int)} for the given column.
+		 * @param column the column header
+		 */
+		private void uncover(final int column) {
+			for (int row = this.up[column]; row != column; row = this.up[row]) {
+				for (int node = this.left[row]; node != row; node = this.left[node]) {
+					this.size[this.header[node]] += 1;
+					this.down[this.up[node]] = node;
+					this.up[this.down[node]] = node;
+				}
+			}
+			this.right[this.left[column]] = column;
+			this.left[this.right[column]] = column;
+		}
+
+
+		/**
+		 * Searches for exact covers of the remaining columns, choosing the column
+		 * with the least rows first, and adds a sudoku for each one found to
+		 * the given result until it contains the given number of solutions.
+		 * @param depth the number of rows selected so far
+		 * @param maxSolutions the maximum number of solutions to be found
+		 * @param result the set of Sudoku representing the possible solutions
+		 */
+		public void search(final int depth, final int maxSolutions, final Set<Sudoku> result) {
+			if (this.right[0] == 0) {
+				result.add(this.createSolution(depth));
+				return;
+			}
+
+			int column = this.right[0];
+			for (int node = this.right[column]; node != 0; node = this.right[node]) {
+				if (this.size[node] < this.size[column]) column = node;
+			}
+			if (this.size[column] == 0) return;
+
+			this.cover(column);
+			for (int row = this.down[column]; row != column && result.size() < maxSolutions; row = this.down[row]) {
+				this.selection[depth] = row;
+				for (int node = this.right[row]; node != row; node = this.right[node]) {
+					this.cover(this.header[node]);
+				}
+				this.search(depth + 1, maxSolutions, result);
+				for (int node = this.left[row]; node != row; node = this.left[node]) {
+					this.uncover(this.header[node]);
+				}
+			}
+			this.uncover(column);
+		}
+
+
+		/**
+		 * Returns a clone of the parent with the given number of
+		 * selected candidates applied.
+		 * @param depth the number of rows selected
+		 * @return the solution
+		 */
+		private Sudoku createSolution(final int depth) {
+			final Sudoku solution = this.parent.clone();
+			final int radix = this.parent.getRadix();
+			for (int index = 0; index < depth; ++index) {
+				final int candidate = this.candidate[this.selection[index]];
+				solution.setDigit(candidate / radix, (byte) (candidate % radix));
+			}
+			return solution;
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package de.htw.ds.sudoku;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Fork/join based implementation of the SudokuPlugin interface. Each search task
+ * estimates the cost of it's subtree from the candidate counts of the remaining empty
+ * cells, and either forks one subtask per pivot alternative, or resolves the subtree
+ * sequentially using a {@link SudokuBacktracker}. Idle workers steal forked subtasks,
+ * which keeps all processors busy even if the search tree is unbalanced. Results are
+ * accumulated per task and merged on join, therefore no locking is required.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SudokuPlugin4 extends AbstractSudokuPlugin {
+	private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	private static final int SPLIT_COST = 32;
+	private static final int SURPLUS_TASK_COUNT = 3;
+
+
+	/**
+	 * Creates a new instance applying the logical deductions configured for this class,
+	 * which default to all of them.
+	 * @throws IllegalArgumentException if the configured deductions are invalid
+	 * @see SudokuDeductions#configure(Class, Set)
+	 */
+	public SudokuPlugin4() {
+		this(SudokuDeductions.configure(SudokuPlugin4.class, EnumSet.allOf(SudokuDeduction.class)));
+	}
+
+
+	/**
+	 * Creates a new instance.
+	 * @param deductions the logical deductions to apply
+	 * @throws NullPointerException if the given deductions are null
+	 */
+	public SudokuPlugin4(final SudokuDeductions deductions) {
+		super(deductions);
+	}
+
+
+	/**
+	 * {@inheritDoc} Note that the search runs within a shared fork/join pool, while
+	 * the current thread waits for it's completion. If the current thread is interrupted
+	 * while waiting, the search is stopped, including the sequential searches running
+	 * within subtasks.
+	 */
+	public Set<Sudoku> resolve(final int recursionDepth, final int digitIndex, final Set<Byte> cellAlternatives, final int maxSolutions) {
+		if (this.getParent() == null) throw new IllegalStateException();
+
+		final AtomicInteger solutionCount = new AtomicInteger();
+		final ForkJoinTask<Set<Sudoku>> task = POOL.submit(new SearchTask(this.getParent(), digitIndex, SudokuCandidates.toMask(cellAlternatives), maxSolutions, solutionCount, this.getDeductions()));
+		try {
+			return task.get();
+		} catch (final InterruptedException exception) {
+			solutionCount.set(maxSolutions);
+			task.join();
+			Thread.currentThread().interrupt();
+			return new HashSet<Sudoku>();
+		} catch (final ExecutionException exception) {
+			final Throwable cause = exception.getCause();
+			if (cause instanceof Error) throw (Error) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new AssertionError();
+		}
+	}
+
+
+
+	/**
+	 * <p>Fork/join task searching the subtree defined by a riddle with one of it's
+	 * cells restricted to the given alternatives. The solution count is shared among
+	 * all tasks of a search, and allows them to stop once enough solutions have been
+	 * found; this includes the sequential searches of cheap subtrees, which check it while
+	 * backtracking.</p>
+	 */
+	private static final class SearchTask extends RecursiveTask<Set<Sudoku>> {
+		private static final long serialVersionUID = 1L;
+
+		private final Sudoku riddle;
+		private final int digitIndex;
+		private final long cellAlternatives;
+		private final int maxSolutions;
+		private final AtomicInteger solutionCount;
+		private final SudokuDeductions deductions;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param riddle the riddle, which is modified during the search
+		 * @param digitIndex the digit index of the cell to restrict
+		 * @param cellAlternatives the candidate mask restricting the given cell
+		 * @param maxSolutions the maximum number of solutions to be found
+		 * @param solutionCount the number of solutions found by all tasks of the search
+		 * @param deductions the logical deductions to apply before branching
+		 */
+		public SearchTask(final Sudoku riddle, final int digitIndex, final long cellAlternatives, final int maxSolutions, final AtomicInteger solutionCount, final SudokuDeductions deductions) {
+			this.riddle = riddle;
+			this.digitIndex = digitIndex;
+			this.cellAlternatives = cellAlternatives;
+			this.maxSolutions = maxSolutions;
+			this.solutionCount = solutionCount;
+			this.deductions = deductions;
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		protected Set<Sudoku> compute() {
+			final Set<Sudoku> result = new HashSet<Sudoku>();
+			final int remainingSolutions = this.maxSolutions - this.solutionCount.get();
+			if (remainingSolutions <= 0) return result;
+
+			final SudokuCandidates candidates = new SudokuCandidates(this.riddle);
+			candidates.eliminate(this.digitIndex, ~this.cellAlternatives);
+			if (!candidates.deduce(this.deductions)) return result;
+
+			final int pivotIndex = candidates.getPivotIndex();
+			if (pivotIndex == -1) {
+				result.add(this.riddle);
+				this.solutionCount.incrementAndGet();
+				return result;
+			}
+
+			final long alternatives = candidates.getCandidates(pivotIndex);
+			if (estimateCost(candidates) <= SPLIT_COST || getSurplusQueuedTaskCount() > SURPLUS_TASK_COUNT) {
+				final SudokuBacktracker backtracker = new SudokuBacktracker(this.riddle, this.deductions, () -> this.solutionCount.get() >= this.maxSolutions);
+				final int count = backtracker.resolve(pivotIndex, alternatives, remainingSolutions, result);
+				this.solutionCount.addAndGet(count);
+				return result;
+			}
+
+			final List<SearchTask> subtasks = new ArrayList<SearchTask>();
+			for (long bits = alternatives; bits != 0; bits &= bits - 1) {
+				final Sudoku clone = this.riddle.clone();
+				clone.setDigit(pivotIndex, (byte) Long.numberOfTrailingZeros(bits));
+				subtasks.add(new SearchTask(clone, pivotIndex, Long.lowestOneBit(bits), this.maxSolutions, this.solutionCount, this.deductions));
+			}
+			invokeAll(subtasks);
+
+			for (final SearchTask subtask : subtasks) {
+				for (final Sudoku solution : subtask.join()) {
+					if (result.size() >= remainingSolutions) return result;
+					result.add(solution);
+				}
+			}
+			return result;
+		}
+
+
+		/**
+		 * Estimates the cost of searching the subtree of the given candidates as the
+		 * number of surplus candidates of the unresolved cells, i.e. the sum of their
+		 * candidate counts minus one. Resolved subtrees therefore cost zero.
+		 * @param candidates the candidates
+		 * @return the estimated cost
+		 */
+		private static int estimateCost(final SudokuCandidates candidates) {
+			final byte[] digits = candidates.getParent().getDigits();
+			int cost = 0;
+			for (int index = 0; index < digits.length; ++index) {
+				if (digits[index] < 0) cost += Long.bitCount(candidates.getCandidates(index)) - 1;
+			}
+			return cost;
+		}
+	}
+}
@@ -0,0 +1,470 @@
+package de.htw.ds.sudoku;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Structured concurrency based implementation of the SudokuPlugin interface. Each
+ * branch of the search is forked as a thread within a branch scope owned by it's parent
+ * branch, and a scope is only left once all of it's branches have terminated. Once the
+ * requested number of solutions has been found, or the optional deadline defined by the
+ * system property <tt>de.htw.ds.sudoku.SudokuPlugin5.timeout</tt> (in milliseconds)
+ * has passed, all remaining branches are cancelled by interrupting them. A search cut
+ * short by the deadline fails instead of returning an incomplete set of solutions.</p>
+ * <p>Branches run as virtual threads if the runtime supports them, which allows forking
+ * deeply without exhausting operating system threads. Otherwise, pooled platform threads
+ * are used, and forking is restricted to the first few recursion levels. In both cases,
+ * cheap subtrees are resolved sequentially using a {@link SudokuBacktracker}.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SudokuPlugin5 extends AbstractSudokuPlugin {
+	private static final long TIMEOUT = Long.getLong("de.htw.ds.sudoku.SudokuPlugin5.timeout", 0);
+	private static final int SPLIT_COST = 32;
+	private static final int PLATFORM_FORK_DEPTH = 2;
+	private static final ExecutorService VIRTUAL_EXECUTOR = newVirtualThreadExecutor();
+	private static final ExecutorService EXECUTOR = (VIRTUAL_EXECUTOR == null) ? Executors.newCachedThreadPool(new DaemonThreadFactory()) : VIRTUAL_EXECUTOR;
+	private static final int FORK_DEPTH = (VIRTUAL_EXECUTOR == null) ? PLATFORM_FORK_DEPTH : Integer.MAX_VALUE;
+
+
+	/**
+	 * Creates a new instance applying the logical deductions configured for this class,
+	 * which default to all of them.
+	 * @throws IllegalArgumentException if the configured deductions are invalid
+	 * @see SudokuDeductions#configure(Class, Set)
+	 */
+	public SudokuPlugin5() {
+		this(SudokuDeductions.configure(SudokuPlugin5.class, EnumSet.allOf(SudokuDeduction.class)));
+	}
+
+
+	/**
+	 * Creates a new instance.
+	 * @param deductions the logical deductions to apply
+	 * @throws NullPointerException if the given deductions are null
+	 */
+	public SudokuPlugin5(final SudokuDeductions deductions) {
+		super(deductions);
+	}
+
+
+	/**
+	 * {@inheritDoc} Note that the current thread acts as the root branch of the search.
+	 * @throws IllegalStateException if the deadline passes before the search has ended
+	 */
+	public Set<Sudoku> resolve(final int recursionDepth, final int digitIndex, final Set<Byte> cellAlternatives, final int maxSolutions) {
+		if (this.getParent() == null) throw new IllegalStateException();
+
+		final long deadline = (TIMEOUT > 0) ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT) : Long.MAX_VALUE;
+		final SearchContext context = new SearchContext(maxSolutions, deadline, this.getDeductions());
+		final Set<Sudoku> result;
+		try {
+			result = search(this.getParent(), digitIndex, SudokuCandidates.toMask(cellAlternatives), 0, context);
+		} finally {
+			context.close();
+		}
+
+		if (context.isTimedOut() && context.getRemainingSolutions() > 0) throw new IllegalStateException("search timed out after " + TIMEOUT + "ms");
+		return result;
+	}
+
+
+	/**
+	 * Searches the subtree defined by the given riddle with the cell at the given digit
+	 * index restricted to the given alternatives. Expensive subtrees are forked into a
+	 * branch per pivot alternative, cheap ones are resolved sequentially.
+	 * @param riddle the riddle, which is modified during the search
+	 * @param digitIndex the digit index of the cell to restrict
+	 * @param cellAlternatives the candidate mask restricting the given cell
+	 * @param forkDepth the number of forks leading to the given subtree
+	 * @param context the search context
+	 * @return the set of Sudoku representing the solutions found
+	 */
+	private static Set<Sudoku> search(final Sudoku riddle, final int digitIndex, final long cellAlternatives, final int forkDepth, final SearchContext context) {
+		final Set<Sudoku> result = new HashSet<Sudoku>();
+		final int remainingSolutions = context.getRemainingSolutions();
+		if (remainingSolutions <= 0) return result;
+
+		final SudokuCandidates candidates = new SudokuCandidates(riddle);
+		candidates.eliminate(digitIndex, ~cellAlternatives);
+		if (!candidates.deduce(context.getDeductions())) return result;
+
+		final int pivotIndex = candidates.getPivotIndex();
+		if (pivotIndex == -1) {
+			result.add(riddle);
+			context.addSolutions(1);
+			return result;
+		}
+
+		final long alternatives = candidates.getCandidates(pivotIndex);
+		if (forkDepth >= FORK_DEPTH || estimateCost(candidates) <= SPLIT_COST) {
+			final int count = new SudokuBacktracker(riddle, context.getDeductions()).resolve(pivotIndex, alternatives, remainingSolutions, result);
+			context.addSolutions(count);
+			return result;
+		}
+
+		final BranchScope scope = new BranchScope();
+		for (long bits = alternatives; bits != 0; bits &= bits - 1) {
+			final Sudoku clone = riddle.clone();
+			clone.setDigit(pivotIndex, (byte) Long.numberOfTrailingZeros(bits));
+			scope.fork(new Branch(clone, pivotIndex, Long.lowestOneBit(bits), forkDepth + 1, context, scope));
+		}
+		if (!scope.join(context.getDeadline())) context.setTimedOut();
+
+		for (final Branch branch : scope.getBranches()) {
+			for (final Sudoku solution : branch.getResult()) {
+				if (result.size() >= remainingSolutions) return result;
+				result.add(solution);
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Estimates the cost of searching the subtree of the given candidates as the
+	 * number of surplus candidates of the unresolved cells, i.e. the sum of their
+	 * candidate counts minus one.
+	 * @param candidates the candidates
+	 * @return the estimated cost
+	 */
+	private static int estimateCost(final SudokuCandidates candidates) {
+		final byte[] digits = candidates.getParent().getDigits();
+		int cost = 0;
+		for (int index = 0; index < digits.length; ++index) {
+			if (digits[index] < 0) cost += Long.bitCount(candidates.getCandidates(index)) - 1;
+		}
+		return cost;
+	}
+
+
+	/**
+	 * Returns a new executor starting a virtual thread for each task, which is looked
+	 * up reflectively because virtual threads are not supported by older runtimes.
+	 * @return the executor, or null if virtual threads are not supported
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (final Exception exception) {
+			return null;
+		}
+	}
+
+
+
+	/**
+	 * <p>Search state shared by all branches of a search. Once the requested number
+	 * of solutions has been found, the root thread is interrupted, which cancels the
+	 * remaining branches by passing the interruption down the scope hierarchy. The root
+	 * thread is only interrupted if no interrupt is pending already, and only this self
+	 * interrupt is cleared once the search has ended, so that interrupts from outside
+	 * are never lost.</p>
+	 */
+	private static final class SearchContext {
+		private final int maxSolutions;
+		private final long deadline;
+		private final SudokuDeductions deductions;
+		private final AtomicInteger solutionCount;
+		private final Thread rootThread;
+		private boolean rootInterrupted;
+		private boolean closed;
+		private volatile boolean timedOut;
+
+
+		/**
+		 * Creates a new instance, with the current thread being the root thread.
+		 * @param maxSolutions the maximum number of solutions to be found
+		 * @param deadline the deadline in nanoseconds, see {@link System#nanoTime()}
+		 * @param deductions the logical deductions to apply before branching
+		 */
+		public SearchContext(final int maxSolutions, final long deadline, final SudokuDeductions deductions) {
+			this.maxSolutions = maxSolutions;
+			this.deadline = deadline;
+			this.deductions = deductions;
+			this.solutionCount = new AtomicInteger();
+			this.rootThread = Thread.currentThread();
+		}
+
+
+		/**
+		 * Returns the deadline.
+		 * @return the deadline in nanoseconds, see {@link System#nanoTime()}
+		 */
+		public long getDeadline() {
+			return this.deadline;
+		}
+
+
+		/**
+		 * Returns the logical deductions to apply before branching.
+		 * @return the deductions
+		 */
+		public SudokuDeductions getDeductions() {
+			return this.deductions;
+		}
+
+
+		/**
+		 * Returns the number of solutions still to be found.
+		 * @return the number of remaining solutions
+		 */
+		public int getRemainingSolutions() {
+			return this.maxSolutions - this.solutionCount.get();
+		}
+
+
+		/**
+		 * Returns whether or not a branch scope has been left because the deadline passed.
+		 * @return whether or not the search timed out
+		 */
+		public boolean isTimedOut() {
+			return this.timedOut;
+		}
+
+
+		/**
+		 * Records that a branch scope has been left because the deadline passed.
+		 */
+		public void setTimedOut() {
+			this.timedOut = true;
+		}
+
+
+		/**
+		 * Adds the given number of solutions found, and cancels the search once
+		 * the requested number of solutions has been reached.
+		 * @param count the number of solutions found
+		 */
+		public void addSolutions(final int count) {
+			if (count > 0 && this.solutionCount.addAndGet(count) >= this.maxSolutions) {
+				synchronized (this) {
+					if (!this.closed && !this.rootInterrupted && Thread.currentThread() != this.rootThread && !this.rootThread.isInterrupted()) {
+						this.rootInterrupted = true;
+						this.rootThread.interrupt();
+					}
+				}
+			}
+		}
+
+
+		/**
+		 * Closes this context, which must be called by the root thread once the search
+		 * has ended. Clears the root thread's interrupt status if it has been set
+		 * by this context to cancel the search, but not if it has been set from outside.
+		 */
+		public synchronized void close() {
+			this.closed = true;
+			if (this.rootInterrupted) Thread.interrupted();
+		}
+	}
+
+
+
+	/**
+	 * <p>Scope owning the branches forked by a parent branch. Joining waits until all
+	 * of them have terminated; if the deadline passes or the owner is interrupted
+	 * beforehand, the remaining branches are cancelled and awaited nevertheless, so no
+	 * branch ever outlives it's scope.</p>
+	 */
+	private static final class BranchScope {
+		private final List<Branch> branches;
+		private final Semaphore terminatedBranches;
+
+
+		/**
+		 * Creates a new instance.
+		 */
+		public BranchScope() {
+			this.branches = new ArrayList<Branch>();
+			this.terminatedBranches = new Semaphore(0);
+		}
+
+
+		/**
+		 * Returns the forked branches.
+		 * @return the branches
+		 */
+		public List<Branch> getBranches() {
+			return this.branches;
+		}
+
+
+		/**
+		 * Forks the given branch.
+		 * @param branch the branch
+		 */
+		public void fork(final Branch branch) {
+			this.branches.add(branch);
+			EXECUTOR.execute(branch);
+		}
+
+
+		/**
+		 * Signals that a branch has terminated.
+		 */
+		public void release() {
+			this.terminatedBranches.release();
+		}
+
+
+		/**
+		 * Waits until all branches have terminated, cancelling them if the given deadline
+		 * passes or the current thread is interrupted beforehand. In the latter case, the
+		 * current thread's interrupt status is restored before returning.
+		 * @param deadline the deadline in nanoseconds, see {@link System#nanoTime()}
+		 * @return false if the branches have been cancelled because the deadline passed,
+		 *    true otherwise
+		 */
+		public boolean join(final long deadline) {
+			try {
+				final boolean terminated = (deadline == Long.MAX_VALUE)
+					? this.acquireAll()
+					: this.terminatedBranches.tryAcquire(this.branches.size(), deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				if (terminated) return true;
+				this.cancel();
+				return false;
+			} catch (final InterruptedException exception) {
+				this.cancel();
+				Thread.currentThread().interrupt();
+				return true;
+			}
+		}
+
+
+		/**
+		 * Waits until all branches have terminated.
+		 * @return true
+		 * @throws InterruptedException if the current thread is interrupted while waiting
+		 */
+		private boolean acquireAll() throws InterruptedException {
+			this.terminatedBranches.acquire(this.branches.size());
+			return true;
+		}
+
+
+		/**
+		 * Cancels all branches, and waits uninterruptibly until they have terminated.
+		 */
+		private void cancel() {
+			for (final Branch branch : this.branches) {
+				branch.cancel();
+			}
+			this.terminatedBranches.acquireUninterruptibly(this.branches.size());
+		}
+	}
+
+
+
+	/**
+	 * <p>Branch searching a subtree within it's own thread.</p>
+	 */
+	private static final class Branch implements Runnable {
+		private final Sudoku riddle;
+		private final int digitIndex;
+		private final long cellAlternatives;
+		private final int forkDepth;
+		private final SearchContext context;
+		private final BranchScope scope;
+		private Thread thread;
+		private boolean cancelled;
+		private boolean interrupted;
+		private volatile Set<Sudoku> result;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param riddle the riddle, which is modified during the search
+		 * @param digitIndex the digit index of the cell to restrict
+		 * @param cellAlternatives the candidate mask restricting the given cell
+		 * @param forkDepth the number of forks leading to this branch
+		 * @param context the search context
+		 * @param scope the scope owning this branch
+		 */
+		public Branch(final Sudoku riddle, final int digitIndex, final long cellAlternatives, final int forkDepth, final SearchContext context, final BranchScope scope) {
+			this.riddle = riddle;
+			this.digitIndex = digitIndex;
+			this.cellAlternatives = cellAlternatives;
+			this.forkDepth = forkDepth;
+			this.context = context;
+			this.scope = scope;
+			this.result = Collections.emptySet();
+		}
+
+
+		/**
+		 * Returns the solutions found by this branch.
+		 * @return the set of Sudoku representing the solutions found
+		 */
+		public Set<Sudoku> getResult() {
+			return this.result;
+		}
+
+
+		/**
+		 * Searches this branch's subtree, unless it has been cancelled beforehand.
+		 */
+		public void run() {
+			try {
+				synchronized (this) {
+					if (this.cancelled) return;
+					this.thread = Thread.currentThread();
+				}
+				try {
+					this.result = search(this.riddle, this.digitIndex, this.cellAlternatives, this.forkDepth, this.context);
+				} finally {
+					synchronized (this) {
+						this.thread = null;
+						if (this.interrupted) Thread.interrupted();
+					}
+				}
+			} finally {
+				this.scope.release();
+			}
+		}
+
+
+		/**
+		 * Cancels this branch by interrupting it's thread if it is running, or
+		 * preventing it from starting otherwise. The interrupt is only sent, and later
+		 * cleared, if the thread has no interrupt pending already.
+		 */
+		public synchronized void cancel() {
+			this.cancelled = true;
+			if (this.thread != null && !this.thread.isInterrupted()) {
+				this.interrupted = true;
+				this.thread.interrupt();
+			}
+		}
+	}
+
+
+
+	/**
+	 * <p>Thread factory creating daemon threads, which prevents the platform thread
+	 * pool from keeping the VM alive.</p>
+	 */
+	private static final class DaemonThreadFactory implements ThreadFactory {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable);
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
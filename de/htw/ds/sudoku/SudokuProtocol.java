@@ -0,0 +1,41 @@
+package de.htw.ds.sudoku;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Constants of the binary Sudoku protocol, a compact alternative to the SOAP service
+ * for the operations of {@link SoapSudokuService}. Both directions consist of frames, each
+ * starting with it's length as a four byte integer in big endian byte order, excluding the
+ * length itself.</p>
+ * <p>Request frames continue with an opcode byte, followed by the packed riddle (see
+ * {@link SudokuCodec}) up to the end of the frame. Store requests instead continue with the
+ * riddle length as a two byte integer, the packed riddle, and the packed solution up to the
+ * end of the frame. Response frames continue with a status byte, followed by the result up
+ * to the end of the frame: a single boolean byte for exists requests, the packed solution or
+ * nothing for get and solve requests, nothing for store requests, and an UTF-8 encoded
+ * message for failures.</p>
+ * <p>Connections are persistent, and clients may pipeline requests, i.e. send further
+ * requests before receiving the responses of previous ones. Responses are sent in the order
+ * of their requests.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SudokuProtocol {
+	public static final byte OPCODE_EXISTS = 1;
+	public static final byte OPCODE_GET = 2;
+	public static final byte OPCODE_STORE = 3;
+	public static final byte OPCODE_SOLVE = 4;
+	public static final byte STATUS_OK = 0;
+	public static final byte STATUS_ILLEGAL_ARGUMENT = 1;
+	public static final byte STATUS_ILLEGAL_STATE = 2;
+	public static final byte STATUS_JDBC_ERROR = 3;
+	public static final int MAX_FRAME_LENGTH = 3 + 2 * SudokuCodec.MAX_ENCODED_LENGTH;
+
+
+	/**
+	 * Prevents external instantiation.
+	 */
+	private SudokuProtocol() {
+		super();
+	}
+}
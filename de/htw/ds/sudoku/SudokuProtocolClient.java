@@ -0,0 +1,344 @@
+package de.htw.ds.sudoku;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.htw.ds.SocketAddress;
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Client of the binary Sudoku protocol (see {@link SudokuProtocol}), which implements the
+ * service interface and can therefore replace a SOAP proxy. It uses a single persistent
+ * connection, which is shared by all threads: requests are written by the calling threads,
+ * while a reader thread completes them in order as their responses arrive, so concurrent
+ * calls are pipelined. The batch operations pipeline their individual requests, too.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SudokuProtocolClient implements SoapSudokuService, Closeable {
+
+	private final SocketChannel channel;
+	private final Object sendMonitor;
+	private final Queue<CompletableFuture<ByteBuffer>> pendingResponses;
+	private final ConcurrentMap<Long,CompletableFuture<ByteBuffer>> tickets;
+	private final AtomicLong ticketSequence;
+	private final Thread readerThread;
+	private volatile IOException failure;
+
+
+	/**
+	 * Public constructor, which connects to the given server address.
+	 * @param serviceAddress the server address
+	 * @throws NullPointerException if the given address is null
+	 * @throws IOException if the connection cannot be established
+	 */
+	public SudokuProtocolClient(final SocketAddress serviceAddress) throws IOException {
+		super();
+
+		this.channel = SocketChannel.open(serviceAddress.toInetSocketAddress());
+		this.channel.socket().setTcpNoDelay(true);
+		this.sendMonitor = new Object();
+		this.pendingResponses = new ConcurrentLinkedQueue<CompletableFuture<ByteBuffer>>();
+		this.tickets = new ConcurrentHashMap<Long,CompletableFuture<ByteBuffer>>();
+		this.ticketSequence = new AtomicLong();
+		this.readerThread = new Thread(new Reader(), "sudoku-protocol-reader");
+		this.readerThread.setDaemon(true);
+		this.readerThread.start();
+	}
+
+
+	/**
+	 * Closes the connection. Calls waiting for their responses fail with an
+	 * {@link IllegalStateException}.
+	 * @throws IOException if there is an I/O related problem
+	 */
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void storeSolution(final byte[] digitsToSolve, final byte[] digitsSolved) throws NullPointerException, IllegalStateException, JdbcException {
+		await(this.send(storeRequest(digitsToSolve, digitsSolved)));
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public byte[] getSolution(final byte[] digitsToSolve) throws NullPointerException, IllegalStateException, JdbcException {
+		return toBytes(await(this.send(request(SudokuProtocol.OPCODE_GET, digitsToSolve))));
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean solutionExists(final byte[] digitsToSolve) throws NullPointerException, IllegalStateException, JdbcException {
+		return await(this.send(request(SudokuProtocol.OPCODE_EXISTS, digitsToSolve))).get() != 0;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void storeSolutions(final byte[][] digitsToSolve, final byte[][] digitsSolved) throws NullPointerException, IllegalArgumentException, IllegalStateException, JdbcException {
+		if (digitsToSolve.length != digitsSolved.length) throw new IllegalArgumentException(ILLEGAL_ARGUMENT_PREFIX + "array length mismatch");
+
+		final ByteBuffer[] requests = new ByteBuffer[digitsToSolve.length];
+		for (int index = 0; index < requests.length; ++index) {
+			requests[index] = storeRequest(digitsToSolve[index], digitsSolved[index]);
+		}
+
+		for (final CompletableFuture<ByteBuffer> response : this.send(requests)) {
+			await(response);
+		}
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public byte[][] getSolutions(final byte[][] digitsToSolve) throws NullPointerException, IllegalStateException, JdbcException {
+		final ByteBuffer[] requests = new ByteBuffer[digitsToSolve.length];
+		for (int index = 0; index < requests.length; ++index) {
+			requests[index] = request(SudokuProtocol.OPCODE_GET, digitsToSolve[index]);
+		}
+
+		final CompletableFuture<ByteBuffer>[] responses = this.send(requests);
+		final byte[][] digitsSolved = new byte[responses.length][];
+		for (int index = 0; index < responses.length; ++index) {
+			digitsSolved[index] = toBytes(await(responses[index]));
+		}
+		return digitsSolved;
+	}
+
+
+	/**
+	 * {@inheritDoc} The ticket is managed by the receiver, and refers to a pipelined solve
+	 * request; the server answers the latter once the solve completes.
+	 */
+	public long requestSolution(final byte[] digitsToSolve) throws NullPointerException, IllegalArgumentException, IllegalStateException, JdbcException {
+		final CompletableFuture<ByteBuffer> response = this.send(request(SudokuProtocol.OPCODE_SOLVE, digitsToSolve));
+		final long ticket = this.ticketSequence.incrementAndGet();
+		this.tickets.put(ticket, response);
+		return ticket;
+	}
+
+
+	/**
+	 * {@inheritDoc} Note that the receiver's tickets don't expire.
+	 */
+	public byte[] pollSolution(final long ticket) throws IllegalArgumentException, IllegalStateException, JdbcException {
+		final CompletableFuture<ByteBuffer> response = this.tickets.get(ticket);
+		if (response == null) throw new IllegalArgumentException("unknown ticket " + ticket);
+		if (!response.isDone()) return null;
+
+		this.tickets.remove(ticket);
+		return toBytes(await(response));
+	}
+
+
+	/**
+	 * Returns the stored solution of the given riddle in a single round trip. If there is
+	 * none, the riddle is solved on the server, and it's solution is stored if it is unique.
+	 * The calling thread waits for the solve, but the server doesn't hold a thread meanwhile.
+	 * @param digitsToSolve the packed riddle
+	 * @return the packed solution, or an empty array if the riddle has no unique solution
+	 * @throws NullPointerException if the given value is null
+	 * @throws IllegalArgumentException if the given value is not a valid packed riddle
+	 * @throws IllegalStateException if the connection is closed or broken
+	 * @throws JdbcException if there is a problem with the server's JDBC connection
+	 */
+	public byte[] resolveSolution(final byte[] digitsToSolve) throws NullPointerException, IllegalArgumentException, IllegalStateException, JdbcException {
+		return toBytes(await(this.send(request(SudokuProtocol.OPCODE_SOLVE, digitsToSolve))));
+	}
+
+
+	/**
+	 * Sends the given request frame.
+	 * @param request the request frame, including it's length, flipped
+	 * @return the future response
+	 * @throws IllegalStateException if the connection is closed or broken
+	 */
+	private CompletableFuture<ByteBuffer> send(final ByteBuffer request) {
+		return this.send(new ByteBuffer[] { request })[0];
+	}
+
+
+	/**
+	 * Sends the given request frames with a gathering write.
+	 * @param requests the request frames, each including it's length, flipped
+	 * @return the future responses, with the same index as their requests
+	 * @throws IllegalStateException if the connection is closed or broken
+	 */
+	@SuppressWarnings("unchecked")
+	private CompletableFuture<ByteBuffer>[] send(final ByteBuffer[] requests) {
+		final CompletableFuture<ByteBuffer>[] responses = (CompletableFuture<ByteBuffer>[]) new CompletableFuture<?>[requests.length];
+		synchronized (this.sendMonitor) {
+			if (this.failure != null) throw new IllegalStateException(this.failure);
+			for (int index = 0; index < responses.length; ++index) {
+				responses[index] = new CompletableFuture<ByteBuffer>();
+				this.pendingResponses.add(responses[index]);
+			}
+			if (this.failure != null) {
+				this.fail(this.failure);
+				throw new IllegalStateException(this.failure);
+			}
+
+			try {
+				while (requests.length > 0 && requests[requests.length - 1].hasRemaining()) {
+					this.channel.write(requests);
+				}
+			} catch (final IOException exception) {
+				this.fail(exception);
+				throw new IllegalStateException(exception);
+			}
+		}
+		return responses;
+	}
+
+
+	/**
+	 * Marks the connection as broken, failing all pending responses. The failure is
+	 * recorded before the pending responses are drained, so that senders enqueueing
+	 * concurrently either find their responses drained, or notice the failure.
+	 * @param exception the cause
+	 */
+	private void fail(final IOException exception) {
+		if (this.failure == null) this.failure = exception;
+		for (CompletableFuture<ByteBuffer> response = this.pendingResponses.poll(); response != null; response = this.pendingResponses.poll()) {
+			response.completeExceptionally(new IllegalStateException(exception));
+		}
+		try { this.channel.close(); } catch (final Exception nestedException) {}
+	}
+
+
+	/**
+	 * Returns a request frame with the given opcode and riddle.
+	 * @param opcode the opcode
+	 * @param digitsToSolve the packed riddle
+	 * @return the request frame, including it's length, flipped
+	 * @throws NullPointerException if the given riddle is null
+	 * @throws IllegalArgumentException if the given riddle is too long
+	 */
+	private static ByteBuffer request(final byte opcode, final byte[] digitsToSolve) {
+		if (digitsToSolve.length > SudokuCodec.MAX_ENCODED_LENGTH) throw new IllegalArgumentException();
+		return ByteBuffer.allocate(5 + digitsToSolve.length).putInt(1 + digitsToSolve.length).put(opcode).put(digitsToSolve).flip();
+	}
+
+
+	/**
+	 * Returns a store request frame with the given riddle and solution.
+	 * @param digitsToSolve the packed riddle
+	 * @param digitsSolved the packed solution
+	 * @return the request frame, including it's length, flipped
+	 * @throws NullPointerException if one of the given values is null
+	 * @throws IllegalArgumentException if one of the given values is too long
+	 */
+	private static ByteBuffer storeRequest(final byte[] digitsToSolve, final byte[] digitsSolved) {
+		if (digitsToSolve.length > SudokuCodec.MAX_ENCODED_LENGTH || digitsSolved.length > SudokuCodec.MAX_ENCODED_LENGTH) throw new IllegalArgumentException();
+		final int length = 3 + digitsToSolve.length + digitsSolved.length;
+		return ByteBuffer.allocate(4 + length).putInt(length).put(SudokuProtocol.OPCODE_STORE).putShort((short) digitsToSolve.length).put(digitsToSolve).put(digitsSolved).flip();
+	}
+
+
+	/**
+	 * Waits for the given response, and returns it's result if it's status is ok.
+	 * @param response the future response
+	 * @return the result
+	 * @throws IllegalArgumentException if the server rejected the request's arguments
+	 * @throws IllegalStateException if the server failed to process the request, if the
+	 *    connection broke, or if the current thread is interrupted while waiting
+	 * @throws JdbcException if the server failed to access it's storage
+	 */
+	private static ByteBuffer await(final CompletableFuture<ByteBuffer> response) throws JdbcException {
+		final ByteBuffer frame;
+		try {
+			frame = response.get();
+		} catch (final InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(exception);
+		} catch (final ExecutionException exception) {
+			final Throwable cause = exception.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new IllegalStateException(cause);
+		}
+
+		final byte status = frame.get();
+		if (status == SudokuProtocol.STATUS_OK) return frame;
+
+		final String message = StandardCharsets.UTF_8.decode(frame).toString();
+		switch (status) {
+			case SudokuProtocol.STATUS_ILLEGAL_ARGUMENT: throw new IllegalArgumentException(message);
+			case SudokuProtocol.STATUS_JDBC_ERROR: throw new JdbcException(message);
+			default: throw new IllegalStateException(message);
+		}
+	}
+
+
+	/**
+	 * Returns the remaining bytes of the given buffer.
+	 * @param buffer the buffer
+	 * @return the bytes
+	 */
+	private static byte[] toBytes(final ByteBuffer buffer) {
+		final byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+
+
+	/**
+	 * <p>Reader completing the pending responses in order, until the connection is closed
+	 * or broken.</p>
+	 */
+	private final class Reader implements Runnable {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void run() {
+			final SocketChannel channel = SudokuProtocolClient.this.channel;
+			final Queue<CompletableFuture<ByteBuffer>> pendingResponses = SudokuProtocolClient.this.pendingResponses;
+			final ByteBuffer buffer = ByteBuffer.allocate(65536);
+			try {
+				while (true) {
+					if (channel.read(buffer) == -1) throw new EOFException("connection closed");
+					buffer.flip();
+
+					while (buffer.remaining() >= 4) {
+						final int length = buffer.getInt(buffer.position());
+						if (length <= 0 || length > SudokuProtocol.MAX_FRAME_LENGTH) throw new IOException("illegal frame length " + length);
+						if (buffer.remaining() < 4 + length) break;
+
+						final byte[] frame = new byte[length];
+						buffer.position(buffer.position() + 4);
+						buffer.get(frame);
+
+						final CompletableFuture<ByteBuffer> response = pendingResponses.poll();
+						if (response == null) throw new IOException("unexpected response");
+						response.complete(ByteBuffer.wrap(frame));
+					}
+					buffer.compact();
+				}
+			} catch (final IOException exception) {
+				SudokuProtocolClient.this.fail(exception);
+			}
+		}
+	}
+}
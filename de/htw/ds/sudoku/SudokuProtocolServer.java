@@ -0,0 +1,469 @@
+package de.htw.ds.sudoku;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import de.htw.ds.SocketAddress;
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Server of the binary Sudoku protocol (see {@link SudokuProtocol}), which runs next to
+ * the SOAP endpoint and delegates to the same service implementation. A single selector
+ * thread accepts connections, and reads and writes frames without blocking. Requests are
+ * processed on a worker pool, one at a time per connection in the order they arrived, so
+ * that a slow solve on one connection never delays other connections. Solve requests don't
+ * occupy a worker while the riddle is solved; instead, the connection resumes processing
+ * once the solve completes. A connection stops being read while too many of it's requests
+ * and responses are pending, and resumes once it's peer has taken enough responses.</p>
+ * <p>The worker pool is bounded. It's thread count and queue capacity are given by the system properties
+ * <tt>de.htw.ds.sudoku.SudokuProtocolServer.workerPoolSize</tt> (default 64) and
+ * <tt>.workerQueueCapacity</tt> (default 1024). Once both are exhausted, the requests of a
+ * connection are answered with {@link SudokuProtocol#STATUS_ILLEGAL_STATE} instead of
+ * spawning ever more threads.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SudokuProtocolServer implements Closeable {
+	private static final int MAX_PENDING_FRAMES = 256;
+	private static final int READ_BUFFER_SIZE = 8192;
+	private static final int WORKER_POOL_SIZE = Integer.getInteger("de.htw.ds.sudoku.SudokuProtocolServer.workerPoolSize", 64);
+	private static final int WORKER_QUEUE_CAPACITY = Integer.getInteger("de.htw.ds.sudoku.SudokuProtocolServer.workerQueueCapacity", 1024);
+
+	private final SoapSudokuServer service;
+	private final ServerSocketChannel serviceChannel;
+	private final Selector selector;
+	private final ExecutorService workerExecutor;
+	private final Thread selectorThread;
+	private volatile boolean closed;
+
+
+	/**
+	 * Public constructor, which binds the server socket and starts the selector thread.
+	 * @param serviceAddress the address to bind the server socket to
+	 * @param service the service processing the requests
+	 * @throws NullPointerException if any of the given arguments is null
+	 * @throws IOException if the server socket cannot be bound
+	 */
+	public SudokuProtocolServer(final SocketAddress serviceAddress, final SoapSudokuServer service) throws IOException {
+		super();
+		if (serviceAddress == null || service == null) throw new NullPointerException();
+
+		this.service = service;
+		this.selector = Selector.open();
+		this.serviceChannel = ServerSocketChannel.open();
+		try {
+			this.serviceChannel.bind(serviceAddress.toInetSocketAddress());
+			this.serviceChannel.configureBlocking(false);
+			this.serviceChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+		} catch (final IOException exception) {
+			try { this.serviceChannel.close(); } catch (final Exception nestedException) {}
+			try { this.selector.close(); } catch (final Exception nestedException) {}
+			throw exception;
+		}
+
+		this.workerExecutor = new ThreadPoolExecutor(WORKER_POOL_SIZE, WORKER_POOL_SIZE, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(WORKER_QUEUE_CAPACITY), new ThreadPoolExecutor.AbortPolicy());
+		((ThreadPoolExecutor) this.workerExecutor).allowCoreThreadTimeOut(true);
+		this.selectorThread = new Thread(new Dispatcher(), "sudoku-protocol-selector");
+		this.selectorThread.start();
+	}
+
+
+	/**
+	 * Returns the local address of the server socket.
+	 * @return the service address
+	 * @throws IOException if there is an I/O related problem
+	 */
+	public java.net.SocketAddress getServiceAddress() throws IOException {
+		return this.serviceChannel.getLocalAddress();
+	}
+
+
+	/**
+	 * Closes the receiver, thereby closing the server socket and all connections, and
+	 * stopping the selector thread and the worker pool.
+	 */
+	public void close() {
+		this.closed = true;
+		this.selector.wakeup();
+		this.workerExecutor.shutdown();
+		try {
+			this.selectorThread.join();
+		} catch (final InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	/**
+	 * Processes the given request frame, and returns the future response frame, which is
+	 * already completed unless the request is a solve request for an unknown riddle.
+	 * Malformed frames are answered with {@link SudokuProtocol#STATUS_ILLEGAL_ARGUMENT},
+	 * and any other failure with a response frame reporting it.
+	 * @param request the non-empty request frame, excluding it's length
+	 * @return the future response frame, including it's length, flipped
+	 */
+	private CompletableFuture<ByteBuffer> process(final ByteBuffer request) {
+		final byte[] result;
+		try {
+			final byte opcode = request.get();
+			final int riddleLength;
+			if (opcode == SudokuProtocol.OPCODE_STORE) {
+				if (request.remaining() < 2) throw new IllegalArgumentException("store frame lacks riddle length");
+				riddleLength = request.getShort();
+				if (riddleLength < 0 || riddleLength > request.remaining()) throw new IllegalArgumentException("illegal riddle length " + riddleLength);
+			} else {
+				riddleLength = request.remaining();
+			}
+			final byte[] digitsToSolve = new byte[riddleLength];
+			request.get(digitsToSolve);
+
+			switch (opcode) {
+				case SudokuProtocol.OPCODE_EXISTS: {
+					result = new byte[] { (byte) (this.service.solutionExists(digitsToSolve) ? 1 : 0) };
+					break;
+				}
+				case SudokuProtocol.OPCODE_GET: {
+					result = this.service.getSolution(digitsToSolve);
+					break;
+				}
+				case SudokuProtocol.OPCODE_STORE: {
+					final byte[] digitsSolved = new byte[request.remaining()];
+					request.get(digitsSolved);
+					this.service.storeSolution(digitsToSolve, digitsSolved);
+					result = new byte[0];
+					break;
+				}
+				case SudokuProtocol.OPCODE_SOLVE: {
+					return this.service.resolveSolution(digitsToSolve).handle((solution, exception) -> exception == null ? toFrame(SudokuProtocol.STATUS_OK, solution) : toFrame(exception));
+				}
+				default: {
+					throw new IllegalArgumentException("illegal opcode " + opcode);
+				}
+			}
+		} catch (final Throwable exception) {
+			return CompletableFuture.completedFuture(toFrame(exception));
+		}
+
+		return CompletableFuture.completedFuture(toFrame(SudokuProtocol.STATUS_OK, result));
+	}
+
+
+	/**
+	 * Returns a response frame reporting the given exception, unwrapping completion
+	 * exceptions of asynchronous solves.
+	 * @param exception the exception
+	 * @return the response frame, including it's length, flipped
+	 */
+	private static ByteBuffer toFrame(final Throwable exception) {
+		final Throwable cause = exception instanceof CompletionException && exception.getCause() != null ? exception.getCause() : exception;
+		final byte status;
+		if (cause instanceof JdbcException) {
+			status = SudokuProtocol.STATUS_JDBC_ERROR;
+		} else if (cause instanceof IllegalArgumentException || cause instanceof NullPointerException || cause instanceof IndexOutOfBoundsException) {
+			status = SudokuProtocol.STATUS_ILLEGAL_ARGUMENT;
+		} else {
+			status = SudokuProtocol.STATUS_ILLEGAL_STATE;
+		}
+		final String message = cause instanceof CancellationException ? "server closed" : String.valueOf(cause.getMessage());
+		return toFrame(status, message.getBytes(StandardCharsets.UTF_8));
+	}
+
+
+	/**
+	 * Returns a response frame with the given status and result.
+	 * @param status the status
+	 * @param result the result
+	 * @return the response frame, including it's length, flipped
+	 */
+	private static ByteBuffer toFrame(final byte status, final byte[] result) {
+		return ByteBuffer.allocate(5 + result.length).putInt(1 + result.length).put(status).put(result).flip();
+	}
+
+
+
+	/**
+	 * <p>Selector loop, which accepts connections and transfers frames until the selector
+	 * is closed.</p>
+	 */
+	private final class Dispatcher implements Runnable {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void run() {
+			final Selector selector = SudokuProtocolServer.this.selector;
+			try {
+				while (!SudokuProtocolServer.this.closed) {
+					selector.select();
+					for (final Iterator<SelectionKey> iterator = selector.selectedKeys().iterator(); iterator.hasNext(); ) {
+						final SelectionKey key = iterator.next();
+						iterator.remove();
+
+						try {
+							if (key.isAcceptable()) {
+								final SocketChannel channel = SudokuProtocolServer.this.serviceChannel.accept();
+								if (channel == null) continue;
+								channel.configureBlocking(false);
+								final Connection connection = new Connection(channel);
+								connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+								continue;
+							}
+
+							final Connection connection = (Connection) key.attachment();
+							if (key.isReadable()) connection.read();
+							if (key.isValid() && key.isWritable()) connection.write();
+						} catch (final IOException | RuntimeException exception) {
+							if (key.attachment() instanceof Connection) ((Connection) key.attachment()).close();
+						}
+					}
+				}
+			} catch (final IOException exception) {
+				try { exception.printStackTrace(); } catch (final Throwable nestedException) {}
+			} finally {
+				for (final SelectionKey key : selector.keys()) {
+					try { key.channel().close(); } catch (final Exception exception) {}
+				}
+				try { selector.close(); } catch (final Exception exception) {}
+			}
+		}
+	}
+
+
+
+	/**
+	 * <p>Connection state, consisting of a read buffer large enough for any frame, the requests
+	 * waiting to be processed, and the responses waiting to be written. Except for the read buffer, which is used by the
+	 * selector thread only, the state is guarded by the instance's monitor.</p>
+	 */
+	private final class Connection implements Runnable {
+		private final SocketChannel channel;
+		private final Queue<ByteBuffer> requests;
+		private final Queue<ByteBuffer> responses;
+		private final ByteBuffer readBuffer;
+		private SelectionKey key;
+		private boolean processing;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param channel the socket channel
+		 */
+		public Connection(final SocketChannel channel) {
+			super();
+
+			this.channel = channel;
+			this.requests = new ArrayDeque<ByteBuffer>();
+			this.responses = new ArrayDeque<ByteBuffer>();
+			this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		}
+
+
+		/**
+		 * Reads available bytes, and queues all frames received completely.
+		 * @throws IOException if there is an I/O related problem, if the peer has closed the
+		 *    connection, or if a frame exceeds the maximum frame length
+		 */
+		public void read() throws IOException {
+			if (this.channel.read(this.readBuffer) == -1) throw new IOException("connection closed by peer");
+			this.readBuffer.flip();
+
+			boolean started = false;
+			synchronized (this) {
+				while (this.readBuffer.remaining() >= 4) {
+					final int length = this.readBuffer.getInt(this.readBuffer.position());
+					if (length <= 0 || length > SudokuProtocol.MAX_FRAME_LENGTH) throw new IOException("illegal frame length " + length);
+					if (this.readBuffer.remaining() < 4 + length) break;
+
+					final byte[] frame = new byte[length];
+					this.readBuffer.position(this.readBuffer.position() + 4);
+					this.readBuffer.get(frame);
+					this.requests.add(ByteBuffer.wrap(frame));
+				}
+
+				if (this.isBacklogged()) this.key.interestOps(this.key.interestOps() & ~SelectionKey.OP_READ);
+				if (!this.processing && !this.requests.isEmpty()) {
+					this.processing = true;
+					started = true;
+				}
+			}
+
+			this.readBuffer.compact();
+			if (started) {
+				try {
+					SudokuProtocolServer.this.workerExecutor.execute(this);
+				} catch (final RejectedExecutionException exception) {
+					this.reject(SudokuProtocolServer.this.closed ? "server closed" : "server busy");
+				}
+			}
+		}
+
+
+		/**
+		 * Answers all queued requests with {@link SudokuProtocol#STATUS_ILLEGAL_STATE}
+		 * and the given message, because the worker pool refused to process them.
+		 * @param message the message
+		 */
+		private void reject(final String message) {
+			final byte[] result = message.getBytes(StandardCharsets.UTF_8);
+			synchronized (this) {
+				while (!this.requests.isEmpty()) {
+					this.requests.remove();
+					this.responses.add(toFrame(SudokuProtocol.STATUS_ILLEGAL_STATE, result));
+				}
+				this.processing = false;
+				try {
+					this.key.interestOps(this.key.interestOps() | SelectionKey.OP_WRITE);
+				} catch (final CancelledKeyException exception) {
+					this.responses.clear();
+				}
+			}
+		}
+
+
+		/**
+		 * Writes as many queued responses as possible, using a gathering write, and resumes
+		 * reading once the connection is no longer backlogged.
+		 * @throws IOException if there is an I/O related problem
+		 */
+		public void write() throws IOException {
+			synchronized (this) {
+				final ByteBuffer[] responses = this.responses.toArray(new ByteBuffer[this.responses.size()]);
+				this.channel.write(responses);
+				while (!this.responses.isEmpty() && !this.responses.peek().hasRemaining()) {
+					this.responses.remove();
+				}
+				int interestOps = this.key.interestOps();
+				if (this.responses.isEmpty()) interestOps &= ~SelectionKey.OP_WRITE;
+				if (!this.isBacklogged()) interestOps |= SelectionKey.OP_READ;
+				this.key.interestOps(interestOps);
+			}
+		}
+
+
+		/**
+		 * Processes the queued requests one at a time, until none are left. If a response
+		 * is not available yet, processing stops, and resumes on the worker pool once the
+		 * response has been queued. Should processing fail unexpectedly nevertheless, the
+		 * connection is aborted, as it's peer would otherwise wait for a response forever.
+		 */
+		public void run() {
+			try {
+				while (true) {
+					final ByteBuffer request;
+					synchronized (this) {
+						request = this.requests.poll();
+						if (request == null) {
+							this.processing = false;
+							return;
+						}
+					}
+
+					final CompletableFuture<ByteBuffer> response = SudokuProtocolServer.this.process(request);
+					if (!response.isDone()) {
+						response.whenComplete((frame, exception) -> {
+							try {
+								if (this.respond(exception == null ? frame : toFrame(exception))) this.resume();
+							} catch (final Throwable nestedException) {
+								this.abort();
+								throw nestedException;
+							}
+						});
+						return;
+					}
+					if (!this.respond(response.handle((frame, exception) -> exception == null ? frame : toFrame(exception)).join())) return;
+				}
+			} catch (final Throwable exception) {
+				this.abort();
+				throw exception;
+			}
+		}
+
+
+		/**
+		 * Stops processing and closes the connection, because processing failed unexpectedly.
+		 */
+		private void abort() {
+			synchronized (this) {
+				this.processing = false;
+			}
+			this.close();
+		}
+
+
+		/**
+		 * Queues the given response frame for writing.
+		 * @param response the response frame
+		 * @return false if the connection has been closed meanwhile, true otherwise
+		 */
+		private boolean respond(final ByteBuffer response) {
+			synchronized (this) {
+				try {
+					this.responses.add(response);
+					this.key.interestOps(this.key.interestOps() | SelectionKey.OP_WRITE);
+				} catch (final CancelledKeyException exception) {
+					this.requests.clear();
+					this.processing = false;
+					return false;
+				}
+			}
+			SudokuProtocolServer.this.selector.wakeup();
+			return true;
+		}
+
+
+		/**
+		 * Resumes processing the queued requests on the worker pool, answering them with
+		 * {@link SudokuProtocol#STATUS_ILLEGAL_STATE} if the latter refuses.
+		 */
+		private void resume() {
+			try {
+				SudokuProtocolServer.this.workerExecutor.execute(this);
+			} catch (final RejectedExecutionException exception) {
+				this.reject(SudokuProtocolServer.this.closed ? "server closed" : "server busy");
+				SudokuProtocolServer.this.selector.wakeup();
+			}
+		}
+
+
+		/**
+		 * Returns whether or not too many requests and responses are pending for the receiver
+		 * to read further requests. Responses count as well, so a peer that sends requests
+		 * without taking it's responses cannot make the server queue responses without limit.
+		 * Must be called while holding the receiver's monitor.
+		 * @return whether or not reading is paused
+		 */
+		private boolean isBacklogged() {
+			return this.requests.size() + this.responses.size() >= MAX_PENDING_FRAMES;
+		}
+
+
+		/**
+		 * Closes the connection, discarding pending requests and responses.
+		 */
+		public void close() {
+			synchronized (this) {
+				this.requests.clear();
+				this.responses.clear();
+			}
+			try { this.channel.close(); } catch (final Exception exception) {}
+		}
+	}
+}
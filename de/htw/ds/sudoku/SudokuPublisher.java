@@ -0,0 +1,159 @@
+package de.htw.ds.sudoku;
+
+import java.util.Spliterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Publisher lazily resolving a Sudoku riddle for each subscriber. Solutions are only
+ * searched for as long as the subscriber has outstanding demand, so a slow subscriber
+ * throttles the search instead of causing solutions to pile up. Signals to a
+ * subscriber are always sent serially, using tasks run by the given executor.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+final class SudokuPublisher implements Flow.Publisher<Sudoku> {
+
+	private final Sudoku riddle;
+	private final SudokuDeductions deductions;
+	private final Executor executor;
+
+
+	/**
+	 * Creates a new instance.
+	 * @param riddle the riddle, which is not modified
+	 * @param deductions the logical deductions to apply before branching
+	 * @param executor the executor running the search
+	 * @throws NullPointerException if any of the given arguments is null
+	 */
+	public SudokuPublisher(final Sudoku riddle, final SudokuDeductions deductions, final Executor executor) {
+		super();
+		if (riddle == null || deductions == null || executor == null) throw new NullPointerException();
+
+		this.riddle = riddle.clone();
+		this.deductions = deductions;
+		this.executor = executor;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void subscribe(final Flow.Subscriber<? super Sudoku> subscriber) {
+		if (subscriber == null) throw new NullPointerException();
+
+		final SudokuSubscription subscription = new SudokuSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+	}
+
+
+
+	/**
+	 * <p>Subscription searching solutions on demand. The work-in-progress counter
+	 * guarantees that at most one drain task is active at any time.</p>
+	 */
+	private final class SudokuSubscription implements Flow.Subscription, Runnable, Consumer<Sudoku> {
+		private final Flow.Subscriber<? super Sudoku> subscriber;
+		private final AtomicLong demand;
+		private final AtomicInteger workInProgress;
+		private final AtomicBoolean cancelled;
+		private volatile Throwable failure;
+		private Spliterator<Sudoku> search;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param subscriber the subscriber
+		 */
+		public SudokuSubscription(final Flow.Subscriber<? super Sudoku> subscriber) {
+			this.subscriber = subscriber;
+			this.demand = new AtomicLong();
+			this.workInProgress = new AtomicInteger();
+			this.cancelled = new AtomicBoolean();
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void request(final long count) {
+			if (count <= 0) {
+				this.failure = new IllegalArgumentException("non-positive request: " + count);
+			} else {
+				long current, next;
+				do {
+					current = this.demand.get();
+					next = (current + count < 0) ? Long.MAX_VALUE : current + count;
+				} while (!this.demand.compareAndSet(current, next));
+			}
+			this.schedule();
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void cancel() {
+			this.cancelled.set(true);
+		}
+
+
+		/**
+		 * Schedules a drain task unless one is already active.
+		 */
+		private void schedule() {
+			if (this.workInProgress.getAndIncrement() == 0) {
+				SudokuPublisher.this.executor.execute(this);
+			}
+		}
+
+
+		/**
+		 * Emits solutions while there is outstanding demand, and completes
+		 * the subscriber once the search is exhausted.
+		 */
+		public void run() {
+			int missed = 1;
+			do {
+				try {
+					if (this.search == null) this.search = new SudokuSpliterator(SudokuPublisher.this.riddle.clone(), SudokuPublisher.this.deductions);
+
+					while (!this.cancelled.get()) {
+						if (this.failure != null) {
+							this.cancelled.set(true);
+							this.subscriber.onError(this.failure);
+						} else if (this.demand.get() > 0) {
+							if (this.search.tryAdvance(this)) {
+								if (this.demand.get() != Long.MAX_VALUE) this.demand.decrementAndGet();
+							} else {
+								this.cancelled.set(true);
+								this.subscriber.onComplete();
+							}
+						} else {
+							break;
+						}
+					}
+				} catch (final Throwable exception) {
+					this.cancelled.set(true);
+					this.subscriber.onError(exception);
+				}
+				missed = this.workInProgress.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+
+		/**
+		 * Passes the given solution on to the subscriber.
+		 * @param solution the solution
+		 */
+		public void accept(final Sudoku solution) {
+			this.subscriber.onNext(solution);
+		}
+	}
+}
@@ -0,0 +1,672 @@
+package de.htw.ds.sudoku;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>In-process solution cache storing packed riddles and their packed solutions (see
+ * {@link SudokuCodec}) off-heap, within direct byte buffer slabs. Therefore, even caches of
+ * several gigabytes hardly put any pressure on the garbage collector, as the heap merely
+ * holds the slabs and a primitive hash index per segment.</p>
+ * <p>The cache is divided into segments by key hash, each guarded by it's own monitor and
+ * owning an equal share of the byte budget. Within a segment, entries are stored in frames
+ * of power-of-two size classes, with slabs allocated on demand per size class until the
+ * segment's budget is exhausted. Beyond, entries are evicted using the CLOCK algorithm within
+ * the size class required: A hand sweeps the frames, clearing their reference bits, and
+ * evicts the first frame that hasn't been referenced since it's last visit.</p>
+ * <p>So that memory follows the demand when the mix of entry sizes changes, slabs are
+ * reassigned between size classes: Whenever a size class without slabs needs a frame, or
+ * a size class has evicted a slab's worth of entries since it last gained a slab, a second
+ * CLOCK hand sweeps the segment's slabs of other size classes, and picks the first one that
+ * hasn't been read from since it's last visit. It's entries are evicted, and the slab is
+ * handed over to the size class in need.</p>
+ * <p>Each frame starts with the key's hash, followed by key and value lengths as shorts,
+ * the key, and the value.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SudokuSolutionCache {
+	private static final int SEGMENT_COUNT = 16;
+	private static final int FRAME_HEADER_SIZE = 8;
+	private static final int MIN_FRAME_SIZE = 64;
+	private static final int MAX_SLAB_SIZE = 1 << 20;
+	private static final int SIZE_CLASS_COUNT = Integer.numberOfTrailingZeros(Integer.highestOneBit(FRAME_HEADER_SIZE + 2 * SudokuCodec.MAX_ENCODED_LENGTH - 1) << 1) - Integer.numberOfTrailingZeros(MIN_FRAME_SIZE) + 1;
+
+	private final long budget;
+	private final Segment[] segments;
+	private final LongAdder hitCount;
+	private final LongAdder missCount;
+	private final LongAdder evictionCount;
+
+
+	/**
+	 * Public constructor.
+	 * @param budget the maximum number of bytes allocated for slabs
+	 * @throws IllegalArgumentException if the given budget is negative
+	 */
+	public SudokuSolutionCache(final long budget) {
+		super();
+		if (budget < 0) throw new IllegalArgumentException();
+
+		final long segmentBudget = budget / SEGMENT_COUNT;
+		final int slabSize = (int) Math.max(1 << (SIZE_CLASS_COUNT - 1 + Integer.numberOfTrailingZeros(MIN_FRAME_SIZE)), Math.min(MAX_SLAB_SIZE, Long.highestOneBit(Math.max(1, segmentBudget / 8))));
+
+		this.budget = budget;
+		this.segments = new Segment[SEGMENT_COUNT];
+		this.hitCount = new LongAdder();
+		this.missCount = new LongAdder();
+		this.evictionCount = new LongAdder();
+		for (int index = 0; index < SEGMENT_COUNT; ++index) {
+			this.segments[index] = new Segment(segmentBudget, slabSize);
+		}
+	}
+
+
+	/**
+	 * Returns the maximum number of bytes allocated for slabs.
+	 * @return the byte budget
+	 */
+	public long getBudget() {
+		return this.budget;
+	}
+
+
+	/**
+	 * Returns the number of bytes currently allocated for slabs.
+	 * @return the allocated byte count
+	 */
+	public long getAllocatedSize() {
+		long result = 0;
+		for (final Segment segment : this.segments) {
+			synchronized (segment) {
+				result += segment.allocatedSize;
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Returns the number of cached entries.
+	 * @return the entry count
+	 */
+	public int getEntryCount() {
+		int result = 0;
+		for (final Segment segment : this.segments) {
+			synchronized (segment) {
+				result += segment.entryCount;
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Returns the number of lookups that found a cached solution.
+	 * @return the hit count
+	 */
+	public long getHitCount() {
+		return this.hitCount.sum();
+	}
+
+
+	/**
+	 * Returns the number of lookups that didn't find a cached solution.
+	 * @return the miss count
+	 */
+	public long getMissCount() {
+		return this.missCount.sum();
+	}
+
+
+	/**
+	 * Returns the number of entries evicted to make room for others.
+	 * @return the eviction count
+	 */
+	public long getEvictionCount() {
+		return this.evictionCount.sum();
+	}
+
+
+	/**
+	 * Returns the packed solution cached for the given packed riddle.
+	 * @param riddle the packed riddle
+	 * @return the packed solution, or null if there is none
+	 * @throws NullPointerException if the given riddle is null
+	 */
+	public byte[] get(final byte[] riddle) {
+		final int hash = hash(riddle);
+		final Segment segment = this.segments[hash >>> 28];
+		final byte[] result;
+		synchronized (segment) {
+			result = segment.get(riddle, hash);
+		}
+
+		if (result == null) {
+			this.missCount.increment();
+		} else {
+			this.hitCount.increment();
+		}
+		return result;
+	}
+
+
+	/**
+	 * Caches the given packed solution for the given packed riddle, unless a solution is
+	 * cached for it already, which is kept. This matches the storage backends, which keep
+	 * the first solution stored for a riddle.
+	 * @param riddle the packed riddle
+	 * @param solution the packed solution
+	 * @return true if the riddle is cached afterwards, false if the budget doesn't allow it
+	 * @throws NullPointerException if any of the given arguments is null
+	 * @throws IllegalArgumentException if any of the given arguments exceeds the maximum
+	 *    packed length
+	 */
+	public boolean put(final byte[] riddle, final byte[] solution) {
+		if (riddle.length > SudokuCodec.MAX_ENCODED_LENGTH || solution.length > SudokuCodec.MAX_ENCODED_LENGTH) throw new IllegalArgumentException();
+
+		final int hash = hash(riddle);
+		final Segment segment = this.segments[hash >>> 28];
+		final int evictions;
+		final boolean result;
+		synchronized (segment) {
+			final int evictionsBefore = segment.evictionCount;
+			result = segment.put(riddle, solution, hash);
+			evictions = segment.evictionCount - evictionsBefore;
+		}
+
+		if (evictions > 0) this.evictionCount.add(evictions);
+		return result;
+	}
+
+
+	/**
+	 * Returns the spread hash code of the given key.
+	 * @param key the key
+	 * @return the hash code
+	 */
+	private static int hash(final byte[] key) {
+		final int hash = Arrays.hashCode(key);
+		return hash ^ (hash >>> 16);
+	}
+
+
+
+	/**
+	 * <p>Cache segment, whose methods must be called while synchronized on it. The hash
+	 * index uses linear probing with backward shift deletion, and it's entries combine the
+	 * key hash in the upper half with the frame reference plus one in the lower half, which
+	 * in turn combines the size class index and the frame index.</p>
+	 */
+	private static final class Segment {
+		private final long budget;
+		private final int slabSize;
+		private final SizeClass[] sizeClasses;
+		private final List<Slab> slabs;
+		private final BitSet referencedSlabs;
+		private long[] index;
+		private long allocatedSize;
+		private int entryCount;
+		private int evictionCount;
+		private int slabHand;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param budget the maximum number of bytes allocated for slabs
+		 * @param slabSize the slab size
+		 */
+		public Segment(final long budget, final int slabSize) {
+			super();
+
+			this.budget = budget;
+			this.slabSize = slabSize;
+			this.sizeClasses = new SizeClass[SIZE_CLASS_COUNT];
+			this.slabs = new ArrayList<Slab>();
+			this.referencedSlabs = new BitSet();
+			this.index = new long[64];
+			for (int classIndex = 0; classIndex < SIZE_CLASS_COUNT; ++classIndex) {
+				this.sizeClasses[classIndex] = new SizeClass(MIN_FRAME_SIZE << classIndex, slabSize);
+			}
+		}
+
+
+		/**
+		 * Returns the value cached for the given key, and marks it as referenced.
+		 * @param key the key
+		 * @param hash the key's hash
+		 * @return the value, or null if there is none
+		 */
+		public byte[] get(final byte[] key, final int hash) {
+			final int position = this.find(key, hash);
+			if (position == -1) return null;
+
+			final int frameReference = (int) this.index[position] - 1;
+			final SizeClass sizeClass = this.sizeClasses[frameReference >>> 28];
+			final int frameIndex = frameReference & 0x0FFFFFFF;
+			sizeClass.referenced.set(frameIndex);
+			this.referencedSlabs.set(sizeClass.getSlab(frameIndex).number);
+			return sizeClass.readValue(frameIndex);
+		}
+
+
+		/**
+		 * Caches the given value for the given key, unless a value is cached for it already.
+		 * @param key the key
+		 * @param value the value
+		 * @param hash the key's hash
+		 * @return true if the key is cached afterwards, false otherwise
+		 */
+		public boolean put(final byte[] key, final byte[] value, final int hash) {
+			final int entrySize = FRAME_HEADER_SIZE + key.length + value.length;
+			final int classIndex = Math.max(0, Integer.numberOfTrailingZeros(Integer.highestOneBit(entrySize - 1) << 1) - Integer.numberOfTrailingZeros(MIN_FRAME_SIZE));
+			final SizeClass sizeClass = this.sizeClasses[classIndex];
+
+			if (this.find(key, hash) != -1) return true;
+
+			if (sizeClass.freeFrameCount == 0) {
+				if (this.allocatedSize + this.slabSize <= this.budget) {
+					final Slab slab = new Slab(ByteBuffer.allocateDirect(this.slabSize), this.slabs.size());
+					this.slabs.add(slab);
+					this.allocatedSize += this.slabSize;
+					sizeClass.addSlab(slab, classIndex);
+				} else if (this.slabs.isEmpty()) {
+					return false;
+				} else if (sizeClass.slabCount == 0 || sizeClass.evictionCount >= sizeClass.framesPerSlab) {
+					final Slab slab = this.nextVictimSlab(classIndex);
+					if (slab != null) {
+						this.evictSlab(slab);
+						sizeClass.addSlab(slab, classIndex);
+					} else if (sizeClass.slabCount == 0) {
+						return false;
+					}
+				}
+			}
+
+			final int frameIndex;
+			if (sizeClass.freeFrameCount > 0) {
+				frameIndex = sizeClass.allocate();
+			} else {
+				frameIndex = sizeClass.nextVictim();
+				this.remove(this.locate(sizeClass.readHash(frameIndex), (classIndex << 28 | frameIndex) + 1));
+				this.evictionCount += 1;
+				sizeClass.evictionCount += 1;
+			}
+
+			sizeClass.write(frameIndex, hash, key, value);
+			this.insert(hash, classIndex << 28 | frameIndex);
+			return true;
+		}
+
+
+		/**
+		 * Advances the slab CLOCK hand to the first slab of another size class that hasn't
+		 * been referenced since the hand's last visit, clearing the reference bits passed.
+		 * @param classIndex the index of the size class in need
+		 * @return the victim slab, or null if all slabs belong to the given size class
+		 */
+		private Slab nextVictimSlab(final int classIndex) {
+			for (int visits = 2 * this.slabs.size(); visits > 0; --visits) {
+				final Slab slab = this.slabs.get(this.slabHand);
+				this.slabHand = (this.slabHand + 1) % this.slabs.size();
+				if (slab.classIndex == classIndex) continue;
+				if (!this.referencedSlabs.get(slab.number)) return slab;
+				this.referencedSlabs.clear(slab.number);
+			}
+			return null;
+		}
+
+
+		/**
+		 * Evicts all entries stored in the given slab, and removes it from it's size class.
+		 * @param slab the slab
+		 */
+		private void evictSlab(final Slab slab) {
+			final SizeClass sizeClass = this.sizeClasses[slab.classIndex];
+			final int firstFrameIndex = slab.position * sizeClass.framesPerSlab;
+			final int lastFrameIndex = firstFrameIndex + sizeClass.framesPerSlab;
+			for (int frameIndex = sizeClass.used.nextSetBit(firstFrameIndex); frameIndex != -1 && frameIndex < lastFrameIndex; frameIndex = sizeClass.used.nextSetBit(frameIndex + 1)) {
+				this.remove(this.locate(sizeClass.readHash(frameIndex), (slab.classIndex << 28 | frameIndex) + 1));
+				this.evictionCount += 1;
+			}
+			sizeClass.removeSlab(slab);
+		}
+
+
+		/**
+		 * Returns the index position of the entry with the given key.
+		 * @param key the key
+		 * @param hash the key's hash
+		 * @return the index position, or -1 if there is none
+		 */
+		private int find(final byte[] key, final int hash) {
+			final int mask = this.index.length - 1;
+			for (int position = hash & mask; this.index[position] != 0; position = (position + 1) & mask) {
+				final long entry = this.index[position];
+				if ((int) (entry >>> 32) != hash) continue;
+
+				final int frameReference = (int) entry - 1;
+				if (this.sizeClasses[frameReference >>> 28].matches(frameReference & 0x0FFFFFFF, key)) return position;
+			}
+			return -1;
+		}
+
+
+		/**
+		 * Returns the index position of the given entry.
+		 * @param hash the entry's hash
+		 * @param frameReference the entry's frame reference plus one
+		 * @return the index position
+		 */
+		private int locate(final int hash, final int frameReference) {
+			final long entry = (long) hash << 32 | (frameReference & 0xFFFFFFFFL);
+			final int mask = this.index.length - 1;
+			int position = hash & mask;
+			while (this.index[position] != entry) {
+				position = (position + 1) & mask;
+			}
+			return position;
+		}
+
+
+		/**
+		 * Inserts an index entry for the given frame, doubling the index beforehand
+		 * if it would become more than half full.
+		 * @param hash the key's hash
+		 * @param frameReference the frame reference
+		 */
+		private void insert(final int hash, final int frameReference) {
+			if (2 * (this.entryCount + 1) > this.index.length) {
+				final long[] entries = this.index;
+				this.index = new long[2 * entries.length];
+				for (final long entry : entries) {
+					if (entry != 0) this.store(entry);
+				}
+			}
+
+			this.store((long) hash << 32 | ((frameReference + 1) & 0xFFFFFFFFL));
+			this.entryCount += 1;
+		}
+
+
+		/**
+		 * Stores the given index entry into the first free position of it's probe sequence.
+		 * @param entry the index entry
+		 */
+		private void store(final long entry) {
+			final int mask = this.index.length - 1;
+			int position = (int) (entry >>> 32) & mask;
+			while (this.index[position] != 0) {
+				position = (position + 1) & mask;
+			}
+			this.index[position] = entry;
+		}
+
+
+		/**
+		 * Removes the index entry at the given position, shifting subsequent entries of
+		 * the same probe run backward so that no lookups are interrupted.
+		 * @param position the index position
+		 */
+		private void remove(int position) {
+			final int mask = this.index.length - 1;
+			for (int next = (position + 1) & mask; this.index[next] != 0; next = (next + 1) & mask) {
+				final int home = (int) (this.index[next] >>> 32) & mask;
+				if (((next - home) & mask) >= ((next - position) & mask)) {
+					this.index[position] = this.index[next];
+					position = next;
+				}
+			}
+			this.index[position] = 0;
+			this.entryCount -= 1;
+		}
+	}
+
+
+
+	/**
+	 * <p>Slab of a segment, which is assigned to one size class at a time.</p>
+	 */
+	private static final class Slab {
+		private final ByteBuffer buffer;
+		private final int number;
+		private int classIndex;
+		private int position;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param buffer the slab's memory
+		 * @param number the slab number within it's segment
+		 */
+		public Slab(final ByteBuffer buffer, final int number) {
+			super();
+
+			this.buffer = buffer;
+			this.number = number;
+		}
+	}
+
+
+
+	/**
+	 * <p>Size class of a segment, consisting of slab positions divided into frames of equal
+	 * size, with unassigned positions being null, a reference bit and a usage bit per frame,
+	 * the CLOCK hand, the number of frames evicted since the last slab was assigned, and a
+	 * stack of free frames, which are used before any frame is evicted.</p>
+	 */
+	private static final class SizeClass {
+		private final int frameSize;
+		private final int framesPerSlab;
+		private final List<Slab> slabs;
+		private final BitSet referenced;
+		private final BitSet used;
+		private int[] freeFrames;
+		private int freeFrameCount;
+		private int slabCount;
+		private int evictionCount;
+		private int hand;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param frameSize the frame size
+		 * @param slabSize the slab size
+		 */
+		public SizeClass(final int frameSize, final int slabSize) {
+			super();
+
+			this.frameSize = frameSize;
+			this.framesPerSlab = slabSize / frameSize;
+			this.slabs = new ArrayList<Slab>();
+			this.referenced = new BitSet();
+			this.used = new BitSet();
+			this.freeFrames = new int[16];
+		}
+
+
+		/**
+		 * Assigns the given slab to the first unassigned slab position, and adds it's frames
+		 * to the free frames.
+		 * @param slab the slab
+		 * @param classIndex the index of this size class
+		 */
+		public void addSlab(final Slab slab, final int classIndex) {
+			int position = this.slabs.indexOf(null);
+			if (position == -1) {
+				position = this.slabs.size();
+				this.slabs.add(slab);
+			} else {
+				this.slabs.set(position, slab);
+			}
+			slab.classIndex = classIndex;
+			slab.position = position;
+			this.slabCount += 1;
+			this.evictionCount = 0;
+
+			final int firstFrameIndex = position * this.framesPerSlab;
+			for (int frameIndex = firstFrameIndex + this.framesPerSlab - 1; frameIndex >= firstFrameIndex; --frameIndex) {
+				this.release(frameIndex);
+			}
+		}
+
+
+		/**
+		 * Unassigns the given slab, whose frames must not be referenced by the index anymore.
+		 * @param slab the slab
+		 */
+		public void removeSlab(final Slab slab) {
+			final int firstFrameIndex = slab.position * this.framesPerSlab;
+			final int lastFrameIndex = firstFrameIndex + this.framesPerSlab;
+			this.slabs.set(slab.position, null);
+			this.slabCount -= 1;
+			this.used.clear(firstFrameIndex, lastFrameIndex);
+			this.referenced.clear(firstFrameIndex, lastFrameIndex);
+
+			int freeFrameCount = 0;
+			for (int index = 0; index < this.freeFrameCount; ++index) {
+				final int frameIndex = this.freeFrames[index];
+				if (frameIndex < firstFrameIndex || frameIndex >= lastFrameIndex) this.freeFrames[freeFrameCount++] = frameIndex;
+			}
+			this.freeFrameCount = freeFrameCount;
+		}
+
+
+		/**
+		 * Takes a frame from the free frames.
+		 * @return the frame index
+		 */
+		public int allocate() {
+			final int frameIndex = this.freeFrames[--this.freeFrameCount];
+			this.used.set(frameIndex);
+			return frameIndex;
+		}
+
+
+		/**
+		 * Releases the given frame for reuse.
+		 * @param frameIndex the frame index
+		 */
+		public void release(final int frameIndex) {
+			if (this.freeFrameCount == this.freeFrames.length) this.freeFrames = Arrays.copyOf(this.freeFrames, 2 * this.freeFrameCount);
+			this.freeFrames[this.freeFrameCount++] = frameIndex;
+			this.used.clear(frameIndex);
+		}
+
+
+		/**
+		 * Advances the CLOCK hand to the first frame that hasn't been referenced since
+		 * the hand's last visit, clearing the reference bits passed, and skipping frames
+		 * of unassigned slab positions. Note that this requires all frames of assigned
+		 * slab positions to be in use, and at least one slab position to be assigned.
+		 * @return the index of the victim frame
+		 */
+		public int nextVictim() {
+			final int frameCount = this.slabs.size() * this.framesPerSlab;
+			while (true) {
+				final int frameIndex = this.hand % frameCount;
+				this.hand = (frameIndex + 1) % frameCount;
+				if (this.slabs.get(frameIndex / this.framesPerSlab) == null) continue;
+				if (!this.referenced.get(frameIndex)) return frameIndex;
+				this.referenced.clear(frameIndex);
+			}
+		}
+
+
+		/**
+		 * Returns the slab containing the given frame.
+		 * @param frameIndex the frame index
+		 * @return the slab
+		 */
+		public Slab getSlab(final int frameIndex) {
+			return this.slabs.get(frameIndex / this.framesPerSlab);
+		}
+
+
+		/**
+		 * Returns the key hash stored in the given frame.
+		 * @param frameIndex the frame index
+		 * @return the key hash
+		 */
+		public int readHash(final int frameIndex) {
+			return this.getBuffer(frameIndex).getInt(this.getOffset(frameIndex));
+		}
+
+
+		/**
+		 * Returns whether or not the given frame contains the given key.
+		 * @param frameIndex the frame index
+		 * @param key the key
+		 * @return true if the keys match, false otherwise
+		 */
+		public boolean matches(final int frameIndex, final byte[] key) {
+			final ByteBuffer slab = this.getBuffer(frameIndex);
+			final int offset = this.getOffset(frameIndex);
+			if (slab.getShort(offset + 4) != key.length) return false;
+
+			for (int index = 0; index < key.length; ++index) {
+				if (slab.get(offset + FRAME_HEADER_SIZE + index) != key[index]) return false;
+			}
+			return true;
+		}
+
+
+		/**
+		 * Returns a copy of the value stored in the given frame.
+		 * @param frameIndex the frame index
+		 * @return the value
+		 */
+		public byte[] readValue(final int frameIndex) {
+			final ByteBuffer slab = this.getBuffer(frameIndex);
+			final int offset = this.getOffset(frameIndex);
+			final byte[] value = new byte[slab.getShort(offset + 6)];
+			slab.get(offset + FRAME_HEADER_SIZE + slab.getShort(offset + 4), value);
+			return value;
+		}
+
+
+		/**
+		 * Writes the given entry into the given frame, and clears it's reference bit.
+		 * @param frameIndex the frame index
+		 * @param hash the key's hash
+		 * @param key the key
+		 * @param value the value
+		 */
+		public void write(final int frameIndex, final int hash, final byte[] key, final byte[] value) {
+			final ByteBuffer slab = this.getBuffer(frameIndex);
+			final int offset = this.getOffset(frameIndex);
+			slab.putInt(offset, hash);
+			slab.putShort(offset + 4, (short) key.length);
+			slab.putShort(offset + 6, (short) value.length);
+			slab.put(offset + FRAME_HEADER_SIZE, key);
+			slab.put(offset + FRAME_HEADER_SIZE + key.length, value);
+			this.referenced.clear(frameIndex);
+		}
+
+
+		/**
+		 * Returns the memory of the slab containing the given frame.
+		 * @param frameIndex the frame index
+		 * @return the slab's memory
+		 */
+		private ByteBuffer getBuffer(final int frameIndex) {
+			return this.slabs.get(frameIndex / this.framesPerSlab).buffer;
+		}
+
+
+		/**
+		 * Returns the slab offset of the given frame.
+		 * @param frameIndex the frame index
+		 * @return the slab offset
+		 */
+		private int getOffset(final int frameIndex) {
+			return (frameIndex % this.framesPerSlab) * this.frameSize;
+		}
+	}
+}
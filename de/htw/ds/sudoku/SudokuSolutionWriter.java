@@ -0,0 +1,306 @@
+package de.htw.ds.sudoku;
+
+import java.io.Closeable;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Write-behind queue for solutions to be stored in a storage backend. Callers enqueue
+ * solutions into a bounded in-memory queue and return immediately, while a background writer
+ * thread stores them in batches, see {@link SudokuStore#storeSolutions(byte[][], byte[][])}.
+ * A batch is flushed once it reaches the maximum batch size, or once the flush interval
+ * following it's first solution has passed. If the queue is full, callers block until the
+ * writer has made room, or fail once the offer timeout has passed.</p>
+ * <p>If storing a batch fails with an {@link SQLException}, for example because the database
+ * is temporarily unavailable, the batch is retried up to four times, with the delay starting
+ * at 100ms and doubling after each attempt. Meanwhile, the writer doesn't take further
+ * solutions from the queue, so a lasting outage eventually makes callers block and time out
+ * instead of silently losing their solutions.</p>
+ * <p>Note that solutions are still lost if their batch fails all attempts, or if the JVM
+ * terminates before the receiver is closed; retries and failed batches are counted, and
+ * failed batches logged. Callers are therefore expected to keep solutions available by
+ * other means, for example within a cache, until they are stored.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SudokuSolutionWriter implements Closeable {
+	private static final Entry CLOSE_MARKER = new Entry(null, null);
+	private static final int MAX_RETRY_COUNT = 4;
+	private static final long INITIAL_RETRY_DELAY = 100;
+	private static final long CLOSE_OFFER_TIMEOUT = 100;
+
+	private final SudokuStore store;
+	private final BlockingQueue<Entry> queue;
+	private final int maxBatchSize;
+	private final long flushInterval;
+	private final long offerTimeout;
+	private final Thread writerThread;
+	private final LongAdder flushCount;
+	private final LongAdder storeCount;
+	private final LongAdder retryCount;
+	private final LongAdder failureCount;
+	private final LongAdder flushTime;
+	private final AtomicLong maxFlushTime;
+	private volatile boolean closed;
+
+
+	/**
+	 * Public constructor.
+	 * @param store the storage backend
+	 * @param capacity the maximum number of solutions queued
+	 * @param maxBatchSize the maximum number of solutions stored per batch
+	 * @param flushInterval the time in milliseconds a solution may wait for it's batch to fill up
+	 * @param offerTimeout the time in milliseconds callers wait for room in a full queue
+	 * @throws NullPointerException if the given store is null
+	 * @throws IllegalArgumentException if the given capacity or batch size is not strictly
+	 *    positive, or if the given interval or timeout is negative
+	 */
+	public SudokuSolutionWriter(final SudokuStore store, final int capacity, final int maxBatchSize, final long flushInterval, final long offerTimeout) {
+		super();
+		if (store == null) throw new NullPointerException();
+		if (capacity <= 0 || maxBatchSize <= 0 || flushInterval < 0 || offerTimeout < 0) throw new IllegalArgumentException();
+
+		this.store = store;
+		this.queue = new ArrayBlockingQueue<Entry>(capacity);
+		this.maxBatchSize = maxBatchSize;
+		this.flushInterval = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+		this.offerTimeout = offerTimeout;
+		this.flushCount = new LongAdder();
+		this.storeCount = new LongAdder();
+		this.retryCount = new LongAdder();
+		this.failureCount = new LongAdder();
+		this.flushTime = new LongAdder();
+		this.maxFlushTime = new AtomicLong();
+		this.writerThread = new Thread(new Writer(), "sudoku-writer");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+
+	/**
+	 * Returns the number of solutions currently queued.
+	 * @return the queue depth
+	 */
+	public int getQueueDepth() {
+		return this.queue.size();
+	}
+
+
+	/**
+	 * Returns the number of batches flushed, including failed ones.
+	 * @return the flush count
+	 */
+	public long getFlushCount() {
+		return this.flushCount.sum();
+	}
+
+
+	/**
+	 * Returns the number of solutions stored successfully.
+	 * @return the store count
+	 */
+	public long getStoreCount() {
+		return this.storeCount.sum();
+	}
+
+
+	/**
+	 * Returns the number of times a batch has been retried after a failed attempt.
+	 * @return the retry count
+	 */
+	public long getRetryCount() {
+		return this.retryCount.sum();
+	}
+
+
+	/**
+	 * Returns the number of batches that failed to be stored, even after retrying.
+	 * @return the failure count
+	 */
+	public long getFailureCount() {
+		return this.failureCount.sum();
+	}
+
+
+	/**
+	 * Returns the accumulated flush latency, i.e. the time spent storing batches.
+	 * @return the flush time in milliseconds
+	 */
+	public long getFlushTime() {
+		return TimeUnit.NANOSECONDS.toMillis(this.flushTime.sum());
+	}
+
+
+	/**
+	 * Returns the maximum flush latency.
+	 * @return the maximum flush time in milliseconds
+	 */
+	public long getMaxFlushTime() {
+		return TimeUnit.NANOSECONDS.toMillis(this.maxFlushTime.get());
+	}
+
+
+	/**
+	 * Enqueues the given solution to be stored, waiting for room if the queue is full.
+	 * @param digitsToSolve the packed riddle
+	 * @param digitsSolved the packed solution
+	 * @throws NullPointerException if one of the given values is null
+	 * @throws IllegalArgumentException if one of the given values is not a valid packed board
+	 * @throws IllegalStateException if the receiver is closed, if the queue remains full
+	 *    until the offer timeout has passed, or if the current thread is interrupted
+	 *    while waiting
+	 */
+	public void store(final byte[] digitsToSolve, final byte[] digitsSolved) {
+		SudokuCodec.decode(digitsToSolve);
+		SudokuCodec.decode(digitsSolved);
+		if (this.closed) throw new IllegalStateException("writer closed");
+
+		try {
+			if (!this.queue.offer(new Entry(digitsToSolve, digitsSolved), this.offerTimeout, TimeUnit.MILLISECONDS)) throw new IllegalStateException("write queue full");
+		} catch (final InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(exception);
+		}
+	}
+
+
+	/**
+	 * Closes the receiver, which stores all solutions queued so far and then stops the
+	 * writer thread. Solutions enqueued concurrently may be lost, as are all queued
+	 * solutions if the writer thread has died unexpectedly.
+	 */
+	public void close() {
+		if (this.closed) return;
+		this.closed = true;
+
+		boolean interrupted = false;
+		while (this.writerThread.isAlive()) {
+			try {
+				if (this.queue.offer(CLOSE_MARKER, CLOSE_OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) this.writerThread.join();
+			} catch (final InterruptedException exception) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+
+
+	/**
+	 * Stores the given batch with a single store operation, retrying it with exponential
+	 * backoff if the store fails with an {@link SQLException}, and records it's metrics.
+	 * Other exceptions indicate that the batch itself is faulty, and are not retried; they
+	 * are logged, as are errors, which therefore don't stop the writer thread.
+	 * @param batch the batch
+	 */
+	private void flush(final List<Entry> batch) {
+		final byte[][] digitsToSolve = new byte[batch.size()][];
+		final byte[][] digitsSolved = new byte[batch.size()][];
+		for (int index = 0; index < digitsToSolve.length; ++index) {
+			digitsToSolve[index] = batch.get(index).digitsToSolve;
+			digitsSolved[index] = batch.get(index).digitsSolved;
+		}
+
+		final long timeStamp = System.nanoTime();
+		try {
+			long retryDelay = INITIAL_RETRY_DELAY;
+			for (int retry = 0; true; ++retry) {
+				try {
+					this.store.storeSolutions(digitsToSolve, digitsSolved);
+					this.storeCount.add(digitsToSolve.length);
+					break;
+				} catch (final SQLException exception) {
+					if (retry == MAX_RETRY_COUNT) throw exception;
+				}
+
+				this.retryCount.increment();
+				Thread.sleep(retryDelay);
+				retryDelay <<= 1;
+			}
+		} catch (final InterruptedException exception) {
+			this.failureCount.increment();
+			Thread.currentThread().interrupt();
+		} catch (final Throwable exception) {
+			this.failureCount.increment();
+			try { exception.printStackTrace(); } catch (final Throwable nestedException) {}
+		} finally {
+			final long time = System.nanoTime() - timeStamp;
+			this.flushCount.increment();
+			this.flushTime.add(time);
+			this.maxFlushTime.accumulateAndGet(time, Math::max);
+		}
+	}
+
+
+
+	/**
+	 * <p>Queued solution.</p>
+	 */
+	private static final class Entry {
+		private final byte[] digitsToSolve;
+		private final byte[] digitsSolved;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param digitsToSolve the packed riddle
+		 * @param digitsSolved the packed solution
+		 */
+		public Entry(final byte[] digitsToSolve, final byte[] digitsSolved) {
+			super();
+
+			this.digitsToSolve = digitsToSolve;
+			this.digitsSolved = digitsSolved;
+		}
+	}
+
+
+
+	/**
+	 * <p>Writer collecting queued solutions into batches and storing them, until it
+	 * encounters the close marker. Should the thread die nevertheless, further solutions
+	 * are refused.</p>
+	 */
+	private final class Writer implements Runnable {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void run() {
+			final BlockingQueue<Entry> queue = SudokuSolutionWriter.this.queue;
+			final List<Entry> batch = new ArrayList<Entry>();
+			boolean closing = false;
+			try {
+				while (!closing) {
+					try {
+						Entry entry = queue.take();
+						final long deadline = System.nanoTime() + SudokuSolutionWriter.this.flushInterval;
+						while (entry != CLOSE_MARKER) {
+							batch.add(entry);
+							if (batch.size() == SudokuSolutionWriter.this.maxBatchSize) break;
+							entry = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+							if (entry == null) break;
+						}
+						closing = entry == CLOSE_MARKER;
+					} catch (final InterruptedException exception) {
+						// continue until the close marker is taken
+					}
+
+					if (!batch.isEmpty()) {
+						SudokuSolutionWriter.this.flush(batch);
+						batch.clear();
+					}
+				}
+			} finally {
+				SudokuSolutionWriter.this.closed = true;
+			}
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package de.htw.ds.sudoku;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Spliterator lazily resolving a Sudoku riddle using depth-first search. Each
+ * frame of the search stack holds a partially resolved riddle, it's pivot cell, and
+ * the pivot alternatives not yet tried, so memory consumption is bounded by the search
+ * depth instead of the number of solutions. Splitting hands half of the untried
+ * alternatives of the shallowest frame to a new spliterator, which allows parallel
+ * streams to distribute the search tree.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+final class SudokuSpliterator implements Spliterator<Sudoku> {
+
+	private final SudokuDeductions deductions;
+	private final Deque<Frame> frames;
+	private Sudoku pending;
+
+
+	/**
+	 * Creates a new instance resolving the given riddle.
+	 * @param riddle the riddle, which is modified during the search
+	 * @param deductions the logical deductions to apply before branching
+	 * @throws NullPointerException if any of the given arguments is null
+	 */
+	public SudokuSpliterator(final Sudoku riddle, final SudokuDeductions deductions) {
+		super();
+		if (deductions == null) throw new NullPointerException();
+
+		this.deductions = deductions;
+		this.frames = new ArrayDeque<Frame>();
+		this.pending = this.expand(riddle);
+	}
+
+
+	/**
+	 * Creates a new instance continuing the search of the given frame.
+	 * @param frame the initial frame
+	 * @param deductions the logical deductions to apply before branching
+	 */
+	private SudokuSpliterator(final Frame frame, final SudokuDeductions deductions) {
+		super();
+
+		this.deductions = deductions;
+		this.frames = new ArrayDeque<Frame>();
+		this.frames.push(frame);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean tryAdvance(final Consumer<? super Sudoku> action) {
+		if (this.pending != null) {
+			final Sudoku solution = this.pending;
+			this.pending = null;
+			action.accept(solution);
+			return true;
+		}
+
+		while (!this.frames.isEmpty()) {
+			final Frame frame = this.frames.peek();
+			if (frame.alternatives == 0) {
+				this.frames.pop();
+				continue;
+			}
+
+			final byte alternative = (byte) Long.numberOfTrailingZeros(frame.alternatives);
+			frame.alternatives &= frame.alternatives - 1;
+
+			final Sudoku clone = frame.riddle.clone();
+			clone.setDigit(frame.pivotIndex, alternative);
+			final Sudoku solution = this.expand(clone);
+			if (solution != null) {
+				action.accept(solution);
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Spliterator<Sudoku> trySplit() {
+		for (final Iterator<Frame> iterator = this.frames.descendingIterator(); iterator.hasNext(); ) {
+			final Frame frame = iterator.next();
+			final int count = Long.bitCount(frame.alternatives);
+			if (count < 2) continue;
+
+			long splitAlternatives = 0;
+			for (int index = 0; index < (count + 1) / 2; ++index) {
+				splitAlternatives |= Long.highestOneBit(frame.alternatives & ~splitAlternatives);
+			}
+			frame.alternatives &= ~splitAlternatives;
+			return new SudokuSpliterator(new Frame(frame.riddle, frame.pivotIndex, splitAlternatives), this.deductions);
+		}
+		return null;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long estimateSize() {
+		return (this.pending == null && this.frames.isEmpty()) ? 0 : Long.MAX_VALUE;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int characteristics() {
+		return Spliterator.DISTINCT | Spliterator.NONNULL;
+	}
+
+
+	/**
+	 * Deduces as much of the given riddle as possible. If this resolves the riddle,
+	 * it is returned. Otherwise a new frame branching on the cell with the least
+	 * candidates is pushed onto the search stack, unless the riddle turned out to
+	 * be unsolvable.
+	 * @param riddle the riddle, which is modified
+	 * @return the riddle if it is resolved, or null
+	 */
+	private Sudoku expand(final Sudoku riddle) {
+		final SudokuCandidates candidates = new SudokuCandidates(riddle);
+		if (!candidates.deduce(this.deductions)) return null;
+
+		final int pivotIndex = candidates.getPivotIndex();
+		if (pivotIndex == -1) return riddle;
+
+		this.frames.push(new Frame(riddle, pivotIndex, candidates.getCandidates(pivotIndex)));
+		return null;
+	}
+
+
+
+	/**
+	 * <p>Search stack frame. Note that a frame's riddle is never modified, which
+	 * allows frames created by splitting to share it.</p>
+	 */
+	private static final class Frame {
+		private final Sudoku riddle;
+		private final int pivotIndex;
+		private long alternatives;
+
+
+		/**
+		 * Creates a new instance.
+		 * @param riddle the partially resolved riddle
+		 * @param pivotIndex the digit index of the cell to branch on
+		 * @param alternatives the candidate mask of pivot alternatives not yet tried
+		 */
+		public Frame(final Sudoku riddle, final int pivotIndex, final long alternatives) {
+			this.riddle = riddle;
+			this.pivotIndex = pivotIndex;
+			this.alternatives = alternatives;
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package de.htw.ds.sudoku;
+
+import java.sql.SQLException;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Storage backend for Sudoku solutions. Riddles and solutions are passed and stored as
+ * packed boards, see {@link SudokuCodec}; storing a riddle that is already stored has no
+ * effect. Implementations report storage problems as {@link SQLException}, regardless of
+ * whether or not they are based on JDBC, so callers can handle all backends alike.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public interface SudokuStore {
+
+	/**
+	 * Stores the given solution.
+	 * @param digitsToSolve the packed riddle
+	 * @param digitsSolved the packed solution
+	 * @throws NullPointerException if one of the given values is null
+	 * @throws IllegalArgumentException if one of the given values is not a valid packed board
+	 * @throws SQLException if there is a problem with the underlying storage
+	 */
+	void storeSolution(byte[] digitsToSolve, byte[] digitsSolved) throws SQLException;
+
+
+	/**
+	 * Stores the given solutions.
+	 * @param digitsToSolve the packed riddles
+	 * @param digitsSolved the packed solutions, with the same index as their riddles
+	 * @throws NullPointerException if one of the given values is null
+	 * @throws IllegalArgumentException if the given arrays differ in length, or if one of
+	 *    their elements is not a valid packed board
+	 * @throws SQLException if there is a problem with the underlying storage
+	 */
+	void storeSolutions(byte[][] digitsToSolve, byte[][] digitsSolved) throws SQLException;
+
+
+	/**
+	 * Returns the stored solution of the given riddle.
+	 * @param digitsToSolve the packed riddle
+	 * @return the packed solution, or an empty array if there is none
+	 * @throws NullPointerException if the given value is null
+	 * @throws SQLException if there is a problem with the underlying storage
+	 */
+	byte[] querySolution(byte[] digitsToSolve) throws SQLException;
+
+
+	/**
+	 * Returns the stored solutions of the given riddles.
+	 * @param digitsToSolve the packed riddles
+	 * @return the packed solutions, with the same index as their riddles, and empty
+	 *    arrays for riddles without stored solution
+	 * @throws NullPointerException if one of the given values is null
+	 * @throws SQLException if there is a problem with the underlying storage
+	 */
+	byte[][] querySolutions(byte[][] digitsToSolve) throws SQLException;
+
+
+	/**
+	 * Returns whether or not a solution of the given riddle is stored.
+	 * @param digitsToSolve the packed riddle
+	 * @return true if a solution is stored, false otherwise
+	 * @throws NullPointerException if the given value is null
+	 * @throws SQLException if there is a problem with the underlying storage
+	 */
+	boolean solutionExists(byte[] digitsToSolve) throws SQLException;
+}
@@ -0,0 +1,485 @@
+package de.htw.ds.sudoku;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.htw.ds.TypeMetadata;
+
+
+/**
+ * <p>Symmetry transformation of Sudoku digits, consisting of an optional transposition,
+ * followed by a row permutation, a column permutation, and a digit relabeling. Row and
+ * column permutations only swap whole bands and stacks, and rows and columns within them,
+ * therefore a transformation maps any valid riddle or solution to a valid one.</p>
+ * <p>{@link #canonicalize(byte[])} determines the transformation mapping a board to the
+ * canonical representative of it's equivalence class, i.e. to the same digits for all
+ * boards that differ only by such transformations. Therefore, the canonical digits can be
+ * used as a key for caches and stores, while {@link #revert(byte[])} maps a cached solution
+ * of the canonical riddle back into a solution of the original one.</p>
+ */
+@TypeMetadata(copyright = "2012 Christoph Guttandin, Philipp Hofmann, Justin Evers", version = "0.1.0", authors = "Christoph Guttandin, Philipp Hofmann, Justin Evers")
+public final class SudokuTransformation {
+	private static final int[][][] PERMUTATIONS = new int[7][][];
+	private static final int MAX_CANDIDATES = 1 << 16;
+
+	private final byte dimension;
+	private final boolean transposed;
+	private final int[] rowIndices;
+	private final int[] columnIndices;
+	private final byte[] digitLabels;
+
+
+	/**
+	 * Creates a new instance.
+	 * @param dimension the dimension
+	 * @param transposed whether or not the digits are transposed first
+	 * @param rowIndices the source row index of each target row
+	 * @param columnIndices the source column index of each target column
+	 * @param digitLabels the target digit of each source digit
+	 */
+	private SudokuTransformation(final byte dimension, final boolean transposed, final int[] rowIndices, final int[] columnIndices, final byte[] digitLabels) {
+		super();
+
+		this.dimension = dimension;
+		this.transposed = transposed;
+		this.rowIndices = rowIndices;
+		this.columnIndices = columnIndices;
+		this.digitLabels = digitLabels;
+	}
+
+
+	/**
+	 * Returns the dimension.
+	 * @return the dimension
+	 */
+	public byte getDimension() {
+		return this.dimension;
+	}
+
+
+	/**
+	 * Returns a transformed copy of the given digits.
+	 * @param digits the digits, with negative values representing unresolved digits
+	 * @return the transformed digits, with -1 representing unresolved digits
+	 * @throws NullPointerException if the given digits are null
+	 * @throws IllegalArgumentException if the given digits don't match the receiver's dimension
+	 */
+	public byte[] apply(final byte[] digits) {
+		final int radix = this.dimension * this.dimension;
+		if (digits.length != radix * radix) throw new IllegalArgumentException();
+
+		final byte[] result = new byte[digits.length];
+		for (int rowIndex = 0; rowIndex < radix; ++rowIndex) {
+			for (int columnIndex = 0; columnIndex < radix; ++columnIndex) {
+				final byte digit = digits[this.getSourceIndex(rowIndex, columnIndex)];
+				result[rowIndex * radix + columnIndex] = digit < 0 ? -1 : this.digitLabels[digit];
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Returns a copy of the given transformed digits, with the receiver's transformation
+	 * reverted.
+	 * @param digits the transformed digits, with negative values representing unresolved digits
+	 * @return the original digits, with -1 representing unresolved digits
+	 * @throws NullPointerException if the given digits are null
+	 * @throws IllegalArgumentException if the given digits don't match the receiver's dimension
+	 */
+	public byte[] revert(final byte[] digits) {
+		final int radix = this.dimension * this.dimension;
+		if (digits.length != radix * radix) throw new IllegalArgumentException();
+
+		final byte[] digitSources = new byte[radix];
+		for (byte digit = 0; digit < radix; ++digit) {
+			digitSources[this.digitLabels[digit]] = digit;
+		}
+
+		final byte[] result = new byte[digits.length];
+		for (int rowIndex = 0; rowIndex < radix; ++rowIndex) {
+			for (int columnIndex = 0; columnIndex < radix; ++columnIndex) {
+				final byte digit = digits[rowIndex * radix + columnIndex];
+				result[this.getSourceIndex(rowIndex, columnIndex)] = digit < 0 ? -1 : digitSources[digit];
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Returns the source digit index of the given target cell.
+	 * @param rowIndex the target row index
+	 * @param columnIndex the target column index
+	 * @return the source digit index
+	 */
+	private int getSourceIndex(final int rowIndex, final int columnIndex) {
+		final int radix = this.dimension * this.dimension;
+		final int sourceRowIndex = this.rowIndices[rowIndex];
+		final int sourceColumnIndex = this.columnIndices[columnIndex];
+		return this.transposed
+			? sourceColumnIndex * radix + sourceRowIndex
+			: sourceRowIndex * radix + sourceColumnIndex;
+	}
+
+
+	/**
+	 * Returns the transformation mapping the given digits to their canonical form, which is
+	 * the same for all boards that differ only by transformations. Unresolved digits order
+	 * before resolved ones. Up to dimension 3, the canonical form is the lexicographically
+	 * minimal transformation of the given digits. Beyond, only column arrangements sorting
+	 * stacks and columns by invariant clue statistics are considered, because the number of
+	 * column permutations would be prohibitive otherwise; the canonical form is then the
+	 * lexicographically minimal one among these arrangements.
+	 * <p>The rows are chosen one by one, keeping only the partial transformations yielding
+	 * the minimal rows so far. Therefore, the effort depends mostly on the number of
+	 * transformations leading to the same rows, which is small for riddles with few
+	 * symmetries, but large for ones with very few resolved digits, or for solved boards
+	 * beyond dimension 3. If more than 65536 column arrangements or partial transformations
+	 * would have to be considered, the identity transformation is returned instead, i.e.
+	 * the digits themselves serve as their canonical form. As these counts are the same for
+	 * all boards that differ only by transformations, such boards are either all
+	 * canonicalized, or all left as they are.</p>
+	 * @param digits the digits, with negative values representing unresolved digits
+	 * @return the canonical transformation
+	 * @throws NullPointerException if the given digits are null
+	 * @throws IllegalArgumentException if the given digit count doesn't match any dimension,
+	 *    or if a digit is out of range
+	 */
+	public static SudokuTransformation canonicalize(final byte[] digits) {
+		final byte dimension = getDimension(digits.length);
+		final int radix = dimension * dimension;
+
+		boolean empty = true;
+		final byte[] transposedDigits = new byte[digits.length];
+		for (int rowIndex = 0; rowIndex < radix; ++rowIndex) {
+			for (int columnIndex = 0; columnIndex < radix; ++columnIndex) {
+				final byte digit = digits[rowIndex * radix + columnIndex];
+				if (digit >= radix) throw new IllegalArgumentException("digit out of range: " + digit);
+				if (digit >= 0) empty = false;
+				transposedDigits[columnIndex * radix + rowIndex] = digit;
+			}
+		}
+
+		if (empty) return identity(dimension);
+
+		List<Candidate> candidates = new ArrayList<Candidate>();
+		for (final boolean transposed : new boolean[] { false, true }) {
+			final byte[] board = transposed ? transposedDigits : digits;
+			final List<int[]> columnArrangements = getColumnArrangements(board, dimension, MAX_CANDIDATES - candidates.size());
+			if (columnArrangements == null) return identity(dimension);
+
+			for (final int[] columnIndices : columnArrangements) {
+				candidates.add(new Candidate(transposed, columnIndices, radix));
+			}
+		}
+
+		final byte[] bestRow = new byte[radix];
+		final byte[] row = new byte[radix];
+		final byte[] labels = new byte[radix];
+		for (int rowIndex = 0; rowIndex < radix; ++rowIndex) {
+			final List<Candidate> nextCandidates = new ArrayList<Candidate>();
+
+			for (final Candidate candidate : candidates) {
+				final byte[] board = candidate.transposed ? transposedDigits : digits;
+
+				for (int sourceRowIndex = 0; sourceRowIndex < radix; ++sourceRowIndex) {
+					if (!candidate.isAdmissible(sourceRowIndex, dimension)) continue;
+
+					System.arraycopy(candidate.labels, 0, labels, 0, radix);
+					byte nextLabel = candidate.nextLabel;
+					int comparison = nextCandidates.isEmpty() ? -1 : 0;
+					for (int columnIndex = 0; columnIndex < radix && comparison <= 0; ++columnIndex) {
+						byte digit = board[sourceRowIndex * radix + candidate.columnIndices[columnIndex]];
+						if (digit >= 0) {
+							if (labels[digit] < 0) labels[digit] = nextLabel++;
+							digit = labels[digit];
+						}
+						if (comparison == 0) comparison = Byte.compare(digit, bestRow[columnIndex]);
+						row[columnIndex] = digit;
+					}
+					if (comparison > 0) continue;
+
+					if (comparison < 0) {
+						nextCandidates.clear();
+						System.arraycopy(row, 0, bestRow, 0, radix);
+					}
+					final byte[] nextLabels = nextLabel == candidate.nextLabel ? candidate.labels : labels.clone();
+					nextCandidates.add(new Candidate(candidate, sourceRowIndex, nextLabels, nextLabel));
+				}
+			}
+
+			if (nextCandidates.size() > MAX_CANDIDATES) return identity(dimension);
+			candidates = nextCandidates;
+		}
+
+		return candidates.get(0).toTransformation(dimension);
+	}
+
+
+	/**
+	 * Returns the identity transformation of the given dimension.
+	 * @param dimension the dimension
+	 * @return the identity transformation
+	 */
+	private static SudokuTransformation identity(final byte dimension) {
+		final int radix = dimension * dimension;
+		final int[] indices = new int[radix];
+		final byte[] labels = new byte[radix];
+		for (int index = 0; index < radix; ++index) {
+			indices[index] = index;
+			labels[index] = (byte) index;
+		}
+		return new SudokuTransformation(dimension, false, indices, indices, labels);
+	}
+
+
+	/**
+	 * Returns the column arrangements to be considered for the given oriented digits. Up to
+	 * dimension 3, these are all permutations of stacks and of columns within stacks. Beyond,
+	 * stacks and columns are sorted by keys that are invariant under digit relabeling and row
+	 * permutations, and only permutations among equal keys are considered.
+	 * @param digits the oriented digits
+	 * @param dimension the dimension
+	 * @param maxArrangements the maximum number of column arrangements
+	 * @return the column arrangements, each containing the source index of every column,
+	 *    or null if there are more than the given maximum
+	 */
+	private static List<int[]> getColumnArrangements(final byte[] digits, final byte dimension, final int maxArrangements) {
+		final int radix = dimension * dimension;
+		final long[] columnKeys = new long[radix];
+		final long[] stackKeys = new long[dimension];
+		if (dimension > 3) {
+			final int[] rowClueCounts = new int[radix];
+			for (int index = 0; index < digits.length; ++index) {
+				if (digits[index] >= 0) rowClueCounts[index / radix] += 1;
+			}
+			for (int index = 0; index < digits.length; ++index) {
+				if (digits[index] >= 0) columnKeys[index % radix] += digits.length + rowClueCounts[index / radix];
+			}
+			for (int columnIndex = 0; columnIndex < radix; ++columnIndex) {
+				stackKeys[columnIndex / dimension] += columnKeys[columnIndex];
+			}
+		}
+
+		final int[][] permutations = getPermutations(dimension);
+		final List<int[]> stackOrders = new ArrayList<int[]>();
+		final List<List<int[]>> columnOrders = new ArrayList<List<int[]>>();
+		for (int stackIndex = 0; stackIndex < dimension; ++stackIndex) {
+			columnOrders.add(new ArrayList<int[]>());
+		}
+		for (final int[] permutation : permutations) {
+			if (isSorted(permutation, stackKeys, 0)) stackOrders.add(permutation);
+			for (int stackIndex = 0; stackIndex < dimension; ++stackIndex) {
+				if (isSorted(permutation, columnKeys, stackIndex * dimension)) columnOrders.get(stackIndex).add(permutation);
+			}
+		}
+
+		long arrangementCount = stackOrders.size();
+		for (int stackIndex = 0; stackIndex < dimension && arrangementCount <= maxArrangements; ++stackIndex) {
+			arrangementCount *= columnOrders.get(stackIndex).size();
+		}
+		if (arrangementCount > maxArrangements) return null;
+
+		final List<int[]> result = new ArrayList<int[]>();
+		for (final int[] stackOrder : stackOrders) {
+			addColumnArrangements(stackOrder, columnOrders, new int[radix], 0, result);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Recursively adds all column arrangements completing the given partial one to the
+	 * given result.
+	 * @param stackOrder the source index of every stack
+	 * @param columnOrders the column orders considered within each source stack
+	 * @param columnIndices the partial column arrangement
+	 * @param position the number of stacks already arranged
+	 * @param result the column arrangements
+	 */
+	private static void addColumnArrangements(final int[] stackOrder, final List<List<int[]>> columnOrders, final int[] columnIndices, final int position, final List<int[]> result) {
+		final int dimension = stackOrder.length;
+		if (position == dimension) {
+			result.add(columnIndices.clone());
+			return;
+		}
+
+		final int stackIndex = stackOrder[position];
+		for (final int[] columnOrder : columnOrders.get(stackIndex)) {
+			for (int offset = 0; offset < dimension; ++offset) {
+				columnIndices[position * dimension + offset] = stackIndex * dimension + columnOrder[offset];
+			}
+			addColumnArrangements(stackOrder, columnOrders, columnIndices, position + 1, result);
+		}
+	}
+
+
+	/**
+	 * Returns whether or not the given permutation sorts the keys starting at the given
+	 * offset into ascending order.
+	 * @param permutation the permutation
+	 * @param keys the keys
+	 * @param offset the key offset
+	 * @return true if the permuted keys are ascending, false otherwise
+	 */
+	private static boolean isSorted(final int[] permutation, final long[] keys, final int offset) {
+		for (int index = 1; index < permutation.length; ++index) {
+			if (keys[offset + permutation[index - 1]] > keys[offset + permutation[index]]) return false;
+		}
+		return true;
+	}
+
+
+	/**
+	 * Returns all permutations of the given number of elements.
+	 * @param elementCount the number of elements
+	 * @return the permutations
+	 */
+	private static int[][] getPermutations(final byte elementCount) {
+		synchronized (PERMUTATIONS) {
+			if (PERMUTATIONS[elementCount] == null) {
+				final List<int[]> permutations = new ArrayList<int[]>();
+				addPermutations(new int[elementCount], 0, permutations);
+				PERMUTATIONS[elementCount] = permutations.toArray(new int[permutations.size()][]);
+			}
+			return PERMUTATIONS[elementCount];
+		}
+	}
+
+
+	/**
+	 * Recursively adds all completions of the given partial permutation to the given result.
+	 * @param permutation the partial permutation
+	 * @param length the number of elements already chosen
+	 * @param result the permutations
+	 */
+	private static void addPermutations(final int[] permutation, final int length, final List<int[]> result) {
+		if (length == permutation.length) {
+			result.add(permutation.clone());
+			return;
+		}
+
+		next: for (int element = 0; element < permutation.length; ++element) {
+			for (int index = 0; index < length; ++index) {
+				if (permutation[index] == element) continue next;
+			}
+			permutation[length] = element;
+			addPermutations(permutation, length + 1, result);
+		}
+	}
+
+
+	/**
+	 * Returns the dimension matching the given digit count.
+	 * @param digitCount the digit count
+	 * @return the dimension
+	 * @throws IllegalArgumentException if the given digit count doesn't match any dimension
+	 */
+	private static byte getDimension(final int digitCount) {
+		for (byte dimension = 2; dimension <= 6; ++dimension) {
+			if (dimension * dimension * dimension * dimension == digitCount) return dimension;
+		}
+		throw new IllegalArgumentException("invalid digit count: " + digitCount);
+	}
+
+
+
+	/**
+	 * <p>Partial transformation with the first rows chosen. The chosen rows are linked
+	 * through parent candidates, and digit labels are shared until they change, which
+	 * keeps large numbers of candidates affordable.</p>
+	 */
+	private static final class Candidate {
+		private final boolean transposed;
+		private final int[] columnIndices;
+		private final Candidate parent;
+		private final int rowIndex;
+		private final long usedRows;
+		private final byte[] labels;
+		private final byte nextLabel;
+
+
+		/**
+		 * Creates a new instance without any rows chosen.
+		 * @param transposed whether or not the digits are transposed first
+		 * @param columnIndices the source index of every column
+		 * @param radix the radix
+		 */
+		public Candidate(final boolean transposed, final int[] columnIndices, final int radix) {
+			super();
+
+			this.transposed = transposed;
+			this.columnIndices = columnIndices;
+			this.parent = null;
+			this.rowIndex = -1;
+			this.usedRows = 0;
+			this.labels = new byte[radix];
+			this.nextLabel = 0;
+			for (int digit = 0; digit < radix; ++digit) {
+				this.labels[digit] = -1;
+			}
+		}
+
+
+		/**
+		 * Creates a new instance extending the given parent by the given row.
+		 * @param parent the parent
+		 * @param rowIndex the source index of the next row
+		 * @param labels the digit labels, with -1 for digits not yet labeled
+		 * @param nextLabel the next digit label
+		 */
+		public Candidate(final Candidate parent, final int rowIndex, final byte[] labels, final byte nextLabel) {
+			super();
+
+			this.transposed = parent.transposed;
+			this.columnIndices = parent.columnIndices;
+			this.parent = parent;
+			this.rowIndex = rowIndex;
+			this.usedRows = parent.usedRows | (1L << rowIndex);
+			this.labels = labels;
+			this.nextLabel = nextLabel;
+		}
+
+
+		/**
+		 * Returns whether or not the row with the given source index may be chosen next,
+		 * which requires it to be unused, and to belong to the band of the previous row
+		 * unless that band is complete.
+		 * @param rowIndex the source row index
+		 * @param dimension the dimension
+		 * @return true if the row is admissible, false otherwise
+		 */
+		public boolean isAdmissible(final int rowIndex, final byte dimension) {
+			final long bandMask = ((1L << dimension) - 1) << (rowIndex / dimension * dimension);
+			if (Long.bitCount(this.usedRows) % dimension == 0) {
+				return (this.usedRows & bandMask) == 0;
+			}
+			return (this.usedRows & (1L << rowIndex)) == 0 && this.rowIndex / dimension == rowIndex / dimension;
+		}
+
+
+		/**
+		 * Returns the transformation of this complete candidate, with digits that weren't
+		 * labeled yet labeled in ascending order.
+		 * @param dimension the dimension
+		 * @return the transformation
+		 */
+		public SudokuTransformation toTransformation(final byte dimension) {
+			final int radix = dimension * dimension;
+			final int[] rowIndices = new int[radix];
+			Candidate candidate = this;
+			for (int index = radix - 1; index >= 0; --index) {
+				rowIndices[index] = candidate.rowIndex;
+				candidate = candidate.parent;
+			}
+
+			final byte[] labels = this.labels.clone();
+			byte nextLabel = this.nextLabel;
+			for (int digit = 0; digit < radix; ++digit) {
+				if (labels[digit] < 0) labels[digit] = nextLabel++;
+			}
+			return new SudokuTransformation(dimension, this.transposed, rowIndices, this.columnIndices.clone(), labels);
+		}
+	}
+}
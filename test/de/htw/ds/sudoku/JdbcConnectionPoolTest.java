@@ -0,0 +1,347 @@
+package de.htw.ds.sudoku;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.junit.Test;
+
+
+/**
+ * <p>Tests for {@link JdbcConnectionPool}, covering borrowing and returning connections,
+ * validation on borrow, idle eviction, the statement cache, and closing connection and
+ * statement proxies more than once. The pool wraps an in-memory stand-in data source, whose
+ * connections and statements merely record how they are used. Run them using
+ * <tt>mvn test</tt>.</p>
+ */
+public class JdbcConnectionPoolTest {
+	private static final String SQL = "SELECT 1";
+
+
+	/**
+	 * Returned connections must be reused by later borrowers, each of which receives a
+	 * new proxy.
+	 */
+	@Test(timeout = 10000)
+	public void testBorrowAndReturn() throws SQLException {
+		final StandInDataSource dataSource = new StandInDataSource();
+		try (JdbcConnectionPool pool = new JdbcConnectionPool(dataSource.proxy, 2)) {
+			final Connection first = pool.getConnection();
+			assertEquals(1, pool.getActiveCount());
+			first.close();
+			assertTrue(first.isClosed());
+			assertEquals(0, pool.getActiveCount());
+			assertEquals(1, pool.getIdleCount());
+
+			final Connection second = pool.getConnection();
+			assertNotSame(first, second);
+			assertFalse(second.isClosed());
+			assertEquals(1, pool.getCreationCount());
+			assertEquals(2, pool.getBorrowCount());
+			second.close();
+
+			try {
+				first.createStatement();
+				fail();
+			} catch (final SQLException exception) {}
+		}
+		assertTrue(dataSource.connections.get(0).closed);
+	}
+
+
+	/**
+	 * Closing a connection proxy again must not return the underlying connection while it
+	 * is borrowed by someone else.
+	 */
+	@Test(timeout = 10000)
+	public void testDoubleClose() throws SQLException {
+		final StandInDataSource dataSource = new StandInDataSource();
+		try (JdbcConnectionPool pool = new JdbcConnectionPool(dataSource.proxy, 2)) {
+			final Connection first = pool.getConnection();
+			first.close();
+			final Connection second = pool.getConnection();
+			first.close();
+
+			assertFalse(second.isClosed());
+			assertEquals(1, pool.getActiveCount());
+			assertEquals(0, pool.getIdleCount());
+
+			final Connection third = pool.getConnection();
+			assertEquals(2, pool.getCreationCount());
+			assertEquals(2, pool.getActiveCount());
+			second.createStatement();
+			third.close();
+			second.close();
+			assertEquals(0, pool.getActiveCount());
+		}
+	}
+
+
+	/**
+	 * Connections idle for more than a second must be validated on borrow, and replaced
+	 * if they turn out to be invalid.
+	 */
+	@Test(timeout = 10000)
+	public void testValidation() throws SQLException, InterruptedException {
+		final StandInDataSource dataSource = new StandInDataSource();
+		try (JdbcConnectionPool pool = new JdbcConnectionPool(dataSource.proxy, 2)) {
+			pool.getConnection().close();
+			dataSource.connections.get(0).valid = false;
+			Thread.sleep(1100);
+
+			pool.getConnection().close();
+			assertEquals(1, pool.getValidationFailureCount());
+			assertEquals(2, pool.getCreationCount());
+			assertTrue(dataSource.connections.get(0).closed);
+			assertFalse(dataSource.connections.get(1).closed);
+		}
+	}
+
+
+	/**
+	 * Connections idle for longer than the idle timeout must be evicted.
+	 */
+	@Test(timeout = 10000)
+	public void testIdleEviction() throws SQLException, InterruptedException {
+		final StandInDataSource dataSource = new StandInDataSource();
+		try (JdbcConnectionPool pool = new JdbcConnectionPool(dataSource.proxy, 2, 50, 1000)) {
+			final Connection first = pool.getConnection();
+			final Connection second = pool.getConnection();
+			first.close();
+			second.close();
+			assertEquals(2, pool.getIdleCount());
+
+			Thread.sleep(100);
+			pool.evictIdleConnections();
+			assertEquals(0, pool.getIdleCount());
+			assertEquals(2, pool.getEvictionCount());
+			assertTrue(dataSource.connections.get(0).closed);
+			assertTrue(dataSource.connections.get(1).closed);
+		}
+	}
+
+
+	/**
+	 * Statements prepared again must reuse the cached statement once it is closed, and
+	 * must yield a separate statement while it is in use.
+	 */
+	@Test(timeout = 10000)
+	public void testStatementCache() throws SQLException {
+		final StandInDataSource dataSource = new StandInDataSource();
+		try (JdbcConnectionPool pool = new JdbcConnectionPool(dataSource.proxy, 1)) {
+			try (Connection connection = pool.getConnection()) {
+				final PreparedStatement first = connection.prepareStatement(SQL);
+				assertSame(connection, first.getConnection());
+				final PreparedStatement second = connection.prepareStatement(SQL);
+				assertEquals(2, dataSource.connections.get(0).statements.size());
+				second.close();
+				first.setInt(1, 42);
+				first.close();
+				assertTrue(first.isClosed());
+			}
+
+			try (Connection connection = pool.getConnection()) {
+				final PreparedStatement statement = connection.prepareStatement(SQL);
+				assertEquals(2, dataSource.connections.get(0).statements.size());
+				assertEquals(1, dataSource.connections.get(0).statements.get(0).clearCount);
+				assertFalse(statement.isClosed());
+				statement.close();
+			}
+		}
+	}
+
+
+	/**
+	 * Closing a cached statement proxy again, or one left open by an earlier borrower,
+	 * must not affect the statement handed out to the current borrower.
+	 */
+	@Test(timeout = 10000)
+	public void testStatementDoubleClose() throws SQLException {
+		final StandInDataSource dataSource = new StandInDataSource();
+		try (JdbcConnectionPool pool = new JdbcConnectionPool(dataSource.proxy, 1)) {
+			final Connection firstConnection = pool.getConnection();
+			final PreparedStatement first = firstConnection.prepareStatement(SQL);
+			firstConnection.close();
+			assertTrue(first.isClosed());
+
+			try (Connection connection = pool.getConnection()) {
+				final PreparedStatement second = connection.prepareStatement(SQL);
+				assertNotSame(first, second);
+				first.close();
+				assertFalse(second.isClosed());
+				second.setInt(1, 42);
+
+				second.close();
+				second.close();
+				final PreparedStatement third = connection.prepareStatement(SQL);
+				first.close();
+				second.close();
+				assertFalse(third.isClosed());
+				third.setInt(1, 42);
+				third.close();
+			}
+
+			assertEquals(1, dataSource.connections.get(0).statements.size());
+			assertEquals(3, dataSource.connections.get(0).statements.get(0).clearCount);
+
+			try {
+				first.setInt(1, 42);
+				fail();
+			} catch (final SQLException exception) {}
+		}
+	}
+
+
+
+	/**
+	 * <p>In-memory stand-in for a data source, recording the connections created.</p>
+	 */
+	private static final class StandInDataSource implements InvocationHandler {
+		private final DataSource proxy;
+		private final List<StandInConnection> connections;
+
+
+		/**
+		 * Creates a new instance.
+		 */
+		public StandInDataSource() {
+			super();
+
+			this.proxy = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[] { DataSource.class }, this);
+			this.connections = new ArrayList<>();
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public Object invoke(final Object proxy, final Method method, final Object[] args) {
+			if (!method.getName().equals("getConnection")) throw new UnsupportedOperationException(method.getName());
+
+			final StandInConnection connection = new StandInConnection();
+			this.connections.add(connection);
+			return connection.proxy;
+		}
+	}
+
+
+
+	/**
+	 * <p>In-memory stand-in for a connection, recording the statements prepared.</p>
+	 */
+	private static final class StandInConnection implements InvocationHandler {
+		private final Connection proxy;
+		private final List<StandInStatement> statements;
+		private volatile boolean valid;
+		private volatile boolean closed;
+		private boolean autoCommit;
+
+
+		/**
+		 * Creates a new instance.
+		 */
+		public StandInConnection() {
+			super();
+
+			this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, this);
+			this.statements = new ArrayList<>();
+			this.valid = true;
+			this.autoCommit = true;
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws SQLException {
+			switch (method.getName()) {
+				case "close": {
+					this.closed = true;
+					return null;
+				}
+				case "isValid": {
+					return this.valid && !this.closed;
+				}
+				case "getAutoCommit": {
+					return this.autoCommit;
+				}
+				case "setAutoCommit": {
+					this.autoCommit = (Boolean) args[0];
+					return null;
+				}
+				case "clearWarnings":
+				case "rollback":
+				case "createStatement": {
+					if (this.closed) throw new SQLException("connection closed");
+					return null;
+				}
+				case "prepareStatement": {
+					final StandInStatement statement = new StandInStatement();
+					this.statements.add(statement);
+					return statement.proxy;
+				}
+				default: {
+					throw new UnsupportedOperationException(method.getName());
+				}
+			}
+		}
+	}
+
+
+
+	/**
+	 * <p>In-memory stand-in for a prepared statement, counting how often it's parameters
+	 * are cleared.</p>
+	 */
+	private static final class StandInStatement implements InvocationHandler {
+		private final PreparedStatement proxy;
+		private int clearCount;
+		private boolean closed;
+
+
+		/**
+		 * Creates a new instance.
+		 */
+		public StandInStatement() {
+			super();
+
+			this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, this);
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws SQLException {
+			if (this.closed) throw new SQLException("statement closed");
+			switch (method.getName()) {
+				case "close": {
+					this.closed = true;
+					return null;
+				}
+				case "clearParameters": {
+					this.clearCount += 1;
+					return null;
+				}
+				case "setInt": {
+					return null;
+				}
+				default: {
+					throw new UnsupportedOperationException(method.getName());
+				}
+			}
+		}
+	}
+}
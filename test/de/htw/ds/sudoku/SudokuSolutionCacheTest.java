@@ -0,0 +1,215 @@
+package de.htw.ds.sudoku;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+
+/**
+ * <p>Tests for {@link SudokuSolutionCache}, covering put-if-absent semantics, CLOCK
+ * eviction, the reassignment of slabs between size classes, and backward shift deletion
+ * within the hash index. All keys are chosen to fall into the first segment, whose slabs
+ * are the smallest possible of 4096 bytes, holding 64 frames of the smallest size class.
+ * Run them using <tt>mvn test</tt>.</p>
+ */
+public class SudokuSolutionCacheTest {
+	private static final int SEGMENT_COUNT = 16;
+	private static final int SLAB_SIZE = 4096;
+	private static final int SMALL_FRAMES_PER_SLAB = 64;
+	private static final int LARGE_VALUE_LENGTH = 1000;
+
+
+	/**
+	 * Putting a solution for a riddle already cached must keep the first solution.
+	 */
+	@Test(timeout = 10000)
+	public void testPutIfAbsent() {
+		final SudokuSolutionCache cache = new SudokuSolutionCache(SEGMENT_COUNT * SLAB_SIZE);
+		final byte[] key = keys(1, 0).get(0);
+
+		assertTrue(cache.put(key, value(key, 1)));
+		assertTrue(cache.put(key, value(key, 2)));
+		assertArrayEquals(value(key, 1), cache.get(key));
+		assertEquals(1, cache.getEntryCount());
+	}
+
+
+	/**
+	 * Once the budget is exhausted, entries must be evicted in CLOCK order, sparing
+	 * entries read since the hand's last visit.
+	 */
+	@Test(timeout = 10000)
+	public void testEviction() {
+		final int capacity = 4 * SMALL_FRAMES_PER_SLAB;
+		final SudokuSolutionCache cache = new SudokuSolutionCache(SEGMENT_COUNT * 4 * SLAB_SIZE);
+		final List<byte[]> keys = keys(capacity + 100, 0);
+		final byte[] hotKey = keys.get(0);
+
+		for (final byte[] key : keys) {
+			assertTrue(cache.put(key, value(key, 0)));
+			assertNotNull(cache.get(hotKey));
+		}
+
+		assertEquals(capacity, cache.getEntryCount());
+		assertEquals(100, cache.getEvictionCount());
+		assertEquals(4 * SLAB_SIZE, cache.getAllocatedSize());
+		assertArrayEquals(value(hotKey, 0), cache.get(hotKey));
+
+		int hitCount = 0;
+		for (final byte[] key : keys) {
+			final byte[] value = cache.get(key);
+			if (value == null) continue;
+			assertArrayEquals(value(key, 0), value);
+			hitCount += 1;
+		}
+		assertEquals(capacity, hitCount);
+		for (final byte[] key : keys.subList(keys.size() - 100, keys.size())) {
+			assertNotNull(cache.get(key));
+		}
+	}
+
+
+	/**
+	 * A size class without slabs must take over a slab of another size class once the
+	 * budget is exhausted, evicting the latter's entries.
+	 */
+	@Test(timeout = 10000)
+	public void testSlabReassignment() {
+		final int capacity = 4 * SMALL_FRAMES_PER_SLAB;
+		final SudokuSolutionCache cache = new SudokuSolutionCache(SEGMENT_COUNT * 4 * SLAB_SIZE);
+		final List<byte[]> smallKeys = keys(capacity, 0);
+		for (final byte[] key : smallKeys) {
+			assertTrue(cache.put(key, value(key, 0)));
+		}
+		assertEquals(0, cache.getEvictionCount());
+
+		final byte[] largeKey = keys(1, 1).get(0);
+		final byte[] largeValue = Arrays.copyOf(value(largeKey, 0), LARGE_VALUE_LENGTH);
+		assertTrue(cache.put(largeKey, largeValue));
+		assertArrayEquals(largeValue, cache.get(largeKey));
+		assertEquals(SMALL_FRAMES_PER_SLAB, cache.getEvictionCount());
+		assertEquals(capacity - SMALL_FRAMES_PER_SLAB + 1, cache.getEntryCount());
+		assertEquals(4 * SLAB_SIZE, cache.getAllocatedSize());
+
+		int hitCount = 0;
+		for (final byte[] key : smallKeys) {
+			final byte[] value = cache.get(key);
+			if (value == null) continue;
+			assertArrayEquals(value(key, 0), value);
+			hitCount += 1;
+		}
+		assertEquals(capacity - SMALL_FRAMES_PER_SLAB, hitCount);
+	}
+
+
+	/**
+	 * Evicting entries from the middle of a probe run of colliding keys must keep the
+	 * remaining entries of the run reachable.
+	 */
+	@Test(timeout = 10000)
+	public void testBackwardShiftDeletion() {
+		final SudokuSolutionCache cache = new SudokuSolutionCache(SEGMENT_COUNT * SLAB_SIZE);
+		final List<byte[]> collidingKeys = collidingKeys(40);
+		final List<byte[]> otherKeys = keys(SMALL_FRAMES_PER_SLAB - collidingKeys.size() + 10, 2);
+		for (final byte[] key : collidingKeys) {
+			assertTrue(cache.put(key, value(key, 0)));
+		}
+		for (final byte[] key : otherKeys.subList(0, SMALL_FRAMES_PER_SLAB - collidingKeys.size())) {
+			assertTrue(cache.put(key, value(key, 0)));
+		}
+		for (int index = 0; index < collidingKeys.size(); index += 2) {
+			assertNotNull(cache.get(collidingKeys.get(index)));
+		}
+
+		// the CLOCK hand spares the even keys just read, and evicts the first ten odd ones
+		for (final byte[] key : otherKeys.subList(SMALL_FRAMES_PER_SLAB - collidingKeys.size(), otherKeys.size())) {
+			assertTrue(cache.put(key, value(key, 0)));
+		}
+		assertEquals(10, cache.getEvictionCount());
+		assertEquals(SMALL_FRAMES_PER_SLAB, cache.getEntryCount());
+
+		for (int index = 0; index < collidingKeys.size(); ++index) {
+			final byte[] key = collidingKeys.get(index);
+			if (index % 2 == 1 && index < 20) {
+				assertNull(cache.get(key));
+			} else {
+				assertArrayEquals(value(key, 0), cache.get(key));
+			}
+		}
+		for (final byte[] key : otherKeys) {
+			assertArrayEquals(value(key, 0), cache.get(key));
+		}
+	}
+
+
+	/**
+	 * Returns the given number of distinct keys falling into the first segment, with the
+	 * given tag as first byte to tell key sets apart.
+	 * @param count the number of keys
+	 * @param tag the tag
+	 * @return the keys
+	 */
+	private static List<byte[]> keys(final int count, final int tag) {
+		final List<byte[]> result = new ArrayList<byte[]>();
+		for (int number = 0; result.size() < count; ++number) {
+			final byte[] key = { (byte) tag, (byte) (number >>> 16), (byte) (number >>> 8), (byte) number };
+			if (segmentIndex(key) == 0) result.add(key);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Returns the given number of distinct keys falling into the first segment, which
+	 * all share the same hash code, and therefore the same probe run.
+	 * @param count the number of keys
+	 * @return the keys
+	 */
+	private static List<byte[]> collidingKeys(final int count) {
+		final List<byte[]> result = new ArrayList<byte[]>();
+		final int hash = Arrays.hashCode(new byte[] { 64, 64, 64 });
+		for (int first = 0; first < 128 && result.size() < count; ++first) {
+			for (int second = -128; second < 128 && result.size() < count; ++second) {
+				final int third = hash - Arrays.hashCode(new byte[] { (byte) first, (byte) second, 0 });
+				if (third < -128 || third > 127) continue;
+
+				final byte[] key = { (byte) first, (byte) second, (byte) third };
+				assertEquals(hash, Arrays.hashCode(key));
+				assertEquals(0, segmentIndex(key));
+				result.add(key);
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Returns a value derived from the given key and version.
+	 * @param key the key
+	 * @param version the version
+	 * @return the value
+	 */
+	private static byte[] value(final byte[] key, final int version) {
+		final byte[] result = Arrays.copyOf(key, 16);
+		result[15] = (byte) version;
+		return result;
+	}
+
+
+	/**
+	 * Returns the index of the segment the given key falls into.
+	 * @param key the key
+	 * @return the segment index
+	 */
+	private static int segmentIndex(final byte[] key) {
+		final int hash = Arrays.hashCode(key);
+		return (hash ^ (hash >>> 16)) >>> 28;
+	}
+}
@@ -0,0 +1,204 @@
+package de.htw.ds.sudoku;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import de.htw.ds.sudoku.Sudoku.ElementType;
+import org.junit.Test;
+
+
+/**
+ * <p>Tests for {@link Sudoku}, covering the per-element masks backing the candidate and
+ * anti-solution analysis, cloning riddles whose plugins only feature a default constructor,
+ * and resolving generated riddles with each plugin. Run them using <tt>mvn test</tt>.</p>
+ */
+public class SudokuTest {
+	private static final int TRIALS = 200;
+
+
+	/**
+	 * Candidates taken from the element masks must match a rescan of the digits after
+	 * each modification, including riddles whose elements contain a digit repeatedly.
+	 */
+	@Test(timeout = 10000)
+	public void testCandidates() {
+		final SplittableRandom randomizer = new SplittableRandom(0x5EEDL);
+		final Sudoku sudoku = new Sudoku(new SudokuPlugin0(), (byte) 3);
+		sudoku.populate(randomizer);
+		assertCandidates(sudoku);
+
+		for (int trial = 0; trial < TRIALS; ++trial) {
+			final int digitIndex = randomizer.nextInt(sudoku.getDigits().length);
+			sudoku.setDigit(digitIndex, (byte) (randomizer.nextInt(sudoku.getRadix() + 1) - 1));
+			assertCandidates(sudoku);
+		}
+
+		final Sudoku clone = sudoku.clone();
+		assertCandidates(clone);
+		sudoku.setDigits(new byte[sudoku.getDigits().length]);
+		assertCandidates(sudoku);
+		clone.setDigits(ElementType.SECTOR, 4, new byte[] { -1, 0, 1, 2, -1, 3, 4, 5, 6 });
+		assertCandidates(clone);
+	}
+
+
+	/**
+	 * Anti-solutions must merge the candidates of the unresolved peers of a cell's element.
+	 */
+	@Test(timeout = 10000)
+	public void testAntiSolutions() {
+		final SudokuPlugin0 plugin = new SudokuPlugin0();
+		final Sudoku sudoku = new Sudoku(plugin, (byte) 2);
+		sudoku.setDigits("0", "1", ".", ".", ".", ".", ".", ".", ".", ".", ".", ".", ".", ".", ".", ".");
+
+		assertEquals(Set.of((byte) 2, (byte) 3), plugin.getAntiSolutions(ElementType.ROW, 0));
+		assertEquals(Set.of((byte) 1, (byte) 2, (byte) 3), plugin.getAntiSolutions(ElementType.COLUMN, 0));
+		assertEquals(Set.of((byte) 2, (byte) 3), plugin.getAntiSolutions(ElementType.SECTOR, 0));
+	}
+
+
+	/**
+	 * Riddles whose plugin class only features a default constructor must be clonable, and
+	 * the clone's plugin must share the deductions if the class extends
+	 * {@link AbstractSudokuPlugin}.
+	 */
+	@Test(timeout = 10000)
+	public void testCloneWithDefaultConstructor() {
+		final DefaultConstructorPlugin plugin = new DefaultConstructorPlugin();
+		final Sudoku sudoku = new Sudoku(plugin, (byte) 2);
+		sudoku.setDigits("0", "1", "2", "3", ".", ".", ".", ".", ".", ".", ".", ".", ".", ".", ".", ".");
+
+		final Sudoku clone = sudoku.clone();
+		assertArrayEquals(sudoku.getDigits(), clone.getDigits());
+		assertEquals(2, sudoku.resolve(2).size());
+		assertSame(plugin.getDeductions(), DefaultConstructorPlugin.resolvingDeductions);
+
+		final Sudoku plain = new Sudoku(new PlainPlugin(), (byte) 2);
+		plain.setDigits(sudoku.getDigits());
+		assertEquals(2, plain.resolve(2).size());
+	}
+
+
+	/**
+	 * Generated riddles must have a single valid solution agreeing with their given
+	 * digits, regardless of the plugin resolving them.
+	 */
+	@Test(timeout = 60000)
+	public void testResolve() {
+		final Sudoku riddle = new SudokuGenerator(SudokuPlugin0.class).generate((byte) 3, 1).get(0);
+		for (final SudokuPlugin plugin : new SudokuPlugin[] { new SudokuPlugin0(), new SudokuPlugin1(), new SudokuPlugin2(), new SudokuPlugin3(), new SudokuPlugin4(), new SudokuPlugin5() }) {
+			final Sudoku sudoku = new Sudoku(plugin, riddle.getDimension());
+			sudoku.setDigits(riddle.getDigits());
+
+			final Set<Sudoku> solutions = sudoku.resolve(2);
+			assertEquals(plugin.getClass().getSimpleName(), 1, solutions.size());
+			final byte[] solution = solutions.iterator().next().getDigits();
+			for (int index = 0; index < solution.length; ++index) {
+				assertTrue(solution[index] >= 0);
+				if (riddle.getDigits()[index] >= 0) assertEquals(riddle.getDigits()[index], solution[index]);
+			}
+			assertCandidates(solutions.iterator().next());
+		}
+	}
+
+
+	/**
+	 * Asserts that the candidates of each cell of the given sudoku match a rescan of
+	 * the cell's row, column and sector.
+	 * @param sudoku the sudoku
+	 */
+	private static void assertCandidates(final Sudoku sudoku) {
+		final byte[] digits = sudoku.getDigits();
+		final int radix = sudoku.getRadix();
+		final int dimension = sudoku.getDimension();
+		for (int digitIndex = 0; digitIndex < digits.length; ++digitIndex) {
+			long usedDigits = 0;
+			for (int type = 0; type < 3; ++type) {
+				for (final int index : SudokuCandidates.getElement(dimension, SudokuCandidates.elementIndex(type, dimension, digitIndex))) {
+					if (digits[index] >= 0) usedDigits |= 1L << digits[index];
+				}
+			}
+			assertEquals((-1L >>> (Long.SIZE - radix)) & ~usedDigits, sudoku.getCandidates(digitIndex));
+		}
+	}
+
+
+
+	/**
+	 * <p>Plugin extending {@link AbstractSudokuPlugin}, which only features a default
+	 * constructor, and records the deductions of the last plugin resolving a riddle.</p>
+	 */
+	public static final class DefaultConstructorPlugin extends AbstractSudokuPlugin {
+		private static volatile SudokuDeductions resolvingDeductions;
+
+
+		/**
+		 * Creates a new instance.
+		 */
+		public DefaultConstructorPlugin() {
+			super(new SudokuDeductions(EnumSet.noneOf(SudokuDeduction.class)));
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public Set<Sudoku> resolve(final int recursionDepth, final int digitIndex, final Set<Byte> cellAlternatives, final int maxSolutions) {
+			resolvingDeductions = this.getDeductions();
+			final Set<Sudoku> result = new HashSet<Sudoku>();
+			new SudokuBacktracker(this.getParent(), this.getDeductions()).resolve(digitIndex, SudokuCandidates.toMask(cellAlternatives), maxSolutions, result);
+			return result;
+		}
+	}
+
+
+
+	/**
+	 * <p>Plugin implementing {@link SudokuPlugin} directly, which only features a default
+	 * constructor.</p>
+	 */
+	public static final class PlainPlugin implements SudokuPlugin {
+		private final SudokuDeductions deductions = new SudokuDeductions(EnumSet.noneOf(SudokuDeduction.class));
+		private Sudoku parent;
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void setParent(final Sudoku parent) {
+			this.parent = parent;
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public Set<Byte> getAntiSolutions(final ElementType elementType, final int digitIndex) {
+			throw new UnsupportedOperationException();
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public SudokuDeductions getDeductions() {
+			return this.deductions;
+		}
+
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public Set<Sudoku> resolve(final int recursionDepth, final int digitIndex, final Set<Byte> cellAlternatives, final int maxSolutions) {
+			final Set<Sudoku> result = new HashSet<Sudoku>();
+			new SudokuBacktracker(this.parent, this.deductions).resolve(digitIndex, SudokuCandidates.toMask(cellAlternatives), maxSolutions, result);
+			return result;
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package de.htw.ds.sudoku;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import org.junit.Test;
+
+
+/**
+ * <p>Tests for {@link SudokuTransformation}, covering the invariance of the canonical form
+ * under transformations, the reversibility of transformations, and boards whose canonical
+ * form would require too many column arrangements or partial transformations. Run them
+ * using <tt>mvn test</tt>.</p>
+ */
+public class SudokuTransformationTest {
+	private static final int TRIALS = 20;
+
+
+	/**
+	 * Riddles of dimension 2 differing only by a random transformation must share their
+	 * canonical form, and canonicalizing must be reversible.
+	 */
+	@Test(timeout = 10000)
+	public void testInvarianceDimension2() {
+		testInvariance((byte) 2, 0x5EED2L);
+	}
+
+
+	/**
+	 * Riddles of dimension 3 differing only by a random transformation must share their
+	 * canonical form, and canonicalizing must be reversible.
+	 */
+	@Test(timeout = 10000)
+	public void testInvarianceDimension3() {
+		testInvariance((byte) 3, 0x5EED3L);
+	}
+
+
+	/**
+	 * Riddles of dimension 4 differing only by a random transformation must share their
+	 * canonical form, and canonicalizing must be reversible.
+	 */
+	@Test(timeout = 30000)
+	public void testInvarianceDimension4() {
+		testInvariance((byte) 4, 0x5EED4L);
+	}
+
+	/**
+	 * Canonicalizing a solved dimension 4 board must neither exhaust the heap nor hang,
+	 * and must fall back to the identity transformation.
+	 */
+	@Test(timeout = 10000)
+	public void testSolvedDimension4() {
+		final Sudoku sudoku = new Sudoku(new SudokuPlugin3(), (byte) 4);
+		sudoku.populate();
+		final byte[] digits = sudoku.getDigits().clone();
+
+		final SudokuTransformation transformation = SudokuTransformation.canonicalize(digits);
+		assertArrayEquals(digits, transformation.apply(digits));
+		assertArrayEquals(digits, transformation.revert(digits));
+	}
+
+
+	/**
+	 * Canonicalizing a dimension 5 riddle with a single clue must neither exhaust the heap
+	 * nor hang, and must fall back to the identity transformation.
+	 */
+	@Test(timeout = 10000)
+	public void testOneClueDimension5() {
+		final byte[] digits = new byte[625];
+		Arrays.fill(digits, (byte) -1);
+		digits[312] = 7;
+
+		final SudokuTransformation transformation = SudokuTransformation.canonicalize(digits);
+		assertArrayEquals(digits, transformation.apply(digits));
+		assertArrayEquals(digits, transformation.revert(digits));
+	}
+
+
+	/**
+	 * Creates random riddles of the given dimension, and asserts for each that it shares
+	 * it's canonical form with a randomly transformed copy, that the canonical
+	 * transformation of at least one of both is not the identity, and that reverting the
+	 * latter restores the original digits.
+	 * @param dimension the dimension
+	 * @param seed the random seed
+	 */
+	private static void testInvariance(final byte dimension, final long seed) {
+		final SplittableRandom randomizer = new SplittableRandom(seed);
+		for (int trial = 0; trial < TRIALS; ++trial) {
+			final byte[] digits = createRiddle(dimension, randomizer);
+			final byte[] transformedDigits = transform(digits, dimension, randomizer);
+
+			final SudokuTransformation transformation = SudokuTransformation.canonicalize(digits);
+			final SudokuTransformation otherTransformation = SudokuTransformation.canonicalize(transformedDigits);
+			assertArrayEquals(transformation.apply(digits), otherTransformation.apply(transformedDigits));
+
+			final boolean identity = Arrays.equals(digits, transformation.apply(digits));
+			final SudokuTransformation nonIdentity = identity ? otherTransformation : transformation;
+			final byte[] source = identity ? transformedDigits : digits;
+			final byte[] target = nonIdentity.apply(source);
+			assertFalse(Arrays.equals(source, target));
+			assertArrayEquals(source, nonIdentity.revert(target));
+		}
+	}
+
+
+	/**
+	 * Returns the digits of a populated board of the given dimension, with about half of
+	 * them unresolved.
+	 * @param dimension the dimension
+	 * @param randomizer the random generator
+	 * @return the digits
+	 */
+	private static byte[] createRiddle(final byte dimension, final SplittableRandom randomizer) {
+		final Sudoku sudoku = new Sudoku(new SudokuPlugin3(), dimension);
+		sudoku.populate(randomizer);
+		final byte[] digits = sudoku.getDigits().clone();
+		for (int index = 0; index < digits.length; ++index) {
+			if (randomizer.nextBoolean()) digits[index] = -1;
+		}
+		return digits;
+	}
+
+
+	/**
+	 * Returns a copy of the given digits after a random transposition, band, row, stack and
+	 * column permutation, and digit relabeling.
+	 * @param digits the digits
+	 * @param dimension the dimension
+	 * @param randomizer the random generator
+	 * @return the transformed digits
+	 */
+	private static byte[] transform(final byte[] digits, final byte dimension, final SplittableRandom randomizer) {
+		final int radix = dimension * dimension;
+		final boolean transposed = randomizer.nextBoolean();
+		final int[] rowIndices = shuffleLines(dimension, randomizer);
+		final int[] columnIndices = shuffleLines(dimension, randomizer);
+		final int[] labels = shuffle(radix, randomizer);
+
+		final byte[] result = new byte[digits.length];
+		for (int rowIndex = 0; rowIndex < radix; ++rowIndex) {
+			for (int columnIndex = 0; columnIndex < radix; ++columnIndex) {
+				final int sourceIndex = transposed
+					? columnIndices[columnIndex] * radix + rowIndices[rowIndex]
+					: rowIndices[rowIndex] * radix + columnIndices[columnIndex];
+				final byte digit = digits[sourceIndex];
+				result[rowIndex * radix + columnIndex] = digit < 0 ? -1 : (byte) labels[digit];
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Returns a random line permutation that keeps the lines of each band together.
+	 * @param dimension the dimension
+	 * @param randomizer the random generator
+	 * @return the source line index of each target line
+	 */
+	private static int[] shuffleLines(final byte dimension, final SplittableRandom randomizer) {
+		final int[] bands = shuffle(dimension, randomizer);
+		final int[] result = new int[dimension * dimension];
+		for (int bandIndex = 0; bandIndex < dimension; ++bandIndex) {
+			final int[] lines = shuffle(dimension, randomizer);
+			for (int lineIndex = 0; lineIndex < dimension; ++lineIndex) {
+				result[bandIndex * dimension + lineIndex] = bands[bandIndex] * dimension + lines[lineIndex];
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Returns a random permutation of the given size.
+	 * @param size the size
+	 * @param randomizer the random generator
+	 * @return the permutation
+	 */
+	private static int[] shuffle(final int size, final SplittableRandom randomizer) {
+		final int[] result = new int[size];
+		for (int index = 0; index < size; ++index) {
+			final int swapIndex = randomizer.nextInt(index + 1);
+			result[index] = result[swapIndex];
+			result[swapIndex] = index;
+		}
+		return result;
+	}
+}